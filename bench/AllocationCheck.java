@@ -0,0 +1,140 @@
+//////////////////////////////////
+//	AllocationCheck
+//
+//  Guards the steady-state turn loop
+//  against allocation regressions.  Runs
+//  games of every storage backend through
+//  GameManager.Simulate after JIT warmup,
+//  so with the SimulationMetrics and
+//  PhaseTimings a real game has installed,
+//  and measures the bytes the benchmark
+//  thread allocates per step (a turn run,
+//  or turns fast-forwarded).  Simulate stops
+//  at early termination, so only steps of
+//  a live game are counted.  Exits with
+//  status 1 if the games of any size and
+//  ratio exceed MAX_BYTES_PER_STEP, which
+//  fails the build (task allocationCheck,
+//  run by gradle check and gradle build).
+//
+//  Event journal and parallel turn order
+//  (villages of TurnOrder.PARALLEL_THRESHOLD
+//  or more) are outside the guarantee.
+//
+//////////////////////////////////
+
+import java.lang.management.ManagementFactory;
+
+public class AllocationCheck {
+
+	private static final long SEED = 42;
+	
+	// allowance for measurement noise
+	private static final double MAX_BYTES_PER_STEP = 16.0;
+	
+	private static final int WARMUP_GAMES = 20;
+	
+	// least games, and steps over them,
+	// measured of each size and ratio
+	private static final int MEASURED_GAMES = 3;
+	private static final int MEASURED_STEPS = 200;
+	
+	// large enough to reach every path (e.g. Village.Compact,
+	// PackedVillage bulk upkeep)
+	private static final int WARMUP_SIZE = 100000;
+	
+	// four moon cycles, unless the game ends
+	// sooner
+	private static final int MEASURED_TURNS = 28;
+	
+	private static final int[] SIZES = { 1000, 10000, 100000 };
+	
+	// humans, vampires, werewolves per 100
+	private static final int[][] RATIOS = { { 90, 5, 5 }, { 34, 33, 33 } };
+	
+	
+	public static void main(String[] args) {
+		
+		com.sun.management.ThreadMXBean threadBean = 
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		
+		for (int game = 0; game < WARMUP_GAMES; ++game) {
+			for (GameManager.EStorageType storage : GameManager.EStorageType.values()) {
+				Run(Create(SEED + game, storage, WARMUP_SIZE, RATIOS[game % RATIOS.length]));
+			}
+		}
+		
+		boolean passed = true;
+		
+		for (GameManager.EStorageType storage : GameManager.EStorageType.values()) {
+			for (int size : SIZES) {
+				for (int[] ratio : RATIOS) {
+					
+					// mean of every measured game, so a
+					// regression in some games counts; over
+					// enough steps that a one-off of the JIT
+					// (a few hundred bytes in whichever game
+					// compiled code changes under) doesn't
+					long bytes = 0;
+					long steps = 0;
+					for (int game = 0; game < MEASURED_GAMES || steps < MEASURED_STEPS; ++game) {
+						GameManager gameMgr = Create(SEED + game, storage, size, ratio);
+						
+						long before = threadBean.getThreadAllocatedBytes(threadId);
+						steps += Run(gameMgr);
+						long after = threadBean.getThreadAllocatedBytes(threadId);
+						
+						bytes += after - before;
+					}
+					double bytesPerStep = (double) bytes / steps;
+					
+					boolean ok = bytesPerStep <= MAX_BYTES_PER_STEP;
+					passed &= ok;
+					
+					System.out.println(String.format("%-8s %8d %2d:%2d:%2d %10.1f B/step  %s", storage, size,
+													 ratio[0], ratio[1], ratio[2], bytesPerStep, ok ? "ok" : "FAILED"));
+				}
+			}
+		}
+		
+		if (false == passed) {
+			System.out.println("Turn loop allocates more than " + MAX_BYTES_PER_STEP + " bytes per step");
+			System.exit(1);
+		}
+	}
+	
+	
+	/// Fresh game of given size and ratio, set
+	/// up outside the measurement along with
+	/// its first turn (which creates the
+	/// RandomNumberGenerator stream of the
+	/// thread, once per game)
+	private static GameManager Create(long seed, GameManager.EStorageType storage, int size, int[] ratio) {
+		
+		int numVampires = size * ratio[1] / 100;
+		int numWerewolves = size * ratio[2] / 100;
+		int numHumans = size - numVampires - numWerewolves;
+		
+		GameManager gameMgr = new GameManager(new SimulationContext(seed));
+		gameMgr.InitializeNewGame(numHumans, numVampires, numWerewolves, storage);
+		gameMgr.Simulate(1);
+		
+		return gameMgr;
+	}
+	
+	
+	/// Measured turns; returns number of steps
+	/// of Simulate (each timed once as
+	/// FAST_FORWARD, whether it skipped turns
+	/// or ran one)
+	private static long Run(GameManager gameMgr) {
+		
+		LatencyHistogram steps = gameMgr.Timings().Histogram(PhaseTimings.EPhase.FAST_FORWARD);
+		long before = steps.Count();
+		
+		gameMgr.Simulate(gameMgr.TurnsRun() + MEASURED_TURNS);
+		
+		return Math.max(1, steps.Count() - before);
+	}
+}
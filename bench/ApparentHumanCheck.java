@@ -0,0 +1,161 @@
+//////////////////////////////////
+//	ApparentHumanCheck
+//
+//  Checks the citizens Village offers
+//  vampires as appearing human
+//  (ApparentHuman), which the moon phase
+//  moves werewolves into and out of all at
+//  once, against asking every living
+//  citizen for its apparent type, after
+//  every turn action with an outcome (each
+//  recorded event) and every turn, over
+//  games spanning full moons.  The living
+//  asked are those of the type pools, first
+//  checked against a rescan of the whole
+//  village (TrackStatistics).
+//  Exits with status 1 on any difference,
+//  which fails the build (task
+//  apparentHumanCheck, run by gradle check
+//  and gradle build).
+//
+//////////////////////////////////
+
+import java.util.Arrays;
+
+public class ApparentHumanCheck implements IEventSink {
+
+	private static final long SEED = 42;
+
+	private static final int GAMES = 3;
+
+	// past the first full moons (turns 6, 13...)
+	private static final int TURNS = 30;
+
+	// humans, vampires, werewolves: mostly
+	// humans, and enough werewolves that
+	// vampires often draw disguised ones
+	private static final int[][] VILLAGES = { { 3000, 100, 100 }, { 1000, 50, 300 } };
+
+	private static final Citizen.ECitizenType[] TYPES = {
+		Citizen.ECitizenType.HUMAN, Citizen.ECitizenType.VAMPIRE, Citizen.ECitizenType.WEREWOLF
+	};
+
+	private Village mVillage;
+	private PopulationStatistics mRescan;
+	private int mChecks;
+
+	// first difference found, null if none
+	private String mDifference;
+
+
+	public static void main(String[] args) {
+
+		boolean passed = true;
+
+		for (int[] village : VILLAGES) {
+			for (int game = 0; game < GAMES; ++game) {
+				passed &= new ApparentHumanCheck().Run(village, SEED + game);
+			}
+		}
+
+		if (false == passed) {
+			System.out.println("Citizens appearing human differ from a rescan");
+			System.exit(1);
+		}
+	}
+
+
+	private ApparentHumanCheck() {
+
+		mRescan = new PopulationStatistics();
+		mChecks = 0;
+		mDifference = null;
+	}
+
+
+	/// Play one game, checking as it goes
+	private boolean Run(int[] village, long seed) {
+
+		SimulationContext context = new SimulationContext(seed);
+		mVillage = new Village(context, village[0], village[1], village[2]);
+		context.SetEvents(this);
+
+		while (context.Clock().CurrentTurn() < TURNS && mDifference == null) {
+			if (true == GameManager.EarlyTermination(mVillage.LivingCount(Citizen.ECitizenType.HUMAN),
+													 mVillage.LivingCount(Citizen.ECitizenType.VAMPIRE),
+													 mVillage.LivingCount(Citizen.ECitizenType.WEREWOLF))) {
+				break;
+			}
+
+			mVillage.DoTurn();
+			Check(context.Clock().CurrentTurn());
+
+			context.Clock().Increment();
+		}
+
+		boolean ok = mDifference == null;
+		System.out.println(String.format("%4d:%3d:%3d seed %d  %2d turns, %5d checks  %s", village[0], village[1],
+										 village[2], seed, context.Clock().CurrentTurn(), mChecks,
+										 ok ? "ok" : "FAILED: " + mDifference));
+
+		return ok;
+	}
+
+
+	/// From IEventSink: check after each outcome
+	public void Record(EEventType type, int turn, int actor, int actorBits,
+					   int victim, int victimBits, boolean victimActed) {
+		Check(turn);
+	}
+
+
+	private void Check(int turn) {
+
+		if (mDifference != null) {
+			return;
+		}
+		++mChecks;
+
+		// the pools hold every living citizen, once
+		mVillage.TrackStatistics(mRescan);
+		mVillage.TrackStatistics(null);
+
+		int numLiving = 0;
+		for (Citizen.ECitizenType type : TYPES) {
+			numLiving += mVillage.LivingCount(type);
+		}
+		if (numLiving != mRescan.Living()) {
+			mDifference = String.format("turn %d: %d pooled, %d living", turn, numLiving, mRescan.Living());
+			return;
+		}
+
+		int[] rescanned = new int[numLiving];
+		int numRescanned = 0;
+		for (Citizen.ECitizenType type : TYPES) {
+			for (int i = 0; i < mVillage.LivingCount(type); ++i) {
+				Citizen citizen = mVillage.LivingCitizen(type, i);
+				if (citizen.KilledBy() != Citizen.EKillType.INVALID || citizen.GetType() != type) {
+					mDifference = String.format("turn %d: citizen %d pooled as living %s", turn, citizen.Id(), type);
+					return;
+				}
+				if (citizen.GetApparentType(turn) == Citizen.ECitizenType.HUMAN) {
+					rescanned[numRescanned++] = citizen.Id();
+				}
+			}
+		}
+
+		int[] view = new int[mVillage.ApparentHumanCount()];
+		for (int i = 0; i < view.length; ++i) {
+			view[i] = mVillage.ApparentHuman(i).Id();
+		}
+
+		rescanned = Arrays.copyOf(rescanned, numRescanned);
+		Arrays.sort(rescanned);
+		Arrays.sort(view);
+
+		if (false == Arrays.equals(view, rescanned)) {
+			mDifference = String.format("turn %d: %d appear human, rescan finds %d", turn, view.length,
+										numRescanned);
+		}
+	}
+}
@@ -0,0 +1,145 @@
+//////////////////////////////////
+//	BatchingCheck
+//
+//  Checks the batched turns of large
+//  villages (Village.DoBatchedTurns) on
+//  small ones, by batching every turn
+//  (Village.SetBatching):
+//  - a game has the same outcome with an
+//    event journal attached as without, and
+//    replaying the journal gives it again
+//  - batched games have the outcomes of
+//    games run in turn order: for ensembles
+//    of each, the mean living count of each
+//    type after some turns differs by at
+//    most MAX_Z standard errors
+//  Exits with status 1 otherwise, which
+//  fails the build (task batchingCheck, run
+//  by gradle check and gradle build).
+//
+//////////////////////////////////
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class BatchingCheck {
+
+	private static final long SEED = 42;
+
+	// batch from one living citizen, act
+	// batches from PARALLEL_BATCH turns in
+	// parallel
+	private static final int THRESHOLD = 1;
+	private static final int PARALLEL_BATCH = 16;
+
+	// humans, vampires, werewolves: predators
+	// outnumbering humans, so draws collide
+	// within batches, and a game lasting past
+	// the first full moon (the one journaled)
+	private static final int[][] VILLAGES = { { 300, 300, 100 }, { 3000, 100, 100 } };
+
+	private static final int JOURNAL_TURNS = 30;
+
+	// games of each ensemble
+	private static final int GAMES = 2000;
+
+	// counted at the start of these turns,
+	// around the first full moon (turn 6)
+	private static final int[] TURNS = { 1, 2, 4, 6, 7, 9, 12 };
+
+	// seeded, so the check is repeatable; one
+	// of its 42 comparisons over 4 by chance
+	// is about 1 in 400
+	private static final double MAX_Z = 4.0;
+
+
+	public static void main(String[] args) throws IOException {
+
+		Village.SetBatching(THRESHOLD, PARALLEL_BATCH);
+
+		boolean passed = CheckJournal(VILLAGES[VILLAGES.length - 1]);
+
+		for (int[] village : VILLAGES) {
+			Village.SetBatching(THRESHOLD, PARALLEL_BATCH);
+			Ensemble batched = new Ensemble(village, GameManager.EStorageType.OBJECT, TURNS, GAMES, SEED);
+
+			Village.SetBatching(Integer.MAX_VALUE, PARALLEL_BATCH);
+			Ensemble ordered = new Ensemble(village, GameManager.EStorageType.OBJECT, TURNS, GAMES, SEED + GAMES);
+
+			for (int t = 0; t < TURNS.length; ++t) {
+				StringBuilder line = new StringBuilder(String.format("%4d:%3d:%3d turn %2d", village[0], village[1],
+																	 village[2], TURNS[t]));
+				boolean ok = true;
+
+				for (int type = 0; type < Ensemble.TYPES.length; ++type) {
+					double z = batched.Z(ordered, t, type);
+					ok &= Math.abs(z) <= MAX_Z;
+					line.append(String.format("  %-8s %8.2f %8.2f  z %5.2f", Ensemble.TYPES[type],
+											  batched.Mean(t, type), ordered.Mean(t, type), z));
+				}
+
+				passed &= ok;
+				System.out.println(line + (ok ? "  ok" : "  FAILED"));
+			}
+		}
+
+		if (false == passed) {
+			System.out.println("Batched turns differ from turns in order");
+			System.exit(1);
+		}
+	}
+
+
+	/// Same status of a batched game with and
+	/// without a journal, and from replaying it
+	private static boolean CheckJournal(int[] village) throws IOException {
+
+		Village.SetBatching(THRESHOLD, PARALLEL_BATCH);
+
+		Path journal = Files.createTempFile("batching", ".journal");
+		try {
+			GameManager watched = new GameManager(new SimulationContext(SEED));
+			watched.SetJournal(journal);
+			watched.InitializeNewGame(village[0], village[1], village[2], GameManager.EStorageType.OBJECT);
+			watched.Simulate(JOURNAL_TURNS);
+			watched.CloseJournal();
+
+			GameManager unwatched = new GameManager(new SimulationContext(SEED));
+			unwatched.InitializeNewGame(village[0], village[1], village[2], GameManager.EStorageType.OBJECT);
+			unwatched.Simulate(JOURNAL_TURNS);
+
+			ByteArrayOutputStream replayed = new ByteArrayOutputStream();
+			try (EventReplay replay = new EventReplay(journal)) {
+				replay.AdvanceTo(watched.TurnsRun());
+
+				StatusWriter writer = new StatusWriter(Channels.newChannel(replayed));
+				replay.WriteStatus(writer);
+				writer.Finish();
+			}
+
+			byte[] status = Status(watched);
+			boolean ok = Arrays.equals(status, Status(unwatched)) && Arrays.equals(status, replayed.toByteArray());
+
+			System.out.println(String.format("journal  %d turns, %d bytes of status  %s", watched.TurnsRun(),
+											 status.length, ok ? "ok" : "FAILED"));
+
+			return ok;
+		}
+		finally {
+			Files.deleteIfExists(journal);
+		}
+	}
+
+
+	private static byte[] Status(GameManager gameMgr) throws IOException {
+
+		ByteArrayOutputStream status = new ByteArrayOutputStream();
+		gameMgr.WriteStatus(Channels.newChannel(status));
+
+		return status.toByteArray();
+	}
+}
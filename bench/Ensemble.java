@@ -0,0 +1,68 @@
+//////////////////////////////////
+//	Ensemble
+//
+//  Living counts of each type at given
+//  turns over many seeded games of one
+//  village, for checks comparing the
+//  outcomes of two ways of running it
+//  (BatchingCheck, HistogramCheck).
+//
+//////////////////////////////////
+
+public class Ensemble {
+
+	static final Citizen.ECitizenType[] TYPES = {
+		Citizen.ECitizenType.HUMAN, Citizen.ECitizenType.VAMPIRE, Citizen.ECitizenType.WEREWOLF
+	};
+
+	private int mGames;
+	private double[][] mSums;
+	private double[][] mSquares;
+
+
+	/// games games of village (humans, vampires,
+	/// werewolves) in storage, seeded from
+	/// firstSeed on, counted at the start of
+	/// turns
+	Ensemble(int[] village, GameManager.EStorageType storage, int[] turns, int games, long firstSeed) {
+
+		mGames = games;
+		mSums = new double[turns.length][TYPES.length];
+		mSquares = new double[turns.length][TYPES.length];
+
+		for (int game = 0; game < games; ++game) {
+			GameManager gameMgr = new GameManager(new SimulationContext(firstSeed + game));
+			gameMgr.InitializeNewGame(village[0], village[1], village[2], storage);
+
+			for (int t = 0; t < turns.length; ++t) {
+				gameMgr.Simulate(turns[t]);
+
+				for (int type = 0; type < TYPES.length; ++type) {
+					double count = gameMgr.LivingCount(TYPES[type]);
+					mSums[t][type] += count;
+					mSquares[t][type] += count * count;
+				}
+			}
+		}
+	}
+
+
+	double Mean(int t, int type) {
+		return mSums[t][type] / mGames;
+	}
+
+
+	double Variance(int t, int type) {
+		double mean = Mean(t, type);
+		return Math.max(0.0, mSquares[t][type] / mGames - mean * mean);
+	}
+
+
+	/// Difference of means in standard errors
+	double Z(Ensemble other, int t, int type) {
+
+		double error = Math.sqrt(Variance(t, type) / mGames + other.Variance(t, type) / other.mGames);
+
+		return error > 0.0 ? (Mean(t, type) - other.Mean(t, type)) / error : 0.0;
+	}
+}
@@ -0,0 +1,69 @@
+//////////////////////////////////
+//	HistogramCheck
+//
+//  Checks that HistogramVillage, which acts
+//  out slices of identical citizens at once,
+//  has the outcomes of Village: for ensembles
+//  of each, the mean living count of each
+//  type after the first turns differs by at
+//  most MAX_Z standard errors.  The villages
+//  are predator heavy, so strikes within a
+//  slice often land on the same citizen.
+//  Exits with status 1 otherwise, which
+//  fails the build (task histogramCheck, run
+//  by gradle check and gradle build).
+//
+//////////////////////////////////
+
+public class HistogramCheck {
+
+	private static final long SEED = 42;
+
+	// humans, vampires, werewolves: predators
+	// as many as, or many more than, humans
+	private static final int[][] VILLAGES = { { 300, 300, 100 }, { 100, 1000, 50 }, { 50, 2000, 20 } };
+
+	// games of each ensemble
+	private static final int GAMES = 2000;
+
+	// counted at the start of these turns;
+	// the humans are mostly gone by turn 2
+	private static final int[] TURNS = { 1, 2 };
+
+	// seeded, so the check is repeatable; one
+	// of its 18 comparisons over 4 by chance
+	// is about 1 in 900
+	private static final double MAX_Z = 4.0;
+
+
+	public static void main(String[] args) {
+
+		boolean passed = true;
+
+		for (int[] village : VILLAGES) {
+			Ensemble histogram = new Ensemble(village, GameManager.EStorageType.HISTOGRAM, TURNS, GAMES, SEED);
+			Ensemble object = new Ensemble(village, GameManager.EStorageType.OBJECT, TURNS, GAMES, SEED + GAMES);
+
+			for (int t = 0; t < TURNS.length; ++t) {
+				StringBuilder line = new StringBuilder(String.format("%4d:%4d:%3d turn %d", village[0], village[1],
+																	 village[2], TURNS[t]));
+				boolean ok = true;
+
+				for (int type = 0; type < Ensemble.TYPES.length; ++type) {
+					double z = histogram.Z(object, t, type);
+					ok &= Math.abs(z) <= MAX_Z;
+					line.append(String.format("  %-8s %8.2f %8.2f  z %5.2f", Ensemble.TYPES[type],
+											  histogram.Mean(t, type), object.Mean(t, type), z));
+				}
+
+				passed &= ok;
+				System.out.println(line + (ok ? "  ok" : "  FAILED"));
+			}
+		}
+
+		if (false == passed) {
+			System.out.println("Histogram outcomes differ from Village");
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,161 @@
+//////////////////////////////////
+//	StatisticsCheck
+//
+//  Checks the population statistics each
+//  store keeps current as it changes
+//  (IVillage.TrackStatistics) against a
+//  rescan of the population, after every
+//  step of games run as GameManager.Simulate
+//  runs them: living count, deaths by cause,
+//  and mean and variance of hunger and
+//  health, which come from exact sums and
+//  so must be equal, not close.
+//  Exits with status 1 on any difference,
+//  which fails the build (task
+//  statisticsCheck, run by gradle check and
+//  gradle build).
+//
+//////////////////////////////////
+
+public class StatisticsCheck {
+
+	private static final long SEED = 42;
+
+	private static final int GAMES = 3;
+
+	private static final int TURNS = 40;
+
+	// humans, vampires, werewolves: a small
+	// village, and one large enough for the
+	// parallel upkeep of PackedVillage
+	private static final int[] SMALL = { 3000, 100, 100 };
+	private static final int[] LARGE = { 70000, 2000, 2000 };
+
+
+	public static void main(String[] args) {
+
+		boolean passed = true;
+
+		passed &= Check("object", GameManager.EStorageType.OBJECT, SMALL);
+		passed &= Check("packed", GameManager.EStorageType.PACKED, SMALL);
+		passed &= Check("packed bulk", GameManager.EStorageType.PACKED, LARGE);
+		passed &= Check("histogram", GameManager.EStorageType.HISTOGRAM, SMALL);
+		passed &= Check("histogram large", GameManager.EStorageType.HISTOGRAM, LARGE);
+
+		// every turn batched, batches acted out
+		// in parallel from 16 turns
+		Village.SetBatching(1, 16);
+		passed &= Check("object batched", GameManager.EStorageType.OBJECT, SMALL);
+
+		if (false == passed) {
+			System.out.println("Tracked statistics differ from a rescan");
+			System.exit(1);
+		}
+	}
+
+
+	/// GAMES games of village in given store,
+	/// statistics compared after every step
+	private static boolean Check(String name, GameManager.EStorageType storage, int[] village) {
+
+		boolean ok = true;
+		int steps = 0;
+
+		for (int game = 0; game < GAMES && true == ok; ++game) {
+			SimulationContext context = new SimulationContext(SEED + game);
+			IVillage store = Create(storage, context, village);
+
+			PopulationStatistics tracked = new PopulationStatistics();
+			PopulationStatistics rescanned = new PopulationStatistics();
+			store.TrackStatistics(tracked);
+
+			while (context.Clock().CurrentTurn() < TURNS) {
+				int turn = context.Clock().CurrentTurn();
+				if (true == GameManager.EarlyTermination(store.LivingCount(Citizen.ECitizenType.HUMAN),
+														 store.LivingCount(Citizen.ECitizenType.VAMPIRE),
+														 store.LivingCount(Citizen.ECitizenType.WEREWOLF))) {
+					break;
+				}
+
+				int numSkipped = store.FastForward(TURNS - turn);
+				if (numSkipped == 0) {
+					store.DoTurn();
+					numSkipped = 1;
+				}
+				context.Clock().SetCount(turn + numSkipped);
+				++steps;
+
+				// rescan, then count the tracked
+				// statistics in again for the next step
+				store.TrackStatistics(rescanned);
+				String difference = Difference(tracked, rescanned);
+				store.TrackStatistics(tracked);
+
+				if (difference != null) {
+					System.out.println(String.format("%-16s game %d turn %2d: %s", name, game, turn, difference));
+					ok = false;
+					break;
+				}
+			}
+		}
+
+		System.out.println(String.format("%-16s %d:%d:%d  %d steps  %s", name, village[0], village[1], village[2],
+										 steps, ok ? "ok" : "FAILED"));
+
+		return ok;
+	}
+
+
+	private static IVillage Create(GameManager.EStorageType storage, SimulationContext context, int[] village) {
+
+		switch (storage) {
+		case PACKED:
+			return new PackedVillage(context, village[0], village[1], village[2]);
+
+		case HISTOGRAM:
+			return new HistogramVillage(context, village[0], village[1], village[2]);
+
+		case OBJECT:
+			break;
+		}
+
+		return new Village(context, village[0], village[1], village[2]);
+	}
+
+
+	/// First difference between tracked and
+	/// rescanned statistics, or null
+	private static String Difference(PopulationStatistics tracked, PopulationStatistics rescanned) {
+
+		if (tracked.Living() != rescanned.Living()) {
+			return String.format("living %d, rescan %d", tracked.Living(), rescanned.Living());
+		}
+
+		for (Citizen.EKillType killer : Citizen.EKillType.values()) {
+			if (tracked.Deaths(killer) != rescanned.Deaths(killer)) {
+				return String.format("%s deaths %d, rescan %d", killer, tracked.Deaths(killer),
+									 rescanned.Deaths(killer));
+			}
+		}
+
+		String difference = Difference("hunger mean", tracked.HungerMean(), rescanned.HungerMean());
+		if (difference == null) {
+			difference = Difference("hunger variance", tracked.HungerVariance(), rescanned.HungerVariance());
+		}
+		if (difference == null) {
+			difference = Difference("health mean", tracked.HealthMean(), rescanned.HealthMean());
+		}
+		if (difference == null) {
+			difference = Difference("health variance", tracked.HealthVariance(), rescanned.HealthVariance());
+		}
+
+		return difference;
+	}
+
+
+	private static String Difference(String name, double tracked, double rescanned) {
+
+		return Double.compare(tracked, rescanned) != 0 ? String.format("%s %f, rescan %f", name, tracked, rescanned)
+													   : null;
+	}
+}
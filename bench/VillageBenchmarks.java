@@ -0,0 +1,407 @@
+//////////////////////////////////
+//	VillageBenchmarks
+//
+//  Workloads of the JMH benchmarks (see
+//  jmh.VillageBenchmark, which names them):
+//  the operations on the simulation, with
+//  their setup, for a population of given
+//  size and human / vampire / werewolf
+//  ratio.
+//
+//  Results are seeded, so runs of the same
+//  configuration simulate the same games.
+//
+//////////////////////////////////
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import jmh.IWorkload;
+
+public class VillageBenchmarks {
+
+	private static final long SEED = 42;
+
+	// turns before a status report
+	private static final int MOON_CYCLE = 7;
+
+	private static final int GAME_TURNS = 100;
+
+
+	/// Workload of given name, or null if not
+	/// available on this JVM
+	public static IWorkload Create(String name, int size, String ratio) {
+
+		Population population = new Population(size, ratio);
+
+		if (name.equals("VillageTurn")) {
+			return new VillageTurn(population, GameManager.EStorageType.OBJECT);
+		}
+		if (name.equals("PackedVillageTurn")) {
+			return new VillageTurn(population, GameManager.EStorageType.PACKED);
+		}
+		if (name.equals("HistogramVillageTurn")) {
+			return new VillageTurn(population, GameManager.EStorageType.HISTOGRAM);
+		}
+		if (name.equals("CitizenUpkeep")) {
+			return new ObjectUpkeep(population);
+		}
+		if (name.equals("ScalarUpkeep")) {
+			return new PackedUpkeep(population, new ScalarUpkeep());
+		}
+		if (name.equals("VectorUpkeep")) {
+			IUpkeepKernel vector = ScalarUpkeep.Vector();
+			return vector != null ? new PackedUpkeep(population, vector) : null;
+		}
+		if (name.equals("VampireSelectVictim")) {
+			return new VampireSelection(population);
+		}
+		if (name.equals("WerewolfSelectVictim")) {
+			return new WerewolfSelection(population);
+		}
+		if (name.equals("TurnOrder")) {
+			return new Order(population);
+		}
+		if (name.equals("GetStatus")) {
+			return new Status(population);
+		}
+		if (name.equals("WriteStatus")) {
+			return new StreamedStatus(population);
+		}
+		if (name.equals("GameRun")) {
+			return new Game(population);
+		}
+
+		throw new IllegalArgumentException("Unknown workload " + name);
+	}
+
+
+	/// Initial population of a benchmark village
+	private static class Population {
+		int mHumans;
+		int mVampires;
+		int mWerewolves;
+
+		/// ratio given as "humans:vampires:werewolves"
+		Population(int size, String ratio) {
+			String[] parts = ratio.split(":");
+			int humanShare = Integer.parseInt(parts[0]);
+			int vampireShare = Integer.parseInt(parts[1]);
+			int werewolfShare = Integer.parseInt(parts[2]);
+			int totalShare = humanShare + vampireShare + werewolfShare;
+
+			mVampires = (int) ((long) size * vampireShare / totalShare);
+			mWerewolves = (int) ((long) size * werewolfShare / totalShare);
+			mHumans = size - mVampires - mWerewolves;
+		}
+
+		int Total() {
+			return mHumans + mVampires + mWerewolves;
+		}
+	}
+
+
+	/// Consecutive turns of a fresh village
+	private static class VillageTurn implements IWorkload {
+
+		private Population mPopulation;
+		private GameManager.EStorageType mStorage;
+		private SimulationContext mContext;
+		private IVillage mVillage;
+
+		VillageTurn(Population population, GameManager.EStorageType storage) {
+			mPopulation = population;
+			mStorage = storage;
+		}
+
+		public void Setup() {
+			mVillage = null;
+			mContext = new SimulationContext(SEED);
+
+			switch (mStorage) {
+			case OBJECT:
+				mVillage = new Village(mContext, mPopulation.mHumans, mPopulation.mVampires, mPopulation.mWerewolves);
+				break;
+
+			case PACKED:
+				mVillage = new PackedVillage(mContext, mPopulation.mHumans, mPopulation.mVampires, mPopulation.mWerewolves);
+				break;
+
+			case HISTOGRAM:
+				mVillage = new HistogramVillage(mContext, mPopulation.mHumans, mPopulation.mVampires, mPopulation.mWerewolves);
+				break;
+			}
+		}
+
+		public long Run() {
+			mVillage.DoTurn();
+			mContext.Clock().Increment();
+
+			return mVillage.LivingCount(Citizen.ECitizenType.HUMAN);
+		}
+	}
+
+
+	/// Upkeep turns of the humans and werewolves
+	/// of a population as citizen objects
+	private static class ObjectUpkeep implements IWorkload {
+
+		private Population mPopulation;
+		private Village mProvider;
+		private Citizen[] mCitizens;
+
+		ObjectUpkeep(Population population) {
+			mPopulation = population;
+		}
+
+		public void Setup() {
+			mProvider = new Village(new SimulationContext(SEED), 0, 0, 0);
+			mCitizens = new Citizen[mPopulation.mHumans + mPopulation.mWerewolves];
+			for (int i = 0; i < mCitizens.length; ++i) {
+				IBehavior behavior = i < mPopulation.mHumans ? HumanBehavior.Inst() : WerewolfBehavior.Inst();
+				mCitizens[i] = new Citizen(i, behavior);
+			}
+		}
+
+		public long Run() {
+			for (Citizen citizen : mCitizens) {
+				citizen.DoTurn(mProvider);
+			}
+
+			return mCitizens.length > 0 ? mCitizens[mCitizens.length - 1].Hunger() : 0;
+		}
+	}
+
+
+	/// Upkeep turns of the same citizens packed
+	/// (see CitizenBits) by an upkeep kernel,
+	/// all pending
+	private static class PackedUpkeep implements IWorkload {
+
+		private Population mPopulation;
+		private IUpkeepKernel mKernel;
+		private short[] mCitizens;
+		private long[] mPending;
+
+		PackedUpkeep(Population population, IUpkeepKernel kernel) {
+			mPopulation = population;
+			mKernel = kernel;
+		}
+
+		public void Setup() {
+			mCitizens = new short[mPopulation.mHumans + mPopulation.mWerewolves];
+			for (int i = 0; i < mCitizens.length; ++i) {
+				Citizen.ECitizenType type = i < mPopulation.mHumans ? Citizen.ECitizenType.HUMAN
+																	 : Citizen.ECitizenType.WEREWOLF;
+				mCitizens[i] = (short) CitizenBits.Pack(type, Citizen.HUNGER_MIN, Citizen.HEALTH_MAX,
+														Citizen.EKillType.INVALID, false);
+			}
+
+			mPending = new long[(mCitizens.length + Long.SIZE - 1) / Long.SIZE];
+			Arrays.fill(mPending, -1L);
+			if (mCitizens.length % Long.SIZE != 0) {
+				mPending[mPending.length - 1] = (1L << mCitizens.length) - 1;
+			}
+		}
+
+		public long Run() {
+			mKernel.Apply(mCitizens, mCitizens.length, mPending, 0);
+
+			return mCitizens.length > 0 ? mCitizens[mCitizens.length - 1] : 0;
+		}
+	}
+
+
+	/// Vampire victim selection in a fresh
+	/// village (which selection leaves as it is)
+	private static class VampireSelection implements IWorkload {
+
+		private Population mPopulation;
+		private Village mVillage;
+
+		VampireSelection(Population population) {
+			mPopulation = population;
+		}
+
+		public void Setup() {
+			mVillage = new Village(new SimulationContext(SEED),
+								   mPopulation.mHumans, mPopulation.mVampires, mPopulation.mWerewolves);
+		}
+
+		public long Run() {
+			Citizen victim = VampireBehavior.Inst().SelectVictim(mVillage);
+
+			return victim != null ? victim.Id() : -1;
+		}
+	}
+
+
+	/// Werewolf victim selection in a fresh village
+	private static class WerewolfSelection implements IWorkload {
+
+		private Population mPopulation;
+		private Village mVillage;
+
+		WerewolfSelection(Population population) {
+			mPopulation = population;
+		}
+
+		public void Setup() {
+			mVillage = new Village(new SimulationContext(SEED),
+								   mPopulation.mHumans, mPopulation.mVampires, mPopulation.mWerewolves);
+		}
+
+		public long Run() {
+			Citizen victim = WerewolfBehavior.Inst().SelectVictim(mVillage);
+
+			return victim != null ? victim.Id() : -1;
+		}
+	}
+
+
+	/// Complete turn order of a fresh village
+	private static class Order implements IWorkload {
+
+		private Population mPopulation;
+		private TurnOrder mOrder;
+		private int mTurn;
+
+		Order(Population population) {
+			mPopulation = population;
+		}
+
+		public void Setup() {
+			mOrder = new TurnOrder(mPopulation.Total());
+			mTurn = 0;
+		}
+
+		public long Run() {
+			int[] ids = mOrder.Ids(mPopulation.Total());
+			for (int id = 0; id < mPopulation.Total(); ++id) {
+				ids[id] = id;
+			}
+
+			long sum = 0;
+			mOrder.Shuffle(SEED, mTurn++);
+			while (mOrder.HasNext()) {
+				sum += mOrder.Next();
+			}
+
+			return sum;
+		}
+	}
+
+
+	/// Status report of a village after a moon cycle
+	private static class Status implements IWorkload {
+
+		private Population mPopulation;
+		protected Village mVillage;
+
+		Status(Population population) {
+			mPopulation = population;
+		}
+
+		public void Setup() {
+			mVillage = null;
+			SimulationContext context = new SimulationContext(SEED);
+			mVillage = new Village(context, mPopulation.mHumans, mPopulation.mVampires, mPopulation.mWerewolves);
+
+			for (int turn = 0; turn < MOON_CYCLE; ++turn) {
+				mVillage.DoTurn();
+				context.Clock().Increment();
+			}
+		}
+
+		public long Run() {
+			return mVillage.GetStatus().length();
+		}
+	}
+
+
+	/// Streamed status report of a village after
+	/// a moon cycle (written to a discarding channel)
+	private static class StreamedStatus extends Status {
+
+		private Discard mChannel;
+
+		StreamedStatus(Population population) {
+			super(population);
+			mChannel = new Discard();
+		}
+
+		@Override
+		public long Run() {
+			try {
+				StatusWriter writer = new StatusWriter(mChannel);
+				mVillage.WriteStatus(writer);
+				writer.Finish();
+
+				return mChannel.mBytes;
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+
+	/// Channel counting and discarding the bytes
+	/// written to it
+	private static class Discard implements WritableByteChannel {
+
+		long mBytes;
+
+		public int write(ByteBuffer buffer) {
+			int count = buffer.remaining();
+			buffer.position(buffer.limit());
+			mBytes += count;
+
+			return count;
+		}
+
+		public boolean isOpen() {
+			return true;
+		}
+
+		public void close() {
+		}
+	}
+
+
+	/// Complete game including status output
+	/// (written to a discarding stream)
+	private static class Game implements IWorkload {
+
+		private static final PrintStream NULL_OUT = new PrintStream(OutputStream.nullOutputStream());
+
+		private Population mPopulation;
+		private GameManager mGameMgr;
+
+		Game(Population population) {
+			mPopulation = population;
+		}
+
+		public void Setup() {
+			mGameMgr = new GameManager(new SimulationContext(SEED));
+			mGameMgr.InitializeNewGame(mPopulation.mHumans, mPopulation.mVampires, mPopulation.mWerewolves);
+		}
+
+		public long Run() {
+			PrintStream out = System.out;
+			System.setOut(NULL_OUT);
+			try {
+				mGameMgr.Run(GAME_TURNS);
+			}
+			finally {
+				System.setOut(out);
+			}
+
+			return mGameMgr.TurnsRun();
+		}
+	}
+}
@@ -0,0 +1,24 @@
+//////////////////////////////////
+//	IWorkload
+//
+//  An operation benchmarked by
+//  VillageBenchmark.  JMH won't generate
+//  benchmarks in the default package, and
+//  a named package can't refer to it, so
+//  operations on the simulation are written
+//  in the default package (VillageBenchmarks)
+//  and reached through this interface.
+//
+//////////////////////////////////
+
+package jmh;
+
+public interface IWorkload {
+
+	/// Prepare fresh state (not measured)
+	public void Setup();
+
+	/// One measured operation; returns a value
+	/// of its work for JMH to consume
+	public long Run();
+}
@@ -0,0 +1,243 @@
+//////////////////////////////////
+//	VillageBenchmark
+//
+//  JMH benchmarks of the village
+//  simulation: the turn loop of every
+//  storage backend, victim selection of
+//  vampires and werewolves, upkeep of
+//  citizen objects against the packed
+//  upkeep kernels, turn ordering, status
+//  reporting and complete games, over
+//  population sizes from 10^3 to 10^7 and
+//  human / vampire / werewolf ratios (the
+//  size and ratio parameters).
+//
+//  Benchmarks changing their village take
+//  a fresh one every iteration and time a
+//  fixed batch of operations on it, so a
+//  game never runs into its end.  The
+//  others are timed in steady state.  Run
+//  with the GC profiler (gradle :bench:jmh)
+//  for allocation per operation.
+//
+//////////////////////////////////
+
+package jmh;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx8g", "--add-modules", "jdk.incubator.vector" })
+public class VillageBenchmark {
+
+	// one moon cycle of turns per iteration
+	private static final int TURNS = 7;
+
+	private static final int WARMUP_ITERATIONS = 3;
+
+	private static final int MEASURED_ITERATIONS = 5;
+
+	// workloads of the default package
+	private static final String WORKLOADS = "VillageBenchmarks";
+
+
+	/// Workload of the benchmark method (by
+	/// name, see VillageBenchmarks.Create),
+	/// fresh every iteration
+	public static abstract class Workload {
+
+		protected IWorkload mWorkload;
+
+		protected abstract int Size();
+
+		protected abstract String Ratio();
+
+		@Setup(Level.Trial)
+		public void Create(BenchmarkParams params) throws ReflectiveOperationException {
+
+			String benchmark = params.getBenchmark();
+			String name = benchmark.substring(benchmark.lastIndexOf('.') + 1);
+
+			mWorkload = (IWorkload) Class.forName(WORKLOADS)
+										 .getMethod("Create", String.class, int.class, String.class)
+										 .invoke(null, name, Size(), Ratio());
+			if (mWorkload == null) {
+				throw new IllegalStateException("No workload " + name + " on this JVM");
+			}
+		}
+
+		@Setup(Level.Iteration)
+		public void Setup() {
+			mWorkload.Setup();
+		}
+	}
+
+
+	/// Population of any size
+	@State(Scope.Thread)
+	public static class Population extends Workload {
+
+		@Param({ "1000", "10000", "100000", "1000000", "10000000" })
+		public int size;
+
+		/// humans:vampires:werewolves
+		@Param({ "90:5:5", "50:25:25", "34:33:33" })
+		public String ratio;
+
+		protected int Size() {
+			return size;
+		}
+
+		protected String Ratio() {
+			return ratio;
+		}
+	}
+
+
+	/// Population whose status text fits
+	/// usual heaps
+	@State(Scope.Thread)
+	public static class ReportedPopulation extends Workload {
+
+		@Param({ "1000", "10000", "100000", "1000000" })
+		public int size;
+
+		/// humans:vampires:werewolves
+		@Param({ "90:5:5", "50:25:25", "34:33:33" })
+		public String ratio;
+
+		protected int Size() {
+			return size;
+		}
+
+		protected String Ratio() {
+			return ratio;
+		}
+	}
+
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = WARMUP_ITERATIONS, batchSize = TURNS)
+	@Measurement(iterations = MEASURED_ITERATIONS, batchSize = TURNS)
+	@OperationsPerInvocation(TURNS)
+	public long VillageTurn(Population population) {
+		return population.mWorkload.Run();
+	}
+
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = WARMUP_ITERATIONS, batchSize = TURNS)
+	@Measurement(iterations = MEASURED_ITERATIONS, batchSize = TURNS)
+	@OperationsPerInvocation(TURNS)
+	public long PackedVillageTurn(Population population) {
+		return population.mWorkload.Run();
+	}
+
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = WARMUP_ITERATIONS, batchSize = TURNS)
+	@Measurement(iterations = MEASURED_ITERATIONS, batchSize = TURNS)
+	@OperationsPerInvocation(TURNS)
+	public long HistogramVillageTurn(Population population) {
+		return population.mWorkload.Run();
+	}
+
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = WARMUP_ITERATIONS, batchSize = TURNS)
+	@Measurement(iterations = MEASURED_ITERATIONS, batchSize = TURNS)
+	@OperationsPerInvocation(TURNS)
+	public long CitizenUpkeep(Population population) {
+		return population.mWorkload.Run();
+	}
+
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = WARMUP_ITERATIONS, batchSize = TURNS)
+	@Measurement(iterations = MEASURED_ITERATIONS, batchSize = TURNS)
+	@OperationsPerInvocation(TURNS)
+	public long ScalarUpkeep(Population population) {
+		return population.mWorkload.Run();
+	}
+
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = WARMUP_ITERATIONS, batchSize = TURNS)
+	@Measurement(iterations = MEASURED_ITERATIONS, batchSize = TURNS)
+	@OperationsPerInvocation(TURNS)
+	public long VectorUpkeep(Population population) {
+		return population.mWorkload.Run();
+	}
+
+
+	@Benchmark
+	public long VampireSelectVictim(Population population) {
+		return population.mWorkload.Run();
+	}
+
+
+	@Benchmark
+	public long WerewolfSelectVictim(Population population) {
+		return population.mWorkload.Run();
+	}
+
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public long TurnOrder(Population population) {
+		return population.mWorkload.Run();
+	}
+
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public long GetStatus(ReportedPopulation population) {
+		return population.mWorkload.Run();
+	}
+
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public long WriteStatus(Population population) {
+		return population.mWorkload.Run();
+	}
+
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = WARMUP_ITERATIONS, batchSize = 1)
+	@Measurement(iterations = MEASURED_ITERATIONS, batchSize = 1)
+	public long GameRun(ReportedPopulation population) {
+		return population.mWorkload.Run();
+	}
+}
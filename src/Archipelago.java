@@ -0,0 +1,341 @@
+//////////////////////////////////
+//	Archipelago
+//
+//  Region of villages on a ring, each
+//  advanced by its own worker thread.
+//  After every turn each living citizen
+//  leaves for a neighbouring village with
+//  the migration probability.  Emigrants
+//  are handed over through a MigrationQueue
+//  per direction between neighbours; if a
+//  queue is full the citizen stays home.
+//
+//  Workers meet at a barrier once all
+//  emigrants are queued, take in their
+//  immigrants, then meet again.  The second
+//  barrier's action takes the regional
+//  census and applies GameManager's early
+//  termination rules to the whole region,
+//  so the game ends when the region (not
+//  any single village) has no valid
+//  actions left.
+//
+//  Each village has its own context seeded
+//  from the region's seed, and immigrants
+//  are taken in a fixed order, so results
+//  do not depend on thread scheduling.
+//
+//////////////////////////////////
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class Archipelago {
+
+	// stream of migration draws (below the
+	// village-wide streams of TurnOrder)
+	private static final long MIGRATION_STREAM = Long.MIN_VALUE;
+
+	// queue room per expected emigrant of a
+	// turn, and the least room of any queue
+	private static final int QUEUE_SLACK = 4;
+	private static final int MIN_QUEUE_CAPACITY = 1024;
+
+	private static final Citizen.ECitizenType[] LIVING_TYPES = {
+		Citizen.ECitizenType.HUMAN, Citizen.ECitizenType.VAMPIRE, Citizen.ECitizenType.WEREWOLF
+	};
+
+	private SimulationContext[] mContexts;
+
+	private Village[] mVillages;
+
+	// village indexes of each village's neighbours
+	private int[][] mNeighbours;
+
+	// [from][to] queues between neighbours
+	// (null for villages that aren't)
+	private MigrationQueue[][] mQueues;
+
+	private double mMigrationRate;
+
+	// next turn to run and turn limit; only
+	// changed in the barrier action
+	private int mTurn;
+	private int mNumTurns;
+	private boolean mFinished;
+
+	// regional living citizens by type ordinal
+	private int[] mLivingCounts;
+
+
+	/// Region of numVillages villages with the
+	/// same initial population each
+	public Archipelago(int numVillages, int numHumans, int numVampires, int numWerewolves,
+					   double migrationRate, long seed) {
+
+		mContexts = new SimulationContext[numVillages];
+		mVillages = new Village[numVillages];
+		for (int i = 0; i < numVillages; ++i) {
+			mContexts[i] = new SimulationContext(seed + i);
+			mVillages[i] = new Village(mContexts[i], numHumans, numVampires, numWerewolves);
+		}
+
+		// ring; two villages are each other's
+		// only neighbour, one has none
+		mNeighbours = new int[numVillages][];
+		for (int i = 0; i < numVillages; ++i) {
+			int left = (i + numVillages - 1) % numVillages;
+			int right = (i + 1) % numVillages;
+
+			if (numVillages == 1) {
+				mNeighbours[i] = new int[0];
+			}
+			else if (left == right) {
+				mNeighbours[i] = new int[] { right };
+			}
+			else {
+				mNeighbours[i] = new int[] { left, right };
+			}
+		}
+
+		long population = (long) numHumans + numVampires + numWerewolves;
+		mQueues = new MigrationQueue[numVillages][numVillages];
+		for (int i = 0; i < numVillages; ++i) {
+			for (int neighbour : mNeighbours[i]) {
+				long expected = (long) Math.ceil(population * migrationRate / mNeighbours[i].length);
+				int capacity = (int) Math.min(Math.max(expected * QUEUE_SLACK, MIN_QUEUE_CAPACITY), 1 << 30);
+				mQueues[i][neighbour] = new MigrationQueue(capacity);
+			}
+		}
+
+		mMigrationRate = migrationRate;
+		mTurn = 0;
+		mNumTurns = 0;
+		mFinished = false;
+		mLivingCounts = new int[Citizen.ECitizenType.values().length];
+		TakeCensus();
+	}
+
+
+	/// Run region for specified number of turns
+	/// (one worker thread per village)
+	public void Simulate(int numTurns) throws InterruptedException {
+
+		mNumTurns = numTurns;
+		CheckFinished();
+		if (true == mFinished) {
+			return;
+		}
+
+		int numVillages = mVillages.length;
+		CyclicBarrier emigrated = new CyclicBarrier(numVillages);
+		CyclicBarrier immigrated = new CyclicBarrier(numVillages, this::EndTurn);
+		ExecutorService executor = Executors.newFixedThreadPool(numVillages);
+		CompletionService<Void> completion = new ExecutorCompletionService<Void>(executor);
+
+		try {
+			for (int i = 0; i < numVillages; ++i) {
+				int village = i;
+				completion.submit(() -> {
+					Work(village, emigrated, immigrated);
+					return null;
+				});
+			}
+
+			// first failure ends the game
+			for (int i = 0; i < numVillages; ++i) {
+				completion.take().get();
+			}
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("Simulation failed", e.getCause());
+		}
+		finally {
+			// interrupts workers left at a barrier
+			executor.shutdownNow();
+		}
+	}
+
+
+	/// Number of turns run so far
+	public int TurnsRun() {
+		return mTurn;
+	}
+
+
+	public int NumVillages() {
+		return mVillages.length;
+	}
+
+
+	/// Number of living citizens of given type
+	/// in the whole region
+	public int LivingCount(Citizen.ECitizenType type) {
+		return mLivingCounts[type.ordinal()];
+	}
+
+
+	/// Number of living citizens of given type
+	/// in one village
+	public int LivingCount(int village, Citizen.ECitizenType type) {
+		return mVillages[village].LivingCount(type);
+	}
+
+
+	/// Number of citizens in the region,
+	/// living or dead
+	public long Population() {
+
+		long population = 0;
+		for (Village village : mVillages) {
+			population += village.Population();
+		}
+
+		return population;
+	}
+
+
+	/// Print regional and per-village census
+	public void Report() {
+
+		System.out.println("Total turns run: " + String.valueOf(mTurn));
+		System.out.println(String.format("Region     Humans: %d   Vampires: %d   Werewolves: %d",
+										 LivingCount(Citizen.ECitizenType.HUMAN),
+										 LivingCount(Citizen.ECitizenType.VAMPIRE),
+										 LivingCount(Citizen.ECitizenType.WEREWOLF)));
+
+		for (int i = 0; i < mVillages.length; ++i) {
+			System.out.println(String.format("Village %d  Humans: %d   Vampires: %d   Werewolves: %d", i,
+											 LivingCount(i, Citizen.ECitizenType.HUMAN),
+											 LivingCount(i, Citizen.ECitizenType.VAMPIRE),
+											 LivingCount(i, Citizen.ECitizenType.WEREWOLF)));
+		}
+	}
+
+
+	/// Worker thread of one village
+	private void Work(int village, CyclicBarrier emigrated, CyclicBarrier immigrated) 
+		throws InterruptedException {
+
+		try {
+			// mTurn and mFinished are only changed
+			// while all workers wait at a barrier
+			while (false == mFinished) {
+				mContexts[village].Clock().SetCount(mTurn);
+				mVillages[village].DoTurn();
+
+				Emigrate(village, mTurn);
+				emigrated.await();
+
+				Immigrate(village);
+				immigrated.await();
+			}
+		}
+		catch (BrokenBarrierException e) {
+			// another worker failed and reports it
+		}
+	}
+
+
+	/// Queue emigrants of a village's turn
+	private void Emigrate(int index, int turn) {
+
+		int[] neighbours = mNeighbours[index];
+		if (neighbours.length == 0) {
+			return;
+		}
+
+		Village village = mVillages[index];
+		RandomNumberGenerator rng = mContexts[index].Rng();
+		rng.Begin(turn, MIGRATION_STREAM);
+
+		// each living citizen leaves with equal
+		// chance, so draw how many, then who
+		int numEmigrants = CountSampler.Binomial(rng, LivingTotal(village), mMigrationRate);
+
+		for (int i = 0; i < numEmigrants; ++i) {
+			int choice = rng.Generate(0, LivingTotal(village) - 1);
+			int to = neighbours[rng.Generate(0, neighbours.length - 1)];
+
+			Citizen citizen = null;
+			for (Citizen.ECitizenType type : LIVING_TYPES) {
+				if (choice < village.LivingCount(type)) {
+					citizen = village.LivingCitizen(type, choice);
+					break;
+				}
+				choice -= village.LivingCount(type);
+			}
+
+			// full queue: stays home
+			if (true == mQueues[index][to].Offer(citizen.Pack())) {
+				village.Emigrate(citizen);
+			}
+		}
+	}
+
+
+	/// Take in a village's immigrants, in
+	/// neighbour order
+	private void Immigrate(int index) {
+
+		Village village = mVillages[index];
+
+		for (int neighbour : mNeighbours[index]) {
+			MigrationQueue queue = mQueues[neighbour][index];
+
+			int bits = queue.Poll();
+			while (bits != MigrationQueue.EMPTY) {
+				village.Immigrate(bits);
+				bits = queue.Poll();
+			}
+		}
+	}
+
+
+	/// Barrier action after immigration (runs
+	/// while all workers wait)
+	private void EndTurn() {
+
+		++mTurn;
+		TakeCensus();
+		CheckFinished();
+	}
+
+
+	private void TakeCensus() {
+
+		for (Citizen.ECitizenType type : LIVING_TYPES) {
+			int count = 0;
+			for (Village village : mVillages) {
+				count += village.LivingCount(type);
+			}
+			mLivingCounts[type.ordinal()] = count;
+		}
+	}
+
+
+	/// Turn limit or regional early termination
+	private void CheckFinished() {
+
+		mFinished = mTurn >= mNumTurns ||
+					GameManager.EarlyTermination(LivingCount(Citizen.ECitizenType.HUMAN),
+												 LivingCount(Citizen.ECitizenType.VAMPIRE),
+												 LivingCount(Citizen.ECitizenType.WEREWOLF));
+	}
+
+
+	private static int LivingTotal(Village village) {
+
+		int total = 0;
+		for (Citizen.ECitizenType type : LIVING_TYPES) {
+			total += village.LivingCount(type);
+		}
+
+		return total;
+	}
+}
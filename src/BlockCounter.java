@@ -0,0 +1,66 @@
+//////////////////////////////////
+//	BlockCounter
+//
+//  Counts of matching citizens per
+//  fixed size block of slots, kept in a
+//  Fenwick (binary indexed) tree.  Lets
+//  a storage backend without per-type
+//  index lists find the block holding
+//  the k-th matching citizen in
+//  logarithmic time.
+//
+//////////////////////////////////
+
+public class BlockCounter {
+
+	// 1-based Fenwick tree
+	private int[] mTree;
+	
+	private int mNumBlocks;
+	
+	
+	public BlockCounter(int numBlocks) {
+		mTree = new int[numBlocks + 1];
+		mNumBlocks = numBlocks;
+	}
+	
+	
+	/// Adjust count of block
+	public void Add(int block, int delta) {
+		
+		for (int i = block + 1; i <= mNumBlocks; i += i & -i) {
+			mTree[i] += delta;
+		}
+	}
+	
+	
+	/// Sum of counts of blocks before block
+	public int PrefixSum(int block) {
+		
+		int sum = 0;
+		for (int i = block; i > 0; i -= i & -i) {
+			sum += mTree[i];
+		}
+		
+		return sum;
+	}
+	
+	
+	/// Find block containing the item of
+	/// given rank (0-based, over all blocks)
+	public int FindBlock(int rank) {
+		
+		int pos = 0;
+		int remaining = rank;
+		
+		for (int step = Integer.highestOneBit(mNumBlocks); step > 0; step >>= 1) {
+			int next = pos + step;
+			if (next <= mNumBlocks && mTree[next] <= remaining) {
+				pos = next;
+				remaining -= mTree[next];
+			}
+		}
+		
+		return pos;
+	}
+}
@@ -0,0 +1,131 @@
+//////////////////////////////////
+//	Checkpoint
+//
+//  Saves and restores a complete game:
+//  village population, current turn and
+//  random seed.  Random draws are keyed
+//  by (seed, turn, citizen), so seed and
+//  turn are the whole random state and a
+//  restored game continues exactly as the
+//  saved one would have.
+//
+//  File layout (see SnapshotFile):
+//  - header of HEADER_SIZE bytes: magic,
+//    version, storage type, turn, seed,
+//    population
+//  - village snapshot (IVillage.WriteSnapshot)
+//
+//  Checkpoints are written to a temporary
+//  file next to the target and moved into
+//  place, so a crash while saving leaves
+//  the previous checkpoint intact.
+//
+//////////////////////////////////
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+public class Checkpoint {
+
+	private static final int MAGIC = 0x57575653;	// "WWVS"
+	
+	private static final int VERSION = 2;
+	
+	private static final int HEADER_SIZE = 32;
+	
+	private SimulationContext mContext;
+	
+	private GameManager.EStorageType mStorage;
+	
+	private IVillage mVillage;
+	
+	
+	private Checkpoint(SimulationContext context, GameManager.EStorageType storage, IVillage village) {
+		mContext = context;
+		mStorage = storage;
+		mVillage = village;
+	}
+	
+	
+	/// Write game to file, replacing any
+	/// previous checkpoint
+	public static void Save(Path path, SimulationContext context, 
+							GameManager.EStorageType storage, IVillage village) throws IOException {
+		
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+		
+		try (SnapshotFile file = SnapshotFile.Create(temporary, HEADER_SIZE + village.SnapshotSize())) {
+			file.PutInt(MAGIC);
+			file.PutInt(VERSION);
+			file.PutInt(storage.ordinal());
+			file.PutInt(context.Clock().CurrentTurn());
+			file.PutLong(context.Rng().Seed());
+			file.PutInt(village.Population());
+			file.PutInt(0);		// reserved
+			
+			village.WriteSnapshot(file);
+		}
+		
+		Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+	
+	
+	/// Read game from file written by Save
+	public static Checkpoint Load(Path path) throws IOException {
+		
+		try (SnapshotFile file = SnapshotFile.Open(path)) {
+			if (file.GetInt() != MAGIC) {
+				throw new IOException("Not a village checkpoint: " + path);
+			}
+			
+			int version = file.GetInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported checkpoint version " + version + ": " + path);
+			}
+			
+			GameManager.EStorageType storage = GameManager.EStorageType.values()[file.GetInt()];
+			int turn = file.GetInt();
+			long seed = file.GetLong();
+			int population = file.GetInt();
+			file.GetInt();		// reserved
+			
+			SimulationContext context = new SimulationContext(seed);
+			context.Clock().SetCount(turn);
+			
+			IVillage village = null;
+			switch (storage) {
+			case OBJECT:
+				village = Village.Restore(context, file, population);
+				break;
+				
+			case PACKED:
+				village = PackedVillage.Restore(context, file, population);
+				break;
+				
+			case HISTOGRAM:
+				village = HistogramVillage.Restore(context, file, population);
+				break;
+			}
+			
+			return new Checkpoint(context, storage, village);
+		}
+	}
+	
+	
+	/// Clock and random source at saved turn
+	public SimulationContext Context() {
+		return mContext;
+	}
+	
+	
+	public GameManager.EStorageType Storage() {
+		return mStorage;
+	}
+	
+	
+	public IVillage Village() {
+		return mVillage;
+	}
+}
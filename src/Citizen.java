@@ -16,6 +16,8 @@
 //
 //////////////////////////////////
 
+import java.io.IOException;
+
 public class Citizen {
 	
 	public enum ECitizenType {
@@ -37,6 +39,8 @@ public class Citizen {
 	public static final int HEALTH_MAX = 99;
 	public static final int HEALTH_MIN = 0;
 	
+	private int mId;
+	
 	private int mHunger;
 	
 	private int mHealth;
@@ -45,39 +49,203 @@ public class Citizen {
 	
 	private IBehavior mBehavior;
 	
+	// type of current behavior
+	private ECitizenType mType;
+	
 	private boolean mConvertedHuman;
 	
+	private ICitizenObserver mObserver;
+	
+	private int mPoolIndex;
+	
+	// last turn this citizen's turn came up
+	private int mActedTurn;
+	
+	// turn action deferred (see DeferTurn)
+	private boolean mTurnPending;
+	
+	// left for another village (see Archipelago)
+	private boolean mEmigrated;
+	
+	// last round of changes this citizen was
+	// reported in (see MarkChanged)
+	private int mChangeRound;
+	
+	// last batch of turns this citizen took
+	// part in (see MarkBatch)
+	private int mBatch;
+	
 	/// Default constructor
-	public Citizen(IBehavior behavior) {
+	public Citizen(int id, IBehavior behavior) {
+		mId = id;
 		mHunger = HUNGER_MIN;
 		mHealth = HEALTH_MAX;
 		mKilledBy = EKillType.INVALID;
 		mBehavior = behavior;
+		mType = behavior.GetType();
 		mConvertedHuman = false;
+		mObserver = null;
+		mPoolIndex = -1;
+		mActedTurn = -1;
+		mTurnPending = false;
+		mEmigrated = false;
+		mChangeRound = -1;
+		mBatch = -1;
+	}
+	
+	
+	/// Restore citizen from saved attributes
+	public Citizen(int id, IBehavior behavior, int hunger, int health, 
+				   EKillType killedBy, boolean convertedHuman) {
+		this(id, behavior);
+		mHunger = hunger;
+		mHealth = health;
+		mKilledBy = killedBy;
+		mConvertedHuman = convertedHuman;
 	}
 	
 	
 	/// Perform turn action
-	public void DoTurn()
+	public void DoTurn(IVictimProvider victimProvider)
 	{
 		// if still alive perform turn action
 		// (this is common for all citizens)
 		if (mKilledBy == EKillType.INVALID) {
-			mBehavior.DoTurn(this);
+			mBehavior.DoTurn(this, victimProvider);
+		}
+	}
+	
+	
+	/// Leave turn action for CompleteTurn if
+	/// it only changes this citizen (see
+	/// IBehavior.UpkeepOnly).  Returns true
+	/// if deferred.
+	public boolean DeferTurn(int turn) {
+		
+		if (mKilledBy == EKillType.INVALID && true == mBehavior.UpkeepOnly(this, turn)) {
+			mTurnPending = true;
+		}
+		
+		return mTurnPending;
+	}
+	
+	
+	/// First part of turn action: its victim,
+	/// if any (see IBehavior.SelectVictim)
+	public Citizen SelectVictim(IVictimProvider victimProvider) {
+		return mBehavior.SelectVictim(this, victimProvider);
+	}
+	
+	
+	/// Rest of turn action, against victim
+	/// from SelectVictim (see IBehavior.Act)
+	public void Act(Citizen victim, IVictimProvider victimProvider) {
+		mBehavior.Act(this, victim, victimProvider);
+	}
+	
+	
+	/// True if victim is among those this
+	/// citizen picks from on given turn
+	public boolean CanVictimize(Citizen victim, int turn) {
+		return mBehavior.CanVictimize(victim, turn);
+	}
+	
+	
+	/// Perform deferred turn action, if any
+	public void CompleteTurn(IVictimProvider victimProvider) {
+		
+		if (true == mTurnPending) {
+			mTurnPending = false;
+			mBehavior.DoTurn(this, victimProvider);
 		}
 	}
 	
 	
+	/// Note that citizen's turn has come up
+	public void Acted(int turn) {
+		mActedTurn = turn;
+	}
+	
+	
+	/// True if citizen's turn has come up
+	/// in given turn
+	public boolean HasActed(int turn) {
+		return mActedTurn == turn;
+	}
+	
+	
+	/// Stable id, unique within village
+	public int Id() {
+		return mId;
+	}
+	
+	
 	/// Update turn strategy
 	public void SetBehavior(IBehavior newBehavior)
 	{
+		ECitizenType oldType = mType;
+		
 		// flag if human changing type
-		if (GetType() == ECitizenType.HUMAN && 
-			GetType(newBehavior) != ECitizenType.HUMAN) {
+		if (oldType == ECitizenType.HUMAN && 
+			newBehavior.GetType() != ECitizenType.HUMAN) {
 			mConvertedHuman = true;
 		}
 		
 		mBehavior = newBehavior;
+		mType = newBehavior.GetType();
+		
+		if (mObserver != null && oldType != mType) {
+			mObserver.OnTypeChanged(this, oldType);
+			mObserver.OnChanged(this, mHunger, mHealth);
+		}
+	}
+	
+	
+	/// Register observer notified of
+	/// deaths and type changes
+	public void SetObserver(ICitizenObserver observer) {
+		mObserver = observer;
+	}
+	
+	
+	/// Note that citizen changed in given round
+	/// of changes.  Returns true the first time
+	/// in each round.
+	public boolean MarkChanged(int round) {
+		
+		if (mChangeRound == round) {
+			return false;
+		}
+		
+		mChangeRound = round;
+		
+		return true;
+	}
+	
+	
+	/// Note that citizen takes part in given
+	/// batch of turns (see Village)
+	public void MarkBatch(int batch) {
+		mBatch = batch;
+	}
+	
+	
+	/// True if citizen takes part in given
+	/// batch of turns
+	public boolean InBatch(int batch) {
+		return mBatch == batch;
+	}
+	
+	
+	/// Pool slot getter (see CitizenPool)
+	public int PoolIndex() {
+		return mPoolIndex;
+	}
+	
+	
+	/// Pool slot setter (see CitizenPool)
+	public void PoolIndex(int index) {
+		mPoolIndex = index;
 	}
 	
 	
@@ -90,6 +258,8 @@ public class Citizen {
 	/// Hunger setter
 	public void Hunger(int hunger) {
 		
+		int oldHunger = mHunger;
+		
 		// respect bounds
 		if (hunger < HUNGER_MIN) {
 			mHunger = HUNGER_MIN;
@@ -100,6 +270,10 @@ public class Citizen {
 		else {
 			mHunger = hunger;
 		}
+		
+		if (mObserver != null && mHunger != oldHunger) {
+			mObserver.OnChanged(this, oldHunger, mHealth);
+		}
 	}
 	
 	
@@ -112,6 +286,8 @@ public class Citizen {
 	/// Health setter
 	public void Health(int health) {
 		
+		int oldHealth = mHealth;
+		
 		// respect bounds
 		if (health < HEALTH_MIN) {
 			mHealth = HEALTH_MIN;
@@ -123,6 +299,24 @@ public class Citizen {
 		{
 			mHealth = health;
 		}
+		
+		if (mObserver != null && mHealth != oldHealth) {
+			mObserver.OnChanged(this, mHunger, oldHealth);
+		}
+	}
+	
+	
+	/// Note that citizen has left its village.
+	/// It lives on in another one, as a new
+	/// citizen with the same attributes.
+	public void Emigrate() {
+		mEmigrated = true;
+	}
+	
+	
+	/// True if citizen has left its village
+	public boolean Emigrated() {
+		return mEmigrated;
 	}
 	
 	
@@ -135,66 +329,84 @@ public class Citizen {
 	/// Killed-by setter
 	public void Killed(EKillType killer) {
 		
+		boolean bWasAlive = (mKilledBy == EKillType.INVALID);
+		int oldHealth = mHealth;
+		
 		mKilledBy = killer;
 		mHealth = 0;	// for consistency?
-	}
-	
-	
-	/// Get type from behavior
-	public ECitizenType GetType() {
 		
-		return GetType(mBehavior);
+		if (bWasAlive && mObserver != null) {
+			mObserver.OnKilled(this, oldHealth);
+			mObserver.OnChanged(this, mHunger, oldHealth);
+		}
 	}
 	
 	
-	/// Helper for type conversion
-	private ECitizenType GetType(IBehavior behavior) {
-
-		ECitizenType type = ECitizenType.INVALID;
-		
-		if (behavior instanceof WerewolfBehavior) {
-			type = ECitizenType.WEREWOLF;
-		}
-		else if (behavior instanceof VampireBehavior) {
-			type = ECitizenType.VAMPIRE;
-		}
-		else if (behavior instanceof HumanBehavior) {
-			type = ECitizenType.HUMAN;
-		}
-		
-		return type;
+	/// Get type of behavior
+	public ECitizenType GetType() {
+		return mType;
 	}
 	
 	
 	///  Returns type this citizen 
-	///  appears to be.
-	public ECitizenType GetApparentType() {
-		return mBehavior.GetApparentType(this);
+	///  appears to be on given turn.
+	public ECitizenType GetApparentType(int turn) {
+		return mBehavior.GetApparentType(this, turn);
 	}
 	
 	
 	/// Return string representation 
 	/// of citizen status
 	public String GetStatus() {
+		return FormatStatus(GetType(), mHunger, mHealth, mKilledBy, mConvertedHuman);
+	}
+	
+	
+	/// Citizen state packed into 16 bits
+	/// (see CitizenBits)
+	public int Pack() {
+		return CitizenBits.Pack(GetType(), mHunger, mHealth, mKilledBy, mConvertedHuman);
+	}
+	
+	
+	/// Report citizen status to writer
+	public void WriteStatus(StatusWriter writer) throws IOException {
+		writer.Add(GetType(), mHunger, mHealth, mKilledBy, mConvertedHuman);
+	}
+	
+	
+	/// Report citizen, by id, as changed to
+	/// writer
+	public void WriteChange(StatusWriter writer) throws IOException {
+		writer.AddChanged(mId, GetType(), mHunger, mHealth, mKilledBy, mConvertedHuman);
+	}
+	
+	
+	/// Return string representation of a
+	/// citizen status from its attributes.
+	/// Shared with storage backends that
+	/// don't keep Citizen objects.
+	public static String FormatStatus(ECitizenType type, int hunger, int health, 
+									  EKillType killedBy, boolean convertedHuman) {
 		StringBuilder sb = new StringBuilder();
 		
-		sb.append(GetTypeString(GetType()));
+		sb.append(GetTypeString(type));
 		
 		sb.append("   ");
 		
-		sb.append("Hunger: " + String.valueOf(mHunger));
+		sb.append("Hunger: " + String.valueOf(hunger));
 		
 		sb.append("   ");
 		
-		sb.append("Health: " + String.valueOf(mHealth));
+		sb.append("Health: " + String.valueOf(health));
 		
-		if (mKilledBy != EKillType.INVALID) {
+		if (killedBy != EKillType.INVALID) {
 			sb.append("   ");
 			
-			sb.append("Killed by: " + GetKilledByString(mKilledBy));
+			sb.append("Killed by: " + GetKilledByString(killedBy));
 		}
 		
-		if (true == mConvertedHuman) {
+		if (true == convertedHuman) {
 			sb.append("   (converted from human)");
 		}
 		
@@ -206,7 +418,7 @@ public class Citizen {
 	
 	
 	/// Helper for printing citizen state
-	private String GetTypeString(ECitizenType type) {
+	private static String GetTypeString(ECitizenType type) {
 		
 		String strType = "";
 		
@@ -233,7 +445,7 @@ public class Citizen {
 	
 	
 	/// Helper for printing citizen state
-	private String GetKilledByString(EKillType killType) {
+	private static String GetKilledByString(EKillType killType) {
 		
 		String strType = "";
 		
@@ -0,0 +1,114 @@
+//////////////////////////////////
+//	CitizenBits
+//
+//  Packs the complete state of a citizen
+//  into 16 bits for compact storage
+//  backends:
+//
+//    bits  0-6   health (0-99)
+//    bits  7-10  hunger (0-9)
+//    bits 11-12  type (ECitizenType ordinal)
+//    bits 13-14  killed by (EKillType ordinal)
+//    bit  15     converted from human
+//
+//  Values are passed around as ints with
+//  only the low 16 bits in use.
+//
+//////////////////////////////////
+
+public class CitizenBits {
+
+	// layout (also decoded by VectorUpkeep)
+	static final int HEALTH_SHIFT = 0;
+	static final int HEALTH_MASK = 0x7F;
+	
+	static final int HUNGER_SHIFT = 7;
+	static final int HUNGER_MASK = 0xF;
+	
+	static final int TYPE_SHIFT = 11;
+	static final int TYPE_MASK = 0x3;
+	
+	static final int KILL_SHIFT = 13;
+	static final int KILL_MASK = 0x3;
+	
+	static final int CONVERTED_BIT = 1 << 15;
+	
+	private static final Citizen.ECitizenType[] TYPES = Citizen.ECitizenType.values();
+	
+	private static final Citizen.EKillType[] KILL_TYPES = Citizen.EKillType.values();
+	
+	
+	private CitizenBits() {
+	}
+	
+	
+	/// Pack citizen attributes
+	public static int Pack(Citizen.ECitizenType type, int hunger, int health, 
+						   Citizen.EKillType killedBy, boolean convertedHuman) {
+		
+		int bits = (health << HEALTH_SHIFT) | (hunger << HUNGER_SHIFT) |
+				   (type.ordinal() << TYPE_SHIFT) | (killedBy.ordinal() << KILL_SHIFT);
+		
+		if (true == convertedHuman) {
+			bits |= CONVERTED_BIT;
+		}
+		
+		return bits;
+	}
+	
+	
+	public static int Health(int bits) {
+		return (bits >>> HEALTH_SHIFT) & HEALTH_MASK;
+	}
+	
+	
+	public static int WithHealth(int bits, int health) {
+		return (bits & ~(HEALTH_MASK << HEALTH_SHIFT)) | (health << HEALTH_SHIFT);
+	}
+	
+	
+	public static int Hunger(int bits) {
+		return (bits >>> HUNGER_SHIFT) & HUNGER_MASK;
+	}
+	
+	
+	public static int WithHunger(int bits, int hunger) {
+		return (bits & ~(HUNGER_MASK << HUNGER_SHIFT)) | (hunger << HUNGER_SHIFT);
+	}
+	
+	
+	public static Citizen.ECitizenType Type(int bits) {
+		return TYPES[(bits >>> TYPE_SHIFT) & TYPE_MASK];
+	}
+	
+	
+	public static int WithType(int bits, Citizen.ECitizenType type) {
+		return (bits & ~(TYPE_MASK << TYPE_SHIFT)) | (type.ordinal() << TYPE_SHIFT);
+	}
+	
+	
+	public static Citizen.EKillType KilledBy(int bits) {
+		return KILL_TYPES[(bits >>> KILL_SHIFT) & KILL_MASK];
+	}
+	
+	
+	public static int WithKilledBy(int bits, Citizen.EKillType killedBy) {
+		return (bits & ~(KILL_MASK << KILL_SHIFT)) | (killedBy.ordinal() << KILL_SHIFT);
+	}
+	
+	
+	/// Living citizens have no killer
+	public static boolean Alive(int bits) {
+		return ((bits >>> KILL_SHIFT) & KILL_MASK) == 0;
+	}
+	
+	
+	public static boolean ConvertedHuman(int bits) {
+		return (bits & CONVERTED_BIT) != 0;
+	}
+	
+	
+	public static int WithConvertedHuman(int bits) {
+		return bits | CONVERTED_BIT;
+	}
+}
@@ -0,0 +1,85 @@
+//////////////////////////////////
+//	CitizenPool
+//
+//  Unordered set of citizens supporting
+//  constant time insertion, removal and
+//  indexed access.  Village keeps one
+//  pool of living citizens per type so
+//  victim selection and census queries
+//  never have to scan the population.
+//
+//  Each citizen remembers its slot in the
+//  pool it belongs to, so a citizen can be
+//  a member of at most one pool at a time.
+//
+//////////////////////////////////
+
+public class CitizenPool {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private Citizen[] mMembers;
+
+	private int mSize;
+
+
+	public CitizenPool(int capacity) {
+		mMembers = new Citizen[Math.max(capacity, INITIAL_CAPACITY)];
+		mSize = 0;
+	}
+
+
+	/// Number of citizens in pool
+	public int Size() {
+		return mSize;
+	}
+
+
+	/// Citizen at index (0 to Size() - 1)
+	public Citizen Get(int index) {
+		return mMembers[index];
+	}
+
+
+	/// Copy all members to array starting
+	/// at offset.  Returns offset past the
+	/// last member copied.
+	public int CopyMembers(Citizen[] members, int offset) {
+
+		System.arraycopy(mMembers, 0, members, offset, mSize);
+
+		return offset + mSize;
+	}
+
+
+	/// Add citizen to pool
+	public void Add(Citizen citizen) {
+
+		if (mSize == mMembers.length) {
+			Citizen[] grown = new Citizen[mMembers.length * 2];
+			System.arraycopy(mMembers, 0, grown, 0, mSize);
+			mMembers = grown;
+		}
+
+		citizen.PoolIndex(mSize);
+		mMembers[mSize] = citizen;
+		++mSize;
+	}
+
+
+	/// Remove citizen from pool.
+	/// Last member is moved into the
+	/// vacated slot to keep pool compact.
+	public void Remove(Citizen citizen) {
+
+		int index = citizen.PoolIndex();
+
+		--mSize;
+		Citizen last = mMembers[mSize];
+		mMembers[index] = last;
+		last.PoolIndex(index);
+		mMembers[mSize] = null;
+
+		citizen.PoolIndex(-1);
+	}
+}
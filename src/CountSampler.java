@@ -0,0 +1,230 @@
+//////////////////////////////////
+//	CountSampler
+//
+//  Random counts for simulating whole
+//  groups of citizens at once (see
+//  HistogramVillage): how many of n
+//  independent trials succeed, drawn in
+//  time independent of n.
+//
+//  Binomial draws use inversion for small
+//  means and Hormann's BTRD rejection
+//  method ("The generation of binomial
+//  random variates", 1993) otherwise, so
+//  the counts follow the exact binomial
+//  distribution in both cases.
+//
+//  Distinct counts the items hit by draws
+//  with replacement: exactly for few draws
+//  or few items, otherwise from the normal
+//  distribution of the same mean and
+//  variance.
+//
+//////////////////////////////////
+
+public class CountSampler {
+
+	// mean below which inversion is used
+	private static final double INVERSION_MEAN = 10.0;
+	
+	private static final int LOG_FACTORIAL_TABLE_SIZE = 256;
+	
+	// draws or items up to which Distinct
+	// counts exactly
+	private static final int EXACT_DISTINCT = 64;
+	
+	private static final double HALF_LOG_TWO_PI = 0.5 * Math.log(2.0 * Math.PI);
+	
+	private static final double[] LOG_FACTORIALS = new double[LOG_FACTORIAL_TABLE_SIZE];
+	
+	static {
+		for (int k = 1; k < LOG_FACTORIAL_TABLE_SIZE; ++k) {
+			LOG_FACTORIALS[k] = LOG_FACTORIALS[k - 1] + Math.log(k);
+		}
+	}
+	
+	
+	private CountSampler() {
+	}
+	
+	
+	/// Successes in n trials of probability p
+	public static int Binomial(RandomNumberGenerator rng, int n, double p) {
+		
+		if (n <= 0 || p <= 0.0) {
+			return 0;
+		}
+		if (p >= 1.0) {
+			return n;
+		}
+		
+		// both methods assume p <= 1/2
+		if (p > 0.5) {
+			return n - Binomial(rng, n, 1.0 - p);
+		}
+		
+		if (n * p < INVERSION_MEAN) {
+			return Inversion(rng, n, p);
+		}
+		
+		return Btrd(rng, n, p);
+	}
+	
+	
+	/// Number of n items falling into the
+	/// first of numSlots equally likely slots
+	/// (split n evenly at random by calling
+	/// with numSlots, numSlots - 1, ... 1)
+	public static int Share(RandomNumberGenerator rng, int n, int numSlots) {
+		
+		return Binomial(rng, n, 1.0 / numSlots);
+	}
+	
+	
+	/// Number of n items hit at least once by
+	/// k draws with replacement
+	public static int Distinct(RandomNumberGenerator rng, int k, int n) {
+		
+		if (k <= 0 || n <= 0) {
+			return 0;
+		}
+		
+		// each draw finds a new item with the
+		// chance of the items not hit yet
+		if (k <= EXACT_DISTINCT) {
+			int distinct = 0;
+			for (int i = 0; i < k; ++i) {
+				if (rng.GenerateUnit() * n >= distinct) {
+					++distinct;
+				}
+			}
+			return distinct;
+		}
+		
+		// hits of each item by conditional binomials
+		if (n <= EXACT_DISTINCT) {
+			int distinct = 0;
+			for (int item = 0; item < n && k > 0; ++item) {
+				int hits = Binomial(rng, k, 1.0 / (n - item));
+				if (hits > 0) {
+					++distinct;
+				}
+				k -= hits;
+			}
+			return distinct;
+		}
+		
+		// chance an item is missed by all draws;
+		// variance of the number missed written
+		// with expm1, as its terms nearly cancel
+		double missed = Math.exp(k * Math.log1p(-1.0 / n));
+		double mean = n * (1.0 - missed);
+		double variance = n * missed * -Math.expm1(k * Math.log1p(-1.0 / (n - 1.0))) +
+						  (double) n * n * missed * missed * Math.expm1(k * Math.log1p(-1.0 / ((n - 1.0) * (n - 1.0))));
+		
+		long distinct = Math.round(mean + Math.sqrt(Math.max(0.0, variance)) * Gaussian(rng));
+		
+		return (int) Math.max(1, Math.min(Math.min(k, n), distinct));
+	}
+	
+	
+	/// Standard normal (Box-Muller)
+	private static double Gaussian(RandomNumberGenerator rng) {
+		
+		double radius = Math.sqrt(-2.0 * Math.log(1.0 - rng.GenerateUnit()));
+		
+		return radius * Math.cos(2.0 * Math.PI * rng.GenerateUnit());
+	}
+	
+	
+	/// Sequential search from 0 (expected
+	/// n * p + 1 steps)
+	private static int Inversion(RandomNumberGenerator rng, int n, double p) {
+		
+		double q = 1.0 - p;
+		double s = p / q;
+		double a = (n + 1) * s;
+		double first = Math.pow(q, n);
+		
+		while (true) {
+			double u = rng.GenerateUnit();
+			double r = first;
+			int x = 0;
+			
+			while (u > r && x <= n) {
+				u -= r;
+				++x;
+				r *= a / x - s;
+			}
+			
+			// rounding can run past n; try again
+			if (x <= n) {
+				return x;
+			}
+		}
+	}
+	
+	
+	/// Transformed rejection with decomposition
+	/// (n * p >= 10, p <= 1/2)
+	private static int Btrd(RandomNumberGenerator rng, int n, double p) {
+		
+		double q = 1.0 - p;
+		double spq = Math.sqrt(n * p * q);
+		double b = 1.15 + 2.53 * spq;
+		double a = -0.0873 + 0.0248 * b + 0.01 * p;
+		double c = n * p + 0.5;
+		double alpha = (2.83 + 5.1 / b) * spq;
+		double vr = 0.92 - 4.2 / b;
+		double urvr = 0.86 * vr;
+		
+		int mode = (int) Math.floor((n + 1) * p);
+		double lpq = Math.log(p / q);
+		double h = LogFactorial(mode) + LogFactorial(n - mode);
+		
+		while (true) {
+			double v = rng.GenerateUnit();
+			double u = 0.0;
+			
+			// inside the hat's central box: accept at once
+			if (v <= urvr) {
+				u = v / vr - 0.43;
+				return (int) Math.floor((2.0 * a / (0.5 - Math.abs(u)) + b) * u + c);
+			}
+			
+			if (v >= vr) {
+				u = rng.GenerateUnit() - 0.5;
+			}
+			else {
+				u = v / vr - 0.93;
+				u = Math.signum(u) * 0.5 - u;
+				v = rng.GenerateUnit() * vr;
+			}
+			
+			double us = 0.5 - Math.abs(u);
+			double x = Math.floor((2.0 * a / us + b) * u + c);
+			if (x < 0 || x > n) {
+				continue;
+			}
+			
+			int k = (int) x;
+			v = v * alpha / (a / (us * us) + b);
+			
+			if (Math.log(v) <= h - LogFactorial(k) - LogFactorial(n - k) + (k - mode) * lpq) {
+				return k;
+			}
+		}
+	}
+	
+	
+	/// log(k!), Stirling series above the table
+	private static double LogFactorial(int k) {
+		
+		if (k < LOG_FACTORIAL_TABLE_SIZE) {
+			return LOG_FACTORIALS[k];
+		}
+		
+		double x = k + 1.0;
+		return (x - 0.5) * Math.log(x) - x + HALF_LOG_TWO_PI + 1.0 / (12.0 * x) - 1.0 / (360.0 * x * x * x);
+	}
+}
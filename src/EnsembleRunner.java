@@ -0,0 +1,188 @@
+//////////////////////////////////
+//	EnsembleRunner
+//
+//  Monte Carlo mode.  Runs many independent
+//  games with the same initial conditions
+//  across all cores and aggregates their
+//  outcomes (EnsembleStatistics) in the
+//  order they were submitted, whatever
+//  order they finish in, so short games
+//  are not favored.  Stops once both
+//  confidence intervals are narrower than
+//  the requested widths, or when the trial
+//  limit is reached.
+//
+//  Each game has its own SimulationContext,
+//  seeded from the ensemble's seed and its
+//  trial number, and runs entirely on one
+//  worker thread.  An ensemble can so be
+//  reproduced from its seed.
+//
+//////////////////////////////////
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+public class EnsembleRunner {
+
+	// games needed before intervals are trusted
+	private static final int MIN_TRIALS = 30;
+	
+	// games queued per worker thread
+	private static final int QUEUED_PER_THREAD = 2;
+	
+	// workers are daemons, so abandoned games
+	// never keep the JVM alive
+	private static final ThreadFactory DAEMONS = runnable -> {
+		Thread thread = new Thread(runnable);
+		thread.setDaemon(true);
+		return thread;
+	};
+	
+	private int mNumHumans;
+	
+	private int mNumVampires;
+	
+	private int mNumWerewolves;
+	
+	private int mNumTurns;
+	
+	private int mNumThreads;
+	
+	// seed of the first trial, the others
+	// following on
+	private long mSeed;
+	
+	
+	public EnsembleRunner(int numHumans, int numVampires, int numWerewolves, int numTurns, long seed) {
+		mNumHumans = numHumans;
+		mNumVampires = numVampires;
+		mNumWerewolves = numWerewolves;
+		mNumTurns = numTurns;
+		mNumThreads = Runtime.getRuntime().availableProcessors();
+		mSeed = seed;
+	}
+	
+	
+	/// Outcome of a single game
+	private static class Outcome {
+		int mTrial;
+		boolean mVampiresPrevailed;
+		int mSurvivingHumans;
+	}
+	
+	
+	/// Run games until probability interval is narrower than
+	/// probabilityWidth and surviving humans interval is narrower
+	/// than humansWidth, or maxTrials games have finished.
+	public EnsembleStatistics Run(double probabilityWidth, double humansWidth, int maxTrials)
+		throws InterruptedException {
+		
+		EnsembleStatistics stats = new EnsembleStatistics();
+		
+		ExecutorService executor = Executors.newFixedThreadPool(mNumThreads, DAEMONS);
+		CompletionService<Outcome> completion = new ExecutorCompletionService<Outcome>(executor);
+		
+		// outcomes finished ahead of an earlier
+		// trial, by trial number modulo window
+		int window = mNumThreads * QUEUED_PER_THREAD;
+		Outcome[] finished = new Outcome[window];
+		
+		try {
+			int submitted = 0;
+			int added = 0;
+			
+			// keep every worker busy, but no further
+			// ahead of the next outcome to add
+			while (submitted < maxTrials && submitted < window) {
+				completion.submit(CreateTrial(submitted));
+				++submitted;
+			}
+			
+			while (added < submitted) {
+				Outcome outcome = completion.take().get();
+				finished[outcome.mTrial % window] = outcome;
+				
+				// add outcomes in trial order
+				while (added < submitted && finished[added % window] != null) {
+					Outcome next = finished[added % window];
+					finished[added % window] = null;
+					++added;
+					
+					stats.Add(next.mVampiresPrevailed, next.mSurvivingHumans);
+					
+					if (true == Converged(stats, probabilityWidth, humansWidth)) {
+						return stats;
+					}
+				}
+				
+				while (submitted < maxTrials && submitted < added + window) {
+					completion.submit(CreateTrial(submitted));
+					++submitted;
+				}
+			}
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("Simulation failed", e.getCause());
+		}
+		finally {
+			// abandon games still running (see
+			// GameManager.Simulate)
+			executor.shutdownNow();
+		}
+		
+		return stats;
+	}
+	
+	
+	/// Print summary of ensemble results
+	public static void Report(EnsembleStatistics stats) {
+		
+		System.out.println("Games run: " + String.valueOf(stats.Trials()));
+		System.out.println(String.format("P(only vampires survive): %.4f   95%% CI [%.4f, %.4f]",
+										 stats.VampiresPrevailedProbability(), 
+										 stats.VampiresPrevailedLower(),
+										 stats.VampiresPrevailedUpper()));
+		System.out.println(String.format("Surviving humans: %.2f   95%% CI [%.2f, %.2f]",
+										 stats.SurvivingHumansMean(), 
+										 stats.SurvivingHumansMean() - stats.SurvivingHumansInterval() / 2.0,
+										 stats.SurvivingHumansMean() + stats.SurvivingHumansInterval() / 2.0));
+	}
+	
+	
+	private boolean Converged(EnsembleStatistics stats, double probabilityWidth, double humansWidth) {
+		
+		return stats.Trials() >= MIN_TRIALS &&
+			   stats.VampiresPrevailedInterval() <= probabilityWidth &&
+			   stats.SurvivingHumansInterval() <= humansWidth;
+	}
+	
+	
+	/// Single game with the ensemble's initial
+	/// conditions, seeded by its trial number
+	private Callable<Outcome> CreateTrial(int trial) {
+		
+		return () -> {
+			GameManager gameMgr = new GameManager(new SimulationContext(mSeed + trial));
+			gameMgr.InitializeNewGame(mNumHumans, mNumVampires, mNumWerewolves);
+			gameMgr.Simulate(mNumTurns);
+			
+			// game abandoned part way
+			if (true == Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			
+			Outcome outcome = new Outcome();
+			outcome.mTrial = trial;
+			outcome.mVampiresPrevailed = gameMgr.VampiresPrevailed();
+			outcome.mSurvivingHumans = gameMgr.LivingCount(Citizen.ECitizenType.HUMAN);
+			
+			return outcome;
+		};
+	}
+}
@@ -0,0 +1,142 @@
+//////////////////////////////////
+//	EnsembleStatistics
+//
+//  Aggregates outcomes of independent
+//  games as they finish.  Tracks the
+//  probability that vampires are the only
+//  survivors and the number of surviving
+//  humans, with 95% confidence intervals.
+//
+//  Means and variances are updated online
+//  (Welford) so no per-game results are
+//  kept.  Probability intervals use the
+//  Wilson score interval, which stays
+//  meaningful for probabilities near 0 or 1.
+//  It is not centred on the observed
+//  probability, so report it by its bounds.
+//
+//////////////////////////////////
+
+public class EnsembleStatistics {
+
+	// normal quantile for 95% confidence
+	private static final double Z = 1.959964;
+	
+	private int mTrials;
+	
+	private int mVampiresPrevailed;
+	
+	private double mHumansMean;
+	
+	// sum of squared deviations from mean
+	private double mHumansM2;
+	
+	
+	public EnsembleStatistics() {
+		mTrials = 0;
+		mVampiresPrevailed = 0;
+		mHumansMean = 0.0;
+		mHumansM2 = 0.0;
+	}
+	
+	
+	/// Add outcome of one game
+	public void Add(boolean vampiresPrevailed, int survivingHumans) {
+		
+		++mTrials;
+		
+		if (true == vampiresPrevailed) {
+			++mVampiresPrevailed;
+		}
+		
+		double delta = survivingHumans - mHumansMean;
+		mHumansMean += delta / mTrials;
+		mHumansM2 += delta * (survivingHumans - mHumansMean);
+	}
+	
+	
+	public int Trials() {
+		return mTrials;
+	}
+	
+	
+	/// Fraction of games ending with only vampires alive
+	public double VampiresPrevailedProbability() {
+		return mTrials == 0 ? 0.0 : (double) mVampiresPrevailed / mTrials;
+	}
+	
+	
+	/// Full width of Wilson interval of
+	/// VampiresPrevailedProbability
+	public double VampiresPrevailedInterval() {
+		
+		if (mTrials == 0) {
+			return 1.0;
+		}
+		
+		return 2.0 * WilsonHalfWidth();
+	}
+	
+	
+	/// Lower bound of Wilson interval of
+	/// VampiresPrevailedProbability
+	public double VampiresPrevailedLower() {
+		
+		if (mTrials == 0) {
+			return 0.0;
+		}
+		
+		return Math.max(0.0, WilsonCentre() - WilsonHalfWidth());
+	}
+	
+	
+	/// Upper bound of Wilson interval of
+	/// VampiresPrevailedProbability
+	public double VampiresPrevailedUpper() {
+		
+		if (mTrials == 0) {
+			return 1.0;
+		}
+		
+		return Math.min(1.0, WilsonCentre() + WilsonHalfWidth());
+	}
+	
+	
+	/// Mean number of surviving humans
+	public double SurvivingHumansMean() {
+		return mHumansMean;
+	}
+	
+	
+	/// Full width of confidence interval
+	/// of SurvivingHumansMean
+	public double SurvivingHumansInterval() {
+		
+		if (mTrials < 2) {
+			return Double.POSITIVE_INFINITY;
+		}
+		
+		double variance = mHumansM2 / (mTrials - 1);
+		
+		return 2.0 * Z * Math.sqrt(variance / mTrials);
+	}
+	
+	
+	/// Centre of Wilson interval, pulled from
+	/// the observed probability towards 1/2
+	private double WilsonCentre() {
+		
+		double z2 = Z * Z;
+		
+		return (VampiresPrevailedProbability() + z2 / (2.0 * mTrials)) / (1.0 + z2 / mTrials);
+	}
+	
+	
+	private double WilsonHalfWidth() {
+		
+		double p = VampiresPrevailedProbability();
+		double z2 = Z * Z;
+		
+		return Z * Math.sqrt(p * (1.0 - p) / mTrials + z2 / (4.0 * mTrials * mTrials)) / (1.0 + z2 / mTrials);
+	}
+}
@@ -0,0 +1,295 @@
+//////////////////////////////////
+//	EventJournal
+//
+//  Append-only binary journal of game
+//  events (see IEventSink).
+//
+//  Recording only copies a fixed-width
+//  record (RECORD_INTS ints) into the
+//  current block.  Full blocks are handed
+//  to a background thread that encodes and
+//  writes them while the game fills the
+//  other block (double buffering), so the
+//  turn loop does no encoding or I/O unless
+//  the writer falls behind.
+//
+//  File layout (big-endian header):
+//  - magic, version, initial humans,
+//    vampires and werewolves (ids are
+//    assigned in that order)
+//  - records: one byte type (bits 0-2) and
+//    victim-acted flag (bit 3), then as
+//    varints the turn delta to the previous
+//    record, actor id + 1 and victim id + 1,
+//    then the 16-bit state of actor and
+//    victim where present
+//
+//////////////////////////////////
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+public class EventJournal implements IEventSink, Closeable {
+
+	static final int MAGIC = 0x5757454A;	// "WWEJ"
+	
+	// 2 added BURIAL, so version 1 journals
+	// still replay
+	static final int VERSION = 2;
+	
+	static final int HEADER_SIZE = 20;
+	
+	static final int ACTED_FLAG = 0x08;
+	
+	static final int TYPE_MASK = 0x07;
+	
+	// type | acted, turn, actor, victim, actor bits | victim bits << 16
+	private static final int RECORD_INTS = 5;
+	
+	private static final int RECORDS_PER_BLOCK = 1 << 16;
+	
+	// longest encoded record: flags, 3 varints, 2 shorts
+	private static final int MAX_ENCODED_RECORD = 1 + 3 * 5 + 2 * Short.BYTES;
+	
+	private static final int NUM_BLOCKS = 2;
+	
+	private static final EEventType[] TYPES = EEventType.values();
+	
+	/// Records waiting for the writer
+	private static class Block {
+		int[] mRecords = new int[RECORDS_PER_BLOCK * RECORD_INTS];
+		int mCount = 0;
+	}
+	
+	// marks end of journal for writer
+	private static final Block END = new Block();
+	
+	private FileChannel mChannel;
+	
+	// block being filled
+	private Block mBlock;
+	
+	private BlockingQueue<Block> mFull;
+	
+	private BlockingQueue<Block> mEmpty;
+	
+	private Thread mWriter;
+	
+	// first failure of writer thread
+	private volatile IOException mError;
+	
+	
+	/// New journal of game with given initial
+	/// population, replacing any existing file
+	public EventJournal(Path path, int numHumans, int numVampires, int numWerewolves) throws IOException {
+		
+		mChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+									StandardOpenOption.WRITE);
+		
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(numHumans);
+		header.putInt(numVampires);
+		header.putInt(numWerewolves);
+		header.flip();
+		Write(header);
+		
+		mFull = new ArrayBlockingQueue<Block>(NUM_BLOCKS + 1);
+		mEmpty = new ArrayBlockingQueue<Block>(NUM_BLOCKS);
+		for (int i = 1; i < NUM_BLOCKS; ++i) {
+			mEmpty.add(new Block());
+		}
+		mBlock = new Block();
+		mError = null;
+		
+		mWriter = new Thread(this::WriteBlocks, "EventJournal writer");
+		mWriter.setDaemon(true);
+		mWriter.start();
+	}
+	
+	
+	/// Append record to current block
+	@Override
+	public void Record(EEventType type, int turn, int actor, int actorBits,
+					   int victim, int victimBits, boolean victimActed) {
+		
+		int[] records = mBlock.mRecords;
+		int offset = mBlock.mCount * RECORD_INTS;
+		
+		records[offset] = type.ordinal() | (true == victimActed ? ACTED_FLAG : 0);
+		records[offset + 1] = turn;
+		records[offset + 2] = actor;
+		records[offset + 3] = victim;
+		records[offset + 4] = (actorBits & 0xFFFF) | (victimBits << 16);
+		
+		if (++mBlock.mCount == RECORDS_PER_BLOCK) {
+			Handoff();
+		}
+	}
+	
+	
+	/// Write remaining records and close file
+	@Override
+	public void close() throws IOException {
+		
+		if (mWriter == null) {
+			return;
+		}
+		
+		try {
+			mFull.put(mBlock);
+			mFull.put(END);
+			mWriter.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while closing journal", e);
+		}
+		finally {
+			mWriter = null;
+			mBlock = null;
+			mChannel.close();
+		}
+		
+		if (mError != null) {
+			throw mError;
+		}
+	}
+	
+	
+	/// Pass full block to writer and continue
+	/// with an empty one
+	private void Handoff() {
+		
+		if (mError != null) {
+			throw new UncheckedIOException(mError);
+		}
+		
+		try {
+			mFull.put(mBlock);
+			mBlock = mEmpty.take();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while recording events", e);
+		}
+	}
+	
+	
+	/// Writer thread: encode blocks until END
+	private void WriteBlocks() {
+		
+		ByteBuffer buffer = ByteBuffer.allocate(RECORDS_PER_BLOCK * MAX_ENCODED_RECORD);
+		int previousTurn = 0;
+		
+		try {
+			while (true) {
+				Block block = mFull.take();
+				if (block == END) {
+					break;
+				}
+				
+				if (mError == null) {
+					try {
+						previousTurn = Encode(block, buffer, previousTurn);
+						buffer.flip();
+						Write(buffer);
+					}
+					catch (IOException e) {
+						mError = e;
+					}
+				}
+				
+				buffer.clear();
+				block.mCount = 0;
+				mEmpty.put(block);
+			}
+		}
+		catch (InterruptedException e) {
+			mError = new IOException("Journal writer interrupted", e);
+		}
+	}
+	
+	
+	/// Encode records of block into buffer.
+	/// Returns turn of last record.
+	private static int Encode(Block block, ByteBuffer buffer, int previousTurn) {
+		
+		int[] records = block.mRecords;
+		int end = block.mCount * RECORD_INTS;
+		
+		for (int offset = 0; offset < end; offset += RECORD_INTS) {
+			int flags = records[offset];
+			int turn = records[offset + 1];
+			int actor = records[offset + 2];
+			int victim = records[offset + 3];
+			int bits = records[offset + 4];
+			
+			buffer.put((byte) flags);
+			PutVarint(buffer, turn - previousTurn);
+			PutVarint(buffer, actor + 1);
+			PutVarint(buffer, victim + 1);
+			
+			if (actor != NONE) {
+				buffer.putShort((short) bits);
+			}
+			if (victim != NONE) {
+				buffer.putShort((short) (bits >>> 16));
+			}
+			
+			previousTurn = turn;
+		}
+		
+		return previousTurn;
+	}
+	
+	
+	/// Unsigned LEB128
+	private static void PutVarint(ByteBuffer buffer, int value) {
+		
+		while ((value & ~0x7F) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+	
+	
+	/// Unsigned LEB128 (see PutVarint)
+	static int GetVarint(ByteBuffer buffer) {
+		
+		int value = 0;
+		int shift = 0;
+		
+		int b;
+		do {
+			b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		
+		return value;
+	}
+	
+	
+	/// Event type from encoded flags
+	static EEventType Type(int flags) {
+		return TYPES[flags & TYPE_MASK];
+	}
+	
+	
+	private void Write(ByteBuffer buffer) throws IOException {
+		
+		while (buffer.hasRemaining()) {
+			mChannel.write(buffer);
+		}
+	}
+}
@@ -0,0 +1,326 @@
+//////////////////////////////////
+//	EventReplay
+//
+//  Rebuilds village state from an
+//  EventJournal without re-simulating:
+//  no victims are selected and no random
+//  numbers are drawn.  Events overwrite
+//  the state of actor and victim; at the
+//  end of each turn every living citizen
+//  whose own turn happened after its last
+//  recorded event gets the deterministic
+//  upkeep of its type (human hunger /
+//  starvation cost, werewolf healing).
+//
+//  Replay only moves forward; open the
+//  journal again to go back.
+//
+//  Citizens are reported in the order of
+//  Village.WriteStatus: by id, then those
+//  moved to the graveyard in burial order.
+//  So a replayed status can be diffed
+//  against the live one.
+//
+//////////////////////////////////
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class EventReplay implements Closeable {
+
+	private static final int BUFFER_SIZE = 1 << 20;
+	
+	// enough for any encoded record
+	private static final int MIN_BUFFERED = 32;
+	
+	private static final Citizen.ECitizenType[] REPORTED_TYPES = {
+		Citizen.ECitizenType.HUMAN, Citizen.ECitizenType.VAMPIRE, Citizen.ECitizenType.WEREWOLF
+	};
+	
+	private FileChannel mChannel;
+	
+	private ByteBuffer mBuffer;
+	
+	private boolean mEndOfFile;
+	
+	// turn of last record read
+	private int mRecordTurn;
+	
+	// state at start of this turn
+	private int mTurn;
+	
+	// packed citizen states by id
+	private int[] mBits;
+	
+	// turn whose upkeep is already part of
+	// the citizen's recorded state
+	private int[] mCoveredTurn;
+	
+	// ids of buried citizens in burial order,
+	// and which ids they are
+	private int[] mBurials;
+	private int mNumBuried;
+	private boolean[] mBuried;
+	
+	
+	/// Open journal at the start of turn 0
+	public EventReplay(Path path) throws IOException {
+		
+		mChannel = FileChannel.open(path, StandardOpenOption.READ);
+		mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+		mBuffer.flip();
+		mEndOfFile = false;
+		
+		Fill();
+		if (mBuffer.remaining() < EventJournal.HEADER_SIZE || mBuffer.getInt() != EventJournal.MAGIC) {
+			throw new IOException("Not an event journal: " + path);
+		}
+		
+		int version = mBuffer.getInt();
+		if (version < 1 || version > EventJournal.VERSION) {
+			throw new IOException("Unsupported journal version " + version + ": " + path);
+		}
+		
+		int numHumans = mBuffer.getInt();
+		int numVampires = mBuffer.getInt();
+		int numWerewolves = mBuffer.getInt();
+		
+		mBits = new int[numHumans + numVampires + numWerewolves];
+		mCoveredTurn = new int[mBits.length];
+		mBurials = new int[mBits.length];
+		mNumBuried = 0;
+		mBuried = new boolean[mBits.length];
+		
+		int id = 0;
+		id = Populate(id, numHumans, Citizen.ECitizenType.HUMAN);
+		id = Populate(id, numVampires, Citizen.ECitizenType.VAMPIRE);
+		id = Populate(id, numWerewolves, Citizen.ECitizenType.WEREWOLF);
+		
+		mRecordTurn = 0;
+		mTurn = 0;
+	}
+	
+	
+	/// Replay events up to the start of turn.
+	/// Returns false if the journal ends earlier
+	/// (state is then that of the last turn run).
+	public boolean AdvanceTo(int turn) throws IOException {
+		
+		while (mTurn < turn) {
+			if (false == ReplayTurn()) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	
+	/// Turn whose starting state is held
+	public int Turn() {
+		return mTurn;
+	}
+	
+	
+	/// Number of citizens, living or dead
+	public int Population() {
+		return mBits.length;
+	}
+	
+	
+	/// Packed state of citizen (see CitizenBits)
+	public int Bits(int id) {
+		return mBits[id];
+	}
+	
+	
+	public int LivingCount(Citizen.ECitizenType type) {
+		
+		int count = 0;
+		for (int bits : mBits) {
+			if (CitizenBits.Alive(bits) && CitizenBits.Type(bits) == type) {
+				++count;
+			}
+		}
+		
+		return count;
+	}
+	
+	
+	/// Report replayed state in the same
+	/// format as IVillage.WriteStatus
+	public void WriteStatus(StatusWriter writer) throws IOException {
+		
+		for (Citizen.ECitizenType type : REPORTED_TYPES) {
+			for (int id = 0; id < mBits.length; ++id) {
+				if (false == mBuried[id]) {
+					WriteStatus(writer, type, mBits[id]);
+				}
+			}
+			
+			for (int i = 0; i < mNumBuried; ++i) {
+				WriteStatus(writer, type, mBits[mBurials[i]]);
+			}
+		}
+	}
+	
+	
+	private static void WriteStatus(StatusWriter writer, Citizen.ECitizenType type, int bits) throws IOException {
+		
+		if (CitizenBits.Type(bits) == type) {
+			writer.Add(type, CitizenBits.Hunger(bits), CitizenBits.Health(bits),
+					   CitizenBits.KilledBy(bits), CitizenBits.ConvertedHuman(bits));
+		}
+	}
+	
+	
+	@Override
+	public void close() throws IOException {
+		mChannel.close();
+	}
+	
+	
+	/// Apply events of current turn up to its
+	/// TURN_END record, then upkeep
+	private boolean ReplayTurn() throws IOException {
+		
+		while (true) {
+			Fill();
+			if (false == mBuffer.hasRemaining()) {
+				return false;
+			}
+			
+			int flags = mBuffer.get();
+			mRecordTurn += EventJournal.GetVarint(mBuffer);
+			int actor = EventJournal.GetVarint(mBuffer) - 1;
+			int victim = EventJournal.GetVarint(mBuffer) - 1;
+			
+			if (actor != IEventSink.NONE) {
+				mBits[actor] = mBuffer.getShort() & 0xFFFF;
+				mCoveredTurn[actor] = mRecordTurn;
+			}
+			
+			if (victim != IEventSink.NONE) {
+				mBits[victim] = mBuffer.getShort() & 0xFFFF;
+				
+				// victim's own upkeep still to come
+				// unless it had already acted
+				mCoveredTurn[victim] = (flags & EventJournal.ACTED_FLAG) != 0 ? mRecordTurn : -1;
+			}
+			
+			if (EventJournal.Type(flags) == IEventSink.EEventType.BURIAL) {
+				Bury();
+			}
+			
+			if (EventJournal.Type(flags) == IEventSink.EEventType.TURN_END) {
+				break;
+			}
+		}
+		
+		Upkeep(mTurn);
+		++mTurn;
+		
+		return true;
+	}
+	
+	
+	/// Turn actions that leave no event
+	/// (see HumanBehavior, WerewolfBehavior)
+	private void Upkeep(int turn) {
+		
+		int werewolfHealing = WerewolfBehavior.HUMAN_FORM_HEALTH_INCREASE;
+		if (true == WerewolfBehavior.IsFullMoon(turn)) {
+			werewolfHealing = WerewolfBehavior.WEREWOLF_FORM_HEALTH_INCREASE;
+		}
+		
+		for (int id = 0; id < mBits.length; ++id) {
+			int bits = mBits[id];
+			
+			if (mCoveredTurn[id] == turn || false == CitizenBits.Alive(bits)) {
+				continue;
+			}
+			
+			switch (CitizenBits.Type(bits)) {
+			case HUMAN:
+				int hunger = CitizenBits.Hunger(bits);
+				if (hunger < Citizen.HUNGER_MAX) {
+					bits = CitizenBits.WithHunger(bits, hunger + HumanBehavior.HUNGER_PER_TURN);
+				}
+				else {
+					bits = AddHealth(bits, -HumanBehavior.STARVATION_HEALTH_COST);
+				}
+				break;
+				
+			case WEREWOLF:
+				bits = AddHealth(bits, werewolfHealing);
+				break;
+				
+			case VAMPIRE:
+			case INVALID:
+				break;
+			}
+			
+			mBits[id] = bits;
+		}
+	}
+	
+	
+	/// Move the dead to the graveyard, by id
+	/// as Village.Compact does
+	private void Bury() {
+		
+		for (int id = 0; id < mBits.length; ++id) {
+			if (false == mBuried[id] && false == CitizenBits.Alive(mBits[id])) {
+				mBuried[id] = true;
+				mBurials[mNumBuried++] = id;
+			}
+		}
+	}
+	
+	
+	/// Add to health respecting bounds
+	private static int AddHealth(int bits, int delta) {
+		
+		int health = Math.max(Citizen.HEALTH_MIN, Math.min(Citizen.HEALTH_MAX, CitizenBits.Health(bits) + delta));
+		
+		return CitizenBits.WithHealth(bits, health);
+	}
+	
+	
+	/// Fill consecutive ids with new citizens
+	private int Populate(int firstId, int count, Citizen.ECitizenType type) {
+		
+		int bits = CitizenBits.Pack(type, Citizen.HUNGER_MIN, Citizen.HEALTH_MAX,
+									Citizen.EKillType.INVALID, false);
+		
+		for (int id = firstId; id < firstId + count; ++id) {
+			mBits[id] = bits;
+			mCoveredTurn[id] = -1;
+		}
+		
+		return firstId + count;
+	}
+	
+	
+	/// Keep at least one full record buffered
+	/// unless the file ends
+	private void Fill() throws IOException {
+		
+		if (mBuffer.remaining() >= MIN_BUFFERED || true == mEndOfFile) {
+			return;
+		}
+		
+		mBuffer.compact();
+		while (mBuffer.hasRemaining()) {
+			if (mChannel.read(mBuffer) < 0) {
+				mEndOfFile = true;
+				break;
+			}
+		}
+		mBuffer.flip();
+	}
+}
@@ -0,0 +1,82 @@
+//////////////////////////////////
+//	FeedingEvent
+//
+//  Flight Recorder event for one werewolf
+//  feeding (see WerewolfBehavior and
+//  PackedVillage), from victim selection to
+//  outcome.  Village's batched turns draw
+//  victims ahead, so there the event covers
+//  the feeding only.  HistogramVillage
+//  keeps no citizen ids and draws a slice's
+//  feedings as counts, so it emits none.
+//
+//////////////////////////////////
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("wwvillage.Feeding")
+@Label("Werewolf Feeding")
+@Category({ "WWVillage" })
+@StackTrace(false)
+public class FeedingEvent extends Event {
+
+	private static final EventType TYPE = EventType.getEventType(FeedingEvent.class);
+
+	@Name("turn")
+	@Label("Turn")
+	int mTurn;
+
+	@Name("werewolf")
+	@Label("Werewolf Id")
+	int mWerewolf;
+
+	@Name("victim")
+	@Label("Victim Id")
+	int mVictim;
+
+	@Name("victimType")
+	@Label("Victim Type")
+	String mVictimType;
+
+	@Name("healthHit")
+	@Label("Health Hit")
+	int mHealthHit;
+
+	@Name("victimKilled")
+	@Label("Victim Killed")
+	boolean mVictimKilled;
+
+
+	/// Feeding event started now, or null
+	/// if not recording
+	public static FeedingEvent Begin() {
+
+		if (false == TYPE.isEnabled()) {
+			return null;
+		}
+
+		FeedingEvent event = new FeedingEvent();
+		event.begin();
+
+		return event;
+	}
+
+
+	/// Complete and record feeding
+	public void Commit(int turn, int werewolf, int victim, Citizen.ECitizenType victimType,
+					   int healthHit, boolean victimKilled) {
+
+		mTurn = turn;
+		mWerewolf = werewolf;
+		mVictim = victim;
+		mVictimType = victimType.name();
+		mHealthHit = healthHit;
+		mVictimKilled = victimKilled;
+		commit();
+	}
+}
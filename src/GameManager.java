@@ -11,25 +11,281 @@
 //  - The simulation ends early if there are no valid actions left for any citizen.
 //  - Dead citizens take no actions.
 //
+//  Stretches of turns on which nothing random
+//  can happen are applied in one step (see
+//  QuietStretch), with the same result.
+//
+//  Optionally the citizens changed by each
+//  step are streamed by id as it ends (see
+//  SetChangeOutput), so a huge village can
+//  be watched without re-rendering everyone.
+//
+//  Optionally a PopulationRecorder samples
+//  the population every few turns (see
+//  SetRecorder); quiet stretches are then
+//  only skipped up to the next sample.
+//
+//  Each game collects live SimulationMetrics,
+//  registered as an MBean while Run executes,
+//  and PhaseTimings of its turns, silently
+//  unless a report stream is set (see
+//  SetTimingReport).  Each step of turns is
+//  also a TurnEvent in Flight Recorder
+//  recordings.
+//
 //////////////////////////////////
 
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
 public class GameManager {
 
-	private Village mVillage;
+	/// Village storage backends
+	public enum EStorageType {
+		OBJECT,		// one Citizen object per citizen
+		PACKED,		// 16 bits per citizen, off-heap
+		HISTOGRAM	// citizen count per state
+	}
+	
+	/// Populations from which packed storage
+	/// is recommended
+	public static final long PACKED_STORAGE_THRESHOLD = 10000000;
+	
+	/// Version of the game rules; raise it with
+	/// any change that alters outcomes of
+	/// seeded games (see ResultCache)
+	public static final int RULES_VERSION = 1;
+	
+	/// JMX domain of game metrics, each game
+	/// registered as <domain>:type=Game,id=<n>
+	public static final String METRICS_DOMAIN = "WWVillage";
+	
+	// numbers games in metrics names
+	private static final AtomicInteger GAME_IDS = new AtomicInteger();
+	
+	private SimulationContext mContext;
+	
+	private IVillage mVillage;
+	
+	private EStorageType mStorage;
+	
+	// checkpoint file and interval in turns
+	// (0 for no checkpoints)
+	private Path mCheckpointPath;
+	private int mCheckpointInterval;
+	
+	// event journal file of new games
+	// (null for no journal)
+	private Path mJournalPath;
+	private EventJournal mJournal;
+	
+	// per-turn output of changed citizens
+	// (null for none)
+	private StatusWriter mChangeWriter;
+	
+	// population time series (null for none)
+	private PopulationRecorder mRecorder;
+	
+	private StatusWriter.EMode mStatusMode;
+	
+	private int mStatusSampleSize;
+	
+	private SimulationMetrics mMetrics;
+	
+	private PhaseTimings mTimings;
+	
+	// where Run reports phase timings (null
+	// for nowhere)
+	private PrintStream mTimingReport;
 	
 	
 	public GameManager() {
+		this(new SimulationContext());
+	}
+	
+	
+	/// Game using given clock and random source
+	public GameManager(SimulationContext context) {
+		mContext = context;
 		mVillage = null;
+		mStorage = EStorageType.OBJECT;
+		mCheckpointPath = null;
+		mCheckpointInterval = 0;
+		mJournalPath = null;
+		mJournal = null;
+		mChangeWriter = null;
+		mRecorder = null;
+		mStatusMode = StatusWriter.EMode.FULL;
+		mStatusSampleSize = 0;
+		mMetrics = new SimulationMetrics();
+		mContext.SetMetrics(mMetrics);
+		mTimings = new PhaseTimings();
+		mContext.SetTimings(mTimings);
+		mTimingReport = null;
 	}
 	
 	
 	public void InitializeNewGame(int numHumans, int numVampires, int numWerewolves) {
 		
+		InitializeNewGame(numHumans, numVampires, numWerewolves, EStorageType.OBJECT);
+	}
+	
+	
+	public void InitializeNewGame(int numHumans, int numVampires, int numWerewolves, EStorageType storage) {
+		
 		// setup new village with initial population
-		mVillage = new Village(numHumans, numVampires, numWerewolves);
+		switch (storage) {
+		case OBJECT:
+			mVillage = new Village(mContext, numHumans, numVampires, numWerewolves);
+			break;
+			
+		case PACKED:
+			mVillage = new PackedVillage(mContext, numHumans, numVampires, numWerewolves);
+			break;
+			
+		case HISTOGRAM:
+			// reports no individual events
+			if (mJournalPath != null) {
+				throw new IllegalStateException("Event journal needs per-citizen storage");
+			}
+			mVillage = new HistogramVillage(mContext, numHumans, numVampires, numWerewolves);
+			break;
+		}
+		mStorage = storage;
+		
+		if (mChangeWriter != null) {
+			mVillage.TrackChanges(true);
+		}
 		
 		// reset turn counter
-		TurnManager.Inst().ResetCount();
+		mContext.Clock().ResetCount();
+		
+		// first sample is of turn 0
+		StartRecording();
+		
+		mMetrics = new SimulationMetrics();
+		mContext.SetMetrics(mMetrics);
+		mTimings = new PhaseTimings();
+		mContext.SetTimings(mTimings);
+		
+		if (mJournalPath != null) {
+			try {
+				CloseJournal();
+				mJournal = new EventJournal(mJournalPath, numHumans, numVampires, numWerewolves);
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		mContext.SetEvents(mJournal);
+	}
+	
+	
+	/// Continue game saved in checkpoint file.
+	/// Run / Simulate then proceed from the
+	/// saved turn.
+	public void Resume(Path path) throws IOException {
+		
+		CloseJournal();
+		
+		Checkpoint checkpoint = Checkpoint.Load(path);
+		
+		mContext = checkpoint.Context();
+		mVillage = checkpoint.Village();
+		mStorage = checkpoint.Storage();
+		
+		if (mChangeWriter != null) {
+			mVillage.TrackChanges(true);
+		}
+		StartRecording();
+		
+		mMetrics = new SimulationMetrics();
+		mContext.SetMetrics(mMetrics);
+		mTimings = new PhaseTimings();
+		mContext.SetTimings(mTimings);
+	}
+	
+	
+	/// Save game to file every interval turns
+	/// while simulating (interval 0 disables)
+	public void SetCheckpoint(Path path, int interval) {
+		mCheckpointPath = path;
+		mCheckpointInterval = interval;
+	}
+	
+	
+	/// Record events of games started by
+	/// InitializeNewGame to journal file
+	/// (null disables).  See EventReplay.
+	public void SetJournal(Path path) {
+		mJournalPath = path;
+	}
+	
+	
+	/// Stream the citizens changed by each step
+	/// of Simulate to channel, by id (null
+	/// disables).  Applies to the current game
+	/// and later ones.
+	public void SetChangeOutput(WritableByteChannel channel) {
+		
+		mChangeWriter = channel != null ? new StatusWriter(channel) : null;
+		
+		if (mVillage != null) {
+			mVillage.TrackChanges(channel != null);
+		}
+	}
+	
+	
+	/// Sample the population into recorder
+	/// while simulating (null disables).
+	/// Applies to the current game and later
+	/// ones, each starting a new series.
+	public void SetRecorder(PopulationRecorder recorder) {
+		
+		mRecorder = recorder;
+		
+		if (mVillage != null) {
+			StartRecording();
+		}
+	}
+	
+	
+	/// Write out and close event journal.
+	/// Done by Run; call after Simulate.
+	public void CloseJournal() throws IOException {
+		
+		if (mJournal != null) {
+			mJournal.close();
+			mJournal = null;
+			mContext.SetEvents(null);
+		}
+	}
+	
+	
+	/// Save game to checkpoint file now
+	public void SaveCheckpoint(Path path) throws IOException {
+		Checkpoint.Save(path, mContext, mStorage, mVillage);
+	}
+	
+	
+	/// Storage suited to a new game of
+	/// given population
+	public static EStorageType RecommendedStorage(long population) {
+		
+		// very large villages don't fit as objects
+		if (population >= PACKED_STORAGE_THRESHOLD) {
+			return EStorageType.PACKED;
+		}
+		
+		return EStorageType.OBJECT;
 	}
 	
 	
@@ -42,22 +298,252 @@ public class GameManager {
 	/// Run game for specified number of turns
 	public void Run(int numTurns) {
 		
-		while (TurnManager.Inst().CurrentTurn() < numTurns) {
+		// watchable while running
+		ObjectName metricsName = RegisterMetrics();
+		
+		try {
+			Simulate(numTurns);
+			
+			System.out.println("Total turns run: " + String.valueOf(mContext.Clock().CurrentTurn()));
+			
+			// say so if not every citizen is listed
+			String description = StatusDescription();
+			if (description != null) {
+				System.out.println(description);
+			}
+			
+			// stream status rather than building one huge string
+			CloseJournal();
+			WriteStatus(Channels.newChannel(System.out));
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		finally {
+			UnregisterMetrics(metricsName);
+		}
+		System.out.flush();
+		
+		if (mTimingReport != null) {
+			mTimings.Report(mTimingReport);
+		}
+	}
+	
+	
+	/// Live metrics of current game
+	public SimulationMetrics Metrics() {
+		return mMetrics;
+	}
+	
+	
+	/// Phase timings of current game's turns
+	public PhaseTimings Timings() {
+		return mTimings;
+	}
+	
+	
+	/// Print phase timings to out at the end
+	/// of each Run (null disables)
+	public void SetTimingReport(PrintStream out) {
+		mTimingReport = out;
+	}
+	
+	
+	/// Select how much detail status reports
+	/// contain (see StatusWriter)
+	public void SetStatusMode(StatusWriter.EMode mode, int sampleSize) {
+		mStatusMode = mode;
+		mStatusSampleSize = sampleSize;
+	}
+	
+	
+	/// Line introducing a status report that
+	/// doesn't list every citizen, else null
+	public String StatusDescription() {
+		return StatusWriter.Describe(mStatusMode, mStatusSampleSize);
+	}
+	
+	
+	/// Stream village status to channel
+	public void WriteStatus(WritableByteChannel channel) throws IOException {
+		
+		StatusWriter writer = new StatusWriter(channel, mStatusMode, mStatusSampleSize, 
+											   mContext.Rng().Seed());
+		mVillage.WriteStatus(writer);
+		writer.Finish();
+	}
+	
+	
+	/// Run game for specified number of turns
+	/// without reporting results.  Stops early,
+	/// leaving the interrupt set, if the thread
+	/// is interrupted between turns.
+	public void Simulate(int numTurns) {
+		
+		mMetrics.Start(mContext.Clock().CurrentTurn(), LivingCount(Citizen.ECitizenType.HUMAN),
+					   LivingCount(Citizen.ECitizenType.VAMPIRE), LivingCount(Citizen.ECitizenType.WEREWOLF));
+		
+		while (mContext.Clock().CurrentTurn() < numTurns) {
+			
+			if (true == Thread.currentThread().isInterrupted()) {
+				break;
+			}
+			
+			int turn = mContext.Clock().CurrentTurn();
+			TurnEvent event = TurnEvent.Begin();
+			long start = mTimings.Start();
 			
 			// check early termination conditions
-			if (true == EarlyTermination()) {
+			boolean terminated = EarlyTermination();
+			mTimings.End(PhaseTimings.EPhase.EARLY_TERMINATION, turn, start);
+			if (true == terminated) {
 				break;
 			}
 			
-			// run next turn
-			mVillage.DoTurn();
+			// skip straight over turns where nothing
+			// random can happen, up to the next
+			// checkpoint
+			int maxSkip = numTurns - turn;
+			if (mCheckpointInterval > 0) {
+				maxSkip = Math.min(maxSkip, mCheckpointInterval - turn % mCheckpointInterval);
+			}
+			if (mRecorder != null) {
+				maxSkip = Math.min(maxSkip, mRecorder.Interval() - turn % mRecorder.Interval());
+			}
+			
+			start = mTimings.Start();
+			int numSkipped = mVillage.FastForward(maxSkip);
+			mTimings.End(PhaseTimings.EPhase.FAST_FORWARD, turn, start);
+			
+			if (numSkipped == 0) {
+				// run next turn
+				start = mTimings.Start();
+				mVillage.DoTurn();
+				mTimings.End(PhaseTimings.EPhase.TURN, turn, start);
+				numSkipped = 1;
+			}
+			
+			if (mJournal != null) {
+				start = mTimings.Start();
+				for (int skipped = 0; skipped < numSkipped; ++skipped) {
+					mJournal.Record(IEventSink.EEventType.TURN_END, turn + skipped,
+									IEventSink.NONE, 0, IEventSink.NONE, 0, false);
+				}
+				mTimings.End(PhaseTimings.EPhase.JOURNAL, turn, start);
+			}
+			
+			// advance turn counter
+			mContext.Clock().SetCount(turn + numSkipped);
+			
+			mMetrics.EndTurn(turn + numSkipped, LivingCount(Citizen.ECitizenType.HUMAN),
+							 LivingCount(Citizen.ECitizenType.VAMPIRE), LivingCount(Citizen.ECitizenType.WEREWOLF));
+			
+			if (mRecorder != null && true == mRecorder.Due(turn + numSkipped)) {
+				RecordSample();
+			}
+			
+			if (mChangeWriter != null) {
+				try {
+					mVillage.WriteChanges(mChangeWriter, turn + numSkipped);
+					mChangeWriter.Finish();
+				}
+				catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			
+			if (mCheckpointInterval > 0 && mContext.Clock().CurrentTurn() % mCheckpointInterval == 0) {
+				try {
+					start = mTimings.Start();
+					SaveCheckpoint(mCheckpointPath);
+					mTimings.End(PhaseTimings.EPhase.CHECKPOINT, turn, start);
+				}
+				catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			
+			if (event != null) {
+				event.Commit(turn, numSkipped, mStorage, LivingCount(Citizen.ECitizenType.HUMAN),
+							 LivingCount(Citizen.ECitizenType.VAMPIRE), LivingCount(Citizen.ECitizenType.WEREWOLF));
+			}
+		}
+		
+		// series ends with the final state
+		if (mRecorder != null) {
+			RecordSample();
+		}
+	}
+	
+	
+	/// Number of turns run so far
+	public int TurnsRun() {
+		return mContext.Clock().CurrentTurn();
+	}
+	
+	
+	/// Number of citizens, living or dead
+	public int Population() {
+		return mVillage.Population();
+	}
+	
+	
+	/// Number of living citizens of given type
+	public int LivingCount(Citizen.ECitizenType type) {
+		return mVillage.LivingCount(type);
+	}
+	
+	
+	/// True if only vampires are left alive
+	public boolean VampiresPrevailed() {
+		return false == mVillage.AllDead() && mVillage.AllVampires();
+	}
+	
+	
+	/// Attach recorder to the current village
+	/// and sample its state
+	private void StartRecording() {
+		
+		if (mRecorder == null) {
+			return;
+		}
+		
+		mRecorder.Clear();
+		mVillage.TrackStatistics(mRecorder.Statistics());
+		RecordSample();
+	}
+	
+	
+	private void RecordSample() {
+		mRecorder.Record(mContext.Clock().CurrentTurn(), LivingCount(Citizen.ECitizenType.HUMAN),
+						 LivingCount(Citizen.ECitizenType.VAMPIRE), LivingCount(Citizen.ECitizenType.WEREWOLF));
+	}
+	
+	
+	/// Register metrics with the platform
+	/// MBean server
+	private ObjectName RegisterMetrics() {
+		
+		try {
+			ObjectName name = new ObjectName(METRICS_DOMAIN + ":type=Game,id=" + GAME_IDS.incrementAndGet());
+			ManagementFactory.getPlatformMBeanServer().registerMBean(mMetrics, name);
 			
-			// increment turn counter
-			TurnManager.Inst().Increment();
+			return name;
 		}
+		catch (JMException e) {
+			throw new IllegalStateException("Cannot register metrics", e);
+		}
+	}
+	
+	
+	private void UnregisterMetrics(ObjectName name) {
 		
-		System.out.println("Total turns run: " + String.valueOf(TurnManager.Inst().CurrentTurn()));
-		System.out.print(mVillage.GetStatus());
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		}
+		catch (JMException e) {
+			throw new IllegalStateException("Cannot unregister metrics", e);
+		}
 	}
 	
 	
@@ -73,6 +559,19 @@ public class GameManager {
 	/// all citizens are vampires or all citizens are werewolves.
 	private boolean EarlyTermination() {
 		
-		return mVillage.AllDead() || mVillage.AllVampires() || mVillage.AllWerewolves();
+		return EarlyTermination(mVillage.LivingCount(Citizen.ECitizenType.HUMAN),
+								mVillage.LivingCount(Citizen.ECitizenType.VAMPIRE),
+								mVillage.LivingCount(Citizen.ECitizenType.WEREWOLF));
+	}
+	
+	
+	/// Early termination conditions (see above)
+	/// from living counts, also used for the
+	/// whole region of an Archipelago
+	static boolean EarlyTermination(int numHumans, int numVampires, int numWerewolves) {
+		
+		int numLiving = numHumans + numVampires + numWerewolves;
+		
+		return numLiving == 0 || numVampires == numLiving || numWerewolves == numLiving;
 	}
 }
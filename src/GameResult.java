@@ -0,0 +1,143 @@
+//////////////////////////////////
+//	GameResult
+//
+//  Initial conditions and final census of
+//  one seeded game, with summary counts of
+//  what happened in it.  Produced by
+//  ParameterSweep and kept by ResultCache.
+//
+//////////////////////////////////
+
+public class GameResult {
+
+	// initial conditions
+	GameManager.EStorageType mStorage;
+	int mNumHumans;
+	int mNumVampires;
+	int mNumWerewolves;
+	int mNumTurns;
+	long mSeed;
+
+	// final census
+	int mTurnsRun;
+	int mHumansLeft;
+	int mVampiresLeft;
+	int mWerewolvesLeft;
+	boolean mVampiresPrevailed;
+
+	// totals over the whole game
+	long mConversions;
+	long mKills;
+	long mStarvations;
+
+
+	/// Result of a game not yet run
+	public GameResult(GameManager.EStorageType storage, int numHumans, int numVampires, int numWerewolves,
+					  int numTurns, long seed) {
+		mStorage = storage;
+		mNumHumans = numHumans;
+		mNumVampires = numVampires;
+		mNumWerewolves = numWerewolves;
+		mNumTurns = numTurns;
+		mSeed = seed;
+	}
+
+
+	/// Same game with another turn limit,
+	/// outcome not yet known
+	public GameResult WithTurns(int numTurns) {
+		return new GameResult(mStorage, mNumHumans, mNumVampires, mNumWerewolves, numTurns, mSeed);
+	}
+
+
+	/// True if game ended before its turn
+	/// limit, so any longer limit gives the
+	/// same outcome
+	public boolean EndedEarly() {
+		return mTurnsRun < mNumTurns;
+	}
+
+
+	/// Take outcome from game simulated up to
+	/// its turn limit; base holds totals of
+	/// turns run before the game was resumed
+	/// (null if it ran from the start)
+	public void Record(GameManager gameMgr, GameResult base) {
+
+		mTurnsRun = gameMgr.TurnsRun();
+		mHumansLeft = gameMgr.LivingCount(Citizen.ECitizenType.HUMAN);
+		mVampiresLeft = gameMgr.LivingCount(Citizen.ECitizenType.VAMPIRE);
+		mWerewolvesLeft = gameMgr.LivingCount(Citizen.ECitizenType.WEREWOLF);
+		mVampiresPrevailed = gameMgr.VampiresPrevailed();
+
+		mConversions = gameMgr.Metrics().getConversions();
+		mKills = gameMgr.Metrics().getKills();
+		mStarvations = gameMgr.Metrics().getStarvations();
+		if (base != null) {
+			mConversions += base.mConversions;
+			mKills += base.mKills;
+			mStarvations += base.mStarvations;
+		}
+	}
+
+
+	/// Take outcome of another run of the
+	/// same game
+	public void CopyOutcome(GameResult other) {
+
+		mTurnsRun = other.mTurnsRun;
+		mHumansLeft = other.mHumansLeft;
+		mVampiresLeft = other.mVampiresLeft;
+		mWerewolvesLeft = other.mWerewolvesLeft;
+		mVampiresPrevailed = other.mVampiresPrevailed;
+		mConversions = other.mConversions;
+		mKills = other.mKills;
+		mStarvations = other.mStarvations;
+	}
+
+
+	public int TurnsRun() {
+		return mTurnsRun;
+	}
+
+
+	/// Living citizens of given type at end
+	public int LivingCount(Citizen.ECitizenType type) {
+
+		switch (type) {
+		case HUMAN:
+			return mHumansLeft;
+
+		case VAMPIRE:
+			return mVampiresLeft;
+
+		case WEREWOLF:
+			return mWerewolvesLeft;
+
+		case INVALID:
+			return 0;
+		}
+
+		return 0;
+	}
+
+
+	public boolean VampiresPrevailed() {
+		return mVampiresPrevailed;
+	}
+
+
+	public long Conversions() {
+		return mConversions;
+	}
+
+
+	public long Kills() {
+		return mKills;
+	}
+
+
+	public long Starvations() {
+		return mStarvations;
+	}
+}
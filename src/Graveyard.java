@@ -0,0 +1,104 @@
+//////////////////////////////////
+//	Graveyard
+//
+//  Compact archive of dead citizens.  Only
+//  the id and final state (type, hunger,
+//  health, kill cause, conversion flag;
+//  packed as in CitizenBits) are kept, in
+//  primitive arrays, so the dead cost six
+//  bytes each instead of a Citizen object
+//  and drop out of every per-citizen pass
+//  over the village.
+//
+//  Citizens are kept in burial order.
+//
+//////////////////////////////////
+
+import java.io.IOException;
+
+public class Graveyard {
+
+	private int[] mIds;
+
+	private short[] mBits;
+
+	private int mSize;
+
+
+	/// Graveyard with room for capacity citizens
+	/// (more are accepted but allocate)
+	public Graveyard(int capacity) {
+		mIds = new int[capacity];
+		mBits = new short[capacity];
+		mSize = 0;
+	}
+
+
+	/// Archive dead citizen
+	public void Bury(Citizen citizen) {
+		Add(citizen.Id(), citizen.Pack());
+	}
+
+
+	/// Archive citizen by id and packed state
+	public void Add(int id, int bits) {
+
+		if (mSize == mIds.length) {
+			int capacity = Math.max(2 * mSize, 16);
+			int[] ids = new int[capacity];
+			short[] packed = new short[capacity];
+			System.arraycopy(mIds, 0, ids, 0, mSize);
+			System.arraycopy(mBits, 0, packed, 0, mSize);
+			mIds = ids;
+			mBits = packed;
+		}
+
+		mIds[mSize] = id;
+		mBits[mSize] = (short) bits;
+		++mSize;
+	}
+
+
+	/// Number of archived citizens
+	public int Size() {
+		return mSize;
+	}
+
+
+	/// Id of citizen by burial index
+	public int Id(int index) {
+		return mIds[index];
+	}
+
+
+	/// Packed state of citizen by burial index
+	public int Bits(int index) {
+		return mBits[index] & 0xFFFF;
+	}
+
+
+	/// Append status of archived citizens of type
+	public void AppendStatus(StringBuilder sb, Citizen.ECitizenType type) {
+
+		for (int i = 0; i < mSize; ++i) {
+			int bits = Bits(i);
+			if (CitizenBits.Type(bits) == type) {
+				sb.append(Citizen.FormatStatus(type, CitizenBits.Hunger(bits), CitizenBits.Health(bits),
+											   CitizenBits.KilledBy(bits), CitizenBits.ConvertedHuman(bits)));
+			}
+		}
+	}
+
+
+	/// Report archived citizens of type to writer
+	public void WriteStatus(StatusWriter writer, Citizen.ECitizenType type) throws IOException {
+
+		for (int i = 0; i < mSize; ++i) {
+			int bits = Bits(i);
+			if (CitizenBits.Type(bits) == type) {
+				writer.Add(type, CitizenBits.Hunger(bits), CitizenBits.Health(bits),
+						   CitizenBits.KilledBy(bits), CitizenBits.ConvertedHuman(bits));
+			}
+		}
+	}
+}
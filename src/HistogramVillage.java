@@ -0,0 +1,1255 @@
+//////////////////////////////////
+//	HistogramVillage
+//
+//  Village storage backend that keeps no
+//  individual citizens at all, only the
+//  number of citizens in each state
+//  (CitizenBits value: type, hunger,
+//  health, cause of death, converted).
+//  There are about 6,000 reachable states,
+//  so memory and the cost of a turn depend
+//  on the number of states rather than on
+//  the population.
+//
+//  Citizens of a state are interchangeable,
+//  so a turn draws counts rather than
+//  individual outcomes (CountSampler):
+//  - The living are split at random into
+//    ROUNDS consecutive slices of the turn
+//    order (one slice when no predator can
+//    act).  This keeps the effect of acting
+//    early or late: a human converted before
+//    its slice acts as a vampire, one killed
+//    before it doesn't act at all.
+//  - Within a slice, outcomes and health
+//    hits are split multinomially with the
+//    probabilities of VampireBehavior and
+//    WerewolfBehavior, and victims drawn
+//    with replacement among the eligible
+//    living citizens (Strike): a citizen
+//    drawn twice is hit twice, or the strike
+//    is drawn again if the first hit left it
+//    ineligible.  A vampire whose strike
+//    finds no one left gains nothing.
+//
+//  Results approximate those of the other
+//  backends in distribution, not citizen by
+//  citizen: everyone in a slice acts as if
+//  in the order upkeep, vampires, werewolves,
+//  which biases outcomes by about 1/ROUNDS
+//  of a turn's changes (HistogramCheck
+//  compares them).  No events are reported.
+//  Statistics, when tracked, see every
+//  move of counts between states.
+//
+//////////////////////////////////
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class HistogramVillage implements IVillage {
+
+	// slices of a turn in which predators act
+	private static final int ROUNDS = 64;
+
+	// pool of settled citizens (not waiting
+	// to act in the current turn)
+	private static final int SETTLED = ROUNDS;
+
+	private static final int NUM_TYPES = Citizen.ECitizenType.values().length;
+
+	private static final Citizen.ECitizenType[] TYPES = {
+		Citizen.ECitizenType.HUMAN, Citizen.ECitizenType.VAMPIRE, Citizen.ECitizenType.WEREWOLF
+	};
+
+	private static final Citizen.EKillType[] KILLERS = {
+		Citizen.EKillType.HUNGER, Citizen.EKillType.VAMPIRE, Citizen.EKillType.WEREWOLF
+	};
+
+	// living states of each type (either
+	// converted flag, any hunger and health)
+	private static final int LIVING_PER_TYPE = 2 * (Citizen.HUNGER_MAX - Citizen.HUNGER_MIN + 1) *
+											   (Citizen.HEALTH_MAX - Citizen.HEALTH_MIN);
+
+	private static final int NUM_LIVING_STATES = TYPES.length * LIVING_PER_TYPE;
+
+	// every reachable state as CitizenBits:
+	// living ones of each type, then dead
+	private static final int[] STATES = ReachableStates();
+
+	private static final int NUM_STATES = STATES.length;
+
+	// index into STATES by CitizenBits value
+	// (-1 if unreachable)
+	private static final int[] STATE_INDEX = StateIndex();
+
+	// outcomes of a vampire's attack on a human
+	private static final int NUM_OUTCOMES = 3;
+
+	private static final int NUM_FAILED_HITS = VampireBehavior.FAILED_CONVERSION_MAX_HIT -
+											   VampireBehavior.FAILED_CONVERSION_MIN_HIT + 1;
+
+	// kinds of vampire attack, by outcome (and
+	// health hit of failed conversions)
+	private static final int CONVERSIONS = 0;
+	private static final int KILLS = 1;
+	private static final int WEREWOLF_HITS = 2;
+	private static final int FAILED_SURVIVED = 3;
+	private static final int FAILED_KILLED = FAILED_SURVIVED + NUM_FAILED_HITS;
+	private static final int NUM_ATTACK_KINDS = FAILED_KILLED + NUM_FAILED_HITS;
+
+	// Clock and random source
+	private SimulationContext mContext;
+
+	// citizens by state index: [round] waiting
+	// to act this turn, [SETTLED] everyone else
+	private int[][] mCounts;
+
+	// citizens by state index in all pools
+	private int[] mTotals;
+
+	private int mPopulation;
+
+	// Living citizens by type ordinal
+	private int[] mLivingCounts;
+
+	private int mNumLiving;
+
+	// Slices of current turn
+	private int mNumRounds;
+
+	// Living states victims of current strike
+	// phase may be in: those occupied at its
+	// start, and those struck citizens moved to
+	private int[] mCandidates;
+	private boolean[] mIsCandidate;
+	private int mNumCandidates;
+
+	// Citizens struck by current Strike, by
+	// the state they are in now
+	private int[] mStruck;
+	private int[] mStruckStates;
+	private boolean[] mIsStruckState;
+	private int mNumStruckStates;
+
+	// Draws of current Strike pass (state
+	// index, citizens at start of pass)
+	private int[] mCellStates;
+	private int[] mCellCounts;
+	private int mNumCells;
+
+	// Vampire attacks of current slice by kind
+	// and acting vampire state (offset from
+	// the first), for settling the vampires
+	// once the attacks found their victims
+	private int[][] mAttacks;
+	private int[] mAttackTotals;
+	private int[] mMissed;
+	private int[] mActors;
+	private int mNumActors;
+
+	// Order the kinds strike in (shuffled)
+	private int[] mKindOrder;
+
+	// Eligible humans with health at most
+	// index, at start of vampire phase
+	private long[] mHumansUpToHealth;
+
+	// Aggregates of the living (null if not
+	// tracked)
+	private PopulationStatistics mStatistics;
+
+
+	/// Initialize village population
+	public HistogramVillage(SimulationContext context, int numHumans, int numVampires, int numWerewolves) {
+
+		this(context);
+
+		Populate(numHumans, Citizen.ECitizenType.HUMAN);
+		Populate(numVampires, Citizen.ECitizenType.VAMPIRE);
+		Populate(numWerewolves, Citizen.ECitizenType.WEREWOLF);
+	}
+
+
+	/// Empty village
+	private HistogramVillage(SimulationContext context) {
+
+		mContext = context;
+
+		mCounts = new int[ROUNDS + 1][NUM_STATES];
+		mTotals = new int[NUM_STATES];
+		mPopulation = 0;
+		mLivingCounts = new int[NUM_TYPES];
+		mNumLiving = 0;
+		mNumRounds = 1;
+
+		mCandidates = new int[NUM_LIVING_STATES];
+		mIsCandidate = new boolean[NUM_STATES];
+		mNumCandidates = 0;
+
+		mStruck = new int[NUM_STATES];
+		mStruckStates = new int[NUM_STATES];
+		mIsStruckState = new boolean[NUM_STATES];
+		mNumStruckStates = 0;
+
+		mCellStates = new int[NUM_STATES];
+		mCellCounts = new int[NUM_STATES];
+		mNumCells = 0;
+
+		mAttacks = new int[NUM_ATTACK_KINDS][LIVING_PER_TYPE];
+		mAttackTotals = new int[NUM_ATTACK_KINDS];
+		mMissed = new int[NUM_ATTACK_KINDS];
+		mActors = new int[LIVING_PER_TYPE];
+		mNumActors = 0;
+
+		mKindOrder = new int[NUM_ATTACK_KINDS];
+		for (int kind = 0; kind < NUM_ATTACK_KINDS; ++kind) {
+			mKindOrder[kind] = kind;
+		}
+		mHumansUpToHealth = new long[Citizen.HEALTH_MAX + 1];
+
+		mStatistics = null;
+	}
+
+
+	/// Restore village from snapshot written
+	/// by WriteSnapshot
+	public static HistogramVillage Restore(SimulationContext context, SnapshotFile file, int population) throws IOException {
+
+		HistogramVillage village = new HistogramVillage(context);
+
+		int numStates = file.GetInt();
+		for (int i = 0; i < numStates; ++i) {
+			int bits = file.GetShort() & 0xFFFF;
+			int count = file.GetInt();
+
+			int state = STATE_INDEX[bits];
+			if (state < 0) {
+				throw new IOException("Unreachable citizen state " + bits);
+			}
+
+			village.mCounts[SETTLED][state] += count;
+			village.mTotals[state] += count;
+			village.mPopulation += count;
+
+			if (CitizenBits.Alive(bits)) {
+				village.mLivingCounts[CitizenBits.Type(bits).ordinal()] += count;
+				village.mNumLiving += count;
+			}
+		}
+
+		if (village.mPopulation != population) {
+			throw new IOException("Snapshot population " + village.mPopulation + " expected " + population);
+		}
+
+		return village;
+	}
+
+
+	/// Run one turn on citizens
+	public void DoTurn() {
+
+		int turn = mContext.Clock().CurrentTurn();
+		boolean fullMoon = WerewolfBehavior.IsFullMoon(turn);
+
+		// all draws of a turn from one stream
+		mContext.Rng().Begin(turn, RandomNumberGenerator.VILLAGE_STREAM);
+
+		// with nobody to interact, when a
+		// citizen acts makes no difference
+		mNumRounds = 1;
+		if (false == QuietStretch.IsQuiet(fullMoon, LivingCount(Citizen.ECitizenType.HUMAN),
+										  LivingCount(Citizen.ECitizenType.VAMPIRE),
+										  LivingCount(Citizen.ECitizenType.WEREWOLF))) {
+			mNumRounds = ROUNDS;
+		}
+
+		Schedule();
+
+		for (int round = 0; round < mNumRounds; ++round) {
+			PlayRound(round, fullMoon);
+		}
+	}
+
+
+	/// Apply quiet turns in closed form
+	public int FastForward(int maxTurns) {
+
+		int turn = mContext.Clock().CurrentTurn();
+		int[] settled = mCounts[SETTLED];
+
+		int turns = QuietStretch.Length(turn, maxTurns, LivingCount(Citizen.ECitizenType.HUMAN),
+										LivingCount(Citizen.ECitizenType.VAMPIRE),
+										LivingCount(Citizen.ECitizenType.WEREWOLF));
+
+		// stop before the first starvation
+		// (living humans come first in STATES)
+		for (int state = 0; state < LIVING_PER_TYPE && turns > 0; ++state) {
+			if (settled[state] > 0) {
+				int bits = STATES[state];
+				int starvation = QuietStretch.TurnsToStarvation(CitizenBits.Hunger(bits), CitizenBits.Health(bits));
+				turns = Math.min(turns, starvation - 1);
+			}
+		}
+
+		if (turns <= 0) {
+			return 0;
+		}
+
+		// states move into the (empty) first round
+		// pool, which then becomes the settled one
+		int[] advanced = mCounts[0];
+
+		for (int state = 0; state < NUM_STATES; ++state) {
+			int count = settled[state];
+			if (count == 0) {
+				continue;
+			}
+			settled[state] = 0;
+
+			int bits = STATES[state];
+			int hunger = CitizenBits.Hunger(bits);
+			int health = CitizenBits.Health(bits);
+
+			if (CitizenBits.Alive(bits)) {
+				switch (CitizenBits.Type(bits)) {
+				case HUMAN:
+					bits = CitizenBits.WithHealth(bits, QuietStretch.HumanHealth(hunger, health, turns));
+					bits = CitizenBits.WithHunger(bits, QuietStretch.HumanHunger(hunger, turns));
+					break;
+
+				case WEREWOLF:
+					bits = CitizenBits.WithHealth(bits, QuietStretch.WerewolfHealth(health, turn, turns));
+					break;
+
+				case VAMPIRE:
+				case INVALID:
+					break;
+				}
+			}
+
+			advanced[STATE_INDEX[bits]] += count;
+			if (mStatistics != null) {
+				mStatistics.Transition(STATES[state], bits, count);
+			}
+		}
+
+		mCounts[0] = settled;
+		mCounts[SETTLED] = advanced;
+		System.arraycopy(advanced, 0, mTotals, 0, NUM_STATES);
+
+		return turns;
+	}
+
+
+	/// Helper method for checking
+	/// early termination conditions.
+	public boolean AllDead() {
+		return mNumLiving == 0;
+	}
+
+
+	/// Helper method for checking
+	/// early termination conditions.
+	public boolean AllVampires() {
+		return LivingCount(Citizen.ECitizenType.VAMPIRE) == mNumLiving;
+	}
+
+
+	/// Helper method for checking
+	/// early termination conditions.
+	public boolean AllWerewolves() {
+		return LivingCount(Citizen.ECitizenType.WEREWOLF) == mNumLiving;
+	}
+
+
+	public int LivingCount(Citizen.ECitizenType type) {
+		return mLivingCounts[type.ordinal()];
+	}
+
+
+	/// Return string of status of all citizens
+	public String GetStatus() {
+
+		// grouped by type like Village
+		StringBuilder sb = new StringBuilder();
+		AppendStatus(sb, Citizen.ECitizenType.HUMAN);
+		AppendStatus(sb, Citizen.ECitizenType.VAMPIRE);
+		AppendStatus(sb, Citizen.ECitizenType.WEREWOLF);
+
+		return sb.toString();
+	}
+
+
+	/// Stream status of all citizens to writer
+	public void WriteStatus(StatusWriter writer) throws IOException {
+
+		// grouped by type like Village
+		WriteStatus(writer, Citizen.ECitizenType.HUMAN);
+		WriteStatus(writer, Citizen.ECitizenType.VAMPIRE);
+		WriteStatus(writer, Citizen.ECitizenType.WEREWOLF);
+	}
+
+
+	/// No individual citizens to track
+	public void TrackChanges(boolean track) {
+
+		if (true == track) {
+			throw new IllegalStateException("Change output needs per-citizen storage");
+		}
+	}
+
+
+	public void WriteChanges(StatusWriter writer, int turn) throws IOException {
+	}
+
+
+	/// Keep statistics of the population
+	/// current from now on
+	public void TrackStatistics(PopulationStatistics statistics) {
+
+		mStatistics = statistics;
+		if (statistics == null) {
+			return;
+		}
+
+		statistics.Reset();
+
+		for (int state = 0; state < NUM_STATES; ++state) {
+			int bits = STATES[state];
+			if (CitizenBits.Alive(bits)) {
+				statistics.Add(CitizenBits.Hunger(bits), CitizenBits.Health(bits), mTotals[state]);
+			}
+			else {
+				statistics.Dead(CitizenBits.KilledBy(bits), mTotals[state]);
+			}
+		}
+	}
+
+
+	/// Number of citizens, living or dead
+	public int Population() {
+		return mPopulation;
+	}
+
+
+	/// Snapshot layout: (int count) of occupied
+	/// states, then each as (short state, int
+	/// number of citizens)
+	public long SnapshotSize() {
+		return Integer.BYTES + (long) OccupiedStates() * (Short.BYTES + Integer.BYTES);
+	}
+
+
+	/// Write population snapshot
+	public void WriteSnapshot(SnapshotFile file) throws IOException {
+
+		int[] settled = mCounts[SETTLED];
+
+		file.PutInt(OccupiedStates());
+		for (int state = 0; state < NUM_STATES; ++state) {
+			if (settled[state] > 0) {
+				file.PutShort((short) STATES[state]);
+				file.PutInt(settled[state]);
+			}
+		}
+	}
+
+
+	/// Split the living at random among the
+	/// slices of the turn
+	private void Schedule() {
+
+		RandomNumberGenerator rng = mContext.Rng();
+		int[] settled = mCounts[SETTLED];
+
+		for (int state = 0; state < NUM_LIVING_STATES; ++state) {
+			int count = settled[state];
+			if (count == 0) {
+				continue;
+			}
+			settled[state] = 0;
+
+			// few citizens: draw each one's slice
+			if (count < mNumRounds) {
+				for (int i = 0; i < count; ++i) {
+					++mCounts[rng.Generate(0, mNumRounds - 1)][state];
+				}
+				continue;
+			}
+
+			for (int round = 0; round < mNumRounds - 1 && count > 0; ++round) {
+				int share = CountSampler.Share(rng, count, mNumRounds - round);
+				mCounts[round][state] += share;
+				count -= share;
+			}
+			mCounts[mNumRounds - 1][state] += count;
+		}
+	}
+
+
+	/// Let citizens of one slice act
+	private void PlayRound(int round, boolean fullMoon) {
+
+		int[] acting = mCounts[round];
+
+		// vampires wait in their slice until
+		// the outcome of their attacks is known
+		int numVampires = 0;
+		int numFeeding = 0;
+
+		for (int state = 0; state < NUM_STATES; ++state) {
+			int count = acting[state];
+			if (count == 0) {
+				continue;
+			}
+
+			int bits = STATES[state];
+
+			// dead citizens take no actions
+			if (false == CitizenBits.Alive(bits)) {
+				Move(round, state, SETTLED, bits, count);
+				continue;
+			}
+
+			switch (CitizenBits.Type(bits)) {
+			case HUMAN:
+				HumanUpkeep(round, state, count);
+				break;
+
+			case WEREWOLF:
+				Move(round, state, SETTLED, WerewolfUpkeep(bits, fullMoon), count);
+				if (true == fullMoon) {
+					numFeeding += count;
+				}
+				break;
+
+			case VAMPIRE:
+				numVampires += count;
+				break;
+
+			case INVALID:
+				break;
+			}
+		}
+
+		if (numVampires > 0) {
+			VampireAttacks(round, numVampires, fullMoon);
+		}
+
+		if (numFeeding > 0) {
+			WerewolfFeedings(round, numFeeding);
+		}
+	}
+
+
+	/// See HumanBehavior
+	private void HumanUpkeep(int round, int state, int count) {
+
+		int bits = STATES[state];
+		int hunger = CitizenBits.Hunger(bits);
+
+		if (hunger < Citizen.HUNGER_MAX) {
+			bits = CitizenBits.WithHunger(bits, hunger + HumanBehavior.HUNGER_PER_TURN);
+		}
+		else {
+			bits = AddHealth(bits, -HumanBehavior.STARVATION_HEALTH_COST);
+		}
+
+		// check for starvation
+		if (CitizenBits.Health(bits) == Citizen.HEALTH_MIN) {
+			bits = CitizenBits.WithKilledBy(bits, Citizen.EKillType.HUNGER);
+			mLivingCounts[Citizen.ECitizenType.HUMAN.ordinal()] -= count;
+			mNumLiving -= count;
+			CountKilled(Citizen.EKillType.HUNGER, count);
+		}
+
+		Move(round, state, SETTLED, bits, count);
+	}
+
+
+	/// See WerewolfBehavior (healing part)
+	private int WerewolfUpkeep(int bits, boolean fullMoon) {
+
+		if (true == fullMoon) {
+			return AddHealth(bits, WerewolfBehavior.WEREWOLF_FORM_HEALTH_INCREASE);
+		}
+
+		return AddHealth(bits, WerewolfBehavior.HUMAN_FORM_HEALTH_INCREASE);
+	}
+
+
+	/// See VampireBehavior.  Attacks are drawn
+	/// per vampire state by kind (their gains
+	/// depend on it), then victims for each
+	/// kind; vampires gain from the attacks
+	/// that found a victim.
+	private void VampireAttacks(int round, int numVampires, boolean fullMoon) {
+
+		RandomNumberGenerator rng = mContext.Rng();
+		int[] acting = mCounts[round];
+
+		// victims must appear human
+		ClearCandidates();
+		long numHumans = AddCandidates(Citizen.ECitizenType.HUMAN);
+		long numDisguised = 0;
+		if (false == fullMoon) {
+			numDisguised = AddCandidates(Citizen.ECitizenType.WEREWOLF);
+		}
+
+		SimulationMetrics metrics = mContext.Metrics();
+		if (metrics != null) {
+			metrics.VictimsSelected(numVampires, numHumans + numDisguised);
+		}
+
+		// chance a failed conversion kills
+		Arrays.fill(mHumansUpToHealth, 0);
+		for (int i = 0; i < mNumCandidates; ++i) {
+			int bits = STATES[mCandidates[i]];
+			if (CitizenBits.Type(bits) == Citizen.ECitizenType.HUMAN) {
+				mHumansUpToHealth[CitizenBits.Health(bits)] += mTotals[mCandidates[i]];
+			}
+		}
+		for (int health = 1; health <= Citizen.HEALTH_MAX; ++health) {
+			mHumansUpToHealth[health] += mHumansUpToHealth[health - 1];
+		}
+
+		double werewolfChance = 0.0;
+		if (numHumans + numDisguised > 0) {
+			werewolfChance = (double) numDisguised / (numHumans + numDisguised);
+		}
+
+		int firstVampire = FirstLivingState(Citizen.ECitizenType.VAMPIRE);
+		mNumActors = 0;
+
+		for (int state = firstVampire; state < firstVampire + LIVING_PER_TYPE; ++state) {
+			int count = acting[state];
+			if (count == 0) {
+				continue;
+			}
+
+			// no one to attack
+			if (numHumans + numDisguised == 0) {
+				Move(round, state, SETTLED, STATES[state], count);
+				continue;
+			}
+
+			int vampire = state - firstVampire;
+			mActors[mNumActors++] = vampire;
+
+			// werewolf in human form can only be hurt
+			int werewolfHits = CountSampler.Binomial(rng, count, werewolfChance);
+			Attack(WEREWOLF_HITS, vampire, werewolfHits);
+
+			int humanAttacks = count - werewolfHits;
+			int conversions = CountSampler.Share(rng, humanAttacks, NUM_OUTCOMES);
+			int kills = CountSampler.Share(rng, humanAttacks - conversions, NUM_OUTCOMES - 1);
+			int failed = humanAttacks - conversions - kills;
+			Attack(CONVERSIONS, vampire, conversions);
+			Attack(KILLS, vampire, kills);
+
+			// failed conversions by health hit
+			for (int i = 0; i < NUM_FAILED_HITS && failed > 0; ++i) {
+				int hits = failed;
+				if (i < NUM_FAILED_HITS - 1) {
+					hits = CountSampler.Share(rng, failed, NUM_FAILED_HITS - i);
+				}
+				failed -= hits;
+
+				int healthHit = VampireBehavior.FAILED_CONVERSION_MIN_HIT + i;
+				int killed = CountSampler.Binomial(rng, hits, (double) mHumansUpToHealth[healthHit] / numHumans);
+				Attack(FAILED_SURVIVED + i, vampire, hits - killed);
+				Attack(FAILED_KILLED + i, vampire, killed);
+			}
+		}
+
+		// victims, by kind in random order, so no
+		// kind is first to miss when the victims
+		// run out
+		for (int i = NUM_ATTACK_KINDS - 1; i > 0; --i) {
+			int other = rng.Generate(0, i);
+			int kind = mKindOrder[i];
+			mKindOrder[i] = mKindOrder[other];
+			mKindOrder[other] = kind;
+		}
+		for (int kind : mKindOrder) {
+			Strike(kind, round);
+		}
+
+		// vampires settle, gaining from the attacks
+		// that found a victim; the missed ones are
+		// spread over the vampires of their kind
+		for (int i = 0; i < mNumActors; ++i) {
+			int vampire = mActors[i];
+			int state = firstVampire + vampire;
+			int bits = STATES[state];
+
+			for (int kind = 0; kind < NUM_ATTACK_KINDS; ++kind) {
+				int count = mAttacks[kind][vampire];
+				if (count == 0) {
+					continue;
+				}
+				mAttacks[kind][vampire] = 0;
+
+				int missed = 0;
+				if (mMissed[kind] > 0) {
+					missed = CountSampler.Binomial(rng, mMissed[kind], (double) count / mAttackTotals[kind]);
+					missed = Math.max(missed, mMissed[kind] - (mAttackTotals[kind] - count));
+					missed = Math.min(missed, count);
+					mMissed[kind] -= missed;
+				}
+				mAttackTotals[kind] -= count;
+
+				Move(round, state, SETTLED, Gained(kind, bits), count - missed);
+				if (missed > 0) {
+					Move(round, state, SETTLED, bits, missed);
+				}
+			}
+		}
+	}
+
+
+	/// Count attacks of one kind by vampires
+	/// of one state
+	private void Attack(int kind, int vampire, int count) {
+
+		mAttacks[kind][vampire] += count;
+		mAttackTotals[kind] += count;
+	}
+
+
+	/// Vampire state after an attack of given
+	/// kind found its victim
+	private static int Gained(int kind, int bits) {
+
+		if (kind == CONVERSIONS) {
+			int converted = CitizenBits.WithHunger(bits, CitizenBits.Hunger(bits) / 2);
+			return AddHealth(converted, VampireBehavior.CONVERSION_HEALTH_INCREASE);
+		}
+		if (kind == KILLS) {
+			return AddHealth(bits, VampireBehavior.KILL_HEALTH_INCREASE);
+		}
+		if (kind == WEREWOLF_HITS) {
+			return bits;
+		}
+
+		if (kind < FAILED_KILLED) {
+			int healthHit = VampireBehavior.FAILED_CONVERSION_MIN_HIT + kind - FAILED_SURVIVED;
+			return AddHealth(bits, healthHit / VampireBehavior.HIT_POINTS_PER_HEALTH);
+		}
+
+		int healthHit = VampireBehavior.FAILED_CONVERSION_MIN_HIT + kind - FAILED_KILLED;
+		return AddHealth(bits,
+						 healthHit / VampireBehavior.HIT_POINTS_PER_HEALTH + VampireBehavior.KILL_HEALTH_INCREASE);
+	}
+
+
+	/// Strike the victims of the vampire attacks
+	/// of one kind, counting those that found none
+	private void Strike(int kind, int round) {
+
+		int numStrikes = mAttackTotals[kind];
+		int landed = 0;
+
+		if (kind == CONVERSIONS) {
+			landed = Strike(Citizen.ECitizenType.HUMAN, Citizen.HEALTH_MIN, Citizen.HEALTH_MAX, numStrikes, 0, 0,
+							round, Citizen.EKillType.VAMPIRE, Citizen.ECitizenType.VAMPIRE);
+		}
+		else if (kind == KILLS) {
+			landed = Strike(Citizen.ECitizenType.HUMAN, Citizen.HEALTH_MIN, Citizen.HEALTH_MAX, numStrikes,
+							Citizen.HEALTH_MAX, Citizen.HEALTH_MAX, round, Citizen.EKillType.VAMPIRE,
+							Citizen.ECitizenType.HUMAN);
+		}
+		else if (kind == WEREWOLF_HITS) {
+			landed = Strike(Citizen.ECitizenType.WEREWOLF, Citizen.HEALTH_MIN, Citizen.HEALTH_MAX, numStrikes,
+							VampireBehavior.WEREWOLF_MIN_HIT, VampireBehavior.WEREWOLF_MAX_HIT,
+							round, Citizen.EKillType.VAMPIRE, Citizen.ECitizenType.WEREWOLF);
+		}
+		else if (kind < FAILED_KILLED) {
+			int healthHit = VampireBehavior.FAILED_CONVERSION_MIN_HIT + kind - FAILED_SURVIVED;
+			landed = Strike(Citizen.ECitizenType.HUMAN, healthHit + 1, Citizen.HEALTH_MAX, numStrikes, healthHit,
+							healthHit, round, Citizen.EKillType.VAMPIRE, Citizen.ECitizenType.HUMAN);
+		}
+		else {
+			int healthHit = VampireBehavior.FAILED_CONVERSION_MIN_HIT + kind - FAILED_KILLED;
+			landed = Strike(Citizen.ECitizenType.HUMAN, Citizen.HEALTH_MIN, healthHit, numStrikes, healthHit, healthHit,
+							round, Citizen.EKillType.VAMPIRE, Citizen.ECitizenType.HUMAN);
+		}
+
+		mMissed[kind] = numStrikes - landed;
+	}
+
+
+	/// See WerewolfBehavior (feeding part).
+	/// Werewolves gain nothing from feeding,
+	/// so only their number matters.
+	private void WerewolfFeedings(int round, int numFeeding) {
+
+		ClearCandidates();
+		long numHumans = AddCandidates(Citizen.ECitizenType.HUMAN);
+		long numVampires = AddCandidates(Citizen.ECitizenType.VAMPIRE);
+
+		SimulationMetrics metrics = mContext.Metrics();
+		if (metrics != null) {
+			metrics.VictimsSelected(numFeeding, numHumans + numVampires);
+		}
+
+		if (numHumans + numVampires == 0) {
+			return;
+		}
+
+		int humanFeedings = CountSampler.Binomial(mContext.Rng(), numFeeding, (double) numHumans / (numHumans + numVampires));
+
+		// surviving humans become werewolves; feedings
+		// left without a human find a vampire
+		int fedOnHumans = Strike(Citizen.ECitizenType.HUMAN, Citizen.HEALTH_MIN, Citizen.HEALTH_MAX, humanFeedings,
+								 WerewolfBehavior.HUMAN_MIN_HIT, WerewolfBehavior.HUMAN_MAX_HIT,
+								 round, Citizen.EKillType.WEREWOLF, Citizen.ECitizenType.WEREWOLF);
+		Strike(Citizen.ECitizenType.VAMPIRE, Citizen.HEALTH_MIN, Citizen.HEALTH_MAX, numFeeding - fedOnHumans,
+			   WerewolfBehavior.VAMPIRE_MIN_HIT, WerewolfBehavior.VAMPIRE_MAX_HIT,
+			   round, Citizen.EKillType.WEREWOLF, Citizen.ECitizenType.VAMPIRE);
+	}
+
+
+	/// Forget the victim candidates of the
+	/// last strike phase
+	private void ClearCandidates() {
+
+		for (int i = 0; i < mNumCandidates; ++i) {
+			mIsCandidate[mCandidates[i]] = false;
+		}
+		mNumCandidates = 0;
+	}
+
+
+	/// Add occupied living states of type to the
+	/// victim candidates.  Returns the number of
+	/// citizens.  (The acting slice holds no
+	/// victims by now: its humans and werewolves
+	/// have settled, its vampires aren't prey
+	/// until they have settled too.)
+	private long AddCandidates(Citizen.ECitizenType type) {
+
+		long total = 0;
+
+		int first = FirstLivingState(type);
+
+		for (int state = first; state < first + LIVING_PER_TYPE; ++state) {
+			if (mTotals[state] > 0) {
+				AddCandidate(state);
+				total += mTotals[state];
+			}
+		}
+
+		return total;
+	}
+
+
+	private void AddCandidate(int state) {
+
+		if (false == mIsCandidate[state]) {
+			mIsCandidate[state] = true;
+			mCandidates[mNumCandidates++] = state;
+		}
+	}
+
+
+	/// Land numStrikes strikes, each on a citizen
+	/// drawn uniformly among the eligible (living
+	/// citizens of type with health in
+	/// [minHealth, maxHealth]) as they are when
+	/// it lands, each losing a uniform health hit
+	/// in [minHit, maxHit].  Victims reaching
+	/// minimum health are killed by killer, the
+	/// others become survivorType.  Returns the
+	/// number of strikes landed: all, unless the
+	/// eligible run out.
+	///
+	/// Strikes are drawn together, with
+	/// replacement: a strike finding a citizen
+	/// struck before hits it again in its new
+	/// state, or is drawn again if the citizen
+	/// is no longer eligible, as a predator
+	/// acting later would have drawn.
+	private int Strike(Citizen.ECitizenType type, int minHealth, int maxHealth, int numStrikes, int minHit, int maxHit,
+					   int round, Citizen.EKillType killer, Citizen.ECitizenType survivorType) {
+
+		RandomNumberGenerator rng = mContext.Rng();
+		int landed = 0;
+
+		// strikes drawn among all the eligible,
+		// and among the citizens struck already
+		int draws = numStrikes;
+		int repeats = 0;
+
+		while (draws + repeats > 0) {
+			int nextDraws = 0;
+			int nextRepeats = 0;
+
+			if (repeats > 0) {
+				long total = 0;
+				mNumCells = 0;
+				for (int i = 0; i < mNumStruckStates; ++i) {
+					int state = mStruckStates[i];
+					if (mStruck[state] > 0) {
+						mCellStates[mNumCells] = state;
+						mCellCounts[mNumCells] = mStruck[state];
+						++mNumCells;
+						total += mStruck[state];
+					}
+				}
+
+				// multinomial by conditional binomials
+				for (int cell = 0; cell < mNumCells && repeats > 0; ++cell) {
+					int state = mCellStates[cell];
+					int count = mCellCounts[cell];
+					int struck = CountSampler.Binomial(rng, repeats, (double) count / total);
+					total -= count;
+					repeats -= struck;
+
+					if (false == Eligible(STATES[state], type, minHealth, maxHealth)) {
+						nextDraws += struck;
+						continue;
+					}
+
+					int victims = CountSampler.Distinct(rng, struck, count);
+					StrikeState(state, victims, true, minHit, maxHit, round, killer, survivorType);
+					landed += victims;
+					nextRepeats += struck - victims;
+				}
+			}
+
+			if (draws > 0) {
+				long total = 0;
+				mNumCells = 0;
+				for (int i = 0; i < mNumCandidates; ++i) {
+					int state = mCandidates[i];
+					if (mTotals[state] > 0 && true == Eligible(STATES[state], type, minHealth, maxHealth)) {
+						mCellStates[mNumCells] = state;
+						mCellCounts[mNumCells] = mTotals[state];
+						++mNumCells;
+						total += mTotals[state];
+					}
+				}
+
+				// no one left to strike
+				if (total == 0) {
+					break;
+				}
+
+				for (int cell = 0; cell < mNumCells && draws > 0; ++cell) {
+					int state = mCellStates[cell];
+					int count = mCellCounts[cell];
+					int struck = CountSampler.Binomial(rng, draws, (double) count / total);
+					total -= count;
+					draws -= struck;
+
+					// some of the state may be struck already
+					int before = Math.min(mStruck[state], count);
+					int again = CountSampler.Binomial(rng, struck, (double) before / count);
+					int fresh = CountSampler.Distinct(rng, struck - again, count - before);
+					int hitAgain = CountSampler.Distinct(rng, again, before);
+
+					StrikeState(state, fresh, false, minHit, maxHit, round, killer, survivorType);
+					StrikeState(state, hitAgain, true, minHit, maxHit, round, killer, survivorType);
+					landed += fresh + hitAgain;
+					nextRepeats += struck - fresh - hitAgain;
+				}
+			}
+
+			draws = nextDraws;
+			repeats = nextRepeats;
+		}
+
+		for (int i = 0; i < mNumStruckStates; ++i) {
+			mStruck[mStruckStates[i]] = 0;
+			mIsStruckState[mStruckStates[i]] = false;
+		}
+		mNumStruckStates = 0;
+
+		return landed;
+	}
+
+
+	/// Living citizen of type with health in
+	/// [minHealth, maxHealth]
+	private static boolean Eligible(int bits, Citizen.ECitizenType type, int minHealth, int maxHealth) {
+
+		int health = CitizenBits.Health(bits);
+
+		return CitizenBits.Alive(bits) && CitizenBits.Type(bits) == type && health >= minHealth && health <= maxHealth;
+	}
+
+
+	/// Spread count strikes on citizens of one
+	/// state (struck before this Strike, or not)
+	/// over the pools holding them (slices after
+	/// the acting one, and the settled)
+	private void StrikeState(int state, int count, boolean again, int minHit, int maxHit,
+							 int round, Citizen.EKillType killer, Citizen.ECitizenType survivorType) {
+
+		long remaining = mTotals[state];
+
+		for (int pool = round + 1; pool <= SETTLED && count > 0; ++pool) {
+			if (pool == mNumRounds) {
+				pool = SETTLED;
+			}
+
+			int inPool = mCounts[pool][state];
+			if (inPool == 0) {
+				continue;
+			}
+
+			// (those not struck here must fit in
+			// the remaining pools)
+			remaining -= inPool;
+			int struck = count;
+			if (remaining > 0) {
+				struck = CountSampler.Binomial(mContext.Rng(), count, (double) inPool / (remaining + inPool));
+				struck = (int) Math.max(struck, count - remaining);
+				struck = Math.min(struck, inPool);
+			}
+			count -= struck;
+
+			HitAll(pool, state, struck, again, minHit, maxHit, killer, survivorType);
+		}
+	}
+
+
+	/// Hit count citizens of one state with
+	/// uniform health hits in [minHit, maxHit]
+	private void HitAll(int pool, int state, int count, boolean again, int minHit, int maxHit,
+						Citizen.EKillType killer, Citizen.ECitizenType survivorType) {
+
+		int numHits = maxHit - minHit + 1;
+
+		// few victims: draw each hit
+		if (count < numHits) {
+			for (int i = 0; i < count; ++i) {
+				Hit(pool, state, 1, again, mContext.Rng().Generate(minHit, maxHit), killer, survivorType);
+			}
+			return;
+		}
+
+		for (int i = 0; i < numHits - 1 && count > 0; ++i) {
+			int hits = CountSampler.Share(mContext.Rng(), count, numHits - i);
+			Hit(pool, state, hits, again, minHit + i, killer, survivorType);
+			count -= hits;
+		}
+		Hit(pool, state, count, again, maxHit, killer, survivorType);
+	}
+
+
+	/// Move count citizens of one state to the
+	/// state after losing healthHit health, and
+	/// count them struck in it
+	private void Hit(int pool, int state, int count, boolean again, int healthHit,
+					 Citizen.EKillType killer, Citizen.ECitizenType survivorType) {
+
+		if (count == 0) {
+			return;
+		}
+
+		int bits = STATES[state];
+		Citizen.ECitizenType type = CitizenBits.Type(bits);
+
+		int hurt = AddHealth(bits, -healthHit);
+
+		if (CitizenBits.Health(hurt) == Citizen.HEALTH_MIN) {
+			hurt = CitizenBits.WithKilledBy(hurt, killer);
+			mLivingCounts[type.ordinal()] -= count;
+			mNumLiving -= count;
+			CountKilled(killer, count);
+		}
+		else if (survivorType != type) {
+			if (type == Citizen.ECitizenType.HUMAN) {
+				hurt = CitizenBits.WithConvertedHuman(hurt);
+				CountConverted(count);
+			}
+			hurt = CitizenBits.WithType(hurt, survivorType);
+			mLivingCounts[type.ordinal()] -= count;
+			mLivingCounts[survivorType.ordinal()] += count;
+		}
+
+		Move(pool, state, pool, hurt, count);
+
+		int hurtState = STATE_INDEX[hurt];
+		if (true == again) {
+			mStruck[state] -= count;
+		}
+		if (false == mIsStruckState[hurtState]) {
+			mIsStruckState[hurtState] = true;
+			mStruckStates[mNumStruckStates++] = hurtState;
+		}
+		mStruck[hurtState] += count;
+
+		if (true == CitizenBits.Alive(hurt)) {
+			AddCandidate(hurtState);
+		}
+	}
+
+
+	/// Move citizens between pools and states
+	private void Move(int fromPool, int fromState, int toPool, int toBits, int count) {
+
+		int toState = STATE_INDEX[toBits];
+
+		mCounts[fromPool][fromState] -= count;
+		mCounts[toPool][toState] += count;
+		mTotals[fromState] -= count;
+		mTotals[toState] += count;
+
+		if (mStatistics != null) {
+			mStatistics.Transition(STATES[fromState], toBits, count);
+		}
+	}
+
+
+	private void CountKilled(Citizen.EKillType killer, int count) {
+
+		SimulationMetrics metrics = mContext.Metrics();
+		if (metrics != null) {
+			metrics.Killed(killer, count);
+		}
+	}
+
+
+	private void CountConverted(int count) {
+
+		SimulationMetrics metrics = mContext.Metrics();
+		if (metrics != null) {
+			metrics.Converted(count);
+		}
+	}
+
+
+	/// Add to health respecting bounds
+	private static int AddHealth(int bits, int delta) {
+
+		int health = CitizenBits.Health(bits) + delta;
+
+		if (health < Citizen.HEALTH_MIN) {
+			health = Citizen.HEALTH_MIN;
+		}
+		else if (health > Citizen.HEALTH_MAX) {
+			health = Citizen.HEALTH_MAX;
+		}
+
+		return CitizenBits.WithHealth(bits, health);
+	}
+
+
+	/// Add new citizens of type
+	private void Populate(int count, Citizen.ECitizenType type) {
+
+		int bits = CitizenBits.Pack(type, Citizen.HUNGER_MIN, Citizen.HEALTH_MAX,
+									Citizen.EKillType.INVALID, false);
+		int state = STATE_INDEX[bits];
+
+		mCounts[SETTLED][state] += count;
+		mTotals[state] += count;
+		mLivingCounts[type.ordinal()] += count;
+		mNumLiving += count;
+		mPopulation += count;
+	}
+
+
+	private int OccupiedStates() {
+
+		int numStates = 0;
+		for (int state = 0; state < NUM_STATES; ++state) {
+			if (mCounts[SETTLED][state] > 0) {
+				++numStates;
+			}
+		}
+
+		return numStates;
+	}
+
+
+	private void AppendStatus(StringBuilder sb, Citizen.ECitizenType type) {
+
+		for (int state = 0; state < NUM_STATES; ++state) {
+			int bits = STATES[state];
+			if (CitizenBits.Type(bits) != type) {
+				continue;
+			}
+
+			String status = Citizen.FormatStatus(type, CitizenBits.Hunger(bits), CitizenBits.Health(bits),
+												 CitizenBits.KilledBy(bits), CitizenBits.ConvertedHuman(bits));
+			for (int i = 0; i < mCounts[SETTLED][state]; ++i) {
+				sb.append(status);
+			}
+		}
+	}
+
+
+	private void WriteStatus(StatusWriter writer, Citizen.ECitizenType type) throws IOException {
+
+		for (int state = 0; state < NUM_STATES; ++state) {
+			int bits = STATES[state];
+			if (CitizenBits.Type(bits) != type) {
+				continue;
+			}
+
+			for (int i = 0; i < mCounts[SETTLED][state]; ++i) {
+				writer.Add(type, CitizenBits.Hunger(bits), CitizenBits.Health(bits),
+						   CitizenBits.KilledBy(bits), CitizenBits.ConvertedHuman(bits));
+			}
+		}
+	}
+
+
+	/// Index of first living state of type
+	private static int FirstLivingState(Citizen.ECitizenType type) {
+		return (type.ordinal() - Citizen.ECitizenType.HUMAN.ordinal()) * LIVING_PER_TYPE;
+	}
+
+
+	/// Every state a citizen can reach: living
+	/// (health above minimum) of each type in
+	/// TYPES order, then dead (health at minimum)
+	private static int[] ReachableStates() {
+
+		int numHungers = Citizen.HUNGER_MAX - Citizen.HUNGER_MIN + 1;
+		int numDead = TYPES.length * 2 * numHungers * KILLERS.length;
+
+		int[] states = new int[NUM_LIVING_STATES + numDead];
+		int next = 0;
+
+		for (Citizen.ECitizenType type : TYPES) {
+			for (int converted = 0; converted < 2; ++converted) {
+				for (int hunger = Citizen.HUNGER_MIN; hunger <= Citizen.HUNGER_MAX; ++hunger) {
+					for (int health = Citizen.HEALTH_MIN + 1; health <= Citizen.HEALTH_MAX; ++health) {
+						states[next++] = CitizenBits.Pack(type, hunger, health, Citizen.EKillType.INVALID, converted == 1);
+					}
+				}
+			}
+		}
+
+		for (Citizen.ECitizenType type : TYPES) {
+			for (int converted = 0; converted < 2; ++converted) {
+				for (int hunger = Citizen.HUNGER_MIN; hunger <= Citizen.HUNGER_MAX; ++hunger) {
+					for (Citizen.EKillType killer : KILLERS) {
+						states[next++] = CitizenBits.Pack(type, hunger, Citizen.HEALTH_MIN, killer, converted == 1);
+					}
+				}
+			}
+		}
+
+		return states;
+	}
+
+
+	private static int[] StateIndex() {
+
+		int[] index = new int[1 << 16];
+		Arrays.fill(index, -1);
+
+		for (int state = 0; state < STATES.length; ++state) {
+			index[STATES[state]] = state;
+		}
+
+		return index;
+	}
+}
@@ -11,12 +11,36 @@
 
 public class HumanBehavior implements IBehavior {
 
-	private static final int HUNGER_PER_TURN = 1;
+	static final int HUNGER_PER_TURN = 1;
+	
+	static final int STARVATION_HEALTH_COST = 5;
+	
+	private static final HumanBehavior INSTANCE = new HumanBehavior();
+	
+	/// Shared instance
+	public static HumanBehavior Inst() {
+		return INSTANCE;
+	}
+	
+	private HumanBehavior() {
+	}
+	
+	@Override
+	public void DoTurn(Citizen citizen, IVictimProvider victimProvider) {
+		
+		Act(citizen, SelectVictim(citizen, victimProvider), victimProvider);
+	}
+	
+	
+	/// Humans have no victims
+	@Override
+	public Citizen SelectVictim(Citizen citizen, IVictimProvider victimProvider) {
+		return null;
+	}
 	
-	private static final int STARVATION_HEALTH_COST = 5;
 	
 	@Override
-	public void DoTurn(Citizen citizen) {
+	public void Act(Citizen citizen, Citizen victim, IVictimProvider victimProvider) {
 		
 		if (citizen.Hunger() < Citizen.HUNGER_MAX)
 		{
@@ -30,12 +54,39 @@ public class HumanBehavior implements IBehavior {
 		// check for starvation
 		if (citizen.Health() == Citizen.HEALTH_MIN) {
 			citizen.Killed(Citizen.EKillType.HUNGER);
+			
+			IEventSink events = victimProvider.Context().Events();
+			if (events != null) {
+				events.Record(IEventSink.EEventType.STARVATION, victimProvider.Context().Clock().CurrentTurn(),
+							  citizen.Id(), citizen.Pack(), IEventSink.NONE, 0, false);
+			}
 		}
 	}
 	
 	
+	@Override
+	public boolean CanVictimize(Citizen victim, int turn) {
+		return false;
+	}
+	
+	
+	/// Only a starving turn can be fatal
+	@Override
+	public boolean UpkeepOnly(Citizen citizen, int turn) {
+		
+		return citizen.Hunger() < Citizen.HUNGER_MAX || 
+			   citizen.Health() > Citizen.HEALTH_MIN + STARVATION_HEALTH_COST;
+	}
+	
+	
+	@Override
+	public Citizen.ECitizenType GetType() {
+		return Citizen.ECitizenType.HUMAN;
+	}
+	
+	
 	/// Humans always look like humans
-	public Citizen.ECitizenType GetApparentType(Citizen citizen) {
+	public Citizen.ECitizenType GetApparentType(Citizen citizen, int turn) {
 		
 		return Citizen.ECitizenType.HUMAN;
 	}
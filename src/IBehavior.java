@@ -9,15 +9,51 @@
 //  implementing additional behaviors in
 //  the future.
 //
+//  Behaviors hold no state of their own
+//  (the village is passed in), so one
+//  shared instance per type (Inst) serves
+//  every citizen of every village and
+//  conversions allocate nothing.
+//
+//  A turn action is the choice of a victim
+//  (SelectVictim) followed by the action
+//  against it (Act), so a village can pick
+//  victims for several turns before acting
+//  them out (see Village).
+//
 //////////////////////////////////
 
 public interface IBehavior {
 	
 	/// perform turn action
-	/// return false if nothing to do
-	public void DoTurn(Citizen citizen);
+	public void DoTurn(Citizen citizen, IVictimProvider victimProvider);
+	
+	/// First part of the turn action: draw its
+	/// victim (null if it has none) from the
+	/// stream selected for the turn
+	public Citizen SelectVictim(Citizen citizen, IVictimProvider victimProvider);
+	
+	/// Rest of the turn action, against victim
+	/// from SelectVictim and continuing its
+	/// stream.  DoTurn is SelectVictim then Act.
+	public void Act(Citizen citizen, Citizen victim, IVictimProvider victimProvider);
+	
+	/// True if SelectVictim picks among citizens
+	/// such as victim on given turn
+	public boolean CanVictimize(Citizen victim, int turn);
+	
+	/// True if the turn action on given turn
+	/// only changes the citizen itself: no
+	/// victim, no random draws, no death.  Such
+	/// an action may be applied at any time
+	/// before anything else touches the citizen.
+	public boolean UpkeepOnly(Citizen citizen, int turn);
+	
+	/// Type of citizens with this behavior
+	public Citizen.ECitizenType GetType();
 	
 	/// Returns the type of citizen this person
-	/// appear to be. (Only for werewolves at this point.)
-	public Citizen.ECitizenType GetApparentType(Citizen citizen);
+	/// appear to be on given turn. (Only for 
+	/// werewolves at this point.)
+	public Citizen.ECitizenType GetApparentType(Citizen citizen, int turn);
 }
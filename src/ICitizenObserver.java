@@ -0,0 +1,32 @@
+//////////////////////////////////
+//	ICitizenObserver
+//
+//  Notified by a citizen whenever it
+//  changes in a way that affects the
+//  village census (death or change of
+//  type), and of any change of its state.
+//  Implemented by Village so living pools
+//  stay current without rescanning the
+//  population, so changed citizens can be
+//  reported without rendering everyone, and
+//  so PopulationStatistics follow every
+//  change.
+//
+//////////////////////////////////
+
+public interface ICitizenObserver {
+
+	/// Citizen has just died, having had
+	/// oldHealth before
+	public void OnKilled(Citizen citizen, int oldHealth);
+
+	/// Living citizen has just changed type
+	public void OnTypeChanged(Citizen citizen, Citizen.ECitizenType oldType);
+
+	/// Hunger, health, type or kill state of
+	/// citizen has just changed, from oldHunger
+	/// and oldHealth.  May be called from
+	/// several threads for different citizens
+	/// (see Village.DoTurn).
+	public void OnChanged(Citizen citizen, int oldHunger, int oldHealth);
+}
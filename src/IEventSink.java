@@ -0,0 +1,42 @@
+//////////////////////////////////
+//	IEventSink
+//
+//  Receives every state-changing outcome
+//  of a turn: vampire attacks, werewolf
+//  feedings, starvation, plus burials of
+//  the dead (see Village.Compact) and the
+//  end of each turn.  Implemented by
+//  EventJournal.
+//
+//  Each event carries the state of actor
+//  and victim right after it (packed as in
+//  CitizenBits), and whether the victim had
+//  already taken its own turn.  Together
+//  with the deterministic per-turn upkeep
+//  (hunger, werewolf healing) this is
+//  enough to rebuild the village at any
+//  turn (see EventReplay).
+//
+//////////////////////////////////
+
+public interface IEventSink {
+
+	public enum EEventType {
+		CONVERSION,			// vampire converted human
+		KILL,				// vampire killed human
+		FAILED_CONVERSION,	// vampire hurt (or killed) human
+		WEREWOLF_HIT,		// vampire hurt (or killed) disguised werewolf
+		FEEDING,			// werewolf hurt, converted or killed victim
+		STARVATION,			// human starved (no victim)
+		TURN_END,			// turn complete (no actor or victim)
+		BURIAL				// dead moved to graveyard (no actor or victim)
+	}
+	
+	/// No actor or victim
+	public static final int NONE = -1;
+	
+	/// Record one event.  Ids are NONE and bits
+	/// are ignored where there is no actor or victim.
+	public void Record(EEventType type, int turn, int actor, int actorBits,
+					   int victim, int victimBits, boolean victimActed);
+}
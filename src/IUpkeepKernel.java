@@ -0,0 +1,29 @@
+//////////////////////////////////
+//	IUpkeepKernel
+//
+//  Bulk upkeep of packed citizens (see
+//  CitizenBits), as deferred by
+//  PackedVillage in large turns: humans
+//  get hungrier or pay the starvation
+//  cost, werewolves in human form heal.
+//
+//  Only citizens whose upkeep cannot kill
+//  them are deferred; a kernel that finds a
+//  starvation death anyway throws
+//  IllegalStateException.
+//
+//  Implemented by ScalarUpkeep, and by
+//  VectorUpkeep where the JVM has the
+//  vector API.
+//
+//////////////////////////////////
+
+public interface IUpkeepKernel {
+
+	/// Apply upkeep to the slots of window
+	/// (count slots from slot number first, a
+	/// multiple of 64) whose bits are set in
+	/// pending (one bit per slot number, none
+	/// set past the window)
+	public void Apply(short[] window, int count, long[] pending, int first);
+}
@@ -7,11 +7,36 @@
 // to expose entire Village interface to
 // behaviors.
 //
+// Also gives behaviors access to the
+// simulation clock and random source.
+//
+// Living citizens are exposed per type,
+// and as the ones appearing human on the
+// current turn, so behaviors can pick a
+// random victim in constant time.
+//
 //////////////////////////////////
 
-import java.util.List;
-
-
 public interface IVictimProvider {
-	public List<Citizen> GetVictimPool();
+	
+	/// Clock and random source of the
+	/// simulation the victims belong to
+	public SimulationContext Context();
+	
+	/// Number of living citizens of given type
+	public int LivingCount(Citizen.ECitizenType type);
+	
+	/// Living citizen of given type by
+	/// index (0 to LivingCount(type) - 1)
+	public Citizen LivingCitizen(Citizen.ECitizenType type, int index);
+	
+	/// Number of living citizens appearing
+	/// human on the current turn (humans, and
+	/// werewolves in human form)
+	public int ApparentHumanCount();
+	
+	/// Living citizen appearing human by index
+	/// (0 to ApparentHumanCount() - 1): humans
+	/// first, then werewolves in human form
+	public Citizen ApparentHuman(int index);
 }
@@ -0,0 +1,71 @@
+//////////////////////////////////
+//	IVillage
+//
+//  Interface implemented by village
+//  storage backends.  GameManager only
+//  needs to run turns, check early
+//  termination conditions and report
+//  status, so alternative population
+//  stores (object graph, packed off-heap)
+//  can be swapped in behind it.
+//
+//////////////////////////////////
+
+import java.io.IOException;
+
+public interface IVillage {
+	
+	/// Run one turn on citizens
+	public void DoTurn();
+	
+	/// Apply up to maxTurns quiet turns (see
+	/// QuietStretch) from the current turn in
+	/// one step, stopping before any death.
+	/// Returns the number of turns applied;
+	/// the caller advances the clock.
+	public int FastForward(int maxTurns);
+	
+	/// Early termination helpers
+	public boolean AllDead();
+	
+	public boolean AllVampires();
+	
+	public boolean AllWerewolves();
+	
+	/// Number of living citizens of given type
+	public int LivingCount(Citizen.ECitizenType type);
+	
+	/// Return string of status of all citizens
+	public String GetStatus();
+	
+	/// Stream status of all citizens, grouped
+	/// by type, to writer (caller finishes it)
+	public void WriteStatus(StatusWriter writer) throws IOException;
+	
+	/// Start (or stop) recording which citizens
+	/// change, for WriteChanges.  Backends
+	/// without individual citizens throw
+	/// IllegalStateException.
+	public void TrackChanges(boolean track);
+	
+	/// Stream citizens changed since tracking
+	/// started or the previous call, by id, as
+	/// changes up to given turn, and start a
+	/// new round (caller finishes writer)
+	public void WriteChanges(StatusWriter writer, int turn) throws IOException;
+	
+	/// Report every change of state of the
+	/// population to statistics, after counting
+	/// the current population and the dead into
+	/// them (null stops reporting)
+	public void TrackStatistics(PopulationStatistics statistics);
+	
+	/// Number of citizens, living or dead
+	public int Population();
+	
+	/// Size in bytes of population snapshot
+	public long SnapshotSize();
+	
+	/// Write population snapshot (see Checkpoint)
+	public void WriteSnapshot(SnapshotFile file) throws IOException;
+}
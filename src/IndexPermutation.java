@@ -0,0 +1,115 @@
+//////////////////////////////////
+//	IndexPermutation
+//
+//  Keyed pseudo-random bijection over
+//  [0, size).  Implemented as a small
+//  Feistel network over the next even
+//  power of two with cycle walking, so
+//  a random visiting order of any number
+//  of slots can be produced lazily without
+//  storing (or shuffling) an index array.
+//
+//////////////////////////////////
+
+public class IndexPermutation {
+
+	private static final int ROUNDS = 4;
+	
+	private long mSize;
+	
+	private int mHalfBits;
+	
+	private long mHalfMask;
+	
+	private long mKey;
+	
+	
+	public IndexPermutation() {
+		Reset(1, 0);
+	}
+	
+	
+	/// Select new permutation of [0, size)
+	public void Reset(int size, long key) {
+		
+		mSize = size;
+		mKey = key;
+		
+		// smallest even number of bits covering size
+		int bits = 64 - Long.numberOfLeadingZeros(Math.max(size - 1, 1));
+		if ((bits & 1) != 0) {
+			++bits;
+		}
+		
+		mHalfBits = bits / 2;
+		mHalfMask = (1L << mHalfBits) - 1;
+	}
+	
+	
+	/// Position index maps to
+	public int Map(int index) {
+		
+		// walk cycle until back inside range
+		// (domain is at most 4x size)
+		long value = index;
+		do {
+			value = Encrypt(value);
+		} while (value >= mSize);
+		
+		return (int) value;
+	}
+	
+	
+	/// Index mapping to position (inverse of Map)
+	public int Position(int value) {
+		
+		long index = value;
+		do {
+			index = Decrypt(index);
+		} while (index >= mSize);
+		
+		return (int) index;
+	}
+	
+	
+	private long Encrypt(long value) {
+		
+		long left = value >>> mHalfBits;
+		long right = value & mHalfMask;
+		
+		for (int round = 0; round < ROUNDS; ++round) {
+			long next = left ^ (Round(right, round) & mHalfMask);
+			left = right;
+			right = next;
+		}
+		
+		return (left << mHalfBits) | right;
+	}
+	
+	
+	/// Rounds of Encrypt in reverse
+	private long Decrypt(long value) {
+		
+		long left = value >>> mHalfBits;
+		long right = value & mHalfMask;
+		
+		for (int round = ROUNDS - 1; round >= 0; --round) {
+			long previous = right ^ (Round(left, round) & mHalfMask);
+			right = left;
+			left = previous;
+		}
+		
+		return (left << mHalfBits) | right;
+	}
+	
+	
+	/// SplitMix64 finalizer over key, round and value
+	private long Round(long value, int round) {
+		
+		long z = mKey + (round + 1) * 0x9E3779B97F4A7C15L + value * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,94 @@
+//////////////////////////////////
+//	LatencyHistogram
+//
+//  Distribution of durations in power of
+//  two buckets of nanoseconds, so recording
+//  is a few instructions and a fixed array,
+//  however many values are added.  Quantiles
+//  are therefore accurate to a factor of two
+//  (reported as bucket upper bounds).
+//
+//  Not thread-safe; each histogram is
+//  filled by one thread.
+//
+//////////////////////////////////
+
+public class LatencyHistogram {
+
+	// bucket b holds durations below 2^b ns
+	private static final int NUM_BUCKETS = 64;
+
+	private long[] mBuckets;
+
+	private long mCount;
+
+	private long mTotalNanos;
+
+	private long mMaxNanos;
+
+
+	public LatencyHistogram() {
+		mBuckets = new long[NUM_BUCKETS];
+		mCount = 0;
+		mTotalNanos = 0;
+		mMaxNanos = 0;
+	}
+
+
+	/// Record one duration
+	public void Add(long nanos) {
+
+		if (nanos < 0) {
+			nanos = 0;
+		}
+
+		++mBuckets[64 - Long.numberOfLeadingZeros(nanos)];
+		++mCount;
+		mTotalNanos += nanos;
+		mMaxNanos = Math.max(mMaxNanos, nanos);
+	}
+
+
+	public long Count() {
+		return mCount;
+	}
+
+
+	public long TotalNanos() {
+		return mTotalNanos;
+	}
+
+
+	public long MaxNanos() {
+		return mMaxNanos;
+	}
+
+
+	public double MeanNanos() {
+
+		if (mCount == 0) {
+			return 0.0;
+		}
+
+		return (double) mTotalNanos / mCount;
+	}
+
+
+	/// Upper bound of the duration below which
+	/// fraction q (0 to 1) of values fall
+	public long QuantileNanos(double q) {
+
+		long rank = (long) Math.ceil(q * mCount);
+		long seen = 0;
+
+		for (int bucket = 0; bucket < NUM_BUCKETS; ++bucket) {
+			seen += mBuckets[bucket];
+			if (seen >= rank && seen > 0) {
+				// never above the largest value seen
+				return Math.min((1L << bucket) - 1, mMaxNanos);
+			}
+		}
+
+		return mMaxNanos;
+	}
+}
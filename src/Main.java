@@ -1,8 +1,95 @@
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Scanner;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class Main {
 
-	public static void main(String[] args) {
+	// larger villages report summary and sample
+	// in batch modes, and interactive mode asks
+	private static final long FULL_STATUS_LIMIT = 100000;
+	
+	private static final int STATUS_SAMPLE_SIZE = 10;
+	
+	// result cache size budget of sweeps
+	private static final long DEFAULT_CACHE_MB = 1024;
+	
+	// open connections of server mode
+	private static final int DEFAULT_MAX_CONNECTIONS = 1024;
+	
+	// samples held by series mode
+	private static final int DEFAULT_SERIES_CAPACITY = 1 << 20;
+	
+	// last argument of single game batch modes
+	// asking for a phase timing report
+	private static final String TIMINGS_FLAG = "timings";
+	
+	// named options of run mode
+	private static final String CHECKPOINT_OPTION = "checkpoint";
+	private static final String INTERVAL_OPTION = "interval";
+	private static final String JOURNAL_OPTION = "journal";
+
+	public static void main(String[] args) throws InterruptedException, IOException {
+		
+		boolean bTimings = args.length > 1 && args[args.length - 1].equals(TIMINGS_FLAG);
+		if (true == bTimings) {
+			args = Arrays.copyOf(args, args.length - 1);
+		}
+		
+		if (args.length > 0 && args[0].equals("ensemble")) {
+			RunEnsemble(args);
+			return;
+		}
+		
+		if (args.length > 0 && args[0].equals("run")) {
+			RunBatch(args, bTimings);
+			return;
+		}
+		
+		if (args.length > 0 && args[0].equals("watch")) {
+			RunWatch(args, bTimings);
+			return;
+		}
+		
+		if (args.length > 0 && args[0].equals("series")) {
+			RunSeries(args, bTimings);
+			return;
+		}
+		
+		if (args.length > 0 && args[0].equals("histogram")) {
+			RunHistogram(args, bTimings);
+			return;
+		}
+		
+		if (args.length > 0 && args[0].equals("archipelago")) {
+			RunArchipelago(args);
+			return;
+		}
+		
+		if (args.length > 0 && args[0].equals("sweep")) {
+			RunSweep(args);
+			return;
+		}
+		
+		if (args.length > 0 && args[0].equals("server")) {
+			RunServer(args);
+			return;
+		}
+		
+		if (args.length > 0 && args[0].equals("resume")) {
+			RunResume(args, bTimings);
+			return;
+		}
+		
+		if (args.length > 0 && args[0].equals("replay")) {
+			RunReplay(args);
+			return;
+		}
 		
 		System.out.println("Welcome to the village simulator!");
 		System.out.println("(Where there's nothing to eat and your neighbors are monsters.)\n");
@@ -56,7 +143,20 @@ public class Main {
 			}
 			
 			
-			gameMgr.InitializeNewGame(numHumans, numVampires, numWerewolves);
+			// listing a large village takes a while,
+			// so ask how much of it to report
+			StatusWriter.EMode statusMode = StatusWriter.EMode.FULL;
+			if ((long) numHumans + numVampires + numWerewolves >= FULL_STATUS_LIMIT) {
+				statusMode = null;
+				while (statusMode == null) {
+					System.out.println("Report every citizen (F), a summary (S), or a summary with a sample of " + 
+									   STATUS_SAMPLE_SIZE + " citizens per type (P)?");
+					statusMode = StatusModeChoice(input.next().toLowerCase());
+				}
+			}
+			
+			InitializeGame(gameMgr, numHumans, numVampires, numWerewolves);
+			gameMgr.SetStatusMode(statusMode, STATUS_SAMPLE_SIZE);
 			
 			gameMgr.Run(numTurns);
 			
@@ -69,4 +169,395 @@ public class Main {
 		
 		input.close();
 	}
+	
+	
+	/// Status mode answered (F, S or P), or
+	/// null if none
+	private static StatusWriter.EMode StatusModeChoice(String answer) {
+		
+		if (answer.startsWith("f")) {
+			return StatusWriter.EMode.FULL;
+		}
+		if (answer.startsWith("s")) {
+			return StatusWriter.EMode.SUMMARY;
+		}
+		if (answer.startsWith("p")) {
+			return StatusWriter.EMode.SAMPLED;
+		}
+		
+		return null;
+	}
+	
+	
+	/// Monte Carlo mode:
+	/// ensemble <humans> <vampires> <werewolves> <turns> 
+	///          <probability CI width> <humans CI width> [max games] [seed]
+	/// (a random seed is chosen and reported if
+	/// none is given)
+	private static void RunEnsemble(String[] args) throws InterruptedException {
+		
+		if (args.length < 7) {
+			System.out.println("Usage: ensemble <humans> <vampires> <werewolves> <turns> " +
+							   "<probability CI width> <humans CI width> [max games] [seed]");
+			return;
+		}
+		
+		int numHumans = Integer.parseInt(args[1]);
+		int numVampires = Integer.parseInt(args[2]);
+		int numWerewolves = Integer.parseInt(args[3]);
+		int numTurns = Integer.parseInt(args[4]);
+		double probabilityWidth = Double.parseDouble(args[5]);
+		double humansWidth = Double.parseDouble(args[6]);
+		int maxGames = Integer.MAX_VALUE;
+		if (args.length > 7) {
+			maxGames = Integer.parseInt(args[7]);
+		}
+		long seed = ThreadLocalRandom.current().nextLong();
+		if (args.length > 8) {
+			seed = Long.parseLong(args[8]);
+		}
+		
+		System.out.println("Seed: " + seed);
+		
+		EnsembleRunner runner = new EnsembleRunner(numHumans, numVampires, numWerewolves, numTurns, seed);
+		EnsembleStatistics stats = runner.Run(probabilityWidth, humansWidth, maxGames);
+		
+		EnsembleRunner.Report(stats);
+	}
+	
+	
+	/// Non-interactive mode:
+	/// run <humans> <vampires> <werewolves> <turns> 
+	///     [checkpoint=<file> interval=<turns>] [journal=<file>] [timings]
+	/// (options in any order; a checkpoint needs
+	/// both file and interval)
+	private static void RunBatch(String[] args, boolean bTimings) {
+		
+		String checkpoint = Option(args, 5, CHECKPOINT_OPTION);
+		String interval = Option(args, 5, INTERVAL_OPTION);
+		String journal = Option(args, 5, JOURNAL_OPTION);
+		
+		int numOptions = (checkpoint != null ? 1 : 0) + (interval != null ? 1 : 0) + (journal != null ? 1 : 0);
+		
+		if (args.length < 5 || args.length > 5 + numOptions || (checkpoint == null) != (interval == null)) {
+			System.out.println("Usage: run <humans> <vampires> <werewolves> <turns> " +
+							   "[checkpoint=<file> interval=<turns>] [journal=<file>] [timings]");
+			return;
+		}
+		
+		GameManager gameMgr = NewGameManager(bTimings);
+		
+		if (journal != null) {
+			gameMgr.SetJournal(Paths.get(journal));
+		}
+		
+		InitializeGame(gameMgr, Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+		
+		if (checkpoint != null) {
+			gameMgr.SetCheckpoint(Paths.get(checkpoint), Integer.parseInt(interval));
+		}
+		
+		gameMgr.Run(Integer.parseInt(args[4]));
+	}
+	
+	
+	/// Value of named option (<name>=<value>)
+	/// among args from first on, or null if
+	/// not given
+	private static String Option(String[] args, int first, String name) {
+		
+		String prefix = name + "=";
+		for (int i = first; i < args.length; ++i) {
+			if (args[i].startsWith(prefix)) {
+				return args[i].substring(prefix.length());
+			}
+		}
+		
+		return null;
+	}
+	
+	
+	/// Non-interactive mode reporting the
+	/// citizens changed by each turn, by id:
+	/// watch <humans> <vampires> <werewolves> <turns> [changes file] [timings]
+	/// (changes go to standard output if no
+	/// file is given, before the final status)
+	private static void RunWatch(String[] args, boolean bTimings) throws IOException {
+		
+		if (args.length < 5) {
+			System.out.println("Usage: watch <humans> <vampires> <werewolves> <turns> [changes file] [timings]");
+			return;
+		}
+		
+		GameManager gameMgr = NewGameManager(bTimings);
+		InitializeGame(gameMgr, Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+		
+		if (args.length > 5) {
+			try (FileChannel changes = FileChannel.open(Paths.get(args[5]), StandardOpenOption.CREATE, 
+														StandardOpenOption.WRITE, 
+														StandardOpenOption.TRUNCATE_EXISTING)) {
+				gameMgr.SetChangeOutput(changes);
+				gameMgr.Run(Integer.parseInt(args[4]));
+			}
+		}
+		else {
+			gameMgr.SetChangeOutput(Channels.newChannel(System.out));
+			gameMgr.Run(Integer.parseInt(args[4]));
+		}
+	}
+	
+	
+	/// Non-interactive mode recording how the
+	/// population evolves (see PopulationRecorder):
+	/// series <humans> <vampires> <werewolves> <turns> <series file>
+	///        [interval] [capacity] [timings]
+	/// (one sample every interval turns, the
+	/// last capacity samples kept)
+	private static void RunSeries(String[] args, boolean bTimings) throws IOException {
+		
+		if (args.length < 6) {
+			System.out.println("Usage: series <humans> <vampires> <werewolves> <turns> <series file> " +
+							   "[interval] [capacity] [timings]");
+			return;
+		}
+		
+		int interval = 1;
+		if (args.length > 6) {
+			interval = Integer.parseInt(args[6]);
+		}
+		
+		int capacity = DEFAULT_SERIES_CAPACITY;
+		if (args.length > 7) {
+			capacity = Integer.parseInt(args[7]);
+		}
+		
+		PopulationRecorder recorder = new PopulationRecorder(capacity, interval);
+		
+		GameManager gameMgr = NewGameManager(bTimings);
+		gameMgr.SetRecorder(recorder);
+		InitializeGame(gameMgr, Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+		
+		gameMgr.Run(Integer.parseInt(args[4]));
+		
+		recorder.WriteCsv(Paths.get(args[5]));
+	}
+	
+	
+	/// Non-interactive mode with state counts
+	/// instead of individual citizens (see
+	/// HistogramVillage):
+	/// histogram <humans> <vampires> <werewolves> <turns> 
+	///           [checkpoint file] [checkpoint interval] [timings]
+	private static void RunHistogram(String[] args, boolean bTimings) {
+		
+		if (args.length < 5) {
+			System.out.println("Usage: histogram <humans> <vampires> <werewolves> <turns> " +
+							   "[checkpoint file] [checkpoint interval] [timings]");
+			return;
+		}
+		
+		int numHumans = Integer.parseInt(args[1]);
+		int numVampires = Integer.parseInt(args[2]);
+		int numWerewolves = Integer.parseInt(args[3]);
+		
+		GameManager gameMgr = NewGameManager(bTimings);
+		SetStatusMode(gameMgr, (long) numHumans + numVampires + numWerewolves);
+		gameMgr.InitializeNewGame(numHumans, numVampires, numWerewolves, GameManager.EStorageType.HISTOGRAM);
+		
+		if (args.length > 6) {
+			gameMgr.SetCheckpoint(Paths.get(args[5]), Integer.parseInt(args[6]));
+		}
+		
+		gameMgr.Run(Integer.parseInt(args[4]));
+	}
+	
+	
+	/// Region of villages exchanging citizens
+	/// (see Archipelago):
+	/// archipelago <villages> <humans> <vampires> <werewolves> <turns>
+	///             <migration probability> [seed]
+	/// (populations are per village)
+	private static void RunArchipelago(String[] args) throws InterruptedException {
+		
+		if (args.length < 7) {
+			System.out.println("Usage: archipelago <villages> <humans> <vampires> <werewolves> <turns> " +
+							   "<migration probability> [seed]");
+			return;
+		}
+		
+		long seed = ThreadLocalRandom.current().nextLong();
+		if (args.length > 7) {
+			seed = Long.parseLong(args[7]);
+		}
+		
+		Archipelago region = new Archipelago(Integer.parseInt(args[1]), Integer.parseInt(args[2]), 
+											 Integer.parseInt(args[3]), Integer.parseInt(args[4]), 
+											 Double.parseDouble(args[6]), seed);
+		region.Simulate(Integer.parseInt(args[5]));
+		region.Report();
+	}
+	
+	
+	/// Headless grid of games (see ParameterSweep):
+	/// sweep <humans> <vampires> <werewolves> <turns> <seeds> <result file>
+	///       [cache directory] [cache MB]
+	/// each a list of values and ranges, e.g. 100,1000:5000:1000
+	private static void RunSweep(String[] args) throws InterruptedException, IOException {
+		
+		if (args.length < 7) {
+			System.out.println("Usage: sweep <humans> <vampires> <werewolves> <turns> <seeds> <result file> " +
+							   "[cache directory] [cache MB]");
+			System.out.println("  (values as lists and ranges, e.g. 100,1000:5000:1000)");
+			return;
+		}
+		
+		ParameterSweep sweep = new ParameterSweep(ParameterSweep.ParseValues(args[1]), 
+												  ParameterSweep.ParseValues(args[2]),
+												  ParameterSweep.ParseValues(args[3]), 
+												  ParameterSweep.ParseValues(args[4]),
+												  ParameterSweep.ParseValues(args[5]));
+		
+		ResultCache cache = null;
+		if (args.length > 7) {
+			long budget = DEFAULT_CACHE_MB;
+			if (args.length > 8) {
+				budget = Long.parseLong(args[8]);
+			}
+			cache = new ResultCache(Paths.get(args[7]), budget << 20);
+			sweep.SetCache(cache);
+		}
+		
+		long start = System.nanoTime();
+		try (SweepWriter writer = new SweepWriter(Paths.get(args[6]))) {
+			sweep.Run(writer);
+		}
+		
+		System.out.println(String.format("Games run: %d in %.1f s", sweep.NumRuns(), 
+										 (System.nanoTime() - start) / 1e9));
+		
+		if (cache != null) {
+			System.out.println(String.format("Cache hits: %d   extended: %d   misses: %d", cache.Hits(),
+											 cache.Extensions(), cache.Misses()));
+		}
+	}
+	
+	
+	/// Serve simulation jobs on a local socket
+	/// (see SimulationServer):
+	/// server <port | socket path> [max jobs] [max connections]
+	private static void RunServer(String[] args) throws InterruptedException, IOException {
+		
+		if (args.length < 2) {
+			System.out.println("Usage: server <port | socket path> [max jobs] [max connections]");
+			return;
+		}
+		
+		int maxJobs = Runtime.getRuntime().availableProcessors();
+		if (args.length > 2) {
+			maxJobs = Integer.parseInt(args[2]);
+		}
+		
+		int maxConnections = DEFAULT_MAX_CONNECTIONS;
+		if (args.length > 3) {
+			maxConnections = Integer.parseInt(args[3]);
+		}
+		
+		try (SimulationServer server = new SimulationServer(SimulationServer.Address(args[1]), 
+															maxJobs, maxConnections)) {
+			System.out.println("Serving on " + server.LocalAddress());
+			server.Serve();
+		}
+	}
+	
+	
+	/// Continue saved game:
+	/// resume <checkpoint file> <turns> [checkpoint interval] [timings]
+	/// (turns counts from the start of the game)
+	private static void RunResume(String[] args, boolean bTimings) throws IOException {
+		
+		if (args.length < 3) {
+			System.out.println("Usage: resume <checkpoint file> <turns> [checkpoint interval] [timings]");
+			return;
+		}
+		
+		Path path = Paths.get(args[1]);
+		
+		GameManager gameMgr = NewGameManager(bTimings);
+		gameMgr.Resume(path);
+		SetStatusMode(gameMgr, gameMgr.Population());
+		
+		if (args.length > 3) {
+			gameMgr.SetCheckpoint(path, Integer.parseInt(args[3]));
+		}
+		
+		gameMgr.Run(Integer.parseInt(args[2]));
+	}
+	
+	
+	/// Village state rebuilt from event journal:
+	/// replay <journal file> <turn>
+	private static void RunReplay(String[] args) throws IOException {
+		
+		if (args.length < 3) {
+			System.out.println("Usage: replay <journal file> <turn>");
+			return;
+		}
+		
+		try (EventReplay replay = new EventReplay(Paths.get(args[1]))) {
+			replay.AdvanceTo(Integer.parseInt(args[2]));
+			
+			System.out.println("Replayed turns: " + String.valueOf(replay.Turn()));
+			
+			StatusWriter writer = null;
+			if (replay.Population() >= FULL_STATUS_LIMIT) {
+				System.out.println(StatusWriter.Describe(StatusWriter.EMode.SAMPLED, STATUS_SAMPLE_SIZE));
+				writer = new StatusWriter(Channels.newChannel(System.out), StatusWriter.EMode.SAMPLED, 
+										  STATUS_SAMPLE_SIZE, 0);
+			}
+			else {
+				writer = new StatusWriter(Channels.newChannel(System.out));
+			}
+			replay.WriteStatus(writer);
+			writer.Finish();
+			System.out.flush();
+		}
+	}
+	
+	
+	/// Game manager of a batch mode, reporting
+	/// phase timings on standard error if asked
+	private static GameManager NewGameManager(boolean bTimings) {
+		
+		GameManager gameMgr = new GameManager();
+		if (true == bTimings) {
+			gameMgr.SetTimingReport(System.err);
+		}
+		
+		return gameMgr;
+	}
+	
+	
+	/// Set up new game with storage and status
+	/// detail suited to population size
+	static void InitializeGame(GameManager gameMgr, int numHumans, int numVampires, int numWerewolves) {
+		
+		long population = (long) numHumans + numVampires + numWerewolves;
+		
+		SetStatusMode(gameMgr, population);
+		
+		gameMgr.InitializeNewGame(numHumans, numVampires, numWerewolves, 
+								  GameManager.RecommendedStorage(population));
+	}
+	
+	
+	private static void SetStatusMode(GameManager gameMgr, long population) {
+		
+		// listing every citizen is only useful for small villages
+		if (population >= FULL_STATUS_LIMIT) {
+			gameMgr.SetStatusMode(StatusWriter.EMode.SAMPLED, STATUS_SAMPLE_SIZE);
+		}
+		else {
+			gameMgr.SetStatusMode(StatusWriter.EMode.FULL, 0);
+		}
+	}
 }
@@ -0,0 +1,96 @@
+//////////////////////////////////
+//	MigrationQueue
+//
+//  Bounded queue of packed citizen states
+//  (see CitizenBits) handed from the worker
+//  thread of one village to the worker of a
+//  neighbouring one (see Archipelago).
+//
+//  Single producer, single consumer and
+//  lock free: each side owns one index and
+//  publishes it with an ordered write, so
+//  neither side ever waits for the other.
+//  A full queue refuses further citizens
+//  instead of growing.
+//
+//////////////////////////////////
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class MigrationQueue {
+
+	/// Returned by Poll when queue is empty
+	public static final int EMPTY = -1;
+
+	private int[] mSlots;
+
+	private int mMask;
+
+	// next slot to read (written by consumer only)
+	private AtomicLong mHead;
+
+	// next slot to write (written by producer only)
+	private AtomicLong mTail;
+
+	// producer's last view of head, so a
+	// non-full queue is checked without
+	// reading the consumer's index
+	private long mCachedHead;
+
+
+	/// Queue holding at least capacity citizens
+	public MigrationQueue(int capacity) {
+
+		// power of two, so slots wrap with a mask
+		int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+
+		mSlots = new int[size];
+		mMask = size - 1;
+		mHead = new AtomicLong(0);
+		mTail = new AtomicLong(0);
+		mCachedHead = 0;
+	}
+
+
+	/// Add citizen state (producer only).
+	/// Returns false if queue is full.
+	public boolean Offer(int bits) {
+
+		long tail = mTail.get();
+
+		if (tail - mCachedHead == mSlots.length) {
+			mCachedHead = mHead.get();
+			if (tail - mCachedHead == mSlots.length) {
+				return false;
+			}
+		}
+
+		mSlots[(int) tail & mMask] = bits;
+		mTail.lazySet(tail + 1);
+
+		return true;
+	}
+
+
+	/// Remove oldest citizen state (consumer
+	/// only), EMPTY if there is none
+	public int Poll() {
+
+		long head = mHead.get();
+
+		if (head == mTail.get()) {
+			return EMPTY;
+		}
+
+		int bits = mSlots[(int) head & mMask];
+		mHead.lazySet(head + 1);
+
+		return bits;
+	}
+
+
+	/// Number of citizens that fit
+	public int Capacity() {
+		return mSlots.length;
+	}
+}
@@ -0,0 +1,921 @@
+//////////////////////////////////
+//	PackedVillage
+//
+//  Village storage backend for very large
+//  populations.  Each citizen is packed
+//  into 16 bits (see CitizenBits) and
+//  stored in direct (off-heap) buffers, so
+//  there are no per-citizen objects for the
+//  garbage collector to trace.  A billion
+//  citizens need about 2 GB of direct
+//  memory (-XX:MaxDirectMemorySize).
+//
+//  Turn semantics match Village and the
+//  behavior classes:
+//  - Every slot, living or dead, is visited
+//    once per turn in random order
+//    (IndexPermutation keyed per turn).
+//  - Victims are chosen uniformly from the
+//    living citizens of the eligible types.
+//    Per-type counts of living citizens per
+//    block of slots (BlockCounter) locate
+//    the chosen victim without a full scan.
+//
+//  In large villages the plain upkeep of
+//  humans and of werewolves in human form
+//  is deferred while walking the turn order
+//  and then applied in bulk, window by
+//  window, with the best IUpkeepKernel
+//  available.  Only upkeep that cannot kill
+//  is deferred, and a citizen chosen as a
+//  victim gets its pending upkeep first, so
+//  results are the same as upkeep in turn
+//  order.
+//
+//  Slot numbers serve as citizen ids.  While
+//  changes are tracked, every store that
+//  alters a slot lists it once per round
+//  (see IVillage.TrackChanges).  While
+//  statistics are tracked, every store
+//  reports the transition from the slot's
+//  old state.
+//
+//////////////////////////////////
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+public class PackedVillage implements IVillage {
+
+	// citizens per direct buffer
+	private static final int CHUNK_SHIFT = 26;
+	private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+	// citizens per victim search block
+	private static final int BLOCK_SHIFT = 6;
+	private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+	// smallest village with bulk upkeep
+	private static final int BULK_UPKEEP_THRESHOLD = 1 << 16;
+
+	// slots per bulk upkeep step (multiple of
+	// 64 dividing the chunk size)
+	private static final int UPKEEP_WINDOW = 1 << 12;
+
+	private static final IUpkeepKernel UPKEEP = ScalarUpkeep.Best();
+
+	private static final int NUM_TYPES = Citizen.ECitizenType.values().length;
+
+	// byte order flags of snapshot slots
+	private static final int SNAPSHOT_BIG_ENDIAN = 0;
+	private static final int SNAPSHOT_LITTLE_ENDIAN = 1;
+
+	// Clock and random source
+	private SimulationContext mContext;
+
+	// Packed citizen states, and the same as
+	// shorts for bulk copies
+	private ByteBuffer[] mChunks;
+	private ShortBuffer[] mShortChunks;
+
+	// Total number of slots
+	private int mSize;
+
+	// Living citizens by type ordinal
+	private int[] mLivingCounts;
+
+	private int mNumLiving;
+
+	// Living citizens per block by type ordinal
+	private BlockCounter[] mLivingBlocks;
+
+	// Turn order
+	private IndexPermutation mTurnOrder;
+
+	// Position of acting citizen in turn order
+	private int mTurnPosition;
+
+	// Werewolves in werewolf form this turn
+	// (otherwise they appear human), taken
+	// once per turn
+	private boolean mFullMoon;
+
+	// Slots changed in current round, each
+	// once, and a bit per slot marking them
+	// (null if changes are not tracked)
+	private int[] mChangedSlots;
+	private int mNumChanged;
+	private long[] mChangedFlags;
+
+	// Aggregates of the living (null if not
+	// tracked)
+	private PopulationStatistics mStatistics;
+
+	// Bit per slot with upkeep deferred this
+	// turn, and window copied for the kernel
+	// (null below BULK_UPKEEP_THRESHOLD)
+	private long[] mPending;
+	private short[] mUpkeepWindow;
+
+
+	/// Initialize village population
+	public PackedVillage(SimulationContext context, int numHumans, int numVampires, int numWerewolves) {
+
+		this(context, (long) numHumans + numVampires + numWerewolves);
+
+		int slot = 0;
+		slot = Populate(slot, numHumans, Citizen.ECitizenType.HUMAN);
+		slot = Populate(slot, numVampires, Citizen.ECitizenType.VAMPIRE);
+		slot = Populate(slot, numWerewolves, Citizen.ECitizenType.WEREWOLF);
+	}
+
+
+	/// Empty (all unused) slots for population
+	private PackedVillage(SimulationContext context, long total) {
+
+		mContext = context;
+
+		if (total > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Population too large: " + total);
+		}
+
+		mSize = (int) total;
+
+		int numChunks = (int) ((total + CHUNK_MASK) >>> CHUNK_SHIFT);
+		mChunks = new ByteBuffer[numChunks];
+		mShortChunks = new ShortBuffer[numChunks];
+		for (int chunk = 0; chunk < numChunks; ++chunk) {
+			long first = (long) chunk << CHUNK_SHIFT;
+			int length = (int) Math.min(total - first, 1L << CHUNK_SHIFT);
+			mChunks[chunk] = ByteBuffer.allocateDirect(length * 2).order(ByteOrder.nativeOrder());
+			mShortChunks[chunk] = mChunks[chunk].asShortBuffer();
+		}
+
+		int numBlocks = (mSize + BLOCK_SIZE - 1) >>> BLOCK_SHIFT;
+		mLivingCounts = new int[NUM_TYPES];
+		mLivingBlocks = new BlockCounter[NUM_TYPES];
+		mLivingBlocks[Citizen.ECitizenType.HUMAN.ordinal()] = new BlockCounter(numBlocks);
+		mLivingBlocks[Citizen.ECitizenType.VAMPIRE.ordinal()] = new BlockCounter(numBlocks);
+		mLivingBlocks[Citizen.ECitizenType.WEREWOLF.ordinal()] = new BlockCounter(numBlocks);
+		mNumLiving = 0;
+
+		mTurnOrder = new IndexPermutation();
+		mFullMoon = false;
+
+		mChangedSlots = null;
+		mNumChanged = 0;
+		mChangedFlags = null;
+
+		mStatistics = null;
+
+		mPending = null;
+		mUpkeepWindow = null;
+		if (mSize >= BULK_UPKEEP_THRESHOLD) {
+			mPending = new long[(mSize + Long.SIZE - 1) / Long.SIZE];
+			mUpkeepWindow = new short[UPKEEP_WINDOW];
+		}
+	}
+
+
+	/// Restore village from snapshot written by
+	/// WriteSnapshot.  Census and search blocks
+	/// are rebuilt from the restored slots.
+	public static PackedVillage Restore(SimulationContext context, SnapshotFile file, int population) throws IOException {
+
+		PackedVillage village = new PackedVillage(context, population);
+
+		boolean swap = (file.GetInt() == SNAPSHOT_LITTLE_ENDIAN) != (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN);
+
+		for (ByteBuffer chunk : village.mChunks) {
+			file.GetBytes(chunk);
+
+			if (true == swap) {
+				for (int offset = 0; offset < chunk.capacity(); offset += Short.BYTES) {
+					chunk.putShort(offset, Short.reverseBytes(chunk.getShort(offset)));
+				}
+			}
+		}
+
+		for (int slot = 0; slot < village.mSize; ++slot) {
+			int bits = village.Get(slot);
+
+			if (CitizenBits.Alive(bits)) {
+				Citizen.ECitizenType type = CitizenBits.Type(bits);
+				++village.mLivingCounts[type.ordinal()];
+				++village.mNumLiving;
+				village.mLivingBlocks[type.ordinal()].Add(slot >>> BLOCK_SHIFT, 1);
+			}
+		}
+
+		return village;
+	}
+
+
+	/// Run one turn on citizens
+	public void DoTurn() {
+
+		int turn = mContext.Clock().CurrentTurn();
+
+		// new random order each turn
+		mContext.Rng().Begin(turn, RandomNumberGenerator.VILLAGE_STREAM);
+		mTurnOrder.Reset(mSize, mContext.Rng().GenerateKey());
+
+		// tracked changes need stores in turn order
+		boolean bulk = mPending != null && mChangedSlots == null;
+		mFullMoon = WerewolfBehavior.IsFullMoon(turn);
+
+		// slot is citizen id
+		for (int i = 0; i < mSize; ++i) {
+			int slot = mTurnOrder.Map(i);
+
+			if (true == bulk && true == Deferrable(Get(slot), mFullMoon)) {
+				mPending[slot / Long.SIZE] |= 1L << slot;
+				continue;
+			}
+
+			mTurnPosition = i;
+			mContext.Rng().Begin(turn, slot);
+			Act(slot);
+		}
+
+		if (true == bulk) {
+			CompleteDeferred();
+		}
+	}
+
+
+	/// Apply quiet turns in closed form
+	public int FastForward(int maxTurns) {
+
+		int turn = mContext.Clock().CurrentTurn();
+
+		int turns = QuietStretch.Length(turn, maxTurns, LivingCount(Citizen.ECitizenType.HUMAN),
+										LivingCount(Citizen.ECitizenType.VAMPIRE),
+										LivingCount(Citizen.ECitizenType.WEREWOLF));
+
+		// stop before the first starvation
+		if (LivingCount(Citizen.ECitizenType.HUMAN) > 0) {
+			for (int slot = 0; slot < mSize && turns > 0; ++slot) {
+				int bits = Get(slot);
+				if (CitizenBits.Alive(bits) && CitizenBits.Type(bits) == Citizen.ECitizenType.HUMAN) {
+					int starvation = QuietStretch.TurnsToStarvation(CitizenBits.Hunger(bits), CitizenBits.Health(bits));
+					turns = Math.min(turns, starvation - 1);
+				}
+			}
+		}
+
+		if (turns <= 0) {
+			return 0;
+		}
+
+		// vampires have nothing to do
+		for (int slot = 0; slot < mSize; ++slot) {
+			int bits = Get(slot);
+
+			if (false == CitizenBits.Alive(bits)) {
+				continue;
+			}
+
+			int hunger = CitizenBits.Hunger(bits);
+			int health = CitizenBits.Health(bits);
+
+			switch (CitizenBits.Type(bits)) {
+			case HUMAN:
+				bits = CitizenBits.WithHealth(bits, QuietStretch.HumanHealth(hunger, health, turns));
+				Put(slot, CitizenBits.WithHunger(bits, QuietStretch.HumanHunger(hunger, turns)));
+				break;
+
+			case WEREWOLF:
+				Put(slot, CitizenBits.WithHealth(bits, QuietStretch.WerewolfHealth(health, turn, turns)));
+				break;
+
+			case VAMPIRE:
+			case INVALID:
+				break;
+			}
+		}
+
+		return turns;
+	}
+
+
+	/// Helper method for checking
+	/// early termination conditions.
+	public boolean AllDead() {
+		return mNumLiving == 0;
+	}
+
+
+	/// Helper method for checking
+	/// early termination conditions.
+	public boolean AllVampires() {
+		return LivingCount(Citizen.ECitizenType.VAMPIRE) == mNumLiving;
+	}
+
+
+	/// Helper method for checking
+	/// early termination conditions.
+	public boolean AllWerewolves() {
+		return LivingCount(Citizen.ECitizenType.WEREWOLF) == mNumLiving;
+	}
+
+
+	public int LivingCount(Citizen.ECitizenType type) {
+		return mLivingCounts[type.ordinal()];
+	}
+
+
+	/// Return string of status of all citizens
+	public String GetStatus() {
+
+		// grouped by type like Village
+		StringBuilder sb = new StringBuilder();
+		AppendStatus(sb, Citizen.ECitizenType.HUMAN);
+		AppendStatus(sb, Citizen.ECitizenType.VAMPIRE);
+		AppendStatus(sb, Citizen.ECitizenType.WEREWOLF);
+
+		return sb.toString();
+	}
+
+
+	/// Stream status of all citizens to writer
+	public void WriteStatus(StatusWriter writer) throws IOException {
+
+		// grouped by type like Village
+		WriteStatus(writer, Citizen.ECitizenType.HUMAN);
+		WriteStatus(writer, Citizen.ECitizenType.VAMPIRE);
+		WriteStatus(writer, Citizen.ECitizenType.WEREWOLF);
+	}
+
+
+	/// Record changed slots from now on
+	public void TrackChanges(boolean track) {
+
+		mNumChanged = 0;
+
+		if (true == track) {
+			mChangedSlots = new int[Math.min(mSize, BLOCK_SIZE)];
+			mChangedFlags = new long[(mSize + Long.SIZE - 1) / Long.SIZE];
+		}
+		else {
+			mChangedSlots = null;
+			mChangedFlags = null;
+		}
+	}
+
+
+	/// Stream changed slots in slot order
+	public void WriteChanges(StatusWriter writer, int turn) throws IOException {
+
+		if (mChangedSlots == null) {
+			return;
+		}
+
+		Arrays.sort(mChangedSlots, 0, mNumChanged);
+
+		writer.AddChanges(turn, mNumChanged);
+		for (int i = 0; i < mNumChanged; ++i) {
+			int slot = mChangedSlots[i];
+			int bits = Get(slot);
+			mChangedFlags[slot / Long.SIZE] &= ~(1L << slot);
+
+			writer.AddChanged(slot, CitizenBits.Type(bits), CitizenBits.Hunger(bits), CitizenBits.Health(bits),
+							  CitizenBits.KilledBy(bits), CitizenBits.ConvertedHuman(bits));
+		}
+
+		mNumChanged = 0;
+	}
+
+
+	/// Keep statistics of the population
+	/// current from now on
+	public void TrackStatistics(PopulationStatistics statistics) {
+
+		mStatistics = statistics;
+		if (statistics == null) {
+			return;
+		}
+
+		statistics.Reset();
+
+		for (int slot = 0; slot < mSize; ++slot) {
+			int bits = Get(slot);
+			if (CitizenBits.Alive(bits)) {
+				statistics.Add(CitizenBits.Hunger(bits), CitizenBits.Health(bits), 1);
+			}
+			else {
+				statistics.Dead(CitizenBits.KilledBy(bits), 1);
+			}
+		}
+	}
+
+
+	/// Number of citizens, living or dead
+	public int Population() {
+		return mSize;
+	}
+
+
+	/// Snapshot layout: byte order flag, then
+	/// the raw slots in native byte order
+	public long SnapshotSize() {
+		return Integer.BYTES + (long) mSize * Short.BYTES;
+	}
+
+
+	/// Write population snapshot
+	public void WriteSnapshot(SnapshotFile file) throws IOException {
+
+		file.PutInt(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? SNAPSHOT_LITTLE_ENDIAN : SNAPSHOT_BIG_ENDIAN);
+
+		for (ByteBuffer chunk : mChunks) {
+			file.PutBytes(chunk.duplicate().clear());
+		}
+	}
+
+
+	/// Perform turn action of citizen in slot
+	private void Act(int slot) {
+
+		int bits = Get(slot);
+
+		// dead citizens take no actions
+		if (false == CitizenBits.Alive(bits)) {
+			return;
+		}
+
+		switch (CitizenBits.Type(bits)) {
+		case HUMAN:
+			HumanTurn(slot, bits);
+			break;
+
+		case VAMPIRE:
+			VampireTurn(slot, bits);
+			break;
+
+		case WEREWOLF:
+			WerewolfTurn(slot, bits);
+			break;
+
+		case INVALID:
+			break;
+		}
+	}
+
+
+	/// True if the whole turn of a citizen is
+	/// upkeep that cannot kill it
+	private static boolean Deferrable(int bits, boolean fullMoon) {
+
+		if (false == CitizenBits.Alive(bits)) {
+			return false;
+		}
+
+		switch (CitizenBits.Type(bits)) {
+		case HUMAN:
+			return CitizenBits.Hunger(bits) < Citizen.HUNGER_MAX ||
+				   CitizenBits.Health(bits) > Citizen.HEALTH_MIN + HumanBehavior.STARVATION_HEALTH_COST;
+
+		case WEREWOLF:
+			return false == fullMoon;
+
+		case VAMPIRE:
+		case INVALID:
+			return false;
+		}
+
+		return false;
+	}
+
+
+	/// Apply all upkeep deferred this turn
+	private void CompleteDeferred() {
+
+		int wordsPerWindow = UPKEEP_WINDOW / Long.SIZE;
+
+		for (int first = 0; first < mSize; first += UPKEEP_WINDOW) {
+			int firstWord = first / Long.SIZE;
+			int count = Math.min(UPKEEP_WINDOW, mSize - first);
+			int numWords = (count + Long.SIZE - 1) / Long.SIZE;
+
+			boolean any = false;
+			for (int w = firstWord; w < firstWord + numWords && false == any; ++w) {
+				any = mPending[w] != 0;
+			}
+			if (false == any) {
+				continue;
+			}
+
+			ShortBuffer chunk = mShortChunks[first >>> CHUNK_SHIFT];
+			int offset = first & CHUNK_MASK;
+
+			chunk.get(offset, mUpkeepWindow, 0, count);
+			if (mStatistics != null) {
+				CountUpkeep(first, count);
+			}
+			UPKEEP.Apply(mUpkeepWindow, count, mPending, first);
+			chunk.put(offset, mUpkeepWindow, 0, count);
+
+			Arrays.fill(mPending, firstWord, Math.min(firstWord + wordsPerWindow, mPending.length), 0);
+		}
+	}
+
+
+	/// Report deferred upkeep of the window
+	/// starting at slot first to statistics
+	private void CountUpkeep(int first, int count) {
+
+		for (int i = 0; i < count; ++i) {
+			if ((mPending[(first + i) / Long.SIZE] & (1L << (first + i))) != 0) {
+				int bits = mUpkeepWindow[i] & 0xFFFF;
+				mStatistics.Transition(bits, ScalarUpkeep.Upkeep(bits), 1);
+			}
+		}
+	}
+
+
+	/// Apply deferred upkeep of slot now, before
+	/// anything else happens to it
+	private void CompletePending(int slot) {
+
+		if (mPending == null) {
+			return;
+		}
+
+		long flag = 1L << slot;
+		if ((mPending[slot / Long.SIZE] & flag) != 0) {
+			mPending[slot / Long.SIZE] &= ~flag;
+			Put(slot, ScalarUpkeep.Upkeep(Get(slot)));
+		}
+	}
+
+
+	/// See HumanBehavior
+	private void HumanTurn(int slot, int bits) {
+
+		int hunger = CitizenBits.Hunger(bits);
+
+		if (hunger < Citizen.HUNGER_MAX) {
+			bits = CitizenBits.WithHunger(bits, hunger + HumanBehavior.HUNGER_PER_TURN);
+		}
+		else {
+			bits = AddHealth(bits, -HumanBehavior.STARVATION_HEALTH_COST);
+		}
+
+		// check for starvation
+		if (CitizenBits.Health(bits) == Citizen.HEALTH_MIN) {
+			Kill(slot, bits, Citizen.EKillType.HUNGER);
+			Record(IEventSink.EEventType.STARVATION, slot, IEventSink.NONE);
+		}
+		else {
+			Put(slot, bits);
+		}
+	}
+
+
+	/// See VampireBehavior
+	private void VampireTurn(int slot, int bits) {
+
+		// victims must appear human
+		int numDisguised = 0;
+		if (false == mFullMoon) {
+			numDisguised = LivingCount(Citizen.ECitizenType.WEREWOLF);
+		}
+
+		int victim = SelectVictim(Citizen.ECitizenType.HUMAN, Citizen.ECitizenType.WEREWOLF, numDisguised);
+		if (victim < 0) {
+			return;
+		}
+
+		int victimBits = Get(victim);
+
+		// werewolf in human form can only be hurt
+		if (CitizenBits.Type(victimBits) == Citizen.ECitizenType.WEREWOLF) {
+			int healthHit = mContext.Rng().Generate(VampireBehavior.WEREWOLF_MIN_HIT,
+																	VampireBehavior.WEREWOLF_MAX_HIT);
+			HitVictim(victim, victimBits, healthHit, Citizen.EKillType.VAMPIRE);
+			Record(IEventSink.EEventType.WEREWOLF_HIT, slot, victim);
+			return;
+		}
+
+		int MIN_OUTCOME = 0;
+		int MAX_OUTCOME = 2;
+		int outcome = mContext.Rng().Generate(MIN_OUTCOME, MAX_OUTCOME);
+		IEventSink.EEventType event = IEventSink.EEventType.CONVERSION;
+
+		switch (outcome) {
+		case 0:		// successful conversion
+			Convert(victim, victimBits, Citizen.ECitizenType.VAMPIRE);
+			bits = CitizenBits.WithHunger(bits, CitizenBits.Hunger(bits) / 2);
+			bits = AddHealth(bits, VampireBehavior.CONVERSION_HEALTH_INCREASE);
+			break;
+
+		case 1:		// victim killed
+			Kill(victim, victimBits, Citizen.EKillType.VAMPIRE);
+			bits = AddHealth(bits, VampireBehavior.KILL_HEALTH_INCREASE);
+			event = IEventSink.EEventType.KILL;
+			break;
+
+		case 2:		// failed conversion
+			int healthHit = mContext.Rng().Generate(VampireBehavior.FAILED_CONVERSION_MIN_HIT,
+																	VampireBehavior.FAILED_CONVERSION_MAX_HIT);
+			bits = AddHealth(bits, healthHit / VampireBehavior.HIT_POINTS_PER_HEALTH);
+			if (false == HitVictim(victim, victimBits, healthHit, Citizen.EKillType.VAMPIRE)) {
+				bits = AddHealth(bits, VampireBehavior.KILL_HEALTH_INCREASE);
+			}
+			event = IEventSink.EEventType.FAILED_CONVERSION;
+			break;
+		}
+
+		Put(slot, bits);
+		Record(event, slot, victim);
+	}
+
+
+	/// See WerewolfBehavior
+	private void WerewolfTurn(int slot, int bits) {
+
+		if (false == mFullMoon) {
+			Put(slot, AddHealth(bits, WerewolfBehavior.HUMAN_FORM_HEALTH_INCREASE));
+			return;
+		}
+
+		Put(slot, AddHealth(bits, WerewolfBehavior.WEREWOLF_FORM_HEALTH_INCREASE));
+
+		FeedingEvent feeding = FeedingEvent.Begin();
+
+		int victim = SelectVictim(Citizen.ECitizenType.HUMAN, Citizen.ECitizenType.VAMPIRE,
+								  LivingCount(Citizen.ECitizenType.VAMPIRE));
+		if (victim < 0) {
+			return;
+		}
+
+		int victimBits = Get(victim);
+		Citizen.ECitizenType victimType = CitizenBits.Type(victimBits);
+		int healthHit = 0;
+		boolean survived = false;
+
+		if (victimType == Citizen.ECitizenType.HUMAN) {
+			healthHit = mContext.Rng().Generate(WerewolfBehavior.HUMAN_MIN_HIT,
+															WerewolfBehavior.HUMAN_MAX_HIT);
+			// surviving humans become werewolves
+			survived = HitVictim(victim, victimBits, healthHit, Citizen.EKillType.WEREWOLF);
+			if (true == survived) {
+				Convert(victim, Get(victim), Citizen.ECitizenType.WEREWOLF);
+			}
+		}
+		else {
+			healthHit = mContext.Rng().Generate(WerewolfBehavior.VAMPIRE_MIN_HIT,
+															WerewolfBehavior.VAMPIRE_MAX_HIT);
+			survived = HitVictim(victim, victimBits, healthHit, Citizen.EKillType.WEREWOLF);
+		}
+
+		Record(IEventSink.EEventType.FEEDING, slot, victim);
+
+		if (feeding != null) {
+			feeding.Commit(mContext.Clock().CurrentTurn(), slot, victim, victimType, healthHit, false == survived);
+		}
+	}
+
+
+	/// Report outcome to event sink, if any
+	private void Record(IEventSink.EEventType type, int slot, int victim) {
+
+		IEventSink events = mContext.Events();
+
+		if (events == null) {
+			return;
+		}
+
+		int victimBits = 0;
+		boolean victimActed = false;
+		if (victim != IEventSink.NONE) {
+			victimBits = Get(victim);
+			victimActed = mTurnOrder.Position(victim) < mTurnPosition;
+		}
+
+		events.Record(type, mContext.Clock().CurrentTurn(), slot, Get(slot), victim, victimBits, victimActed);
+	}
+
+
+	/// Pick random victim from the living citizens
+	/// of primaryType plus numOther (0 or all)
+	/// living citizens of otherType.
+	/// Returns slot or -1 if there are none.
+	private int SelectVictim(Citizen.ECitizenType primaryType, Citizen.ECitizenType otherType, int numOther) {
+
+		int numPrimary = LivingCount(primaryType);
+
+		SimulationMetrics metrics = mContext.Metrics();
+		if (metrics != null) {
+			metrics.VictimsSelected(1, numPrimary + numOther);
+		}
+
+		if (numPrimary + numOther == 0) {
+			return -1;
+		}
+
+		int MIN_INDEX = 0;
+		int MAX_INDEX = numPrimary + numOther - 1;
+		int victimIndex = mContext.Rng().Generate(MIN_INDEX, MAX_INDEX);
+
+		int victim = -1;
+		if (victimIndex < numPrimary) {
+			victim = FindLiving(primaryType, victimIndex);
+		}
+		else {
+			victim = FindLiving(otherType, victimIndex - numPrimary);
+		}
+
+		// victim's own turn came first
+		CompletePending(victim);
+
+		return victim;
+	}
+
+
+	/// Slot of living citizen of type by rank
+	private int FindLiving(Citizen.ECitizenType type, int rank) {
+
+		BlockCounter blocks = mLivingBlocks[type.ordinal()];
+
+		int block = blocks.FindBlock(rank);
+		int remaining = rank - blocks.PrefixSum(block);
+
+		int slot = block << BLOCK_SHIFT;
+		int end = (int) Math.min((long) slot + BLOCK_SIZE, mSize);
+		for (; slot < end; ++slot) {
+			int bits = Get(slot);
+			if (CitizenBits.Alive(bits) && CitizenBits.Type(bits) == type) {
+				if (remaining == 0) {
+					return slot;
+				}
+				--remaining;
+			}
+		}
+
+		throw new IllegalStateException("Living count out of sync for " + type);
+	}
+
+
+	/// Reduce victim health, killing it if
+	/// health reaches minimum.  Returns true
+	/// if victim survives.
+	private boolean HitVictim(int slot, int bits, int healthHit, Citizen.EKillType killer) {
+
+		bits = AddHealth(bits, -healthHit);
+
+		if (CitizenBits.Health(bits) == Citizen.HEALTH_MIN) {
+			Kill(slot, bits, killer);
+			return false;
+		}
+
+		Put(slot, bits);
+		return true;
+	}
+
+
+	/// Mark citizen dead and update census
+	private void Kill(int slot, int bits, Citizen.EKillType killer) {
+
+		Citizen.ECitizenType type = CitizenBits.Type(bits);
+		--mLivingCounts[type.ordinal()];
+		--mNumLiving;
+		mLivingBlocks[type.ordinal()].Add(slot >>> BLOCK_SHIFT, -1);
+
+		bits = CitizenBits.WithKilledBy(bits, killer);
+		Put(slot, CitizenBits.WithHealth(bits, Citizen.HEALTH_MIN));
+
+		SimulationMetrics metrics = mContext.Metrics();
+		if (metrics != null) {
+			metrics.Killed(killer, 1);
+		}
+	}
+
+
+	/// Change type of living citizen and update census
+	private void Convert(int slot, int bits, Citizen.ECitizenType newType) {
+
+		Citizen.ECitizenType oldType = CitizenBits.Type(bits);
+		--mLivingCounts[oldType.ordinal()];
+		++mLivingCounts[newType.ordinal()];
+		mLivingBlocks[oldType.ordinal()].Add(slot >>> BLOCK_SHIFT, -1);
+		mLivingBlocks[newType.ordinal()].Add(slot >>> BLOCK_SHIFT, 1);
+
+		if (oldType == Citizen.ECitizenType.HUMAN) {
+			bits = CitizenBits.WithConvertedHuman(bits);
+		}
+
+		Put(slot, CitizenBits.WithType(bits, newType));
+
+		SimulationMetrics metrics = mContext.Metrics();
+		if (metrics != null) {
+			metrics.Converted(1);
+		}
+	}
+
+
+	/// Add to health respecting bounds
+	private int AddHealth(int bits, int delta) {
+
+		int health = CitizenBits.Health(bits) + delta;
+
+		if (health < Citizen.HEALTH_MIN) {
+			health = Citizen.HEALTH_MIN;
+		}
+		else if (health > Citizen.HEALTH_MAX) {
+			health = Citizen.HEALTH_MAX;
+		}
+
+		return CitizenBits.WithHealth(bits, health);
+	}
+
+
+	/// Fill consecutive slots with new citizens
+	private int Populate(int firstSlot, int count, Citizen.ECitizenType type) {
+
+		int bits = CitizenBits.Pack(type, Citizen.HUNGER_MIN, Citizen.HEALTH_MAX,
+									Citizen.EKillType.INVALID, false);
+
+		BlockCounter blocks = mLivingBlocks[type.ordinal()];
+
+		int slot = firstSlot;
+		int end = firstSlot + count;
+		while (slot < end) {
+			// fill up to end of current block
+			int blockEnd = (int) Math.min(((long) (slot >>> BLOCK_SHIFT) + 1) << BLOCK_SHIFT, end);
+			blocks.Add(slot >>> BLOCK_SHIFT, blockEnd - slot);
+
+			for (; slot < blockEnd; ++slot) {
+				Put(slot, bits);
+			}
+		}
+
+		mLivingCounts[type.ordinal()] += count;
+		mNumLiving += count;
+
+		return end;
+	}
+
+
+	private void AppendStatus(StringBuilder sb, Citizen.ECitizenType type) {
+
+		for (int slot = 0; slot < mSize; ++slot) {
+			int bits = Get(slot);
+			if (CitizenBits.Type(bits) == type) {
+				sb.append(Citizen.FormatStatus(type, CitizenBits.Hunger(bits), CitizenBits.Health(bits),
+											   CitizenBits.KilledBy(bits), CitizenBits.ConvertedHuman(bits)));
+			}
+		}
+	}
+
+
+	private void WriteStatus(StatusWriter writer, Citizen.ECitizenType type) throws IOException {
+
+		for (int slot = 0; slot < mSize; ++slot) {
+			int bits = Get(slot);
+			if (CitizenBits.Type(bits) == type) {
+				writer.Add(type, CitizenBits.Hunger(bits), CitizenBits.Health(bits),
+						   CitizenBits.KilledBy(bits), CitizenBits.ConvertedHuman(bits));
+			}
+		}
+	}
+
+
+	private int Get(int slot) {
+		return mChunks[slot >>> CHUNK_SHIFT].getShort((slot & CHUNK_MASK) << 1) & 0xFFFF;
+	}
+
+
+	private void Put(int slot, int bits) {
+
+		if (mChangedSlots != null && bits != Get(slot)) {
+			Changed(slot);
+		}
+
+		if (mStatistics != null) {
+			mStatistics.Transition(Get(slot), bits, 1);
+		}
+
+		mChunks[slot >>> CHUNK_SHIFT].putShort((slot & CHUNK_MASK) << 1, (short) bits);
+	}
+
+
+	/// List slot as changed, once per round
+	private void Changed(int slot) {
+
+		long flag = 1L << slot;
+		if ((mChangedFlags[slot / Long.SIZE] & flag) != 0) {
+			return;
+		}
+		mChangedFlags[slot / Long.SIZE] |= flag;
+
+		if (mNumChanged == mChangedSlots.length) {
+			mChangedSlots = Arrays.copyOf(mChangedSlots, (int) Math.min(mChangedSlots.length * 2L, mSize));
+		}
+		mChangedSlots[mNumChanged++] = slot;
+	}
+}
@@ -0,0 +1,243 @@
+//////////////////////////////////
+//	ParameterSweep
+//
+//  Headless batch mode.  Runs one game for
+//  every combination of a grid of initial
+//  humans, vampires, werewolves, turn
+//  limits and seeds, and streams each
+//  game's outcome to a SweepWriter as soon
+//  as it finishes.
+//
+//  Games are scheduled on a work-stealing
+//  ForkJoinPool: early termination makes
+//  run lengths vary widely, and idle
+//  workers take queued games from busy
+//  ones.  Only a few games per worker are
+//  queued at a time, and combinations are
+//  decoded from their grid index, so
+//  neither the grid nor the results are
+//  ever held in memory.
+//
+//  Each game has its own SimulationContext
+//  seeded from the grid, so any row can be
+//  reproduced from its parameters and seed.
+//
+//////////////////////////////////
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+
+public class ParameterSweep {
+
+	// games queued per worker thread
+	private static final int QUEUED_PER_THREAD = 4;
+
+	/// Outcome of a single game of the grid
+	public static class Result {
+		long mRun;
+		GameResult mGame;
+		long mMillis;
+	}
+
+	private long[] mHumans;
+
+	private long[] mVampires;
+
+	private long[] mWerewolves;
+
+	private long[] mTurns;
+
+	private long[] mSeeds;
+
+	private int mNumThreads;
+
+	// null if every game is run
+	private ResultCache mCache;
+
+
+	/// Grid of all combinations of the given
+	/// values (see ParseValues)
+	public ParameterSweep(long[] humans, long[] vampires, long[] werewolves, long[] turns, long[] seeds) {
+
+		for (long[] counts : new long[][] { humans, vampires, werewolves, turns }) {
+			for (long count : counts) {
+				if (count < 0 || count >= Integer.MAX_VALUE) {
+					throw new IllegalArgumentException("Invalid count: " + count);
+				}
+			}
+		}
+
+		mHumans = humans;
+		mVampires = vampires;
+		mWerewolves = werewolves;
+		mTurns = turns;
+		mSeeds = seeds;
+		mNumThreads = Runtime.getRuntime().availableProcessors();
+		mCache = null;
+	}
+
+
+	/// Take games run before from cache, and
+	/// add new ones to it (null disables)
+	public void SetCache(ResultCache cache) {
+		mCache = cache;
+	}
+
+
+	/// Values of one grid axis: comma separated
+	/// values and inclusive ranges from:to or
+	/// from:to:step, e.g. "10,100:500:100"
+	public static long[] ParseValues(String text) {
+
+		String[] parts = text.split(",");
+
+		long count = 0;
+		for (String part : parts) {
+			count += RangeLength(part);
+		}
+		if (count > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Too many values: " + text);
+		}
+
+		long[] values = new long[(int) count];
+		int next = 0;
+		for (String part : parts) {
+			long[] range = ParseRange(part);
+			long length = RangeLength(part);
+			for (long i = 0; i < length; ++i) {
+				values[next++] = range[0] + i * range[2];
+			}
+		}
+
+		return values;
+	}
+
+
+	/// Number of games in the grid
+	public long NumRuns() {
+		return (long) mHumans.length * mVampires.length * mWerewolves.length * mTurns.length * mSeeds.length;
+	}
+
+
+	/// Run every game of the grid, writing each
+	/// result to writer as it finishes
+	public void Run(SweepWriter writer) throws InterruptedException, IOException {
+
+		long numRuns = NumRuns();
+
+		ForkJoinPool pool = new ForkJoinPool(mNumThreads);
+		CompletionService<Result> completion = new ExecutorCompletionService<Result>(pool);
+
+		try {
+			long submitted = 0;
+			long inFlight = 0;
+
+			// keep every worker busy
+			while (submitted < numRuns && inFlight < mNumThreads * QUEUED_PER_THREAD) {
+				completion.submit(CreateRun(submitted));
+				++submitted;
+				++inFlight;
+			}
+
+			while (inFlight > 0) {
+				Result result = completion.take().get();
+				--inFlight;
+
+				writer.Write(result);
+
+				if (submitted < numRuns) {
+					completion.submit(CreateRun(submitted));
+					++submitted;
+					++inFlight;
+				}
+			}
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("Simulation failed", e.getCause());
+		}
+		finally {
+			// abandon games still running
+			pool.shutdownNow();
+		}
+	}
+
+
+	/// Game at grid index run (seeds vary
+	/// fastest, humans slowest)
+	private Callable<Result> CreateRun(long run) {
+
+		long rest = run;
+		long seed = mSeeds[(int) (rest % mSeeds.length)];
+		rest /= mSeeds.length;
+		int numTurns = (int) mTurns[(int) (rest % mTurns.length)];
+		rest /= mTurns.length;
+		int numWerewolves = (int) mWerewolves[(int) (rest % mWerewolves.length)];
+		rest /= mWerewolves.length;
+		int numVampires = (int) mVampires[(int) (rest % mVampires.length)];
+		rest /= mVampires.length;
+		int numHumans = (int) mHumans[(int) rest];
+
+		long population = (long) numHumans + numVampires + numWerewolves;
+		GameResult game = new GameResult(GameManager.RecommendedStorage(population), numHumans, numVampires,
+										 numWerewolves, numTurns, seed);
+
+		return () -> {
+			long start = System.nanoTime();
+
+			Result result = new Result();
+			result.mRun = run;
+
+			if (mCache != null) {
+				result.mGame = mCache.Run(game);
+			}
+			else {
+				GameManager gameMgr = new GameManager(new SimulationContext(seed));
+				gameMgr.InitializeNewGame(numHumans, numVampires, numWerewolves, game.mStorage);
+				gameMgr.Simulate(numTurns);
+
+				result.mGame = game;
+				result.mGame.Record(gameMgr, null);
+			}
+
+			result.mMillis = (System.nanoTime() - start) / 1000000;
+
+			return result;
+		};
+	}
+
+
+	/// { from, to, step } of a value or range
+	private static long[] ParseRange(String part) {
+
+		String[] bounds = part.trim().split(":");
+
+		long from = Long.parseLong(bounds[0].trim());
+		long to = from;
+		long step = 1;
+		if (bounds.length > 1) {
+			to = Long.parseLong(bounds[1].trim());
+		}
+		if (bounds.length > 2) {
+			step = Long.parseLong(bounds[2].trim());
+		}
+
+		if (bounds.length > 3 || step <= 0 || to < from) {
+			throw new IllegalArgumentException("Invalid range: " + part);
+		}
+
+		return new long[] { from, to, step };
+	}
+
+
+	private static long RangeLength(String part) {
+
+		long[] range = ParseRange(part);
+
+		// unsigned, so the full long range fits
+		return Long.divideUnsigned(range[1] - range[0], range[2]) + 1;
+	}
+}
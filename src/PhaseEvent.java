@@ -0,0 +1,54 @@
+//////////////////////////////////
+//	PhaseEvent
+//
+//  Flight Recorder event for one timed
+//  phase of a turn (see PhaseTimings).
+//  Events are only created while a
+//  recording has them enabled, so turns
+//  allocate nothing otherwise.
+//
+//////////////////////////////////
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("wwvillage.Phase")
+@Label("Turn Phase")
+@Category({ "WWVillage" })
+@StackTrace(false)
+public class PhaseEvent extends Event {
+
+	private static final EventType TYPE = EventType.getEventType(PhaseEvent.class);
+
+	@Name("phase")
+	@Label("Phase")
+	String mPhase;
+
+	@Name("turn")
+	@Label("Turn")
+	int mTurn;
+
+	@Name("durationNanos")
+	@Label("Duration (ns)")
+	long mDurationNanos;
+
+
+	/// Emit phase that took durationNanos, if
+	/// recording
+	public static void Emit(PhaseTimings.EPhase phase, int turn, long durationNanos) {
+
+		if (false == TYPE.isEnabled()) {
+			return;
+		}
+
+		PhaseEvent event = new PhaseEvent();
+		event.mPhase = phase.name();
+		event.mTurn = turn;
+		event.mDurationNanos = durationNanos;
+		event.commit();
+	}
+}
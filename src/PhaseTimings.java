@@ -0,0 +1,127 @@
+//////////////////////////////////
+//	PhaseTimings
+//
+//  Latency histograms of the phases of a
+//  turn, as run by GameManager and
+//  Village.  A phase is timed with two
+//  System.nanoTime calls per turn (not per
+//  citizen), so timing is cheap enough to
+//  leave on.  Victim selection, spread over
+//  the turn, is timed per predator turn and
+//  recorded as one sum per turn.
+//
+//  While a Flight Recorder recording is
+//  running, each timed phase is also
+//  emitted as a PhaseEvent, so it shows in
+//  the recording next to allocation and GC.
+//
+//////////////////////////////////
+
+import java.io.PrintStream;
+
+public class PhaseTimings {
+
+	public enum EPhase {
+		EARLY_TERMINATION,	// GameManager: termination checks
+		FAST_FORWARD,		// GameManager: closed form over quiet turns
+		TURN,				// GameManager: one full village turn
+		JOURNAL,			// GameManager: turn end records
+		CHECKPOINT,			// GameManager: checkpoint save
+		TURN_ORDER,			// Village: ordering the living
+		CITIZEN_TURNS,		// Village: behavior dispatch in turn order
+		VICTIM_SELECTION,	// Village: predators' victim draws (within CITIZEN_TURNS)
+		DEFERRED_UPKEEP,	// Village: parallel upkeep of large turns
+		COMPACTION			// Village: moving the dead to the graveyard
+	}
+
+	private static final double NANOS_PER_MICRO = 1000.0;
+
+	private LatencyHistogram[] mHistograms;
+
+	// time and spans of phases timed in
+	// pieces, since the last Flush
+	private long[] mSums;
+	private int[] mPieces;
+
+
+	public PhaseTimings() {
+
+		mHistograms = new LatencyHistogram[EPhase.values().length];
+		for (int i = 0; i < mHistograms.length; ++i) {
+			mHistograms[i] = new LatencyHistogram();
+		}
+
+		mSums = new long[mHistograms.length];
+		mPieces = new int[mHistograms.length];
+	}
+
+
+	/// Start time of a phase
+	public long Start() {
+		return System.nanoTime();
+	}
+
+
+	/// Record phase started at start (from
+	/// Start) of given turn
+	public void End(EPhase phase, int turn, long start) {
+
+		long end = System.nanoTime();
+		mHistograms[phase.ordinal()].Add(end - start);
+
+		PhaseEvent.Emit(phase, turn, end - start);
+	}
+
+
+	/// Add span started at start (from Start)
+	/// to phase timed in pieces
+	public void Accumulate(EPhase phase, long start) {
+
+		mSums[phase.ordinal()] += System.nanoTime() - start;
+		++mPieces[phase.ordinal()];
+	}
+
+
+	/// Record pieces of phase since the last
+	/// Flush, if any, as one phase of given turn
+	public void Flush(EPhase phase, int turn) {
+
+		int i = phase.ordinal();
+		if (mPieces[i] == 0) {
+			return;
+		}
+
+		mHistograms[i].Add(mSums[i]);
+		PhaseEvent.Emit(phase, turn, mSums[i]);
+
+		mSums[i] = 0;
+		mPieces[i] = 0;
+	}
+
+
+	public LatencyHistogram Histogram(EPhase phase) {
+		return mHistograms[phase.ordinal()];
+	}
+
+
+	/// Print table of phases that ran
+	public void Report(PrintStream out) {
+
+		out.println(String.format("%-18s %10s %12s %12s %12s %12s %12s", "Phase", "count",
+								  "total ms", "mean us", "p50 us", "p99 us", "max us"));
+
+		for (EPhase phase : EPhase.values()) {
+			LatencyHistogram histogram = Histogram(phase);
+			if (histogram.Count() == 0) {
+				continue;
+			}
+
+			out.println(String.format("%-18s %10d %12.1f %12.1f %12.1f %12.1f %12.1f", phase, histogram.Count(),
+									  histogram.TotalNanos() / (NANOS_PER_MICRO * NANOS_PER_MICRO),
+									  histogram.MeanNanos() / NANOS_PER_MICRO,
+									  histogram.QuantileNanos(0.5) / NANOS_PER_MICRO,
+									  histogram.QuantileNanos(0.99) / NANOS_PER_MICRO,
+									  histogram.MaxNanos() / NANOS_PER_MICRO));
+		}
+	}
+}
@@ -0,0 +1,302 @@
+//////////////////////////////////
+//	PopulationRecorder
+//
+//  Time series of a game's population for
+//  plotting: every interval turns, the
+//  living count of each type, deaths by
+//  cause so far, and mean and variance of
+//  hunger and health of the living.  The
+//  aggregates come from PopulationStatistics
+//  kept current by the village, so a sample
+//  costs the same for any population.
+//
+//  Samples go to preallocated primitive
+//  columns used as a ring buffer: recording
+//  allocates nothing, and memory is fixed at
+//  capacity samples (SAMPLE_BYTES each)
+//  however long the game; once full, the
+//  oldest samples are overwritten.  With an
+//  interval of 16, 10^7 turns cost under
+//  3 bytes per turn.
+//
+//  Deaths are cumulative, so per-turn
+//  deaths of any stretch are differences of
+//  two samples, whatever the interval.
+//
+//  WriteCsv streams the samples held, oldest
+//  first, as in SweepWriter.  Columns:
+//  turn,humans,vampires,werewolves,starved,
+//  killed_by_vampires,killed_by_werewolves,
+//  hunger_mean,hunger_variance,health_mean,
+//  health_variance
+//
+//////////////////////////////////
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class PopulationRecorder {
+
+	/// Bytes of memory per sample held
+	public static final int SAMPLE_BYTES = 11 * Integer.BYTES;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	// longest single row
+	private static final int MAX_LINE = 256;
+
+	// means and variances to 4 decimal places
+	private static final int FRACTION_SCALE = 10000;
+
+	private static final byte[] HEADER = Bytes("turn,humans,vampires,werewolves,starved," +
+											   "killed_by_vampires,killed_by_werewolves," +
+											   "hunger_mean,hunger_variance,health_mean,health_variance\n");
+
+	private PopulationStatistics mStatistics;
+
+	// turns between samples
+	private int mInterval;
+
+	// sample columns
+	private int[] mTurns;
+	private int[] mHumans;
+	private int[] mVampires;
+	private int[] mWerewolves;
+	private int[] mStarved;
+	private int[] mKilledByVampires;
+	private int[] mKilledByWerewolves;
+	private float[] mHungerMeans;
+	private float[] mHungerVariances;
+	private float[] mHealthMeans;
+	private float[] mHealthVariances;
+
+	// slot of oldest sample, and samples held
+	private int mFirst;
+	private int mCount;
+
+
+	/// Recorder holding up to capacity samples,
+	/// one every interval turns
+	public PopulationRecorder(int capacity, int interval) {
+
+		if (capacity < 1 || interval < 1) {
+			throw new IllegalArgumentException("Capacity and interval must be positive");
+		}
+
+		mStatistics = new PopulationStatistics();
+		mInterval = interval;
+
+		mTurns = new int[capacity];
+		mHumans = new int[capacity];
+		mVampires = new int[capacity];
+		mWerewolves = new int[capacity];
+		mStarved = new int[capacity];
+		mKilledByVampires = new int[capacity];
+		mKilledByWerewolves = new int[capacity];
+		mHungerMeans = new float[capacity];
+		mHungerVariances = new float[capacity];
+		mHealthMeans = new float[capacity];
+		mHealthVariances = new float[capacity];
+
+		mFirst = 0;
+		mCount = 0;
+	}
+
+
+	/// Aggregates for the village to keep
+	/// current (see IVillage.TrackStatistics)
+	public PopulationStatistics Statistics() {
+		return mStatistics;
+	}
+
+
+	/// Turns between samples
+	public int Interval() {
+		return mInterval;
+	}
+
+
+	/// True if a sample is due at given turn
+	public boolean Due(int turn) {
+		return turn % mInterval == 0;
+	}
+
+
+	/// Number of samples held
+	public int Count() {
+		return mCount;
+	}
+
+
+	/// Forget all samples, for a new game
+	public void Clear() {
+		mFirst = 0;
+		mCount = 0;
+	}
+
+
+	/// Take a sample of the state after turns
+	/// up to (not including) turn, unless the
+	/// last sample is of that turn already
+	public void Record(int turn, int humans, int vampires, int werewolves) {
+
+		int capacity = mTurns.length;
+
+		if (mCount > 0 && mTurns[(mFirst + mCount - 1) % capacity] == turn) {
+			return;
+		}
+
+		int slot = (mFirst + mCount) % capacity;
+		if (mCount == capacity) {
+			mFirst = (mFirst + 1) % capacity;
+		}
+		else {
+			++mCount;
+		}
+
+		mTurns[slot] = turn;
+		mHumans[slot] = humans;
+		mVampires[slot] = vampires;
+		mWerewolves[slot] = werewolves;
+		mStarved[slot] = (int) mStatistics.Deaths(Citizen.EKillType.HUNGER);
+		mKilledByVampires[slot] = (int) mStatistics.Deaths(Citizen.EKillType.VAMPIRE);
+		mKilledByWerewolves[slot] = (int) mStatistics.Deaths(Citizen.EKillType.WEREWOLF);
+		mHungerMeans[slot] = (float) mStatistics.HungerMean();
+		mHungerVariances[slot] = (float) mStatistics.HungerVariance();
+		mHealthMeans[slot] = (float) mStatistics.HealthMean();
+		mHealthVariances[slot] = (float) mStatistics.HealthVariance();
+	}
+
+
+	/// Turn of i-th sample held (0 is the
+	/// oldest)
+	public int Turn(int i) {
+		return mTurns[Slot(i)];
+	}
+
+
+	/// Living citizens of type at i-th sample
+	public int Living(int i, Citizen.ECitizenType type) {
+
+		int living = 0;
+
+		switch (type) {
+		case HUMAN:
+			living = mHumans[Slot(i)];
+			break;
+
+		case VAMPIRE:
+			living = mVampires[Slot(i)];
+			break;
+
+		case WEREWOLF:
+			living = mWerewolves[Slot(i)];
+			break;
+
+		case INVALID:
+			break;
+		}
+
+		return living;
+	}
+
+
+	/// Write samples held, oldest first, to a
+	/// CSV file (replacing any existing one)
+	public void WriteCsv(Path path) throws IOException {
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+													StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			buffer.put(HEADER);
+
+			for (int i = 0; i < mCount; ++i) {
+				if (buffer.remaining() < MAX_LINE) {
+					Flush(buffer, channel);
+				}
+
+				int slot = Slot(i);
+				PutNumber(buffer, mTurns[slot]);
+				PutNumber(buffer, mHumans[slot]);
+				PutNumber(buffer, mVampires[slot]);
+				PutNumber(buffer, mWerewolves[slot]);
+				PutNumber(buffer, mStarved[slot]);
+				PutNumber(buffer, mKilledByVampires[slot]);
+				PutNumber(buffer, mKilledByWerewolves[slot]);
+				PutFixed(buffer, mHungerMeans[slot]);
+				PutFixed(buffer, mHungerVariances[slot]);
+				PutFixed(buffer, mHealthMeans[slot]);
+				PutFixed(buffer, mHealthVariances[slot]);
+
+				// last separator ends the row
+				buffer.put(buffer.position() - 1, (byte) '\n');
+			}
+
+			Flush(buffer, channel);
+		}
+	}
+
+
+	private int Slot(int i) {
+
+		if (i < 0 || i >= mCount) {
+			throw new IndexOutOfBoundsException("Sample " + i + " of " + mCount);
+		}
+
+		return (mFirst + i) % mTurns.length;
+	}
+
+
+	private static void Flush(ByteBuffer buffer, FileChannel channel) throws IOException {
+
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+
+	/// Decimal digits of non-negative value
+	/// and separator
+	private static void PutNumber(ByteBuffer buffer, long value) {
+		PutDigits(buffer, value);
+		buffer.put((byte) ',');
+	}
+
+
+	/// Non-negative value to FRACTION_SCALE
+	/// and separator
+	private static void PutFixed(ByteBuffer buffer, float value) {
+
+		long scaled = Math.round(value * (double) FRACTION_SCALE);
+
+		PutDigits(buffer, scaled / FRACTION_SCALE);
+		buffer.put((byte) '.');
+
+		long fraction = scaled % FRACTION_SCALE;
+		for (int scale = FRACTION_SCALE / 10; scale > 0; scale /= 10) {
+			buffer.put((byte) ('0' + fraction / scale % 10));
+		}
+		buffer.put((byte) ',');
+	}
+
+
+	private static void PutDigits(ByteBuffer buffer, long value) {
+
+		if (value >= 10) {
+			PutDigits(buffer, value / 10);
+		}
+
+		buffer.put((byte) ('0' + value % 10));
+	}
+
+
+	private static byte[] Bytes(String text) {
+		return text.getBytes(StandardCharsets.US_ASCII);
+	}
+}
@@ -0,0 +1,191 @@
+//////////////////////////////////
+//	PopulationStatistics
+//
+//  Aggregates of the living citizens of a
+//  village: their number, the sums and sums
+//  of squares of hunger and health (giving
+//  mean and variance), and the number of
+//  deaths by cause.  The village reports
+//  every change of state as it happens (see
+//  IVillage.TrackStatistics), so reading
+//  them never rescans the population.
+//
+//  Sums are exact integers, so mean and
+//  variance don't drift however long the
+//  game runs.  Updates go to LongAdders as
+//  in SimulationMetrics, since Village
+//  upkeep shards report from several
+//  threads at once.
+//
+//////////////////////////////////
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class PopulationStatistics {
+
+	private LongAdder mLiving;
+	private LongAdder mHungerSum;
+	private LongAdder mHungerSquares;
+	private LongAdder mHealthSum;
+	private LongAdder mHealthSquares;
+
+	// by kill type ordinal
+	private LongAdder[] mDeaths;
+
+
+	public PopulationStatistics() {
+
+		mLiving = new LongAdder();
+		mHungerSum = new LongAdder();
+		mHungerSquares = new LongAdder();
+		mHealthSum = new LongAdder();
+		mHealthSquares = new LongAdder();
+
+		mDeaths = new LongAdder[Citizen.EKillType.values().length];
+		for (int i = 0; i < mDeaths.length; ++i) {
+			mDeaths[i] = new LongAdder();
+		}
+	}
+
+
+	/// Forget everything, before a village
+	/// counts its population in again
+	public void Reset() {
+
+		mLiving.reset();
+		mHungerSum.reset();
+		mHungerSquares.reset();
+		mHealthSum.reset();
+		mHealthSquares.reset();
+
+		for (LongAdder deaths : mDeaths) {
+			deaths.reset();
+		}
+	}
+
+
+	/// count living citizens arrived (or
+	/// counted in) with given attributes
+	public void Add(int hunger, int health, long count) {
+
+		mLiving.add(count);
+		mHungerSum.add(hunger * count);
+		mHungerSquares.add(hunger * hunger * count);
+		mHealthSum.add(health * count);
+		mHealthSquares.add(health * health * count);
+	}
+
+
+	/// count living citizens left with given
+	/// attributes
+	public void Remove(int hunger, int health, long count) {
+		Add(hunger, health, -count);
+	}
+
+
+	/// count living citizens changed hunger
+	/// and health
+	public void Change(int oldHunger, int oldHealth, int hunger, int health, long count) {
+
+		if (hunger != oldHunger) {
+			mHungerSum.add((hunger - oldHunger) * count);
+			mHungerSquares.add((hunger * hunger - oldHunger * oldHunger) * count);
+		}
+
+		if (health != oldHealth) {
+			mHealthSum.add((health - oldHealth) * count);
+			mHealthSquares.add((health * health - oldHealth * oldHealth) * count);
+		}
+	}
+
+
+	/// count living citizens with given
+	/// attributes died
+	public void Died(Citizen.EKillType killer, int hunger, int health, long count) {
+
+		Remove(hunger, health, count);
+		mDeaths[killer.ordinal()].add(count);
+	}
+
+
+	/// count the dead, before the village
+	/// starts reporting (see Reset)
+	public void Dead(Citizen.EKillType killer, long count) {
+		mDeaths[killer.ordinal()].add(count);
+	}
+
+
+	/// count citizens changed from one packed
+	/// state (see CitizenBits) to another
+	public void Transition(int oldBits, int bits, long count) {
+
+		if (oldBits == bits || false == CitizenBits.Alive(oldBits)) {
+			return;
+		}
+
+		if (true == CitizenBits.Alive(bits)) {
+			Change(CitizenBits.Hunger(oldBits), CitizenBits.Health(oldBits),
+				   CitizenBits.Hunger(bits), CitizenBits.Health(bits), count);
+		}
+		else {
+			Died(CitizenBits.KilledBy(bits), CitizenBits.Hunger(oldBits), CitizenBits.Health(oldBits), count);
+		}
+	}
+
+
+	/// Number of living citizens
+	public long Living() {
+		return mLiving.sum();
+	}
+
+
+	/// Deaths by cause since the game began
+	public long Deaths(Citizen.EKillType killer) {
+		return mDeaths[killer.ordinal()].sum();
+	}
+
+
+	public double HungerMean() {
+		return Mean(mHungerSum.sum(), mLiving.sum());
+	}
+
+
+	public double HungerVariance() {
+		return Variance(mHungerSum.sum(), mHungerSquares.sum(), mLiving.sum());
+	}
+
+
+	public double HealthMean() {
+		return Mean(mHealthSum.sum(), mLiving.sum());
+	}
+
+
+	public double HealthVariance() {
+		return Variance(mHealthSum.sum(), mHealthSquares.sum(), mLiving.sum());
+	}
+
+
+	private static double Mean(long sum, long count) {
+
+		if (count == 0) {
+			return 0.0;
+		}
+
+		return (double) sum / count;
+	}
+
+
+	/// Population variance; sums of attributes
+	/// up to 99 over at most 2^31 citizens are
+	/// exact in a double
+	private static double Variance(long sum, long squares, long count) {
+
+		if (count == 0) {
+			return 0.0;
+		}
+
+		double mean = (double) sum / count;
+
+		return Math.max(0.0, (double) squares / count - mean * mean);
+	}
+}
@@ -0,0 +1,118 @@
+//////////////////////////////////
+//	QuietStretch
+//
+//  Closed-form rules for "quiet" turns:
+//  turns on which no citizen can find a
+//  victim, so nothing random happens.
+//  Humans then just get hungry (and
+//  eventually starve), werewolves heal and
+//  vampires do nothing, each citizen
+//  independently of the others, so a run
+//  of quiet turns can be applied to each
+//  citizen in one step (see
+//  IVillage.FastForward).
+//
+//  Random draws are keyed by turn, so
+//  skipping turns this way leaves every
+//  later turn exactly as if each quiet turn
+//  had been run.
+//
+//////////////////////////////////
+
+public class QuietStretch {
+
+	private QuietStretch() {
+	}
+	
+	
+	/// Number of consecutive quiet turns from
+	/// given turn (at most maxTurns), assuming
+	/// the census doesn't change.  Starvation
+	/// is not considered (see TurnsToStarvation).
+	public static int Length(int turn, int maxTurns, int numHumans, int numVampires, int numWerewolves) {
+		
+		boolean quietMoon = IsQuiet(true, numHumans, numVampires, numWerewolves);
+		boolean quietOtherwise = IsQuiet(false, numHumans, numVampires, numWerewolves);
+		
+		if (true == quietMoon && true == quietOtherwise) {
+			return maxTurns;
+		}
+		
+		// at most one moon cycle
+		int length = 0;
+		while (length < maxTurns) {
+			boolean fullMoon = WerewolfBehavior.IsFullMoon(turn + length);
+			
+			if (false == (fullMoon ? quietMoon : quietOtherwise)) {
+				break;
+			}
+			++length;
+		}
+		
+		return length;
+	}
+	
+	
+	/// Turns until a human with given hunger
+	/// and health starves, counting the turn
+	/// on which it dies (so at least 1)
+	public static int TurnsToStarvation(int hunger, int health) {
+		
+		int healthTurns = (health + HumanBehavior.STARVATION_HEALTH_COST - 1) / HumanBehavior.STARVATION_HEALTH_COST;
+		
+		return HungryTurns(hunger) + Math.max(healthTurns, 1);
+	}
+	
+	
+	/// Human hunger after given quiet turns
+	public static int HumanHunger(int hunger, int turns) {
+		
+		return hunger + Math.min(turns, HungryTurns(hunger)) * HumanBehavior.HUNGER_PER_TURN;
+	}
+	
+	
+	/// Human health after given quiet turns
+	/// (fewer than TurnsToStarvation)
+	public static int HumanHealth(int hunger, int health, int turns) {
+		
+		int starvingTurns = Math.max(turns - HungryTurns(hunger), 0);
+		
+		return health - starvingTurns * HumanBehavior.STARVATION_HEALTH_COST;
+	}
+	
+	
+	/// Werewolf health after given quiet turns
+	/// starting at given turn
+	public static int WerewolfHealth(int health, int turn, int turns) {
+		
+		long numFullMoons = WerewolfBehavior.FullMoons(turn, turn + turns);
+		long healing = numFullMoons * WerewolfBehavior.WEREWOLF_FORM_HEALTH_INCREASE +
+					   (turns - numFullMoons) * WerewolfBehavior.HUMAN_FORM_HEALTH_INCREASE;
+		
+		// healing only ever adds, so capping
+		// once equals capping every turn
+		return (int) Math.min(health + healing, Citizen.HEALTH_MAX);
+	}
+	
+	
+	/// True if no citizen can find a victim on
+	/// a turn with or without a full moon
+	public static boolean IsQuiet(boolean fullMoon, int numHumans, int numVampires, int numWerewolves) {
+		
+		// vampires prey on anyone looking human
+		int vampireVictims = numHumans + (fullMoon ? 0 : numWerewolves);
+		boolean vampiresQuiet = numVampires == 0 || vampireVictims == 0;
+		
+		// werewolves only hunt at full moon
+		boolean werewolvesQuiet = numWerewolves == 0 || false == fullMoon || numHumans + numVampires == 0;
+		
+		return vampiresQuiet && werewolvesQuiet;
+	}
+	
+	
+	/// Turns before a human's hunger maxes out
+	private static int HungryTurns(int hunger) {
+		
+		return (Citizen.HUNGER_MAX - hunger + HumanBehavior.HUNGER_PER_TURN - 1) / HumanBehavior.HUNGER_PER_TURN;
+	}
+}
@@ -2,42 +2,99 @@
 //	RandomNumberGenerator
 //
 //  Generates random numbers.
-//  Implemented using singleton pattern.
 //  Random numbers used in several places
-//  in simulation.  The singleton pattern
-//  facilitates access to an application-wide
-//  common RNG implementation.
+//  in simulation.  Owned by the
+//  SimulationContext of a game, which
+//  gives the whole game access to a
+//  common RNG implementation without
+//  sharing it with other games.
+//
+//  Numbers are drawn from counter-based
+//  streams (RandomStream) keyed by
+//  (seed, turn, citizen id, draw index).
+//  Before a citizen acts the village
+//  selects that citizen's stream with
+//  Begin(); village-wide draws (such as
+//  turn order) use VILLAGE_STREAM.  The
+//  selected stream is per thread, so
+//  results do not depend on how many
+//  threads run a turn, and any single
+//  citizen turn can be replayed from its
+//  key alone.  A turn begun on one thread
+//  can be continued on another (Position,
+//  Resume).
 //  
 //////////////////////////////////
 
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class RandomNumberGenerator {
 	
-	private static RandomNumberGenerator mInstance = null;
+	/// Stream id for draws not made by a citizen
+	public static final long VILLAGE_STREAM = -1;
+	
+	private long mSeed;
 	
-	private Random mRng;
+	// stream selected by each thread
+	private ThreadLocal<RandomStream> mStream;
 	
 	
-	private RandomNumberGenerator() {
-		mRng = new Random();
+	public RandomNumberGenerator() {
+		this(ThreadLocalRandom.current().nextLong());
 	}
 	
 	
-	public static RandomNumberGenerator Inst() {
-		if (mInstance == null) {
-			mInstance = new RandomNumberGenerator();
-		}
-		
-		return mInstance;
+	/// Reproducible sequence
+	public RandomNumberGenerator(long seed) {
+		mSeed = seed;
+		mStream = ThreadLocal.withInitial(RandomStream::new);
+	}
+	
+	
+	public long Seed() {
+		return mSeed;
+	}
+	
+	
+	// select stream of subsequent draws
+	// on calling thread
+	public void Begin(int turn, long streamId) {
+		mStream.get().Select(mSeed, turn, streamId);
+	}
+	
+	
+	// position of the stream selected on
+	// calling thread
+	public long Position() {
+		return mStream.get().Position();
+	}
+	
+	
+	// continue stream from Position on
+	// calling thread
+	public void Resume(long position) {
+		mStream.get().Resume(position);
 	}
 	
 	
 	// generate random integer between
 	// min and max (inclusive)
 	public int Generate(int min, int max) {
-		int randomValue = mRng.nextInt(max - min + 1) + min;
+		int randomValue = mStream.get().Generate(min, max);
 		
 		return randomValue;
 	}
+	
+	
+	// generate random double in [0, 1)
+	public double GenerateUnit() {
+		return mStream.get().NextUnit();
+	}
+	
+	
+	// generate random 64 bit key
+	// (e.g. for seeding permutations)
+	public long GenerateKey() {
+		return mStream.get().Next();
+	}
 }
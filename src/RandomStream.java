@@ -0,0 +1,107 @@
+//////////////////////////////////
+//	RandomStream
+//
+//  Counter-based random sequence.  The
+//  n-th value of a stream is a pure
+//  function of (seed, turn, stream id, n):
+//  a SplitMix64 sequence whose starting
+//  point is derived by hashing the seed,
+//  turn and stream id.  No state is shared
+//  between streams, so any citizen's draws
+//  can be reproduced independently of the
+//  order (or thread) in which citizens act.
+//
+//  Streams are reused (Select) rather than
+//  allocated per citizen.  A stream's
+//  position can be taken on one thread and
+//  continued on another (Position, Resume).
+//
+//////////////////////////////////
+
+public class RandomStream {
+
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+	
+	private static final long STREAM_GAMMA = 0xD1B54A32D192ED03L;
+	
+	private static final long RANGE_32 = 1L << 32;
+	
+	private static final double UNIT_53 = 0x1.0p-53;
+	
+	// SplitMix64 state
+	private long mState;
+	
+	
+	public RandomStream() {
+		mState = 0;
+	}
+	
+	
+	/// Position stream at first draw of 
+	/// (seed, turn, stream id)
+	public void Select(long seed, int turn, long streamId) {
+		
+		mState = Mix(Mix(seed + (turn + 1) * GOLDEN_GAMMA) + (streamId + 1) * STREAM_GAMMA);
+	}
+	
+	
+	/// Current position, to continue from later
+	/// (Resume)
+	public long Position() {
+		return mState;
+	}
+	
+	
+	/// Continue from position taken earlier
+	public void Resume(long position) {
+		mState = position;
+	}
+	
+	
+	/// Next 64 random bits
+	public long Next() {
+		
+		mState += GOLDEN_GAMMA;
+		
+		return Mix(mState);
+	}
+	
+	
+	/// Uniform integer between min and
+	/// max (inclusive).  Unbiased
+	/// multiply-shift with rejection.
+	public int Generate(int min, int max) {
+		
+		long range = (long) max - min + 1;
+		
+		long product = (Next() >>> 32) * range;
+		long low = product & (RANGE_32 - 1);
+		
+		if (low < range) {
+			long threshold = (RANGE_32 - range) % range;
+			while (low < threshold) {
+				product = (Next() >>> 32) * range;
+				low = product & (RANGE_32 - 1);
+			}
+		}
+		
+		return (int) (min + (product >>> 32));
+	}
+	
+	
+	/// Uniform double in [0, 1)
+	public double NextUnit() {
+		
+		return (Next() >>> 11) * UNIT_53;
+	}
+	
+	
+	/// SplitMix64 finalizer
+	private static long Mix(long z) {
+		
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		
+		return z ^ (z >>> 31);
+	}
+}
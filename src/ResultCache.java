@@ -0,0 +1,536 @@
+//////////////////////////////////
+//	ResultCache
+//
+//  On-disk cache of GameResults, so a seeded
+//  game that was run before is answered
+//  from disk instead of simulated again.
+//
+//  Entries are content addressed: a game's
+//  address is a SHA-256 digest of its
+//  storage type, initial population, seed
+//  and GameManager.RULES_VERSION, and each
+//  result file is named after the address
+//  and turn limit.  Changing the rules
+//  changes every address, so stale results
+//  are never returned (and are deleted when
+//  the cache is opened).
+//
+//  A game's outcome for one turn limit also
+//  answers other limits: a game that ended
+//  early has the same outcome for any limit
+//  past its last turn.  A game that ran to
+//  its limit keeps a Checkpoint of its
+//  final turn, so a longer limit resumes
+//  from there instead of from turn 0.
+//
+//  The index is kept in memory in least
+//  recently used order (file modification
+//  times across runs), and entries are
+//  evicted oldest first while files exceed
+//  the size budget.  A hit only touches the
+//  index and one file time.
+//
+//  Safe for the threads of one process; the
+//  directory must not be shared by several
+//  processes at once.
+//
+//////////////////////////////////
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ResultCache {
+
+	private static final int MAGIC = 0x57575652;	// "WWVR"
+
+	private static final int VERSION = 1;
+
+	private static final String RESULT_SUFFIX = ".result";
+	private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+
+	// checkpoints being written, and their
+	// temporary files (see Checkpoint)
+	private static final String PENDING_SUFFIX = ".pending";
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+
+	// digest bytes used for addresses
+	private static final int ADDRESS_BYTES = 16;
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	/// One cached result and its files
+	private static class Entry {
+		String mAddress;
+		GameResult mResult;
+		boolean mHasCheckpoint;
+		long mSize;
+	}
+
+	private Path mDirectory;
+
+	private long mBudget;
+
+	// bytes of all entries' files
+	private long mSize;
+
+	// least recently used first, by file name
+	private LinkedHashMap<String, Entry> mEntries;
+
+	// entries of each game address by turn limit
+	private HashMap<String, TreeMap<Integer, Entry>> mGames;
+
+	// numbers pending checkpoints
+	private AtomicLong mPendingIds;
+
+	private long mHits;
+	private long mExtensions;
+	private long mMisses;
+
+
+	/// Cache in directory (created if missing)
+	/// keeping at most budget bytes of files
+	public ResultCache(Path directory, long budget) throws IOException {
+
+		mDirectory = directory;
+		mBudget = budget;
+		mSize = 0;
+		mEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+		mGames = new HashMap<String, TreeMap<Integer, Entry>>();
+		mPendingIds = new AtomicLong();
+		mHits = 0;
+		mExtensions = 0;
+		mMisses = 0;
+
+		Files.createDirectories(directory);
+		Load();
+		Evict();
+	}
+
+
+	/// Outcome of game with game's initial
+	/// conditions and turn limit, run or
+	/// taken from the cache
+	public GameResult Run(GameResult game) throws IOException {
+
+		Entry base = null;
+
+		synchronized (this) {
+			GameResult cached = Get(game);
+			if (cached != null) {
+				return cached;
+			}
+
+			base = ExtensionBase(Address(game), game.mNumTurns);
+			if (base != null) {
+				++mExtensions;
+			}
+			else {
+				++mMisses;
+			}
+		}
+
+		GameManager gameMgr = new GameManager(new SimulationContext(game.mSeed));
+		GameResult baseResult = null;
+
+		if (base != null) {
+			try {
+				gameMgr.Resume(CheckpointPath(base));
+				baseResult = base.mResult;
+			}
+			catch (IOException e) {
+				// evicted meanwhile: run from the start
+			}
+		}
+		if (baseResult == null) {
+			gameMgr.InitializeNewGame(game.mNumHumans, game.mNumVampires, game.mNumWerewolves, game.mStorage);
+		}
+
+		gameMgr.Simulate(game.mNumTurns);
+
+		GameResult result = game.WithTurns(game.mNumTurns);
+		result.Record(gameMgr, baseResult);
+
+		// longer limits continue from here
+		Path pending = null;
+		if (false == result.EndedEarly()) {
+			pending = mDirectory.resolve(Name(Address(result), result.mNumTurns) + "." +
+										 mPendingIds.incrementAndGet() + PENDING_SUFFIX);
+			gameMgr.SaveCheckpoint(pending);
+		}
+
+		Put(result, pending);
+
+		return result;
+	}
+
+
+	/// Cached outcome of game, or null if it
+	/// has to be run
+	public synchronized GameResult Get(GameResult game) {
+
+		TreeMap<Integer, Entry> runs = mGames.get(Address(game));
+		if (runs == null) {
+			return null;
+		}
+
+		Entry entry = runs.get(game.mNumTurns);
+
+		// shorter limit, game ended before it
+		if (entry == null) {
+			Map.Entry<Integer, Entry> shorter = runs.lowerEntry(game.mNumTurns);
+			if (shorter != null && true == shorter.getValue().mResult.EndedEarly()) {
+				entry = shorter.getValue();
+			}
+		}
+
+		// longer limit, game ended by this one
+		if (entry == null) {
+			Map.Entry<Integer, Entry> longer = runs.higherEntry(game.mNumTurns);
+			if (longer != null && true == longer.getValue().mResult.EndedEarly() &&
+				longer.getValue().mResult.mTurnsRun <= game.mNumTurns) {
+				entry = longer.getValue();
+			}
+		}
+
+		if (entry == null) {
+			return null;
+		}
+
+		Touch(entry);
+		++mHits;
+
+		GameResult result = game.WithTurns(game.mNumTurns);
+		result.CopyOutcome(entry.mResult);
+
+		return result;
+	}
+
+
+	/// Games answered from the cache
+	public synchronized long Hits() {
+		return mHits;
+	}
+
+
+	/// Games resumed from a shorter run
+	public synchronized long Extensions() {
+		return mExtensions;
+	}
+
+
+	/// Games run from the start
+	public synchronized long Misses() {
+		return mMisses;
+	}
+
+
+	/// Bytes of cached files
+	public synchronized long Size() {
+		return mSize;
+	}
+
+
+	/// Longest run of game shorter than
+	/// numTurns that can be resumed, or null
+	private Entry ExtensionBase(String address, int numTurns) {
+
+		TreeMap<Integer, Entry> runs = mGames.get(address);
+		if (runs == null) {
+			return null;
+		}
+
+		for (Entry entry : runs.headMap(numTurns, false).descendingMap().values()) {
+			if (true == entry.mHasCheckpoint) {
+				Touch(entry);
+				return entry;
+			}
+		}
+
+		return null;
+	}
+
+
+	/// Add result of a run, and its final
+	/// checkpoint (null if none)
+	private synchronized void Put(GameResult result, Path pending) throws IOException {
+
+		String address = Address(result);
+		String name = Name(address, result.mNumTurns);
+
+		Remove(name);
+
+		Entry entry = new Entry();
+		entry.mAddress = address;
+		entry.mResult = result;
+		entry.mHasCheckpoint = pending != null;
+		entry.mSize = WriteResult(ResultPath(name), result);
+
+		if (pending != null) {
+			Path checkpoint = mDirectory.resolve(name + CHECKPOINT_SUFFIX);
+			Files.move(pending, checkpoint, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			entry.mSize += Files.size(checkpoint);
+		}
+
+		Add(name, entry);
+		Evict();
+	}
+
+
+	/// Read index from directory, dropping
+	/// unreadable and stale entries
+	private void Load() throws IOException {
+
+		List<Path> results = new ArrayList<Path>();
+		List<Path> others = new ArrayList<Path>();
+
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(mDirectory)) {
+			for (Path file : files) {
+				if (file.getFileName().toString().endsWith(RESULT_SUFFIX)) {
+					results.add(file);
+				}
+				else {
+					others.add(file);
+				}
+			}
+		}
+
+		// least recently used first
+		HashMap<Path, FileTime> times = new HashMap<Path, FileTime>();
+		for (Path file : results) {
+			times.put(file, Files.getLastModifiedTime(file));
+		}
+		results.sort((a, b) -> times.get(a).compareTo(times.get(b)));
+
+		for (Path file : results) {
+			String fileName = file.getFileName().toString();
+			String name = fileName.substring(0, fileName.length() - RESULT_SUFFIX.length());
+
+			Entry entry = ReadEntry(file, name);
+			if (entry == null) {
+				Files.deleteIfExists(file);
+				continue;
+			}
+			Add(name, entry);
+		}
+
+		// checkpoints without results and
+		// unfinished writes
+		for (Path file : others) {
+			String fileName = file.getFileName().toString();
+
+			boolean keep = false;
+			if (fileName.endsWith(CHECKPOINT_SUFFIX)) {
+				Entry entry = mEntries.get(fileName.substring(0, fileName.length() - CHECKPOINT_SUFFIX.length()));
+				keep = entry != null && true == entry.mHasCheckpoint;
+			}
+
+			if (false == keep) {
+				Files.deleteIfExists(file);
+			}
+		}
+	}
+
+
+	/// Entry of result file, or null if the
+	/// file is not a current result
+	private Entry ReadEntry(Path file, String name) throws IOException {
+
+		try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return null;
+			}
+
+			GameResult result = new GameResult(GameManager.EStorageType.values()[in.readInt()], in.readInt(),
+											   in.readInt(), in.readInt(), in.readInt(), in.readLong());
+			result.mTurnsRun = in.readInt();
+			result.mHumansLeft = in.readInt();
+			result.mVampiresLeft = in.readInt();
+			result.mWerewolvesLeft = in.readInt();
+			result.mVampiresPrevailed = in.readBoolean();
+			result.mConversions = in.readLong();
+			result.mKills = in.readLong();
+			result.mStarvations = in.readLong();
+
+			// other rules, or renamed file
+			String address = Address(result);
+			if (false == name.equals(Name(address, result.mNumTurns))) {
+				return null;
+			}
+
+			Entry entry = new Entry();
+			entry.mAddress = address;
+			entry.mResult = result;
+			entry.mSize = Files.size(file);
+
+			Path checkpoint = CheckpointPath(name);
+			entry.mHasCheckpoint = false == result.EndedEarly() && true == Files.exists(checkpoint);
+			if (true == entry.mHasCheckpoint) {
+				entry.mSize += Files.size(checkpoint);
+			}
+
+			return entry;
+		}
+		catch (IOException | RuntimeException e) {
+			// truncated or corrupt
+			return null;
+		}
+	}
+
+
+	/// Write result file, returning its size
+	private long WriteResult(Path path, GameResult result) throws IOException {
+
+		Path temporary = path.resolveSibling(path.getFileName() + TEMPORARY_SUFFIX);
+
+		try (OutputStream file = Files.newOutputStream(temporary);
+			 DataOutputStream out = new DataOutputStream(file)) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(result.mStorage.ordinal());
+			out.writeInt(result.mNumHumans);
+			out.writeInt(result.mNumVampires);
+			out.writeInt(result.mNumWerewolves);
+			out.writeInt(result.mNumTurns);
+			out.writeLong(result.mSeed);
+			out.writeInt(result.mTurnsRun);
+			out.writeInt(result.mHumansLeft);
+			out.writeInt(result.mVampiresLeft);
+			out.writeInt(result.mWerewolvesLeft);
+			out.writeBoolean(result.mVampiresPrevailed);
+			out.writeLong(result.mConversions);
+			out.writeLong(result.mKills);
+			out.writeLong(result.mStarvations);
+		}
+
+		Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+		return Files.size(path);
+	}
+
+
+	private void Add(String name, Entry entry) {
+
+		mEntries.put(name, entry);
+		mGames.computeIfAbsent(entry.mAddress, address -> new TreeMap<Integer, Entry>())
+			  .put(entry.mResult.mNumTurns, entry);
+		mSize += entry.mSize;
+	}
+
+
+	/// Drop entry and its files, if present
+	private void Remove(String name) {
+
+		Entry entry = mEntries.remove(name);
+		if (entry == null) {
+			return;
+		}
+
+		TreeMap<Integer, Entry> runs = mGames.get(entry.mAddress);
+		runs.remove(entry.mResult.mNumTurns);
+		if (true == runs.isEmpty()) {
+			mGames.remove(entry.mAddress);
+		}
+		mSize -= entry.mSize;
+
+		try {
+			Files.deleteIfExists(ResultPath(name));
+			Files.deleteIfExists(CheckpointPath(name));
+		}
+		catch (IOException e) {
+			// left for the next Load to drop
+		}
+	}
+
+
+	/// Drop least recently used entries
+	/// until files fit the budget
+	private void Evict() {
+
+		while (mSize > mBudget && false == mEntries.isEmpty()) {
+			Remove(mEntries.keySet().iterator().next());
+		}
+	}
+
+
+	/// Mark entry most recently used, here
+	/// and for later runs
+	private void Touch(Entry entry) {
+
+		String name = Name(entry.mAddress, entry.mResult.mNumTurns);
+		mEntries.get(name);
+
+		try {
+			Files.setLastModifiedTime(ResultPath(name), FileTime.fromMillis(System.currentTimeMillis()));
+		}
+		catch (IOException e) {
+			// only the order of later runs suffers
+		}
+	}
+
+
+	private Path ResultPath(String name) {
+		return mDirectory.resolve(name + RESULT_SUFFIX);
+	}
+
+
+	private Path CheckpointPath(String name) {
+		return mDirectory.resolve(name + CHECKPOINT_SUFFIX);
+	}
+
+
+	private Path CheckpointPath(Entry entry) {
+		return CheckpointPath(Name(entry.mAddress, entry.mResult.mNumTurns));
+	}
+
+
+	private static String Name(String address, int numTurns) {
+		return address + "-" + numTurns;
+	}
+
+
+	/// Content address of game's rules and
+	/// initial conditions (not its turn limit)
+	private static String Address(GameResult game) {
+
+		ByteBuffer key = ByteBuffer.allocate(32);
+		key.putInt(GameManager.RULES_VERSION);
+		key.putInt(game.mStorage.ordinal());
+		key.putInt(game.mNumHumans);
+		key.putInt(game.mNumVampires);
+		key.putInt(game.mNumWerewolves);
+		key.putLong(game.mSeed);
+
+		byte[] digest = null;
+		try {
+			digest = MessageDigest.getInstance("SHA-256").digest(key.array());
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 not available", e);
+		}
+
+		char[] address = new char[ADDRESS_BYTES * 2];
+		for (int i = 0; i < ADDRESS_BYTES; ++i) {
+			address[2 * i] = HEX_DIGITS[(digest[i] >> 4) & 0xF];
+			address[2 * i + 1] = HEX_DIGITS[digest[i] & 0xF];
+		}
+
+		return new String(address);
+	}
+}
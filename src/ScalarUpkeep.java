@@ -0,0 +1,105 @@
+//////////////////////////////////
+//	ScalarUpkeep
+//
+//  Upkeep kernel (IUpkeepKernel) applying
+//  one citizen at a time, visiting only the
+//  pending slots.  Runs on any JVM, and
+//  holds the upkeep rules shared with
+//  VectorUpkeep and PackedVillage.
+//
+//  Best picks the vector kernel if it was
+//  compiled (from the separate vector/
+//  source root) and the JVM was started
+//  with --add-modules jdk.incubator.vector,
+//  and this one otherwise.
+//
+//////////////////////////////////
+
+public class ScalarUpkeep implements IUpkeepKernel {
+
+	private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+	private static final String VECTOR_KERNEL = "VectorUpkeep";
+
+
+	public void Apply(short[] window, int count, long[] pending, int first) {
+
+		int firstWord = first >>> 6;
+		int numWords = (count + Long.SIZE - 1) / Long.SIZE;
+
+		for (int w = 0; w < numWords; ++w) {
+			long flags = pending[firstWord + w];
+
+			while (flags != 0) {
+				int i = w * Long.SIZE + Long.numberOfTrailingZeros(flags);
+				flags &= flags - 1;
+
+				window[i] = (short) Upkeep(window[i] & 0xFFFF);
+			}
+		}
+	}
+
+
+	/// Packed citizen after one turn of upkeep
+	/// (see HumanBehavior, and WerewolfBehavior
+	/// in human form)
+	public static int Upkeep(int bits) {
+
+		int health = CitizenBits.Health(bits);
+
+		switch (CitizenBits.Type(bits)) {
+		case HUMAN:
+			int hunger = CitizenBits.Hunger(bits);
+			if (hunger < Citizen.HUNGER_MAX) {
+				return CitizenBits.WithHunger(bits, hunger + HumanBehavior.HUNGER_PER_TURN);
+			}
+			health -= HumanBehavior.STARVATION_HEALTH_COST;
+			break;
+
+		case WEREWOLF:
+			health = Math.min(health + WerewolfBehavior.HUMAN_FORM_HEALTH_INCREASE, Citizen.HEALTH_MAX);
+			break;
+
+		case VAMPIRE:
+		case INVALID:
+			throw new IllegalStateException("No upkeep for " + CitizenBits.Type(bits));
+		}
+
+		if (health <= Citizen.HEALTH_MIN) {
+			throw new IllegalStateException("Deferred upkeep starved a citizen");
+		}
+
+		return CitizenBits.WithHealth(bits, health);
+	}
+
+
+	/// Fastest kernel available
+	public static IUpkeepKernel Best() {
+
+		IUpkeepKernel kernel = Vector();
+		if (kernel == null) {
+			kernel = new ScalarUpkeep();
+		}
+
+		return kernel;
+	}
+
+
+	/// Vector API kernel, or null if not
+	/// available
+	public static IUpkeepKernel Vector() {
+
+		// the class can't even load without it
+		if (false == ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+			return null;
+		}
+
+		try {
+			return (IUpkeepKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+		}
+		catch (ReflectiveOperationException | LinkageError e) {
+			// not compiled in, or other API version
+			return null;
+		}
+	}
+}
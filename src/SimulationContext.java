@@ -0,0 +1,100 @@
+//////////////////////////////////
+//	SimulationContext
+//
+//  Per-game state shared by everything
+//  taking part in one simulation: the turn
+//  clock, the random source, an optional
+//  event sink (see IEventSink), optional
+//  live metrics (SimulationMetrics) and
+//  optional phase timings (PhaseTimings).  Passed to
+//  the village, and from there to the
+//  behaviors through IVictimProvider, so
+//  any number of games can run in one JVM
+//  (on separate threads) without sharing
+//  state.
+//
+//  A context is not thread-safe; a game
+//  must be advanced by one thread at a time.
+//
+//////////////////////////////////
+
+public class SimulationContext {
+
+	private TurnManager mClock;
+	
+	private RandomNumberGenerator mRng;
+	
+	private IEventSink mEvents;
+	
+	private SimulationMetrics mMetrics;
+	
+	private PhaseTimings mTimings;
+	
+	
+	/// Context with unpredictable random sequence
+	public SimulationContext() {
+		mClock = new TurnManager();
+		mRng = new RandomNumberGenerator();
+		mEvents = null;
+		mMetrics = null;
+		mTimings = null;
+	}
+	
+	
+	/// Context with reproducible random sequence
+	public SimulationContext(long seed) {
+		mClock = new TurnManager();
+		mRng = new RandomNumberGenerator(seed);
+		mEvents = null;
+		mMetrics = null;
+		mTimings = null;
+	}
+	
+	
+	/// Game turn
+	public TurnManager Clock() {
+		return mClock;
+	}
+	
+	
+	/// Random source
+	public RandomNumberGenerator Rng() {
+		return mRng;
+	}
+	
+	
+	/// Receiver of game events, null if
+	/// events are not recorded
+	public IEventSink Events() {
+		return mEvents;
+	}
+	
+	
+	public void SetEvents(IEventSink events) {
+		mEvents = events;
+	}
+	
+	
+	/// Live metrics of the game, null if
+	/// not collected
+	public SimulationMetrics Metrics() {
+		return mMetrics;
+	}
+	
+	
+	public void SetMetrics(SimulationMetrics metrics) {
+		mMetrics = metrics;
+	}
+	
+	
+	/// Phase timings of the game's turns, null
+	/// if turns are not timed
+	public PhaseTimings Timings() {
+		return mTimings;
+	}
+	
+	
+	public void SetTimings(PhaseTimings timings) {
+		mTimings = timings;
+	}
+}
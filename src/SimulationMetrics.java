@@ -0,0 +1,217 @@
+//////////////////////////////////
+//	SimulationMetrics
+//
+//  Live counters and gauges of one game,
+//  readable from other threads while the
+//  game runs (GameManager registers them
+//  as an MBean during Run).
+//
+//  Villages report deaths, conversions and
+//  victim selections as they happen; event
+//  counters are LongAdders, so updates from
+//  several threads never contend on one
+//  field.  The census and the per-turn
+//  figures are gauges set once per turn by
+//  EndTurn on the game's thread.
+//
+//////////////////////////////////
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class SimulationMetrics implements SimulationMetricsMBean {
+
+	private LongAdder mConversions;
+	private LongAdder mKills;
+	private LongAdder mStarvations;
+	private LongAdder mVictimSelections;
+
+	// sum of pool sizes over victim selections
+	private LongAdder mVictimCandidates;
+
+	// gauges (written by game thread only)
+	private volatile int mTurn;
+	private volatile int mLivingHumans;
+	private volatile int mLivingVampires;
+	private volatile int mLivingWerewolves;
+	private volatile long mLastTurnConversions;
+	private volatile long mLastTurnKills;
+	private volatile long mLastTurnStarvations;
+	private volatile double mTurnsPerSecond;
+
+	// totals at end of previous turn, and
+	// start of timing (game thread only)
+	private long mPreviousConversions;
+	private long mPreviousKills;
+	private long mPreviousStarvations;
+	private int mStartTurn;
+	private long mStartNanos;
+
+
+	public SimulationMetrics() {
+		mConversions = new LongAdder();
+		mKills = new LongAdder();
+		mStarvations = new LongAdder();
+		mVictimSelections = new LongAdder();
+		mVictimCandidates = new LongAdder();
+
+		mTurn = 0;
+		mLivingHumans = 0;
+		mLivingVampires = 0;
+		mLivingWerewolves = 0;
+		mLastTurnConversions = 0;
+		mLastTurnKills = 0;
+		mLastTurnStarvations = 0;
+		mTurnsPerSecond = 0.0;
+
+		mPreviousConversions = 0;
+		mPreviousKills = 0;
+		mPreviousStarvations = 0;
+		mStartTurn = 0;
+		mStartNanos = System.nanoTime();
+	}
+
+
+	/// count citizens died (starved or killed)
+	public void Killed(Citizen.EKillType killer, int count) {
+
+		if (killer == Citizen.EKillType.HUNGER) {
+			mStarvations.add(count);
+		}
+		else {
+			mKills.add(count);
+		}
+	}
+
+
+	/// count humans became vampires or werewolves
+	public void Converted(int count) {
+		mConversions.add(count);
+	}
+
+
+	/// count predators each picked a victim
+	/// among poolSize candidates
+	public void VictimsSelected(int count, long poolSize) {
+		mVictimSelections.add(count);
+		mVictimCandidates.add(count * poolSize);
+	}
+
+
+	/// Start timing turns from current state
+	public void Start(int turn, int humans, int vampires, int werewolves) {
+
+		mStartTurn = turn;
+		mStartNanos = System.nanoTime();
+		mTurnsPerSecond = 0.0;
+
+		mPreviousConversions = mConversions.sum();
+		mPreviousKills = mKills.sum();
+		mPreviousStarvations = mStarvations.sum();
+
+		SetCensus(turn, humans, vampires, werewolves);
+	}
+
+
+	/// Update gauges after turns up to (not
+	/// including) turn have run
+	public void EndTurn(int turn, int humans, int vampires, int werewolves) {
+
+		long conversions = mConversions.sum();
+		long kills = mKills.sum();
+		long starvations = mStarvations.sum();
+
+		mLastTurnConversions = conversions - mPreviousConversions;
+		mLastTurnKills = kills - mPreviousKills;
+		mLastTurnStarvations = starvations - mPreviousStarvations;
+
+		mPreviousConversions = conversions;
+		mPreviousKills = kills;
+		mPreviousStarvations = starvations;
+
+		double seconds = (System.nanoTime() - mStartNanos) / 1e9;
+		if (seconds > 0.0) {
+			mTurnsPerSecond = (turn - mStartTurn) / seconds;
+		}
+
+		SetCensus(turn, humans, vampires, werewolves);
+	}
+
+
+	public int getTurn() {
+		return mTurn;
+	}
+
+
+	public int getLivingHumans() {
+		return mLivingHumans;
+	}
+
+
+	public int getLivingVampires() {
+		return mLivingVampires;
+	}
+
+
+	public int getLivingWerewolves() {
+		return mLivingWerewolves;
+	}
+
+
+	public long getConversions() {
+		return mConversions.sum();
+	}
+
+
+	public long getKills() {
+		return mKills.sum();
+	}
+
+
+	public long getStarvations() {
+		return mStarvations.sum();
+	}
+
+
+	public long getLastTurnConversions() {
+		return mLastTurnConversions;
+	}
+
+
+	public long getLastTurnKills() {
+		return mLastTurnKills;
+	}
+
+
+	public long getLastTurnStarvations() {
+		return mLastTurnStarvations;
+	}
+
+
+	public long getVictimSelections() {
+		return mVictimSelections.sum();
+	}
+
+
+	public double getMeanVictimPoolSize() {
+
+		long selections = mVictimSelections.sum();
+		if (selections == 0) {
+			return 0.0;
+		}
+
+		return (double) mVictimCandidates.sum() / selections;
+	}
+
+
+	public double getTurnsPerSecond() {
+		return mTurnsPerSecond;
+	}
+
+
+	private void SetCensus(int turn, int humans, int vampires, int werewolves) {
+		mTurn = turn;
+		mLivingHumans = humans;
+		mLivingVampires = vampires;
+		mLivingWerewolves = werewolves;
+	}
+}
@@ -0,0 +1,50 @@
+//////////////////////////////////
+//	SimulationMetricsMBean
+//
+//  Management interface of SimulationMetrics,
+//  so a running game can be watched from JMX
+//  tools (e.g. JConsole).  JMX derives the
+//  interface and attribute names from the
+//  class name and the getter names, hence
+//  the naming that differs from the rest of
+//  the code.
+//
+//////////////////////////////////
+
+public interface SimulationMetricsMBean {
+
+	/// Turns run so far
+	public int getTurn();
+
+	public int getLivingHumans();
+
+	public int getLivingVampires();
+
+	public int getLivingWerewolves();
+
+	/// Totals since the game started
+	public long getConversions();
+
+	public long getKills();
+
+	public long getStarvations();
+
+	/// Counts of the last turn run (0 for
+	/// turns skipped as quiet)
+	public long getLastTurnConversions();
+
+	public long getLastTurnKills();
+
+	public long getLastTurnStarvations();
+
+	/// Victims picked by predators, and the
+	/// mean number of candidates they were
+	/// picked from
+	public long getVictimSelections();
+
+	public double getMeanVictimPoolSize();
+
+	/// Turns per second since the current
+	/// run (GameManager.Simulate) started
+	public double getTurnsPerSecond();
+}
@@ -0,0 +1,310 @@
+//////////////////////////////////
+//	SimulationServer
+//
+//  Runs simulation jobs sent over a local
+//  socket, so other tools can run many
+//  games in one JVM instead of starting
+//  one per game.  Listens on a loopback
+//  TCP port or a Unix domain socket.
+//
+//  Protocol (one job per line, any number
+//  of jobs per connection):
+//  - request:  <humans> <vampires> <werewolves> <turns> [seed]
+//  - response: "Seed: <seed>", "Total turns
+//              run: <n>" and the village status
+//              as printed by Run, then "END"
+//  - invalid requests, and villages of more
+//    than MAX_POPULATION citizens, are
+//    answered with "ERROR <reason>" and the
+//    connection stays open
+//
+//  Each connection is served on its own
+//  thread: a virtual thread where the JVM
+//  has them (looked up by reflection, so
+//  the server also runs on older JVMs
+//  with platform threads).  Jobs of one
+//  connection run one after another, so
+//  responses come in request order; a
+//  client runs jobs side by side over
+//  several connections.  Each job gets its
+//  own GameManager and SimulationContext,
+//  so jobs share no clock or random state.
+//
+//  Two limits keep load from exhausting the
+//  heap: at most maxJobs villages exist at
+//  once (further jobs wait for a permit
+//  before allocating anything), and at most
+//  maxConnections connections are open;
+//  past that the server stops accepting and
+//  clients queue in the listen backlog.  A
+//  job's response is rendered (sampled for
+//  large villages, see Main.InitializeGame)
+//  before its permit is released, so a
+//  client slow to read holds no village.
+//
+//////////////////////////////////
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class SimulationServer implements Closeable {
+
+	// largest village of a job (about 100 MB
+	// as citizen objects)
+	static final long MAX_POPULATION = 1000000;
+
+	private ServerSocketChannel mServer;
+
+	// socket file to remove on close, null
+	// for TCP
+	private Path mSocketPath;
+
+	private ExecutorService mExecutor;
+
+	// villages that may exist at once
+	private Semaphore mJobs;
+
+	// connections that may be open at once
+	private Semaphore mConnections;
+
+
+	/// Server listening on address (see Address),
+	/// running at most maxJobs games at once
+	/// for at most maxConnections clients
+	public SimulationServer(SocketAddress address, int maxJobs, int maxConnections) throws IOException {
+
+		mSocketPath = null;
+
+		if (address instanceof UnixDomainSocketAddress) {
+			// left over from a previous server
+			mSocketPath = ((UnixDomainSocketAddress) address).getPath();
+			Files.deleteIfExists(mSocketPath);
+
+			mServer = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		}
+		else {
+			mServer = ServerSocketChannel.open();
+		}
+		mServer.bind(address, maxConnections);
+
+		mExecutor = NewThreadPerTaskExecutor();
+		mJobs = new Semaphore(maxJobs);
+		mConnections = new Semaphore(maxConnections);
+	}
+
+
+	/// Loopback TCP address of a port number,
+	/// otherwise Unix socket at given path
+	public static SocketAddress Address(String spec) {
+
+		try {
+			return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(spec));
+		}
+		catch (NumberFormatException e) {
+			return UnixDomainSocketAddress.of(Paths.get(spec));
+		}
+	}
+
+
+	/// Address actually bound (e.g. the port
+	/// chosen for port 0)
+	public SocketAddress LocalAddress() throws IOException {
+		return mServer.getLocalAddress();
+	}
+
+
+	/// Accept and serve clients until closed
+	public void Serve() throws IOException, InterruptedException {
+
+		while (true == mServer.isOpen()) {
+			// full: leave clients in the backlog
+			mConnections.acquire();
+
+			SocketChannel channel = null;
+			try {
+				channel = mServer.accept();
+			}
+			catch (IOException e) {
+				mConnections.release();
+
+				if (false == mServer.isOpen()) {
+					return;
+				}
+				throw e;
+			}
+
+			SocketChannel client = channel;
+			mExecutor.execute(() -> {
+				try {
+					Serve(client);
+				}
+				finally {
+					mConnections.release();
+				}
+			});
+		}
+	}
+
+
+	/// Stop accepting; jobs already running
+	/// finish
+	@Override
+	public void close() throws IOException {
+
+		mServer.close();
+		mExecutor.shutdown();
+
+		if (mSocketPath != null) {
+			Files.deleteIfExists(mSocketPath);
+		}
+	}
+
+
+	/// Run jobs of one client until it
+	/// closes the connection
+	private void Serve(SocketChannel channel) {
+
+		try (SocketChannel client = channel;
+			 BufferedReader requests = new BufferedReader(new InputStreamReader(Channels.newInputStream(client),
+																				 StandardCharsets.US_ASCII))) {
+			String request = requests.readLine();
+			while (request != null) {
+				if (false == request.isBlank()) {
+					RunJob(request, client);
+				}
+				request = requests.readLine();
+			}
+		}
+		catch (IOException e) {
+			// client went away
+		}
+		catch (InterruptedException e) {
+			// server shutting down
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	/// Run one requested game and write its
+	/// result to client
+	private void RunJob(String request, SocketChannel client) throws IOException, InterruptedException {
+
+		String[] fields = request.trim().split("\\s+");
+		if (fields.length < 4 || fields.length > 5) {
+			Reply(client, "ERROR expected <humans> <vampires> <werewolves> <turns> [seed]\n");
+			return;
+		}
+
+		int[] counts = new int[4];
+		long seed = ThreadLocalRandom.current().nextLong();
+		try {
+			for (int i = 0; i < counts.length; ++i) {
+				counts[i] = Integer.parseInt(fields[i]);
+			}
+			if (fields.length > 4) {
+				seed = Long.parseLong(fields[4]);
+			}
+		}
+		catch (NumberFormatException e) {
+			Reply(client, "ERROR not a number: " + e.getMessage() + "\n");
+			return;
+		}
+
+		GameManager gameMgr = new GameManager(new SimulationContext(seed));
+		for (int count : counts) {
+			if (false == gameMgr.InputValid(count)) {
+				Reply(client, "ERROR invalid count " + count + "\n");
+				return;
+			}
+		}
+
+		long population = (long) counts[0] + counts[1] + counts[2];
+		if (population > MAX_POPULATION) {
+			Reply(client, "ERROR population " + population + " over " + MAX_POPULATION + "\n");
+			return;
+		}
+
+		// no village exists before a permit
+		byte[] result = null;
+		mJobs.acquire();
+		try {
+			result = RunGame(gameMgr, counts, seed);
+		}
+		finally {
+			mJobs.release();
+		}
+
+		Reply(client, ByteBuffer.wrap(result));
+		Reply(client, "END\n");
+	}
+
+
+	/// Run game and render its result; the
+	/// village is garbage once this returns
+	private static byte[] RunGame(GameManager gameMgr, int[] counts, long seed) throws IOException {
+
+		Main.InitializeGame(gameMgr, counts[0], counts[1], counts[2]);
+		gameMgr.Simulate(counts[3]);
+
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		WritableByteChannel channel = Channels.newChannel(result);
+
+		String header = "Seed: " + seed + "\nTotal turns run: " + gameMgr.TurnsRun() + "\n";
+		String description = gameMgr.StatusDescription();
+		if (description != null) {
+			header += description + "\n";
+		}
+		channel.write(ByteBuffer.wrap(header.getBytes(StandardCharsets.US_ASCII)));
+		gameMgr.WriteStatus(channel);
+
+		return result.toByteArray();
+	}
+
+
+	private static void Reply(SocketChannel client, String text) throws IOException {
+		Reply(client, ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII)));
+	}
+
+
+	private static void Reply(SocketChannel client, ByteBuffer buffer) throws IOException {
+
+		while (true == buffer.hasRemaining()) {
+			client.write(buffer);
+		}
+	}
+
+
+	/// Executor starting a virtual thread per
+	/// task if the JVM has them, otherwise a
+	/// platform thread
+	private static ExecutorService NewThreadPerTaskExecutor() {
+
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+}
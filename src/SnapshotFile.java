@@ -0,0 +1,180 @@
+//////////////////////////////////
+//	SnapshotFile
+//
+//  Sequential reader / writer of a file
+//  through memory-mapped windows.  Values
+//  are copied straight into (or out of)
+//  the page cache, so saving a village
+//  costs roughly a memory copy.  Windows
+//  are remapped as the position advances,
+//  which lifts the 2 GB limit of a single
+//  mapping.
+//
+//  Values are stored big-endian, except
+//  for bulk copies which are stored as is.
+//
+//////////////////////////////////
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class SnapshotFile implements Closeable {
+
+	private static final long WINDOW_SIZE = 1L << 30;
+
+	private FileChannel mChannel;
+
+	private FileChannel.MapMode mMode;
+
+	private long mSize;
+
+	private MappedByteBuffer mWindow;
+
+	private long mWindowStart;
+
+
+	private SnapshotFile(FileChannel channel, FileChannel.MapMode mode, long size) throws IOException {
+		mChannel = channel;
+		mMode = mode;
+		mSize = size;
+		Map(0);
+	}
+
+
+	/// New file of given size, replacing any existing file
+	public static SnapshotFile Create(Path path, long size) throws IOException {
+
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+											   StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+		return new SnapshotFile(channel, FileChannel.MapMode.READ_WRITE, size);
+	}
+
+
+	/// Existing file for reading
+	public static SnapshotFile Open(Path path) throws IOException {
+
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+
+		return new SnapshotFile(channel, FileChannel.MapMode.READ_ONLY, channel.size());
+	}
+
+
+	public void PutShort(short value) throws IOException {
+		Reserve(Short.BYTES);
+		mWindow.putShort(value);
+	}
+
+
+	public void PutInt(int value) throws IOException {
+		Reserve(Integer.BYTES);
+		mWindow.putInt(value);
+	}
+
+
+	public void PutLong(long value) throws IOException {
+		Reserve(Long.BYTES);
+		mWindow.putLong(value);
+	}
+
+
+	/// Copy remaining bytes of source
+	public void PutBytes(ByteBuffer source) throws IOException {
+
+		ByteBuffer view = source.duplicate();
+
+		while (view.hasRemaining()) {
+			Reserve(1);
+
+			int length = Math.min(view.remaining(), mWindow.remaining());
+			ByteBuffer part = view.slice();
+			part.limit(length);
+			mWindow.put(part);
+			view.position(view.position() + length);
+		}
+	}
+
+
+	public short GetShort() throws IOException {
+		Reserve(Short.BYTES);
+		return mWindow.getShort();
+	}
+
+
+	public int GetInt() throws IOException {
+		Reserve(Integer.BYTES);
+		return mWindow.getInt();
+	}
+
+
+	public long GetLong() throws IOException {
+		Reserve(Long.BYTES);
+		return mWindow.getLong();
+	}
+
+
+	/// Fill remaining bytes of destination
+	public void GetBytes(ByteBuffer destination) throws IOException {
+
+		ByteBuffer view = destination.duplicate();
+
+		while (view.hasRemaining()) {
+			Reserve(1);
+
+			int length = Math.min(view.remaining(), mWindow.remaining());
+			ByteBuffer part = mWindow.slice();
+			part.limit(length);
+			view.put(part);
+			mWindow.position(mWindow.position() + length);
+		}
+	}
+
+
+	/// Flush written data to storage and close
+	@Override
+	public void close() throws IOException {
+
+		if (mMode == FileChannel.MapMode.READ_WRITE) {
+			mWindow.force();
+		}
+
+		mWindow = null;
+		mChannel.close();
+	}
+
+
+	/// Make sure the next value fits in the
+	/// current window, remapping from the
+	/// current position if it doesn't
+	private void Reserve(int bytes) throws IOException {
+
+		if (mWindow.remaining() >= bytes) {
+			return;
+		}
+
+		long position = mWindowStart + mWindow.position();
+		if (position + bytes > mSize) {
+			throw new IOException("Snapshot truncated at " + position);
+		}
+
+		if (mMode == FileChannel.MapMode.READ_WRITE) {
+			mWindow.force();
+		}
+
+		Map(position);
+	}
+
+
+	private void Map(long start) throws IOException {
+
+		long length = Math.min(WINDOW_SIZE, mSize - start);
+
+		mWindow = mChannel.map(mMode, start, length);
+		mWindowStart = start;
+	}
+}
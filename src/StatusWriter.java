@@ -0,0 +1,408 @@
+//////////////////////////////////
+//	StatusWriter
+//
+//  Streams village status to a channel
+//  through one reusable byte buffer, so
+//  reporting a huge village needs no
+//  per-citizen strings and no giant
+//  result String.  Villages feed it every
+//  citizen grouped by type (Add), then
+//  call Finish.
+//
+//  Modes:
+//  - FULL:     one line per citizen, same
+//              format as Citizen.GetStatus
+//  - SUMMARY:  per-type counts, deaths by
+//              cause and health / hunger
+//              histograms of the living
+//  - SAMPLED:  summary plus a uniform random
+//              sample of K citizens per type
+//              (reservoir sampling)
+//
+//  Villages tracking changes (see
+//  IVillage.TrackChanges) also report only
+//  the citizens changed in a turn, by id
+//  (AddChanges, AddChanged), in any mode.
+//
+//////////////////////////////////
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+public class StatusWriter {
+
+	public enum EMode {
+		FULL,
+		SUMMARY,
+		SAMPLED
+	}
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	// longest single write (one citizen line)
+	private static final int MAX_LINE = 128;
+
+	private static final int HEALTH_BUCKET_SIZE = 10;
+
+	private static final int NUM_TYPES = Citizen.ECitizenType.values().length;
+
+	private static final int NUM_KILL_TYPES = Citizen.EKillType.values().length;
+
+	private static final Citizen.ECitizenType[] REPORTED_TYPES = {
+		Citizen.ECitizenType.HUMAN, Citizen.ECitizenType.VAMPIRE, Citizen.ECitizenType.WEREWOLF
+	};
+
+	// type labels as in Citizen.GetStatus
+	private static final byte[][] TYPE_LABELS = {
+		Bytes("Unknown "), Bytes("Human   "), Bytes("Vampire "), Bytes("Werewolf")
+	};
+
+	private static final byte[][] KILL_LABELS = {
+		Bytes("Unknown "), Bytes("Hunger  "), Bytes("Vampire "), Bytes("Werewolf")
+	};
+
+	private static final byte[][] GROUP_LABELS = {
+		Bytes("Unknown"), Bytes("Humans"), Bytes("Vampires"), Bytes("Werewolves")
+	};
+
+	private static final byte[] SEPARATOR = Bytes("   ");
+	private static final byte[] HUNGER = Bytes("Hunger: ");
+	private static final byte[] HEALTH = Bytes("Health: ");
+	private static final byte[] KILLED_BY = Bytes("Killed by: ");
+	private static final byte[] CONVERTED = Bytes("   (converted from human)");
+	private static final byte[] SAMPLE_OF = Bytes("  sample of ");
+	private static final byte[] SAMPLE_END = Bytes(":\n");
+	private static final byte[] LIVING = Bytes(": living ");
+	private static final byte[] DEAD = Bytes(", dead ");
+	private static final byte[] BY_HUNGER = Bytes(" (hunger ");
+	private static final byte[] BY_VAMPIRE = Bytes(", vampire ");
+	private static final byte[] BY_WEREWOLF = Bytes(", werewolf ");
+	private static final byte[] CONVERTED_COUNT = Bytes("), converted from human ");
+	private static final byte[] HEALTH_HISTOGRAM = Bytes("  health:");
+	private static final byte[] HUNGER_HISTOGRAM = Bytes("  hunger:");
+	private static final byte[] TURN = Bytes("Turn ");
+	private static final byte[] CHANGED = Bytes(" changed\n");
+
+	private WritableByteChannel mChannel;
+
+	private ByteBuffer mBuffer;
+
+	private EMode mMode;
+
+	// counts by type ordinal
+	private long[] mLiving;
+	private long[] mConverted;
+
+	// [type][kill type]
+	private long[][] mDead;
+
+	// living citizens by [type][value]
+	private long[][] mHealthHistogram;
+	private long[][] mHungerHistogram;
+
+	// SAMPLED mode reservoirs of packed citizens
+	private int mSampleSize;
+	private int[][] mSamples;
+	private long[] mSeen;
+	private RandomStream mSampleRng;
+
+
+	/// Writer of all citizens (FULL mode)
+	public StatusWriter(WritableByteChannel channel) {
+		this(channel, EMode.FULL, 0, 0);
+	}
+
+
+	/// Writer in given mode.  sampleSize and
+	/// seed are only used in SAMPLED mode.
+	public StatusWriter(WritableByteChannel channel, EMode mode, int sampleSize, long seed) {
+		mChannel = channel;
+		mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+		mMode = mode;
+
+		mLiving = new long[NUM_TYPES];
+		mConverted = new long[NUM_TYPES];
+		mDead = new long[NUM_TYPES][NUM_KILL_TYPES];
+		mHealthHistogram = new long[NUM_TYPES][Citizen.HEALTH_MAX + 1];
+		mHungerHistogram = new long[NUM_TYPES][Citizen.HUNGER_MAX + 1];
+
+		mSampleSize = sampleSize;
+		mSamples = new int[NUM_TYPES][mode == EMode.SAMPLED ? sampleSize : 0];
+		mSeen = new long[NUM_TYPES];
+		mSampleRng = new RandomStream();
+		mSampleRng.Select(seed, 0, RandomNumberGenerator.VILLAGE_STREAM);
+	}
+
+
+	/// Line telling what a status report in
+	/// mode leaves out, or null for none (FULL)
+	public static String Describe(EMode mode, int sampleSize) {
+
+		String description = null;
+
+		switch (mode) {
+		case FULL:
+			break;
+
+		case SUMMARY:
+			description = "Status summary by type (citizens not listed):";
+			break;
+
+		case SAMPLED:
+			description = "Status summary by type, with a random sample of " + sampleSize + " citizens each:";
+			break;
+		}
+
+		return description;
+	}
+
+
+	/// Report one citizen
+	public void Add(Citizen.ECitizenType type, int hunger, int health,
+					Citizen.EKillType killedBy, boolean convertedHuman) throws IOException {
+
+		int t = type.ordinal();
+
+		if (killedBy == Citizen.EKillType.INVALID) {
+			++mLiving[t];
+			++mHealthHistogram[t][health];
+			++mHungerHistogram[t][hunger];
+		}
+		else {
+			++mDead[t][killedBy.ordinal()];
+		}
+
+		if (true == convertedHuman) {
+			++mConverted[t];
+		}
+
+		switch (mMode) {
+		case FULL:
+			WriteCitizen(type, hunger, health, killedBy, convertedHuman);
+			break;
+
+		case SAMPLED:
+			Sample(t, CitizenBits.Pack(type, hunger, health, killedBy, convertedHuman));
+			break;
+
+		case SUMMARY:
+			break;
+		}
+	}
+
+
+	/// Start report of citizens changed up to
+	/// given turn (numChanged AddChanged calls
+	/// follow)
+	public void AddChanges(int turn, int numChanged) throws IOException {
+
+		Reserve();
+		Put(TURN);
+		PutNumber(turn);
+		PutByte(':');
+		PutByte(' ');
+		PutNumber(numChanged);
+		Put(CHANGED);
+	}
+
+
+	/// Report one changed citizen, prefixed by
+	/// its id
+	public void AddChanged(int id, Citizen.ECitizenType type, int hunger, int health,
+						   Citizen.EKillType killedBy, boolean convertedHuman) throws IOException {
+
+		Reserve();
+		PutByte('#');
+		PutNumber(id);
+		PutByte(' ');
+		WriteCitizen(type, hunger, health, killedBy, convertedHuman);
+	}
+
+
+	/// Write any pending report and flush
+	public void Finish() throws IOException {
+
+		if (mMode != EMode.FULL) {
+			for (Citizen.ECitizenType type : REPORTED_TYPES) {
+				WriteSummary(type);
+
+				if (mMode == EMode.SAMPLED) {
+					WriteSamples(type);
+				}
+			}
+		}
+
+		Flush();
+	}
+
+
+	/// Keep uniform sample of citizens of type
+	private void Sample(int t, int bits) {
+
+		long seen = mSeen[t]++;
+
+		if (seen < mSampleSize) {
+			mSamples[t][(int) seen] = bits;
+		}
+		else {
+			long slot = (mSampleRng.Next() >>> 1) % (seen + 1);
+			if (slot < mSampleSize) {
+				mSamples[t][(int) slot] = bits;
+			}
+		}
+	}
+
+
+	private void WriteSamples(Citizen.ECitizenType type) throws IOException {
+
+		int t = type.ordinal();
+		int count = (int) Math.min(mSeen[t], mSampleSize);
+
+		Reserve();
+		Put(SAMPLE_OF);
+		PutNumber(count);
+		Put(SAMPLE_END);
+
+		for (int i = 0; i < count; ++i) {
+			int bits = mSamples[t][i];
+			WriteCitizen(type, CitizenBits.Hunger(bits), CitizenBits.Health(bits),
+						 CitizenBits.KilledBy(bits), CitizenBits.ConvertedHuman(bits));
+		}
+	}
+
+
+	private void WriteSummary(Citizen.ECitizenType type) throws IOException {
+
+		int t = type.ordinal();
+
+		long dead = 0;
+		for (long count : mDead[t]) {
+			dead += count;
+		}
+
+		Reserve();
+		Put(GROUP_LABELS[t]);
+		Put(LIVING);
+		PutNumber(mLiving[t]);
+		Put(DEAD);
+		PutNumber(dead);
+		Put(BY_HUNGER);
+		PutNumber(mDead[t][Citizen.EKillType.HUNGER.ordinal()]);
+		Put(BY_VAMPIRE);
+		PutNumber(mDead[t][Citizen.EKillType.VAMPIRE.ordinal()]);
+		Put(BY_WEREWOLF);
+		PutNumber(mDead[t][Citizen.EKillType.WEREWOLF.ordinal()]);
+		Put(CONVERTED_COUNT);
+		PutNumber(mConverted[t]);
+		PutByte('\n');
+
+		if (mLiving[t] == 0) {
+			return;
+		}
+
+		// health by buckets of 10
+		Reserve();
+		Put(HEALTH_HISTOGRAM);
+		for (int low = Citizen.HEALTH_MIN; low <= Citizen.HEALTH_MAX; low += HEALTH_BUCKET_SIZE) {
+			long count = 0;
+			for (int health = low; health < low + HEALTH_BUCKET_SIZE && health <= Citizen.HEALTH_MAX; ++health) {
+				count += mHealthHistogram[t][health];
+			}
+
+			Reserve();
+			PutByte(' ');
+			PutNumber(low);
+			PutByte('-');
+			PutNumber(Math.min(low + HEALTH_BUCKET_SIZE - 1, Citizen.HEALTH_MAX));
+			PutByte(':');
+			PutNumber(count);
+		}
+		PutByte('\n');
+
+		Reserve();
+		Put(HUNGER_HISTOGRAM);
+		for (int hunger = Citizen.HUNGER_MIN; hunger <= Citizen.HUNGER_MAX; ++hunger) {
+			Reserve();
+			PutByte(' ');
+			PutNumber(hunger);
+			PutByte(':');
+			PutNumber(mHungerHistogram[t][hunger]);
+		}
+		PutByte('\n');
+	}
+
+
+	/// Same format as Citizen.GetStatus
+	private void WriteCitizen(Citizen.ECitizenType type, int hunger, int health,
+							  Citizen.EKillType killedBy, boolean convertedHuman) throws IOException {
+
+		Reserve();
+
+		Put(TYPE_LABELS[type.ordinal()]);
+		Put(SEPARATOR);
+		Put(HUNGER);
+		PutNumber(hunger);
+		Put(SEPARATOR);
+		Put(HEALTH);
+		PutNumber(health);
+
+		if (killedBy != Citizen.EKillType.INVALID) {
+			Put(SEPARATOR);
+			Put(KILLED_BY);
+			Put(KILL_LABELS[killedBy.ordinal()]);
+		}
+
+		if (true == convertedHuman) {
+			Put(CONVERTED);
+		}
+
+		PutByte('\n');
+	}
+
+
+	/// Make room for one line
+	private void Reserve() throws IOException {
+
+		if (mBuffer.remaining() < MAX_LINE) {
+			Flush();
+		}
+	}
+
+
+	private void Flush() throws IOException {
+
+		mBuffer.flip();
+		while (mBuffer.hasRemaining()) {
+			mChannel.write(mBuffer);
+		}
+		mBuffer.clear();
+	}
+
+
+	private void Put(byte[] bytes) {
+		mBuffer.put(bytes);
+	}
+
+
+	private void PutByte(char c) {
+		mBuffer.put((byte) c);
+	}
+
+
+	/// Decimal digits of non-negative value
+	private void PutNumber(long value) {
+
+		if (value >= 10) {
+			PutNumber(value / 10);
+		}
+
+		mBuffer.put((byte) ('0' + (value % 10)));
+	}
+
+
+	private static byte[] Bytes(String text) {
+		return text.getBytes(StandardCharsets.US_ASCII);
+	}
+}
@@ -0,0 +1,128 @@
+//////////////////////////////////
+//	SweepWriter
+//
+//  Streams results of a ParameterSweep to a
+//  CSV file, one row per finished game, in
+//  the order games finish.  Rows go through
+//  one reusable byte buffer as in
+//  StatusWriter, so a sweep of any size
+//  keeps no results in memory.  The run
+//  column is the game's grid index, for
+//  sorting rows back into grid order.
+//
+//  Columns:
+//  run,humans,vampires,werewolves,turns,seed,
+//  turns_run,humans_left,vampires_left,
+//  werewolves_left,vampires_prevailed,millis
+//
+//////////////////////////////////
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class SweepWriter implements Closeable {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	// longest single row
+	private static final int MAX_LINE = 256;
+
+	private static final byte[] HEADER = Bytes("run,humans,vampires,werewolves,turns,seed," +
+											   "turns_run,humans_left,vampires_left,werewolves_left," +
+											   "vampires_prevailed,millis\n");
+
+	private FileChannel mChannel;
+
+	private ByteBuffer mBuffer;
+
+
+	/// Replaces any existing file
+	public SweepWriter(Path path) throws IOException {
+
+		mChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+									StandardOpenOption.TRUNCATE_EXISTING);
+		mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+		mBuffer.put(HEADER);
+	}
+
+
+	/// Add row of one finished game
+	public void Write(ParameterSweep.Result result) throws IOException {
+
+		if (mBuffer.remaining() < MAX_LINE) {
+			Flush();
+		}
+
+		PutNumber(result.mRun);
+		PutNumber(result.mGame.mNumHumans);
+		PutNumber(result.mGame.mNumVampires);
+		PutNumber(result.mGame.mNumWerewolves);
+		PutNumber(result.mGame.mNumTurns);
+		PutNumber(result.mGame.mSeed);
+		PutNumber(result.mGame.mTurnsRun);
+		PutNumber(result.mGame.mHumansLeft);
+		PutNumber(result.mGame.mVampiresLeft);
+		PutNumber(result.mGame.mWerewolvesLeft);
+		PutNumber(result.mGame.mVampiresPrevailed ? 1 : 0);
+		PutNumber(result.mMillis);
+
+		// last separator ends the row
+		mBuffer.put(mBuffer.position() - 1, (byte) '\n');
+	}
+
+
+	/// Write out rows still buffered
+	public void Flush() throws IOException {
+
+		mBuffer.flip();
+		while (mBuffer.hasRemaining()) {
+			mChannel.write(mBuffer);
+		}
+		mBuffer.clear();
+	}
+
+
+	@Override
+	public void close() throws IOException {
+
+		try {
+			Flush();
+		}
+		finally {
+			mChannel.close();
+		}
+	}
+
+
+	/// Decimal digits of value and separator
+	private void PutNumber(long value) {
+
+		if (value < 0) {
+			mBuffer.put((byte) '-');
+		}
+		PutDigits(value);
+		mBuffer.put((byte) ',');
+	}
+
+
+	/// Digits of magnitude (works for
+	/// Long.MIN_VALUE too)
+	private void PutDigits(long value) {
+
+		if (value <= -10 || value >= 10) {
+			PutDigits(value / 10);
+		}
+
+		mBuffer.put((byte) ('0' + Math.abs(value % 10)));
+	}
+
+
+	private static byte[] Bytes(String text) {
+		return text.getBytes(StandardCharsets.US_ASCII);
+	}
+}
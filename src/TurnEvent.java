@@ -0,0 +1,78 @@
+//////////////////////////////////
+//	TurnEvent
+//
+//  Flight Recorder event spanning one step
+//  of GameManager.Simulate: a full turn, or
+//  a stretch of quiet turns applied at once.
+//
+//////////////////////////////////
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("wwvillage.Turn")
+@Label("Village Turn")
+@Category({ "WWVillage" })
+@StackTrace(false)
+public class TurnEvent extends Event {
+
+	private static final EventType TYPE = EventType.getEventType(TurnEvent.class);
+
+	@Name("turn")
+	@Label("First Turn")
+	int mTurn;
+
+	@Name("turns")
+	@Label("Turns")
+	int mTurns;
+
+	@Name("storage")
+	@Label("Storage")
+	String mStorage;
+
+	@Name("humans")
+	@Label("Living Humans")
+	int mHumans;
+
+	@Name("vampires")
+	@Label("Living Vampires")
+	int mVampires;
+
+	@Name("werewolves")
+	@Label("Living Werewolves")
+	int mWerewolves;
+
+
+	/// Turn event started now, or null if
+	/// not recording
+	public static TurnEvent Begin() {
+
+		if (false == TYPE.isEnabled()) {
+			return null;
+		}
+
+		TurnEvent event = new TurnEvent();
+		event.begin();
+
+		return event;
+	}
+
+
+	/// Complete and record step of turns
+	/// starting at turn, with census after it
+	public void Commit(int turn, int turns, GameManager.EStorageType storage,
+					   int humans, int vampires, int werewolves) {
+
+		mTurn = turn;
+		mTurns = turns;
+		mStorage = storage.name();
+		mHumans = humans;
+		mVampires = vampires;
+		mWerewolves = werewolves;
+		commit();
+	}
+}
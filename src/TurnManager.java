@@ -3,34 +3,23 @@
 //
 //  Responsible for keeping track of
 //  and incrementing game turn.
-//  Implemented using singleton pattern
-//  to ensure current turn is synchronized
-//  across entire application.
+//  Owned by the SimulationContext of a
+//  game, so the current turn is shared by
+//  everything in that game and nothing
+//  outside it.
 //
 //////////////////////////////////
 
 public class TurnManager {
 
-	private static TurnManager mInstance = null;
-	
 	private int mTurn;
 	
 	
-	private TurnManager() {
+	public TurnManager() {
 		mTurn = 0;
 	}
 	
 	
-	public static TurnManager Inst() {
-		
-		if (mInstance == null) {
-			mInstance = new TurnManager();
-		}
-		
-		return mInstance;
-	}
-	
-	
 	public int CurrentTurn() {
 		return mTurn;
 	}
@@ -44,4 +33,11 @@ public class TurnManager {
 	public void ResetCount() {
 		mTurn = 0;
 	}
+	
+	
+	/// Continue counting from given turn
+	/// (e.g. when resuming a saved game)
+	public void SetCount(int turn) {
+		mTurn = turn;
+	}
 }
@@ -0,0 +1,210 @@
+//////////////////////////////////
+//	TurnOrder
+//
+//  Uniformly random order of the citizens
+//  living at the start of a turn.  The
+//  village fills a compact array of ids
+//  (Ids) and the order permutes that array;
+//  citizen objects are never moved.
+//
+//  Small populations are shuffled lazily
+//  (Fisher-Yates, one swap per Next), so
+//  there is no separate shuffling pass.
+//  From PARALLEL_THRESHOLD ids the whole
+//  order is produced up front by a parallel
+//  Rao-Sandelius shuffle: ids are scattered
+//  into NUM_BUCKETS random buckets, then the
+//  buckets are shuffled independently.
+//
+//  Every chunk and bucket draws from its
+//  own random stream, so the order depends
+//  only on seed and turn, never on the
+//  number of threads.  The lazy path
+//  allocates nothing per turn; the
+//  parallel path only its stream pipeline.
+//
+//////////////////////////////////
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+public class TurnOrder {
+
+	// ids from which the parallel shuffle is used
+	static final int PARALLEL_THRESHOLD = 1 << 20;
+	
+	// scatter chunks and buckets of the parallel shuffle
+	private static final int NUM_BUCKETS = 256;
+	
+	// streams of chunks and buckets (below VILLAGE_STREAM)
+	private static final long CHUNK_STREAM_BASE = RandomNumberGenerator.VILLAGE_STREAM - 1;
+	private static final long BUCKET_STREAM_BASE = CHUNK_STREAM_BASE - NUM_BUCKETS;
+	
+	private int[] mIds;
+	
+	private int mSize;
+	
+	// ids before mNext are in final order
+	private int mNext;
+	
+	private RandomStream mStream;
+	
+	// parallel shuffle scratch space
+	private int[] mScratch;
+	private byte[] mLabels;
+	
+	// [chunk][bucket] sizes, then scatter positions
+	private int[][] mCounts;
+	
+	private int[] mBucketStarts;
+	
+	// streams by chunk, then by bucket
+	private RandomStream[] mStreams;
+	
+	
+	/// Order of up to capacity ids
+	/// (more are accepted but allocate)
+	public TurnOrder(int capacity) {
+		mIds = new int[capacity];
+		mSize = 0;
+		mNext = 0;
+		mStream = new RandomStream();
+		mScratch = null;
+		mLabels = null;
+		mCounts = null;
+		mBucketStarts = null;
+		mStreams = null;
+	}
+	
+	
+	/// Array to fill with the ids to order
+	/// (first size entries)
+	public int[] Ids(int size) {
+		
+		if (mIds.length < size) {
+			mIds = new int[size];
+		}
+		mSize = size;
+		mNext = 0;
+		
+		return mIds;
+	}
+	
+	
+	/// Start new order of the ids for turn
+	public void Shuffle(long seed, int turn) {
+		
+		mNext = 0;
+		mStream.Select(seed, turn, RandomNumberGenerator.VILLAGE_STREAM);
+		
+		if (mSize >= PARALLEL_THRESHOLD) {
+			ParallelShuffle(seed, turn);
+		}
+	}
+	
+	
+	public boolean HasNext() {
+		return mNext < mSize;
+	}
+	
+	
+	/// Next id in turn order
+	public int Next() {
+		
+		// parallel shuffle has already ordered everything
+		if (mSize < PARALLEL_THRESHOLD) {
+			int j = mStream.Generate(mNext, mSize - 1);
+			int id = mIds[j];
+			mIds[j] = mIds[mNext];
+			mIds[mNext] = id;
+		}
+		
+		return mIds[mNext++];
+	}
+	
+	
+	/// Rao-Sandelius: random bucket per id,
+	/// stable scatter by bucket, shuffle of
+	/// each bucket
+	private void ParallelShuffle(long seed, int turn) {
+		
+		if (mScratch == null || mScratch.length < mSize) {
+			mScratch = new int[mSize];
+		}
+		if (mLabels == null || mLabels.length < mSize) {
+			mLabels = new byte[mSize];
+		}
+		if (mCounts == null) {
+			mCounts = new int[NUM_BUCKETS][NUM_BUCKETS];
+			mBucketStarts = new int[NUM_BUCKETS + 1];
+			mStreams = new RandomStream[NUM_BUCKETS];
+			for (int i = 0; i < NUM_BUCKETS; ++i) {
+				mStreams[i] = new RandomStream();
+			}
+		}
+		
+		int[] ids = mIds;
+		int[] scratch = mScratch;
+		byte[] labels = mLabels;
+		int size = mSize;
+		int[][] counts = mCounts;
+		int[] bucketStarts = mBucketStarts;
+		RandomStream[] streams = mStreams;
+		
+		IntStream.range(0, NUM_BUCKETS).parallel().forEach(chunk -> {
+			RandomStream stream = streams[chunk];
+			stream.Select(seed, turn, CHUNK_STREAM_BASE - chunk);
+			
+			int[] chunkCounts = counts[chunk];
+			Arrays.fill(chunkCounts, 0);
+			for (int i = ChunkStart(chunk, size); i < ChunkStart(chunk + 1, size); ++i) {
+				int bucket = stream.Generate(0, NUM_BUCKETS - 1);
+				labels[i] = (byte) bucket;
+				++chunkCounts[bucket];
+			}
+		});
+		
+		// bucket b follows all smaller buckets;
+		// within it chunks keep their order
+		int position = 0;
+		for (int bucket = 0; bucket < NUM_BUCKETS; ++bucket) {
+			bucketStarts[bucket] = position;
+			for (int chunk = 0; chunk < NUM_BUCKETS; ++chunk) {
+				int count = counts[chunk][bucket];
+				counts[chunk][bucket] = position;
+				position += count;
+			}
+		}
+		bucketStarts[NUM_BUCKETS] = position;
+		
+		IntStream.range(0, NUM_BUCKETS).parallel().forEach(chunk -> {
+			int[] positions = counts[chunk];
+			for (int i = ChunkStart(chunk, size); i < ChunkStart(chunk + 1, size); ++i) {
+				scratch[positions[labels[i] & 0xFF]++] = ids[i];
+			}
+		});
+		
+		IntStream.range(0, NUM_BUCKETS).parallel().forEach(bucket -> {
+			RandomStream stream = streams[bucket];
+			stream.Select(seed, turn, BUCKET_STREAM_BASE - bucket);
+			
+			int start = bucketStarts[bucket];
+			for (int i = bucketStarts[bucket + 1] - 1; i > start; --i) {
+				int j = stream.Generate(start, i);
+				int id = scratch[i];
+				scratch[i] = scratch[j];
+				scratch[j] = id;
+			}
+		});
+		
+		// ordered ids become the id array
+		mScratch = mIds;
+		mIds = scratch;
+	}
+	
+	
+	/// First index of chunk
+	private static int ChunkStart(int chunk, int size) {
+		return (int) ((long) size * chunk / NUM_BUCKETS);
+	}
+}
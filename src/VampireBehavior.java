@@ -17,17 +17,30 @@
 //
 //////////////////////////////////
 
-import java.util.List;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
-
-
 public class VampireBehavior implements IBehavior {
 
-	private IVictimProvider mVictimProvider;
+	static final int CONVERSION_HEALTH_INCREASE = 10;
+	
+	static final int KILL_HEALTH_INCREASE = 50;
+	
+	static final int FAILED_CONVERSION_MIN_HIT = 0;
+	
+	static final int FAILED_CONVERSION_MAX_HIT = 25;
+	
+	static final int HIT_POINTS_PER_HEALTH = 5;
+	
+	static final int WEREWOLF_MIN_HIT = 5;
 	
-	public VampireBehavior(IVictimProvider victimProvider) {
-		mVictimProvider = victimProvider;
+	static final int WEREWOLF_MAX_HIT = 40;
+	
+	private static final VampireBehavior INSTANCE = new VampireBehavior();
+	
+	/// Shared instance
+	public static VampireBehavior Inst() {
+		return INSTANCE;
+	}
+	
+	private VampireBehavior() {
 	}
 	
 	/// Vampire specific turn behavior
@@ -35,34 +48,60 @@ public class VampireBehavior implements IBehavior {
 	/// so I'm not implementing any such behavior.  The only time a vampire
 	/// will have non-zero hunger is if they've been converted from a human.
 	@Override
-	public void DoTurn(Citizen citizen) {
-			
-		// find suitable victim
-		Citizen victim = SelectVictim();
+	public void DoTurn(Citizen citizen, IVictimProvider victimProvider) {
+		
+		Act(citizen, SelectVictim(citizen, victimProvider), victimProvider);
+	}
+	
+	
+	/// Find suitable victim
+	@Override
+	public Citizen SelectVictim(Citizen citizen, IVictimProvider victimProvider) {
+		
+		PhaseTimings timings = victimProvider.Context().Timings();
+		long start = timings != null ? timings.Start() : 0;
+		
+		Citizen victim = SelectVictim(victimProvider);
+		
+		if (timings != null) {
+			timings.Accumulate(PhaseTimings.EPhase.VICTIM_SELECTION, start);
+		}
+		
+		return victim;
+	}
+	
+	
+	/// Attempt conversion of victim, if any
+	@Override
+	public void Act(Citizen citizen, Citizen victim, IVictimProvider victimProvider) {
 		
 		if (victim != null) {
 			// first check if victim is a werewolf in human form.
 			if (victim.GetType() == Citizen.ECitizenType.WEREWOLF)
 			{
-				WerewolfConverion(citizen, victim);
+				WerewolfConverion(citizen, victim, victimProvider);
+				Record(IEventSink.EEventType.WEREWOLF_HIT, citizen, victim, victimProvider);
 			}
 			else
 			{	// generate random human conversion outcome
 				int MIN_OUTCOME = 0;
 				int MAX_OUTCOME = 2;
-				int outcome = RandomNumberGenerator.Inst().Generate(MIN_OUTCOME, MAX_OUTCOME);
+				int outcome = victimProvider.Context().Rng().Generate(MIN_OUTCOME, MAX_OUTCOME);
 				
 				switch (outcome) {
 				case 0:
-					SuccessfulConversion(citizen, victim);
+					SuccessfulConversion(citizen, victim, victimProvider);
+					Record(IEventSink.EEventType.CONVERSION, citizen, victim, victimProvider);
 					break;
 					
 				case 1:
-					VictimKilled(citizen, victim);
+					VictimKilled(citizen, victim, victimProvider);
+					Record(IEventSink.EEventType.KILL, citizen, victim, victimProvider);
 					break;
 					
 				case 2:
-					FailedConversion(citizen, victim);
+					FailedConversion(citizen, victim, victimProvider);
+					Record(IEventSink.EEventType.FAILED_CONVERSION, citizen, victim, victimProvider);
 					break;
 				}
 			}
@@ -70,67 +109,82 @@ public class VampireBehavior implements IBehavior {
 	}
 	
 	
+	/// Victims are living and appear human
+	@Override
+	public boolean CanVictimize(Citizen victim, int turn) {
+		
+		return victim.KilledBy() == Citizen.EKillType.INVALID && 
+			   victim.GetApparentType(turn) == Citizen.ECitizenType.HUMAN;
+	}
+	
+	
+	/// Vampires always look for a victim
+	@Override
+	public boolean UpkeepOnly(Citizen citizen, int turn) {
+		return false;
+	}
+	
+	
+	@Override
+	public Citizen.ECitizenType GetType() {
+		return Citizen.ECitizenType.VAMPIRE;
+	}
+	
+	
 	/// Vampires always look like vampires
 	@Override
-	public Citizen.ECitizenType GetApparentType(Citizen citizen) {
+	public Citizen.ECitizenType GetApparentType(Citizen citizen, int turn) {
 		return Citizen.ECitizenType.VAMPIRE;
 	}
 
 	
 	/// Successful conversion action
-	private void SuccessfulConversion(Citizen citizen, Citizen victim) {
+	private void SuccessfulConversion(Citizen citizen, Citizen victim, IVictimProvider victimProvider) {
 		
 		// human is converted to vampire
-		victim.SetBehavior(new VampireBehavior(mVictimProvider));
+		victim.SetBehavior(INSTANCE);
 		
 		// hunger reduced by half
 		citizen.Hunger(citizen.Hunger() / 2);
 		
 		// health increased by 10
-		int HEALTH_INCREASE = 10;
-		citizen.Health(citizen.Health() + HEALTH_INCREASE);
+		citizen.Health(citizen.Health() + CONVERSION_HEALTH_INCREASE);
 	}
 	
 	
 	/// Victim killed action
-	private void VictimKilled(Citizen citizen, Citizen victim) {
+	private void VictimKilled(Citizen citizen, Citizen victim, IVictimProvider victimProvider) {
 		
 		// victim is killed
 		victim.Killed(Citizen.EKillType.VAMPIRE);
 		
 		// health increased by 50
-		int HEALTH_INCREASE = 50;
-		citizen.Health(citizen.Health() + HEALTH_INCREASE);
+		citizen.Health(citizen.Health() + KILL_HEALTH_INCREASE);
 	}
 	
 	
 	/// Failed conversion action
-	private void FailedConversion(Citizen citizen, Citizen victim) {
+	private void FailedConversion(Citizen citizen, Citizen victim, IVictimProvider victimProvider) {
 		// victim loses up to 25 health points
-		int MIN_HIT = 0;
-		int MAX_HIT = 25;
-		int healthHit = RandomNumberGenerator.Inst().Generate(MIN_HIT, MAX_HIT);
+		int healthHit = victimProvider.Context().Rng().Generate(FAILED_CONVERSION_MIN_HIT, FAILED_CONVERSION_MAX_HIT);
 		
 		victim.Health(victim.Health() - healthHit);
 		
 		// vampire gains 1 point for each 5 taken from victim
-		int healthIncrease = healthHit / 5;
+		int healthIncrease = healthHit / HIT_POINTS_PER_HEALTH;
 		citizen.Health(citizen.Health() + healthIncrease);
 		
 		// check for death
 		if (victim.Health() == Citizen.HEALTH_MIN) {
-			VictimKilled(citizen, victim);
+			VictimKilled(citizen, victim, victimProvider);
 		}
 	}
 	
 	
 	/// Attempted werewolf conversion action
-	private void WerewolfConverion(Citizen citizen, Citizen victim) {
+	private void WerewolfConverion(Citizen citizen, Citizen victim, IVictimProvider victimProvider) {
 		// victim loses between 5 - 40 (inclusive) health points
-		int MIN_HIT = 5;
-		int MAX_HIT = 40;
-		
-		int healthHit = RandomNumberGenerator.Inst().Generate(MIN_HIT, MAX_HIT);
+		int healthHit = victimProvider.Context().Rng().Generate(WEREWOLF_MIN_HIT, WEREWOLF_MAX_HIT);
 		victim.Health(victim.Health() - healthHit);
 		
 		// check for death
@@ -140,25 +194,42 @@ public class VampireBehavior implements IBehavior {
 	}
 
 	
+	/// Report outcome to event sink, if any
+	private void Record(IEventSink.EEventType type, Citizen citizen, Citizen victim, IVictimProvider victimProvider) {
+		
+		IEventSink events = victimProvider.Context().Events();
+		
+		if (events != null) {
+			int turn = victimProvider.Context().Clock().CurrentTurn();
+			events.Record(type, turn, citizen.Id(), citizen.Pack(), 
+						  victim.Id(), victim.Pack(), victim.HasActed(turn));
+		}
+	}
+	
+	
 	/// Select victim.  Must be living
 	/// and appear to be human.
-	private Citizen SelectVictim() {
+	/// (package visible for benchmarks)
+	Citizen SelectVictim(IVictimProvider victimProvider) {
 		
-		List<Citizen> lstVictimPool = mVictimProvider.GetVictimPool();
+		// humans always appear human, werewolves
+		// only when not in werewolf form
+		int numApparent = victimProvider.ApparentHumanCount();
 		
-		// refine selection with "appears human"
-		Predicate<Citizen> vicCriteria = (c -> c.GetApparentType() == Citizen.ECitizenType.HUMAN);
-		
-		List<Citizen> lstVictims = lstVictimPool.stream().filter(vicCriteria).collect(Collectors.toList());
+		SimulationMetrics metrics = victimProvider.Context().Metrics();
+		if (metrics != null) {
+			metrics.VictimsSelected(1, numApparent);
+		}
 		
-		if (lstVictims.isEmpty()) {
+		if (numApparent == 0) {
 			return null;
 		}
 		else {	// select by random index
 			int MIN_INDEX = 0;
-			int MAX_INDEX = lstVictims.size() - 1;
-			int victimIndex = RandomNumberGenerator.Inst().Generate(MIN_INDEX, MAX_INDEX);
-			return lstVictims.get(victimIndex);
+			int MAX_INDEX = numApparent - 1;
+			int victimIndex = victimProvider.Context().Rng().Generate(MIN_INDEX, MAX_INDEX);
+			
+			return victimProvider.ApparentHuman(victimIndex);
 		}
 	}
 }
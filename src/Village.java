@@ -10,55 +10,455 @@
 //  The village has many different citizens:
 //  Humans, Vampires, Werewolves
 //
+//  Living citizens are also indexed by type
+//  in CitizenPools.  Citizens report deaths
+//  and conversions (ICitizenObserver) so the
+//  pools, and the census derived from them,
+//  are kept current without rescanning.
+//
+//  Werewolves join or leave the citizens
+//  appearing human once per turn, at the
+//  moon phase (ApparentHuman).
+//
+//  Dead citizens are moved to a compact
+//  Graveyard from time to time (Compact).
+//
+//  Large turns (ParallelUpkeepThreshold
+//  living or more) defer self-only upkeep
+//  to parallel shards and run predators in
+//  conflict-free batches acted out on the
+//  fork-join pool (DoBatchedTurns): the same
+//  distribution of outcomes as turns in
+//  order, though not the same games.
+//
+//  Citizens can migrate between villages
+//  (Emigrate, Immigrate; see Archipelago).
+//
+//  Changed citizens are listed once per
+//  round as they change (TrackChanges,
+//  WriteChanges).
+//
+//  Statistics, when tracked, are kept
+//  current by the same reports.
+//
 //////////////////////////////////
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+public class Village implements IVillage, IVictimProvider, ICitizenObserver {
 
-public class Village implements IVictimProvider {
+	// Clock and random source
+	private SimulationContext mContext;
 
-	// List of all citizens in village
+	// Living citizens plus the dead not yet
+	// moved to the graveyard
 	private ArrayList<Citizen> mCitizens;
 	
+	// Dead citizens moved out of mCitizens
+	private Graveyard mGraveyard;
+	
+	// Living citizens indexed by type ordinal
+	private CitizenPool[] mLiving;
+	
+	// Total living citizens
+	private int mNumLiving;
+	
+	// Werewolves in werewolf form this turn
+	// (otherwise they appear human)
+	private boolean mFullMoon;
+	
+	// Emigrants not yet compacted out of mCitizens
+	private int mNumEmigrated;
+	
+	// Id of next new citizen
+	private int mNextId;
+	
+	// Order of living citizens in current turn
+	// (indexes into mTurnCitizens)
+	private TurnOrder mTurnOrder;
+	
+	private Citizen[] mTurnCitizens;
+	
+	private int mNumTurnCitizens;
+	
+	// Citizens changed in current round, each
+	// once (null if changes are not tracked).
+	// Appended to from upkeep shards too, so
+	// slots are claimed atomically.
+	private Citizen[] mChanged;
+	private AtomicInteger mNumChanged;
+	private int mChangeRound;
+	
+	// Aggregates of the living (null if not
+	// tracked), updated from upkeep shards too
+	private PopulationStatistics mStatistics;
+	
+	// Turns of the current batch (see DoTurn):
+	// the citizen, its victim (or null) and
+	// the victim's type when drawn, and the
+	// position of the citizen's stream after
+	// the draw.  Allocated by the first large
+	// turn.
+	private Citizen[] mBatchActors;
+	private Citizen[] mBatchVictims;
+	private Citizen.ECitizenType[] mBatchVictimTypes;
+	private long[] mBatchPositions;
+	private int mBatchSize;
+	
+	// Number of current batch (see
+	// Citizen.MarkBatch)
+	private int mBatch;
+	
+	// True while a batch acts out: pools keep
+	// their state at the start of the batch
+	// until it is settled (SettleBatch)
+	private boolean mBatching;
+	
+	// Turn the last batch ended at, and the
+	// victim it drew (null if not drawn yet)
+	// with its stream position
+	private Citizen mCarried;
+	private Citizen mCarriedVictim;
+	private long mCarriedPosition;
+	
+	// Dead (or emigrated) citizens in mCitizens
+	// from which to compact (and at least a quarter of the
+	// living, so compaction is amortized O(1)
+	// per death)
+	private static final int MIN_COMPACTION = 1024;
+	private static final int COMPACTION_LIVING_SHIFT = 2;
+	
+	// Living citizens from which upkeep runs
+	// in parallel and turns are batched (as
+	// for TurnOrder, smaller turns allocate
+	// nothing); see SetBatching
+	private static int ParallelUpkeepThreshold = TurnOrder.PARALLEL_THRESHOLD;
+	
+	private static final int UPKEEP_SHARDS = 256;
+	
+	// Turns of a batch at most, and from which
+	// a batch acts out in parallel
+	private static final int MAX_BATCH = 1 << 14;
+	private static int ParallelBatch = 1 << 9;
+	
+	private static final int BATCH_SHARDS = 16;
+	
+	// Stream of a predator's second draw,
+	// beyond those of all citizen ids
+	private static final long REDRAW_STREAM = 1L << Integer.SIZE;
+	
+	private static final Comparator<Citizen> BY_ID = Comparator.comparingInt(Citizen::Id);
+	
+	// Pools in snapshot order
+	private static final Citizen.ECitizenType[] SNAPSHOT_POOLS = {
+		Citizen.ECitizenType.HUMAN, Citizen.ECitizenType.VAMPIRE, Citizen.ECitizenType.WEREWOLF
+	};
+	
 	
 	/// Initialize village population
-	public Village(int numHumans, int numVampires, int numWerewolves)
+	public Village(SimulationContext context, int numHumans, int numVampires, int numWerewolves)
 	{
-		mCitizens = new ArrayList<Citizen>(numHumans + numVampires + numWerewolves);
+		this(context, numHumans, numVampires, numWerewolves, numHumans + numVampires + numWerewolves);
 		
 		int count = 0;
 		while (count < numHumans)
 		{
-			mCitizens.add(CreateHuman());
+			AddCitizen(CreateHuman(mNextId++));
 			++count;
 		}
 		
 		count = 0;
 		while (count < numVampires)
 		{
-			mCitizens.add(CreateVampire());
+			AddCitizen(CreateVampire(mNextId++));
 			++count;
 		}
 		
 		count = 0;
 		while (count < numWerewolves)
 		{
-			mCitizens.add(CreateWerewolf());
+			AddCitizen(CreateWerewolf(mNextId++));
 			++count;
 		}
 	}
 	
 	
+	/// Empty village with room for given population
+	private Village(SimulationContext context, int numHumans, int numVampires, int numWerewolves, int population)
+	{
+		mContext = context;
+		
+		mCitizens = new ArrayList<Citizen>(population);
+		
+		// room for every human to convert, so
+		// pools never grow during a game
+		mLiving = new CitizenPool[Citizen.ECitizenType.values().length];
+		mLiving[Citizen.ECitizenType.INVALID.ordinal()] = new CitizenPool(0);
+		mLiving[Citizen.ECitizenType.HUMAN.ordinal()] = new CitizenPool(numHumans);
+		mLiving[Citizen.ECitizenType.VAMPIRE.ordinal()] = new CitizenPool(numVampires + numHumans);
+		mLiving[Citizen.ECitizenType.WEREWOLF.ordinal()] = new CitizenPool(numWerewolves + numHumans);
+		mNumLiving = 0;
+		mNumEmigrated = 0;
+		mNextId = 0;
+		mFullMoon = WerewolfBehavior.IsFullMoon(context.Clock().CurrentTurn());
+		
+		// sized for everyone, so burials never allocate
+		mGraveyard = new Graveyard(population);
+		
+		mTurnOrder = new TurnOrder(population);
+		mTurnCitizens = new Citizen[population];
+		mNumTurnCitizens = 0;
+		
+		mChanged = null;
+		mNumChanged = new AtomicInteger();
+		mChangeRound = 0;
+		
+		mStatistics = null;
+		
+		mBatchActors = null;
+		mBatchVictims = null;
+		mBatchVictimTypes = null;
+		mBatchPositions = null;
+		mBatchSize = 0;
+		mBatch = 0;
+		mBatching = false;
+		mCarried = null;
+		mCarriedVictim = null;
+		mCarriedPosition = 0;
+	}
+	
+	
+	/// Restore village from snapshot written by
+	/// WriteSnapshot.  List, graveyard and pool
+	/// order are preserved, so the restored
+	/// game continues exactly as the saved one.
+	public static Village Restore(SimulationContext context, SnapshotFile file, int population) throws IOException {
+		
+		// types at save time unknown until read
+		Village village = new Village(context, population, 0, 0, population);
+		
+		// citizens by id for rebuilding pools
+		// (immigrants' ids can exceed population)
+		Citizen[] byId = new Citizen[population];
+		
+		int numListed = file.GetInt();
+		for (int i = 0; i < numListed; ++i) {
+			int id = file.GetInt();
+			int bits = file.GetShort() & 0xFFFF;
+			
+			if (id >= byId.length) {
+				byId = Arrays.copyOf(byId, Math.max(id + 1, byId.length * 2));
+			}
+			village.mNextId = Math.max(village.mNextId, id + 1);
+			
+			Citizen citizen = new Citizen(id, village.CreateBehavior(CitizenBits.Type(bits)),
+										  CitizenBits.Hunger(bits), CitizenBits.Health(bits),
+										  CitizenBits.KilledBy(bits), CitizenBits.ConvertedHuman(bits));
+			citizen.SetObserver(village);
+			village.mCitizens.add(citizen);
+			byId[id] = citizen;
+		}
+		
+		int numBuried = file.GetInt();
+		for (int i = 0; i < numBuried; ++i) {
+			int id = file.GetInt();
+			village.mGraveyard.Add(id, file.GetShort() & 0xFFFF);
+			village.mNextId = Math.max(village.mNextId, id + 1);
+		}
+		
+		for (Citizen.ECitizenType type : SNAPSHOT_POOLS) {
+			CitizenPool pool = village.mLiving[type.ordinal()];
+			
+			int size = file.GetInt();
+			for (int i = 0; i < size; ++i) {
+				pool.Add(byId[file.GetInt()]);
+			}
+			
+			village.mNumLiving += size;
+		}
+		
+		return village;
+	}
+	
+	
+	/// Batch turns of threshold living citizens
+	/// or more, acting batches of parallelBatch
+	/// turns or more in parallel (package
+	/// visible for checks)
+	static void SetBatching(int threshold, int parallelBatch) {
+		ParallelUpkeepThreshold = threshold;
+		ParallelBatch = parallelBatch;
+	}
+	
+	
 	/// Run one turn on citizens
 	public void DoTurn()
 	{
-		/// shuffle citizens before each turn
-		RandomizeCitizens();
+		int turn = mContext.Clock().CurrentTurn();
+		PhaseTimings timings = mContext.Timings();
+		long start = timings != null ? timings.Start() : 0;
 		
-		mCitizens.forEach( citizen -> citizen.DoTurn() );
+		ReserveChanges();
+		
+		// every werewolf changes form at once
+		mFullMoon = WerewolfBehavior.IsFullMoon(turn);
+		
+		// random order of citizens living at start of turn
+		OrderLiving(turn);
+		
+		start = EndPhase(timings, PhaseTimings.EPhase.TURN_ORDER, turn, start);
+		
+		boolean parallelUpkeep = mNumTurnCitizens >= ParallelUpkeepThreshold;
+		
+		if (true == parallelUpkeep) {
+			DoBatchedTurns(turn);
+		}
+		else {
+			// each citizen draws from its own stream
+			while (true == mTurnOrder.HasNext()) {
+				Citizen citizen = mTurnCitizens[mTurnOrder.Next()];
+				citizen.Acted(turn);
+				
+				mContext.Rng().Begin(turn, citizen.Id());
+				citizen.DoTurn(this);
+			}
+		}
+		
+		start = EndPhase(timings, PhaseTimings.EPhase.CITIZEN_TURNS, turn, start);
+		if (timings != null) {
+			timings.Flush(PhaseTimings.EPhase.VICTIM_SELECTION, turn);
+		}
+		
+		if (true == parallelUpkeep) {
+			CompleteDeferredTurns();
+			start = EndPhase(timings, PhaseTimings.EPhase.DEFERRED_UPKEEP, turn, start);
+		}
+		
+		// emigrants count as dead here
+		int numDead = mCitizens.size() - mNumLiving;
+		if (numDead >= MIN_COMPACTION && numDead >= (mNumLiving >>> COMPACTION_LIVING_SHIFT)) {
+			Compact();
+			EndPhase(timings, PhaseTimings.EPhase.COMPACTION, turn, start);
+		}
+	}
+	
+	
+	/// Record phase if turns are timed, and
+	/// return start of the next phase
+	private static long EndPhase(PhaseTimings timings, PhaseTimings.EPhase phase, int turn, long start) {
+		
+		if (timings == null) {
+			return 0;
+		}
+		
+		timings.End(phase, turn, start);
+		
+		return timings.Start();
+	}
+	
+	
+	/// Apply quiet turns in closed form
+	public int FastForward(int maxTurns) {
+		
+		int turn = mContext.Clock().CurrentTurn();
+		CitizenPool humans = mLiving[Citizen.ECitizenType.HUMAN.ordinal()];
+		CitizenPool werewolves = mLiving[Citizen.ECitizenType.WEREWOLF.ordinal()];
+		
+		int turns = QuietStretch.Length(turn, maxTurns, humans.Size(), 
+										LivingCount(Citizen.ECitizenType.VAMPIRE), werewolves.Size());
+		
+		// stop before the first starvation
+		for (int i = 0; i < humans.Size() && turns > 0; ++i) {
+			Citizen human = humans.Get(i);
+			turns = Math.min(turns, QuietStretch.TurnsToStarvation(human.Hunger(), human.Health()) - 1);
+		}
+		
+		if (turns <= 0) {
+			return 0;
+		}
+		
+		ReserveChanges();
+		
+		// vampires have nothing to do
+		for (int i = 0; i < humans.Size(); ++i) {
+			Citizen human = humans.Get(i);
+			human.Health(QuietStretch.HumanHealth(human.Hunger(), human.Health(), turns));
+			human.Hunger(QuietStretch.HumanHunger(human.Hunger(), turns));
+		}
+		
+		for (int i = 0; i < werewolves.Size(); ++i) {
+			Citizen werewolf = werewolves.Get(i);
+			werewolf.Health(QuietStretch.WerewolfHealth(werewolf.Health(), turn, turns));
+		}
+		
+		return turns;
+	}
+	
+	
+	/// Move dead citizens from the citizen
+	/// list to the graveyard, and drop
+	/// emigrants.  The order of the remaining
+	/// citizens is kept.
+	public void Compact() {
+		
+		int kept = 0;
+		for (int i = 0; i < mCitizens.size(); ++i) {
+			Citizen citizen = mCitizens.get(i);
+			
+			if (citizen.KilledBy() != Citizen.EKillType.INVALID) {
+				mGraveyard.Bury(citizen);
+			}
+			else if (false == citizen.Emigrated()) {
+				mCitizens.set(kept++, citizen);
+			}
+		}
+		mNumEmigrated = 0;
+		
+		// trim from the end (no copying)
+		for (int i = mCitizens.size() - 1; i >= kept; --i) {
+			mCitizens.remove(i);
+		}
+		
+		// replay buries the same citizens
+		IEventSink events = mContext.Events();
+		if (events != null) {
+			events.Record(IEventSink.EEventType.BURIAL, mContext.Clock().CurrentTurn(), 
+						  IEventSink.NONE, 0, IEventSink.NONE, 0, false);
+		}
+	}
+	
+	
+	/// Living citizen leaves the village
+	/// (see Archipelago).  It stays in the
+	/// citizen list, left out of everything,
+	/// until the next Compact.
+	public void Emigrate(Citizen citizen) {
+		
+		citizen.CompleteTurn(this);
+		citizen.Emigrate();
+		
+		mLiving[citizen.GetType().ordinal()].Remove(citizen);
+		--mNumLiving;
+		++mNumEmigrated;
+		
+		if (mStatistics != null) {
+			mStatistics.Remove(citizen.Hunger(), citizen.Health(), 1);
+		}
+	}
+	
+	
+	/// Living citizen with packed state (see
+	/// CitizenBits) arrives from another village
+	public void Immigrate(int bits) {
+		
+		AddCitizen(new Citizen(mNextId++, CreateBehavior(CitizenBits.Type(bits)),
+							   CitizenBits.Hunger(bits), CitizenBits.Health(bits),
+							   Citizen.EKillType.INVALID, CitizenBits.ConvertedHuman(bits)));
 	}
 	
 	
@@ -66,9 +466,7 @@ public class Village implements IVictimProvider {
 	/// early termination conditions.
 	public boolean AllDead() {
 		
-		List<Citizen> lstAlive = GetLivingCitizens();
-		
-		return lstAlive.isEmpty();
+		return mNumLiving == 0;
 	}
 	
 	
@@ -78,11 +476,7 @@ public class Village implements IVictimProvider {
 	/// all vampires.
 	public boolean AllVampires() {
 		
-		List<Citizen> lstLiving = GetLivingCitizens();
-		
-		Predicate<Citizen> isVampire = ( c -> c.GetType() == Citizen.ECitizenType.VAMPIRE );
-		
-		return lstLiving.stream().allMatch(isVampire);
+		return LivingCount(Citizen.ECitizenType.VAMPIRE) == mNumLiving;
 	}
 	
 	
@@ -92,56 +486,483 @@ public class Village implements IVictimProvider {
 	/// all werewolves.
 	public boolean AllWerewolves() {
 		
-		List<Citizen> lstLiving = GetLivingCitizens();
+		return LivingCount(Citizen.ECitizenType.WEREWOLF) == mNumLiving;
+	}
+	
+	
+	/// From IVictimProvider
+	public SimulationContext Context() {
 		
-		Predicate<Citizen> isWerewolf = ( c -> c.GetType() == Citizen.ECitizenType.WEREWOLF );
+		return mContext;
+	}
+	
+	
+	/// From IVictimProvider
+	/// In all cases victims must be living.
+	/// Behaviors refine selection by type.
+	public int LivingCount(Citizen.ECitizenType type) {
 		
-		return lstLiving.stream().allMatch(isWerewolf);
+		return mLiving[type.ordinal()].Size();
 	}
 	
 	
 	/// From IVictimProvider
-	public List<Citizen> GetVictimPool()
-	{
-		// In all cases victims must be living.
-		// Behaviors may further refine victim
-		// selection
-		return GetLivingCitizens();
+	public Citizen LivingCitizen(Citizen.ECitizenType type, int index) {
+		
+		// deferred turn action comes first
+		Citizen citizen = mLiving[type.ordinal()].Get(index);
+		citizen.CompleteTurn(this);
+		
+		return citizen;
+	}
+	
+	
+	/// From IVictimProvider
+	public int ApparentHumanCount() {
+		
+		int count = LivingCount(Citizen.ECitizenType.HUMAN);
+		if (false == mFullMoon) {
+			count += LivingCount(Citizen.ECitizenType.WEREWOLF);
+		}
+		
+		return count;
+	}
+	
+	
+	/// From IVictimProvider
+	public Citizen ApparentHuman(int index) {
+		
+		int numHumans = LivingCount(Citizen.ECitizenType.HUMAN);
+		if (index < numHumans) {
+			return LivingCitizen(Citizen.ECitizenType.HUMAN, index);
+		}
+		
+		if (true == mFullMoon) {
+			throw new IllegalStateException("No werewolf appears human at full moon");
+		}
+		
+		return LivingCitizen(Citizen.ECitizenType.WEREWOLF, index - numHumans);
+	}
+	
+	
+	/// From ICitizenObserver
+	public void OnKilled(Citizen citizen, int oldHealth) {
+		
+		// pools of a batch catch up when settled
+		if (false == mBatching) {
+			mLiving[citizen.GetType().ordinal()].Remove(citizen);
+			--mNumLiving;
+		}
+		
+		if (mStatistics != null) {
+			mStatistics.Died(citizen.KilledBy(), citizen.Hunger(), oldHealth, 1);
+		}
+		
+		SimulationMetrics metrics = mContext.Metrics();
+		if (metrics != null) {
+			metrics.Killed(citizen.KilledBy(), 1);
+		}
 	}
 	
 	
-	/// Helper method returning all living citizens
-	private List<Citizen> GetLivingCitizens() {
+	/// From ICitizenObserver
+	public void OnChanged(Citizen citizen, int oldHunger, int oldHealth) {
 		
-		Predicate<Citizen> criteria = (c -> c.KilledBy() == Citizen.EKillType.INVALID);
+		if (mChanged != null && true == citizen.MarkChanged(mChangeRound)) {
+			mChanged[mNumChanged.getAndIncrement()] = citizen;
+		}
+		
+		// deaths are counted by OnKilled
+		if (mStatistics != null && citizen.KilledBy() == Citizen.EKillType.INVALID) {
+			mStatistics.Change(oldHunger, oldHealth, citizen.Hunger(), citizen.Health(), 1);
+		}
+	}
+	
+	
+	/// Record changed citizens from now on
+	public void TrackChanges(boolean track) {
+		
+		mChanged = true == track ? new Citizen[mCitizens.size()] : null;
+		mNumChanged.set(0);
+		++mChangeRound;
+	}
+	
+	
+	/// Stream changed citizens in id order
+	public void WriteChanges(StatusWriter writer, int turn) throws IOException {
+		
+		if (mChanged == null) {
+			return;
+		}
+		
+		int numChanged = mNumChanged.get();
+		Arrays.sort(mChanged, 0, numChanged, BY_ID);
+		
+		writer.AddChanges(turn, numChanged);
+		for (int i = 0; i < numChanged; ++i) {
+			Citizen citizen = mChanged[i];
+			mChanged[i] = null;
+			
+			citizen.WriteChange(writer);
+		}
+		
+		mNumChanged.set(0);
+		++mChangeRound;
+	}
+	
+	
+	/// Keep statistics of the population
+	/// current from now on
+	public void TrackStatistics(PopulationStatistics statistics) {
+		
+		mStatistics = statistics;
+		if (statistics == null) {
+			return;
+		}
+		
+		statistics.Reset();
+		
+		for (Citizen citizen : mCitizens) {
+			if (citizen.KilledBy() != Citizen.EKillType.INVALID) {
+				statistics.Dead(citizen.KilledBy(), 1);
+			}
+			else if (false == citizen.Emigrated()) {
+				statistics.Add(citizen.Hunger(), citizen.Health(), 1);
+			}
+		}
+		
+		for (int i = 0; i < mGraveyard.Size(); ++i) {
+			statistics.Dead(CitizenBits.KilledBy(mGraveyard.Bits(i)), 1);
+		}
+	}
+	
+	
+	/// From ICitizenObserver
+	public void OnTypeChanged(Citizen citizen, Citizen.ECitizenType oldType) {
+		
+		if (citizen.KilledBy() == Citizen.EKillType.INVALID) {
+			if (false == mBatching) {
+				mLiving[oldType.ordinal()].Remove(citizen);
+				mLiving[citizen.GetType().ordinal()].Add(citizen);
+			}
+			
+			SimulationMetrics metrics = mContext.Metrics();
+			if (metrics != null) {
+				metrics.Converted(1);
+			}
+		}
+	}
+	
+	
+	/// Make room for every citizen to change
+	/// once more in the current round (a round
+	/// can span turns, compactions and arrivals)
+	private void ReserveChanges() {
+		
+		if (mChanged == null) {
+			return;
+		}
+		
+		int needed = mNumChanged.get() + mCitizens.size();
+		if (mChanged.length < needed) {
+			mChanged = Arrays.copyOf(mChanged, Math.max(needed, mChanged.length * 2));
+		}
+	}
+	
+	
+	/// Register new citizen with village
+	private void AddCitizen(Citizen citizen) {
+		
+		citizen.SetObserver(this);
+		mCitizens.add(citizen);
+		mLiving[citizen.GetType().ordinal()].Add(citizen);
+		++mNumLiving;
+		
+		if (mStatistics != null) {
+			mStatistics.Add(citizen.Hunger(), citizen.Health(), 1);
+		}
+	}
+	
+	
+	/// Start random turn order of living citizens.
+	/// Dead citizens take no actions, so they
+	/// are left out entirely.
+	/// (package visible for benchmarks)
+	void OrderLiving(int turn) {
+		
+		// immigrants can outgrow the initial population
+		if (mTurnCitizens.length < mNumLiving) {
+			mTurnCitizens = Arrays.copyOf(mTurnCitizens, Math.max(mNumLiving, mTurnCitizens.length * 2));
+		}
+		
+		int count = 0;
+		for (CitizenPool pool : mLiving) {
+			count = pool.CopyMembers(mTurnCitizens, count);
+		}
+		
+		// let go of citizens who died since
+		Arrays.fill(mTurnCitizens, count, Math.max(count, mNumTurnCitizens), null);
+		mNumTurnCitizens = count;
+		
+		int[] indexes = mTurnOrder.Ids(count);
+		for (int i = 0; i < count; ++i) {
+			indexes[i] = i;
+		}
+		
+		mTurnOrder.Shuffle(mContext.Rng().Seed(), turn);
+	}
+	
+	
+	/// Apply turn actions deferred by DoTurn.
+	/// Each only changes its own citizen, so
+	/// shards run independently.
+	private void CompleteDeferredTurns() {
 		
-		List<Citizen> lstLiving = mCitizens.stream().filter(criteria).collect(Collectors.toList());
+		Citizen[] citizens = mTurnCitizens;
+		int count = mNumTurnCitizens;
 		
-		return lstLiving;
+		IntStream.range(0, UPKEEP_SHARDS).parallel().forEach(shard -> {
+			int end = (int) ((long) count * (shard + 1) / UPKEEP_SHARDS);
+			for (int i = (int) ((long) count * shard / UPKEEP_SHARDS); i < end; ++i) {
+				citizens[i].CompleteTurn(this);
+			}
+		});
 	}
 	
 	
-	/// randomize citizen list
-	private void RandomizeCitizens() {
-		Collections.shuffle(mCitizens);
+	/// Walk the turn order in conflict-free
+	/// batches: predators draw their victims
+	/// from the pools as the batch began, and
+	/// a batch ends at the first turn touching
+	/// a citizen an earlier one of it touches
+	private void DoBatchedTurns(int turn) {
+		
+		if (mBatchActors == null) {
+			mBatchActors = new Citizen[MAX_BATCH];
+			mBatchVictims = new Citizen[MAX_BATCH];
+			mBatchVictimTypes = new Citizen.ECitizenType[MAX_BATCH];
+			mBatchPositions = new long[MAX_BATCH];
+		}
+		
+		while (mCarried != null || true == mTurnOrder.HasNext()) {
+			++mBatch;
+			mBatchSize = 0;
+			
+			// nothing is touched yet, so the first
+			// turn never conflicts
+			if (mCarried != null) {
+				ResumeCarried(turn);
+			}
+			
+			while (mCarried == null && mBatchSize < MAX_BATCH && true == mTurnOrder.HasNext()) {
+				Citizen citizen = mTurnCitizens[mTurnOrder.Next()];
+				citizen.Acted(turn);
+				BatchTurn(citizen, turn);
+			}
+			
+			RunBatch();
+		}
+	}
+	
+	
+	/// Start batch with the turn the last one
+	/// ended at
+	private void ResumeCarried(int turn) {
+		
+		Citizen citizen = mCarried;
+		Citizen victim = mCarriedVictim;
+		mCarried = null;
+		mCarriedVictim = null;
+		
+		if (victim == null) {
+			BatchTurn(citizen, turn);
+		}
+		else if (true == citizen.CanVictimize(victim, turn)) {
+			// a draw landing on a candidate stands,
+			// whatever happened to it since
+			AddTurn(citizen, victim, mCarriedPosition);
+		}
+		else {
+			// and one landing on a citizen no longer
+			// a candidate is drawn again, from the
+			// candidates left
+			DrawVictim(citizen, turn, REDRAW_STREAM + citizen.Id());
+		}
+	}
+	
+	
+	/// Add citizen's turn to the batch, unless
+	/// an earlier turn of the batch touches the
+	/// citizen: then it ends the batch
+	private void BatchTurn(Citizen citizen, int turn) {
+		
+		if (true == citizen.InBatch(mBatch)) {
+			mCarried = citizen;
+			return;
+		}
+		
+		// dead citizens take no action
+		if (citizen.KilledBy() != Citizen.EKillType.INVALID || true == citizen.DeferTurn(turn)) {
+			return;
+		}
+		
+		DrawVictim(citizen, turn, citizen.Id());
+	}
+	
+	
+	/// Draw victim of citizen's turn from given
+	/// stream and add the turn to the batch,
+	/// unless an earlier turn of the batch
+	/// touches the victim: then it ends the
+	/// batch
+	private void DrawVictim(Citizen citizen, int turn, long stream) {
+		
+		mContext.Rng().Begin(turn, stream);
+		Citizen victim = citizen.SelectVictim(this);
+		long position = mContext.Rng().Position();
+		
+		if (victim != null && true == victim.InBatch(mBatch)) {
+			mCarried = citizen;
+			mCarriedVictim = victim;
+			mCarriedPosition = position;
+			return;
+		}
+		
+		AddTurn(citizen, victim, position);
+	}
+	
+	
+	private void AddTurn(Citizen citizen, Citizen victim, long position) {
+		
+		citizen.MarkBatch(mBatch);
+		if (victim != null) {
+			victim.MarkBatch(mBatch);
+		}
+		
+		mBatchActors[mBatchSize] = citizen;
+		mBatchVictims[mBatchSize] = victim;
+		mBatchVictimTypes[mBatchSize] = victim != null ? victim.GetType() : Citizen.ECitizenType.INVALID;
+		mBatchPositions[mBatchSize] = position;
+		++mBatchSize;
+	}
+	
+	
+	/// Act out the turns of the batch, each
+	/// touching only its own citizen and
+	/// victim, then settle them
+	private void RunBatch() {
+		
+		int count = mBatchSize;
+		
+		// turns of a batch touch different citizens
+		// and continue their own streams, so acting
+		// them in turn order for an event journal
+		// changes nothing but the order of events
+		mBatching = true;
+		if (count >= ParallelBatch && mContext.Events() == null) {
+			IntStream.range(0, BATCH_SHARDS).parallel().forEach(shard -> {
+				int end = (int) ((long) count * (shard + 1) / BATCH_SHARDS);
+				for (int i = (int) ((long) count * shard / BATCH_SHARDS); i < end; ++i) {
+					ActBatchTurn(i);
+				}
+			});
+		}
+		else {
+			for (int i = 0; i < count; ++i) {
+				ActBatchTurn(i);
+			}
+		}
+		mBatching = false;
+		
+		SettleBatch(count);
+	}
+	
+	
+	private void ActBatchTurn(int i) {
+		
+		mContext.Rng().Resume(mBatchPositions[i]);
+		mBatchActors[i].Act(mBatchVictims[i], this);
+	}
+	
+	
+	/// Bring pools up to date with the deaths
+	/// and conversions of the batch, in turn
+	/// order as OnKilled and OnTypeChanged
+	/// would have
+	private void SettleBatch(int count) {
+		
+		for (int i = 0; i < count; ++i) {
+			// own turn never changes a citizen's type
+			Settle(mBatchActors[i], mBatchActors[i].GetType());
+			
+			if (mBatchVictims[i] != null) {
+				Settle(mBatchVictims[i], mBatchVictimTypes[i]);
+			}
+		}
+		
+		// let go of the batch's citizens
+		Arrays.fill(mBatchActors, 0, count, null);
+		Arrays.fill(mBatchVictims, 0, count, null);
+	}
+	
+	
+	/// Move citizen living at the start of the
+	/// batch with given type to the pool it
+	/// belongs to now (none if dead)
+	private void Settle(Citizen citizen, Citizen.ECitizenType type) {
+		
+		if (citizen.KilledBy() != Citizen.EKillType.INVALID) {
+			mLiving[type.ordinal()].Remove(citizen);
+			--mNumLiving;
+		}
+		else if (citizen.GetType() != type) {
+			mLiving[type.ordinal()].Remove(citizen);
+			mLiving[citizen.GetType().ordinal()].Add(citizen);
+		}
+	}
+	
+	
+	/// Behavior factory method
+	private IBehavior CreateBehavior(Citizen.ECitizenType type) {
+		
+		IBehavior behavior = null;
+		
+		switch (type) {
+		case HUMAN:
+			behavior = HumanBehavior.Inst();
+			break;
+			
+		case VAMPIRE:
+			behavior = VampireBehavior.Inst();
+			break;
+			
+		case WEREWOLF:
+			behavior = WerewolfBehavior.Inst();
+			break;
+			
+		case INVALID:
+			break;
+		}
+		
+		return behavior;
 	}
 	
 	
 	/// Human factory method
-	private Citizen CreateHuman() {
-		return new Citizen( new HumanBehavior() );
+	private Citizen CreateHuman(int id) {
+		return new Citizen( id, HumanBehavior.Inst() );
 	}
 	
 	
 	/// Vampire factory method
-	private Citizen CreateVampire() {
-		return new Citizen( new VampireBehavior(this) );
+	private Citizen CreateVampire(int id) {
+		return new Citizen( id, VampireBehavior.Inst() );
 	}
 	
 	
 	/// Werewolf factory method
-	private Citizen CreateWerewolf() {
-		return new Citizen( new WerewolfBehavior(this) );
+	private Citizen CreateWerewolf(int id) {
+		return new Citizen( id, WerewolfBehavior.Inst() );
 	}
 	
 	
@@ -150,29 +971,94 @@ public class Village implements IVictimProvider {
 		
 		// Easier to view results
 		// when grouped by type.
-		Predicate<Citizen> isHuman = ( c -> c.GetType() == Citizen.ECitizenType.HUMAN );
-		List<Citizen> lstHumans = mCitizens.stream().filter(isHuman).collect(Collectors.toList());
+		StringBuilder sb = new StringBuilder();
 		
-		Predicate<Citizen> isVampire = ( c -> c.GetType() == Citizen.ECitizenType.VAMPIRE );
-		List<Citizen> lstVampires = mCitizens.stream().filter(isVampire).collect(Collectors.toList());
+		AppendStatus(sb, Citizen.ECitizenType.HUMAN);
+		AppendStatus(sb, Citizen.ECitizenType.VAMPIRE);
+		AppendStatus(sb, Citizen.ECitizenType.WEREWOLF);
 		
-		Predicate<Citizen> isWerewolf = ( c -> c.GetType() == Citizen.ECitizenType.WEREWOLF );
-		List<Citizen> lstWerewolves = mCitizens.stream().filter(isWerewolf).collect(Collectors.toList());
+		return sb.toString();
+	}
+	
+	
+	private void AppendStatus(StringBuilder sb, Citizen.ECitizenType type) {
 		
-		StringBuilder sb = new StringBuilder();
+		for (Citizen citizen : mCitizens) {
+			if (citizen.GetType() == type && false == citizen.Emigrated()) {
+				sb.append(citizen.GetStatus());
+			}
+		}
 		
-		for (Citizen citizen : lstHumans) {
-			sb.append(citizen.GetStatus());
+		mGraveyard.AppendStatus(sb, type);
+	}
+	
+	
+	/// Stream status of all citizens to writer
+	public void WriteStatus(StatusWriter writer) throws IOException {
+		
+		// grouped by type, one pass per type
+		WriteStatus(writer, Citizen.ECitizenType.HUMAN);
+		WriteStatus(writer, Citizen.ECitizenType.VAMPIRE);
+		WriteStatus(writer, Citizen.ECitizenType.WEREWOLF);
+	}
+	
+	
+	private void WriteStatus(StatusWriter writer, Citizen.ECitizenType type) throws IOException {
+		
+		for (Citizen citizen : mCitizens) {
+			if (citizen.GetType() == type && false == citizen.Emigrated()) {
+				citizen.WriteStatus(writer);
+			}
 		}
 		
-		for (Citizen citizen : lstVampires) {
-			sb.append(citizen.GetStatus());
+		mGraveyard.WriteStatus(writer, type);
+	}
+	
+	
+	/// Number of citizens, living or dead
+	public int Population() {
+		return mCitizens.size() - mNumEmigrated + mGraveyard.Size();
+	}
+	
+	
+	/// Snapshot layout: (int count) and citizens
+	/// of the list, then (int count) and citizens
+	/// of the graveyard, each citizen as (int id, 
+	/// short packed state), then each living pool
+	/// as (int size, size x int id)
+	public long SnapshotSize() {
+		
+		return 2 * Integer.BYTES + (long) Population() * (Integer.BYTES + Short.BYTES) +
+			   (long) SNAPSHOT_POOLS.length * Integer.BYTES + 
+			   (long) mNumLiving * Integer.BYTES;
+	}
+	
+	
+	/// Write population snapshot
+	public void WriteSnapshot(SnapshotFile file) throws IOException {
+		
+		// emigrants are no longer citizens
+		file.PutInt(mCitizens.size() - mNumEmigrated);
+		for (Citizen citizen : mCitizens) {
+			if (false == citizen.Emigrated()) {
+				file.PutInt(citizen.Id());
+				file.PutShort((short) citizen.Pack());
+			}
 		}
 		
-		for (Citizen citizen : lstWerewolves) {
-			sb.append(citizen.GetStatus());
+		file.PutInt(mGraveyard.Size());
+		for (int i = 0; i < mGraveyard.Size(); ++i) {
+			file.PutInt(mGraveyard.Id(i));
+			file.PutShort((short) mGraveyard.Bits(i));
 		}
 		
-		return sb.toString();
+		for (Citizen.ECitizenType type : SNAPSHOT_POOLS) {
+			CitizenPool pool = mLiving[type.ordinal()];
+			
+			file.PutInt(pool.Size());
+			for (int i = 0; i < pool.Size(); ++i) {
+				file.PutInt(pool.Get(i).Id());
+			}
+		}
 	}
 }
@@ -15,66 +15,160 @@
 //
 //////////////////////////////////
 
-import java.util.List;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
-
-
 public class WerewolfBehavior implements IBehavior {
 
 	private static int TurnThreshold = 7;
 	
-	private IVictimProvider mVictimProvider;
+	static final int HUMAN_FORM_HEALTH_INCREASE = 5;
+	
+	static final int WEREWOLF_FORM_HEALTH_INCREASE = 10;
+	
+	static final int HUMAN_MIN_HIT = 30;
+	
+	static final int HUMAN_MAX_HIT = 80;
 	
+	static final int VAMPIRE_MIN_HIT = 10;
+	
+	static final int VAMPIRE_MAX_HIT = 30;
+	
+	private static final WerewolfBehavior INSTANCE = new WerewolfBehavior();
+	
+	
+	/// Shared instance
+	public static WerewolfBehavior Inst() {
+		return INSTANCE;
+	}
 	
-	public WerewolfBehavior(IVictimProvider victimProvider)
+	
+	private WerewolfBehavior()
 	{
-		mVictimProvider = victimProvider;
 	}
 	
 	
 	/// Werewolf specific turn behavior
+	@Override
+	public void DoTurn(Citizen citizen, IVictimProvider victimProvider) {
+		
+		// feeding event covers victim selection
+		FeedingEvent feeding = BeginFeeding(victimProvider);
+		
+		Act(citizen, SelectVictim(citizen, victimProvider), victimProvider, feeding);
+	}
+	
+	
+	/// Find suitable victim if in werewolf form
+	@Override
+	public Citizen SelectVictim(Citizen citizen, IVictimProvider victimProvider) {
+		
+		if (false == IsFullMoon(victimProvider.Context().Clock().CurrentTurn())) {
+			return null;
+		}
+		
+		PhaseTimings timings = victimProvider.Context().Timings();
+		long start = timings != null ? timings.Start() : 0;
+		
+		Citizen victim = SelectVictim(victimProvider);
+		
+		if (timings != null) {
+			timings.Accumulate(PhaseTimings.EPhase.VICTIM_SELECTION, start);
+		}
+		
+		return victim;
+	}
+	
+	
+	/// Heal, and feed on victim if any (drawn
+	/// ahead, so the feeding event covers the
+	/// feeding only)
+	@Override
+	public void Act(Citizen citizen, Citizen victim, IVictimProvider victimProvider) {
+		
+		Act(citizen, victim, victimProvider, BeginFeeding(victimProvider));
+	}
+	
+	
+	/// Feeding event started now if in werewolf
+	/// form and recording, else null
+	private FeedingEvent BeginFeeding(IVictimProvider victimProvider) {
+		
+		if (false == IsFullMoon(victimProvider.Context().Clock().CurrentTurn())) {
+			return null;
+		}
+		
+		return FeedingEvent.Begin();
+	}
+	
+	
+	/// Heal, and feed on victim if any,
+	/// completing feeding event if any
 	/// NOTE:  Given that werewolves only increase their health
 	/// value when feeding (and don't decrease their hunger value), and
 	/// given that they heal 5 points per day which is the same amount
 	/// humans lose when starving, I'm interpreting the rule "They behave as
 	/// normal humans..." to mean "they APPEAR as normal humans...".  
-	@Override
-	public void DoTurn(Citizen citizen) {
+	private void Act(Citizen citizen, Citizen victim, IVictimProvider victimProvider, FeedingEvent feeding) {
 		
 		// behaves as human unless full moon
-		if (true == IsFullMoon()) {
+		if (true == IsFullMoon(victimProvider.Context().Clock().CurrentTurn())) {
 			
 			// heal 10 points per day as werewolf
-			int HEALTH_INCREASE = 10;
-			citizen.Health(citizen.Health() + HEALTH_INCREASE);
-						
-			// find suitable victim
-			Citizen victim = SelectVictim();
+			citizen.Health(citizen.Health() + WEREWOLF_FORM_HEALTH_INCREASE);
 			
 			if (victim != null) {
-				if (victim.GetType() == Citizen.ECitizenType.HUMAN) {
-					HumanFeeding(citizen, victim);
+				Citizen.ECitizenType victimType = victim.GetType();
+				int healthHit = 0;
+				
+				if (victimType == Citizen.ECitizenType.HUMAN) {
+					healthHit = HumanFeeding(citizen, victim, victimProvider);
 				}
 				else {
-					VampireFeeding(citizen, victim);
+					healthHit = VampireFeeding(citizen, victim, victimProvider);
+				}
+				
+				Record(IEventSink.EEventType.FEEDING, citizen, victim, victimProvider);
+				
+				if (feeding != null) {
+					feeding.Commit(victimProvider.Context().Clock().CurrentTurn(), citizen.Id(), victim.Id(),
+								   victimType, healthHit, victim.KilledBy() != Citizen.EKillType.INVALID);
 				}
 			}
 		}
 		else {	// "human" behavior
 			
 			// heal 5 points per day as human
-			int HEALTH_INCREASE = 5;
-			citizen.Health(citizen.Health() + HEALTH_INCREASE);
+			citizen.Health(citizen.Health() + HUMAN_FORM_HEALTH_INCREASE);
 		}
 	}
 
 	
+	/// Victims are living humans and vampires,
+	/// and only at full moon
+	@Override
+	public boolean CanVictimize(Citizen victim, int turn) {
+		
+		return true == IsFullMoon(turn) && victim.KilledBy() == Citizen.EKillType.INVALID &&
+			   (victim.GetType() == Citizen.ECitizenType.HUMAN || victim.GetType() == Citizen.ECitizenType.VAMPIRE);
+	}
+	
+	
+	/// In human form werewolves only heal
+	@Override
+	public boolean UpkeepOnly(Citizen citizen, int turn) {
+		return false == IsFullMoon(turn);
+	}
+	
+	
+	@Override
+	public Citizen.ECitizenType GetType() {
+		return Citizen.ECitizenType.WEREWOLF;
+	}
+	
+	
 	/// Werewolves sometimes look human 
 	/// sometimes look like werewolves
 	@Override
-	public Citizen.ECitizenType GetApparentType(Citizen citizen) {
-		if (IsFullMoon()) {
+	public Citizen.ECitizenType GetApparentType(Citizen citizen, int turn) {
+		if (IsFullMoon(turn)) {
 			return Citizen.ECitizenType.WEREWOLF;
 		}
 		else {
@@ -83,46 +177,69 @@ public class WerewolfBehavior implements IBehavior {
 	}
 	
 	
-	/// Helper for determining if appearance
-	/// is werewolf or human
-	private boolean IsFullMoon() {
+	/// True if werewolves are in werewolf
+	/// form on given turn
+	public static boolean IsFullMoon(int turn) {
 		
 		// Have first werewolf appearance on
 		// turn 6 rather than turn 0.
-		return TurnManager.Inst().CurrentTurn() % TurnThreshold == TurnThreshold - 1;
+		return turn % TurnThreshold == TurnThreshold - 1;
+	}
+	
+	
+	/// Number of full moon turns from first
+	/// turn up to (not including) end turn
+	public static int FullMoons(int first, int end) {
+		
+		// full moons before a turn t: t / TurnThreshold
+		return end / TurnThreshold - first / TurnThreshold;
 	}
 	
 	
-	private void HumanFeeding(Citizen citizen, Citizen victim) {
+	/// Returns health hit
+	private int HumanFeeding(Citizen citizen, Citizen victim, IVictimProvider victimProvider) {
 		
 		// human loses between 30-80 (inclusive) health points
-		int MIN_HIT = 30;
-		int MAX_HIT = 80;
-		int healthHit = RandomNumberGenerator.Inst().Generate(MIN_HIT, MAX_HIT);
+		int healthHit = victimProvider.Context().Rng().Generate(HUMAN_MIN_HIT, HUMAN_MAX_HIT);
 		victim.Health(victim.Health() - healthHit);
 		
 		// if human lives they become a werewolf
 		if (victim.Health() > Citizen.HEALTH_MIN) {
-			victim.SetBehavior(new WerewolfBehavior(mVictimProvider));
+			victim.SetBehavior(INSTANCE);
 		}
 		else {
 			victim.Killed(Citizen.EKillType.WEREWOLF);
 		}
-				
+		
+		return healthHit;
 	}
 	
 	
-	private void VampireFeeding(Citizen citizen, Citizen victim) {
+	/// Returns health hit
+	private int VampireFeeding(Citizen citizen, Citizen victim, IVictimProvider victimProvider) {
 		// vampire loses between 10-30 (inclusive) health points
-		int MIN_HIT = 10;
-		int MAX_HIT = 30;
-		int healthHit = RandomNumberGenerator.Inst().Generate(MIN_HIT, MAX_HIT);
+		int healthHit = victimProvider.Context().Rng().Generate(VAMPIRE_MIN_HIT, VAMPIRE_MAX_HIT);
 		victim.Health(victim.Health() - healthHit);
 		
 		// check for death
 		if (victim.Health() == Citizen.HEALTH_MIN) {
 			victim.Killed(Citizen.EKillType.WEREWOLF);
 		}
+		
+		return healthHit;
+	}
+
+	
+	/// Report outcome to event sink, if any
+	private void Record(IEventSink.EEventType type, Citizen citizen, Citizen victim, IVictimProvider victimProvider) {
+		
+		IEventSink events = victimProvider.Context().Events();
+		
+		if (events != null) {
+			int turn = victimProvider.Context().Clock().CurrentTurn();
+			events.Record(type, turn, citizen.Id(), citizen.Pack(), 
+						  victim.Id(), victim.Pack(), victim.HasActed(turn));
+		}
 	}
 	
 	
@@ -130,22 +247,32 @@ public class WerewolfBehavior implements IBehavior {
 	/// The rules don't state anything about werewolf on
 	/// werewolf attacks, so I'm assuming they don't attach
 	/// eachother.
-	private Citizen SelectVictim() {
-		List<Citizen> lstVictimPool = mVictimProvider.GetVictimPool();
+	/// (package visible for benchmarks)
+	Citizen SelectVictim(IVictimProvider victimProvider) {
 		
-		// refine selection with "not a werewolf"
-		Predicate<Citizen> vicCriteria = (c -> c.GetType() != Citizen.ECitizenType.WEREWOLF);
+		// victims are living humans and vampires
+		int numHumans = victimProvider.LivingCount(Citizen.ECitizenType.HUMAN);
+		int numVampires = victimProvider.LivingCount(Citizen.ECitizenType.VAMPIRE);
 		
-		List<Citizen> lstVictims = lstVictimPool.stream().filter(vicCriteria).collect(Collectors.toList());
+		SimulationMetrics metrics = victimProvider.Context().Metrics();
+		if (metrics != null) {
+			metrics.VictimsSelected(1, numHumans + numVampires);
+		}
 		
-		if (lstVictims.isEmpty()) {
+		if (numHumans + numVampires == 0) {
 			return null;
 		}
 		else {	// select with random index
 			int MIN_INDEX = 0;
-			int MAX_INDEX = lstVictims.size() - 1;
-			int victimIndex = RandomNumberGenerator.Inst().Generate(MIN_INDEX, MAX_INDEX);
-			return lstVictims.get(victimIndex);
+			int MAX_INDEX = numHumans + numVampires - 1;
+			int victimIndex = victimProvider.Context().Rng().Generate(MIN_INDEX, MAX_INDEX);
+			
+			if (victimIndex < numHumans) {
+				return victimProvider.LivingCitizen(Citizen.ECitizenType.HUMAN, victimIndex);
+			}
+			else {
+				return victimProvider.LivingCitizen(Citizen.ECitizenType.VAMPIRE, victimIndex - numHumans);
+			}
 		}
 	}
 }
@@ -0,0 +1,121 @@
+//////////////////////////////////
+//	VectorUpkeep
+//
+//  Upkeep kernel (IUpkeepKernel) using the
+//  incubating vector API, same rules as
+//  ScalarUpkeep.Upkeep: 8 or 16 citizens
+//  per step, decoding fields with shifts
+//  and masks and selecting each rule by
+//  lane mask instead of branching.  Lanes
+//  without a pending bit are left as they
+//  are.
+//
+//  Needs jdk.incubator.vector both to
+//  compile and to run, so it lives in its
+//  own source root, built after src/ with
+//  the module added:
+//
+//    javac -d out src/*.java
+//    javac --add-modules jdk.incubator.vector
+//          -cp out -d out vector/*.java
+//
+//  It is only ever loaded by
+//  ScalarUpkeep.Vector, so a build without
+//  this root, or a JVM without the module,
+//  falls back to ScalarUpkeep.  Uses only
+//  array loads and stores, which keep
+//  their shape across JDK releases.
+//
+//////////////////////////////////
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+public class VectorUpkeep implements IUpkeepKernel {
+
+	// at most 16 lanes, so a group's pending
+	// bits fit in a short
+	private static final VectorSpecies<Short> SPECIES =
+		ShortVector.SPECIES_PREFERRED.length() <= Short.SIZE ? ShortVector.SPECIES_PREFERRED
+															 : ShortVector.SPECIES_256;
+
+	private static final int LANES = SPECIES.length();
+
+	private static final short HUMAN = (short) Citizen.ECitizenType.HUMAN.ordinal();
+	private static final short WEREWOLF = (short) Citizen.ECitizenType.WEREWOLF.ordinal();
+
+	// 1 << lane in each lane, to turn pending
+	// bits into a lane mask
+	private static final ShortVector LANE_BITS = LaneBits();
+
+
+	public void Apply(short[] window, int count, long[] pending, int first) {
+
+		int firstWord = first >>> 6;
+		int vectorEnd = SPECIES.loopBound(count);
+
+		int i = 0;
+		for (; i < vectorEnd; i += LANES) {
+			int flags = (int) (pending[firstWord + i / Long.SIZE] >>> (i % Long.SIZE)) & ((1 << LANES) - 1);
+			if (flags == 0) {
+				continue;
+			}
+
+			VectorMask<Short> lanes = LANE_BITS.and((short) flags).compare(VectorOperators.NE, (short) 0);
+			ShortVector bits = ShortVector.fromArray(SPECIES, window, i);
+			Upkeep(bits, lanes).intoArray(window, i);
+		}
+
+		// partial last group
+		for (; i < count; ++i) {
+			if ((pending[firstWord + i / Long.SIZE] & (1L << i)) != 0) {
+				window[i] = (short) ScalarUpkeep.Upkeep(window[i] & 0xFFFF);
+			}
+		}
+	}
+
+
+	/// Packed citizens after one turn of upkeep
+	/// in pending lanes
+	private static ShortVector Upkeep(ShortVector bits, VectorMask<Short> pending) {
+
+		ShortVector type = bits.lanewise(VectorOperators.LSHR, CitizenBits.TYPE_SHIFT).and((short) CitizenBits.TYPE_MASK);
+		ShortVector hunger = bits.lanewise(VectorOperators.LSHR, CitizenBits.HUNGER_SHIFT).and((short) CitizenBits.HUNGER_MASK);
+		ShortVector health = bits.and((short) CitizenBits.HEALTH_MASK);
+
+		VectorMask<Short> human = type.compare(VectorOperators.EQ, HUMAN).and(pending);
+		VectorMask<Short> werewolf = type.compare(VectorOperators.EQ, WEREWOLF).and(pending);
+		VectorMask<Short> fed = hunger.compare(VectorOperators.LT, (short) Citizen.HUNGER_MAX).and(human);
+		VectorMask<Short> starving = human.andNot(fed);
+
+		if (true == pending.andNot(human.or(werewolf)).anyTrue()) {
+			throw new IllegalStateException("No upkeep for citizen type");
+		}
+
+		health = health.sub((short) HumanBehavior.STARVATION_HEALTH_COST, starving)
+					   .add((short) WerewolfBehavior.HUMAN_FORM_HEALTH_INCREASE, werewolf)
+					   .min((short) Citizen.HEALTH_MAX);
+
+		if (true == health.compare(VectorOperators.LE, (short) Citizen.HEALTH_MIN).and(pending).anyTrue()) {
+			throw new IllegalStateException("Deferred upkeep starved a citizen");
+		}
+
+		ShortVector result = bits.and((short) ~CitizenBits.HEALTH_MASK).or(health)
+								 .add((short) (HumanBehavior.HUNGER_PER_TURN << CitizenBits.HUNGER_SHIFT), fed);
+
+		return bits.blend(result, pending);
+	}
+
+
+	private static ShortVector LaneBits() {
+
+		short[] laneBits = new short[LANES];
+		for (int lane = 0; lane < LANES; ++lane) {
+			laneBits[lane] = (short) (1 << lane);
+		}
+
+		return ShortVector.fromArray(SPECIES, laneBits, 0);
+	}
+}